@@ -21,15 +21,20 @@ package org.apache.aries.async.promise;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.osgi.util.function.Callback;
 import org.osgi.util.function.Function;
@@ -41,23 +46,49 @@ import org.osgi.util.promise.TimeoutException;
 
 public class PromiseImpl<T> implements Promise<T> {
 
+    /**
+     * System property setting the maximum number of threads running the callbacks of the promises
+     * created without an explicit executor. When it is set, the callbacks queue up once that many
+     * threads are busy. By default threads are added as long as callbacks are waiting.
+     */
+    public static final String CALLBACK_THREADS_PROPERTY = "org.apache.aries.async.promise.callbackThreads";
+
+    private static final int PENDING = 0;
+    private static final int RESOLVING = 1;
+    private static final int RESOLVED = 2;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PromiseImpl> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(PromiseImpl.class, "state");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<PromiseImpl, Pending> CALLBACKS =
+            AtomicReferenceFieldUpdater.newUpdater(PromiseImpl.class, Pending.class, "callbacks");
+
+    /** Marks the callback list of a resolved promise whose callbacks have all been run */
+    private static final Pending DONE = new Pending(null);
+    /** Ends the callback list of a resolved promise while its callbacks run, later callbacks queue up before it */
+    private static final Pending RUNNING = new Pending(null);
+
     private final Executor exec;
     private final ScheduledExecutorService ses;
-    private final List<Runnable> tasks = new ArrayList<Runnable>();
-    private final CountDownLatch resolved = new CountDownLatch(1);
 
-    private List<PromiseImpl> chain;
+    private volatile int state;
+    // Callbacks waiting to be run, most recent first
+    private volatile Pending callbacks;
+
+    // Set for promises created by then()
     private Success onSuccess;
     private Failure onFailure;
+    // Written before state becomes RESOLVED, which publishes them
     private Throwable failure;
     private T value;
 
     public PromiseImpl() {
-        this(Executors.newSingleThreadExecutor());
+        this(DefaultExecutors.CALLBACKS, DefaultExecutors.SCHEDULER);
     }
 
     public PromiseImpl(Executor executor) {
-    	this(executor, Executors.newSingleThreadScheduledExecutor());
+    	this(executor, DefaultExecutors.SCHEDULER);
     }
 
     public PromiseImpl(Executor executor, ScheduledExecutorService ses) {
@@ -106,84 +137,198 @@ public class PromiseImpl<T> implements Promise<T> {
         return result;
     }
 
-    private synchronized void complete(T value, Throwable failure) {
-        if (isDone()) {
+    private void complete(T value, Throwable failure) {
+        if (!STATE.compareAndSet(this, PENDING, RESOLVING)) {
             throw new IllegalStateException("Promise is already resolved");
         }
 
         // mark this Promise as complete before invoking callbacks
-        if (failure != null) {
-            this.failure = failure;
+        this.failure = failure;
+        this.value = value;
+        state = RESOLVED;
+
+        // Callbacks registered from now on are queued until these ones have been run
+        Pending pending = CALLBACKS.getAndSet(this, RUNNING);
+
+        // run chained success/failure callbacks and release blocked callers
+        final Object[] ordered = reverse(pending, null);
+        boolean tasks = false;
+        for (int i = 0; i < ordered.length; i++) {
+            if (ordered[i] instanceof Runnable) {
+                tasks = true;
+            } else {
+                runInline(ordered[i]);
+                ordered[i] = null;
+            }
+        }
+        if (!tasks && CALLBACKS.compareAndSet(this, RUNNING, DONE)) {
+            return;
+        }
+
+        // run onResolve() callbacks, and the callbacks queued meanwhile, with a single task
+        // so that they run in registration order
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Object callback : ordered) {
+                    if (callback != null) {
+                        runCallback(callback);
+                    }
+                }
+                runQueued();
+            }
+        });
+    }
+
+    /**
+     * Runs the callbacks registered after resolution, until no more callbacks are queued.
+     */
+    private void runQueued() {
+        for (;;) {
+            Pending queued = CALLBACKS.getAndSet(this, RUNNING);
+            if (queued != RUNNING) {
+                for (Object callback : reverse(queued, RUNNING)) {
+                    runCallback(callback);
+                }
+            } else if (CALLBACKS.compareAndSet(this, RUNNING, DONE)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the callbacks of a list in registration order.
+     */
+    private static Object[] reverse(Pending list, Pending end) {
+        int count = 0;
+        for (Pending p = list; p != end; p = p.next) {
+            count++;
+        }
+        Object[] ordered = new Object[count];
+        for (Pending p = list; p != end; p = p.next) {
+            ordered[--count] = p.callback;
+        }
+        return ordered;
+    }
+
+    private void runCallback(Object callback) {
+        if (callback instanceof Runnable) {
+            try {
+                ((Runnable) callback).run();
+            } catch (Throwable t) {
+                // a failing callback must not prevent the next ones from running
+            }
         } else {
-            this.value = value;
+            runInline(callback);
         }
-        resolved.countDown();
+    }
 
-        if (chain != null) {
-            runChain();
+    private void execute(Runnable task) {
+        try {
+            exec.execute(task);
+        } catch (RejectedExecutionException ree) {
+            task.run();
         }
+    }
 
-        // run onResolve() callbacks
-        for (Runnable task : tasks) {
-            try{
-            	exec.execute(task);
-            } catch (RejectedExecutionException ree) {
-            	task.run();
+    /**
+     * Registers a callback.
+     * The callback is either an onResolve() Runnable, which runs on the executor, a chained
+     * PromiseImpl or a CountDownLatch, which are handled by the resolving thread, or straight
+     * away if this promise is resolved.  The onResolve() callbacks of a promise run one at a
+     * time in registration order, including those registered while it is being resolved.
+     */
+    private void addCallback(Object callback) {
+        if (!(callback instanceof Runnable) && state == RESOLVED) {
+            runInline(callback);
+            return;
+        }
+        Pending node = new Pending(callback);
+        for (;;) {
+            Pending head = callbacks;
+            // once resolved, the callbacks are queued until a task runs them
+            node.next = head == DONE ? RUNNING : head;
+            if (CALLBACKS.compareAndSet(this, head, node)) {
+                if (head == DONE) {
+                    execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            runQueued();
+                        }
+                    });
+                }
+                return;
             }
         }
     }
 
-    // run chained success/failure callbacks
+    private void runInline(Object callback) {
+        if (callback instanceof PromiseImpl) {
+            runChained((PromiseImpl<?>) callback);
+        } else {
+            ((CountDownLatch) callback).countDown();
+        }
+    }
+
+    // run a chained success/failure callback
     @SuppressWarnings("unchecked")
-    private void runChain() {
-        while (!chain.isEmpty()) {
-            PromiseImpl next = chain.remove(0);
-            if (failure != null) {
-                try {
-                    if (next.onFailure != null) {
-                        // "This method is called if the Promise with which it is registered resolves with a failure."
-                        next.onFailure.fail(this);
-                    }
-                    // "If this method completes normally, the chained Promise will be failed
-                    // with the same exception which failed the resolved Promise."
-                    next.fail(failure);
-                } catch (Exception e) {
-                    // "If this method throws an exception, the chained Promise will be failed with the thrown exception."
-                    next.fail(e);
+    private void runChained(PromiseImpl next) {
+        if (failure != null) {
+            try {
+                if (next.onFailure != null) {
+                    // "This method is called if the Promise with which it is registered resolves with a failure."
+                    next.onFailure.fail(this);
                 }
-            } else {
-                try {
-                    // "This method is called if the Promise with which it is registered resolves successfully."
-                    Promise<T> p = null;
-                    if (next.onSuccess != null) {
-                        p = next.onSuccess.call(this);
-                    }
-                    if (p == null) {
-                        // "If the returned Promise is null then the chained Promise will resolve immediately with a successful value of null."
-                        next.resolve(null);
-                    } else {
-                        // "If the returned Promise is not null then the chained Promise will be resolved when the returned Promise is resolved"
-                        next.resolveWith(p);
-                    }
-                } catch (InvocationTargetException e) {
-                    next.fail(e.getCause());
-                } catch (Exception e) {
-                    next.fail(e);
+                // "If this method completes normally, the chained Promise will be failed
+                // with the same exception which failed the resolved Promise."
+                next.fail(failure);
+            } catch (Exception e) {
+                // "If this method throws an exception, the chained Promise will be failed with the thrown exception."
+                next.fail(e);
+            }
+        } else {
+            try {
+                // "This method is called if the Promise with which it is registered resolves successfully."
+                Promise<T> p = null;
+                if (next.onSuccess != null) {
+                    p = next.onSuccess.call(this);
+                }
+                if (p == null) {
+                    // "If the returned Promise is null then the chained Promise will resolve immediately with a successful value of null."
+                    next.resolve(null);
+                } else {
+                    // "If the returned Promise is not null then the chained Promise will be resolved when the returned Promise is resolved"
+                    next.resolveWith(p);
                 }
+            } catch (InvocationTargetException e) {
+                next.fail(e.getCause());
+            } catch (Exception e) {
+                next.fail(e);
             }
         }
+        next.onSuccess = null;
+        next.onFailure = null;
+    }
+
+    private void await() throws InterruptedException {
+        if (state != RESOLVED) {
+            // Only blocking callers pay for a latch
+            CountDownLatch latch = new CountDownLatch(1);
+            addCallback(latch);
+            latch.await();
+        }
     }
 
     // Promise API methods
 
     @Override
     public boolean isDone() {
-        return resolved.getCount() == 0;
+        return state == RESOLVED;
     }
 
     @Override
     public T getValue() throws InvocationTargetException, InterruptedException {
-        resolved.await();
+        await();
         if (failure != null) {
             throw new InvocationTargetException(failure);
         }
@@ -192,24 +337,15 @@ public class PromiseImpl<T> implements Promise<T> {
 
     @Override
     public Throwable getFailure() throws InterruptedException {
-        resolved.await();
+        await();
         return failure;
     }
 
     @Override
-    public synchronized Promise<T> onResolve(Runnable callback) {
+    public Promise<T> onResolve(Runnable callback) {
         if (callback == null)
             throw new NullPointerException();
-
-        if (isDone()) {
-        	try {
-        		exec.execute(callback);
-        	} catch (RejectedExecutionException ree) {
-        		callback.run();
-        	}
-        } else {
-            tasks.add(callback);
-        }
+        addCallback(callback);
         return this;
     }
 
@@ -218,15 +354,7 @@ public class PromiseImpl<T> implements Promise<T> {
         PromiseImpl<R> result = new PromiseImpl<R>(exec, ses);
         result.onSuccess = success;
         result.onFailure = failure;
-        synchronized (this) {
-            if (chain == null) {
-                chain = new ArrayList<PromiseImpl>();
-            }
-            chain.add(result);
-            if (isDone()) {
-                runChain();
-            }
-        }
+        addCallback(result);
         return result;
     }
 
@@ -432,7 +560,7 @@ public class PromiseImpl<T> implements Promise<T> {
 
 	@Override
 	public Promise<T> timeout(long milliseconds) {
-		final PromiseImpl<T> p = new PromiseImpl<T>();
+		final PromiseImpl<T> p = new PromiseImpl<T>(exec, ses);
 		
 		p.resolveWith(this);
 		
@@ -454,7 +582,7 @@ public class PromiseImpl<T> implements Promise<T> {
 
 	@Override
 	public Promise<T> delay(final long milliseconds) {
-		final PromiseImpl<T> p = new PromiseImpl<T>();
+		final PromiseImpl<T> p = new PromiseImpl<T>(exec, ses);
 		then(new Success<T,T>() {
 			@Override
 			public Promise<T> call(final Promise<T> resolved) throws Exception {
@@ -489,6 +617,60 @@ public class PromiseImpl<T> implements Promise<T> {
     	});
 		return p;
 	}
-    
-    
+
+
+    /** A callback registered on a pending promise */
+    private static final class Pending {
+        final Object callback;
+        Pending next;
+
+        Pending(Object callback) {
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * Executors shared by the promises created without explicit executors, so that creating
+     * a promise does not start any thread. The threads are daemons and time out when idle.
+     */
+    private static final class DefaultExecutors {
+        static final Executor CALLBACKS;
+        static final ScheduledExecutorService SCHEDULER;
+
+        static {
+            Integer threads = Integer.getInteger(CALLBACK_THREADS_PROPERTY);
+            if (threads == null || threads <= 0) {
+                // Callbacks may block, so threads are added on demand rather than queueing the tasks
+                CALLBACKS = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(), new DaemonThreadFactory("Aries Promise callback"));
+            } else {
+                ThreadPoolExecutor callbacks = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("Aries Promise callback"));
+                callbacks.allowCoreThreadTimeOut(true);
+                CALLBACKS = callbacks;
+            }
+
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                    new DaemonThreadFactory("Aries Promise scheduler"));
+            scheduler.setKeepAliveTime(60, TimeUnit.SECONDS);
+            scheduler.allowCoreThreadTimeOut(true);
+            SCHEDULER = scheduler;
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+        private final String name;
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + " " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
 }
@@ -22,8 +22,14 @@ import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -56,6 +62,139 @@ public class CallbackTest {
         assertEquals("callback3 succeeded", null, cb3.error);
     }
 
+    @Test
+    public void testCallbackOrder() throws Exception {
+        Deferred<String> def = new Deferred<String>();
+        Promise<String> promise = def.getPromise();
+
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            final int index = i;
+            promise.onResolve(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(index);
+                    latch.countDown();
+                }
+            });
+        }
+        def.resolve("Hello");
+
+        assertTrue("callbacks executed", latch.await(1, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("callbacks run in registration order", Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    @Test
+    public void testConcurrentCallbacks() throws Exception {
+        // Registration races with resolution, every callback must still run exactly once
+        for (int round = 0; round < 100; round++) {
+            final Deferred<String> def = new Deferred<String>();
+            final Promise<String> promise = def.getPromise();
+            final AtomicInteger count = new AtomicInteger();
+            final AtomicInteger outOfOrder = new AtomicInteger();
+            final CountDownLatch latch = new CountDownLatch(400);
+            final CountDownLatch start = new CountDownLatch(1);
+
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                threads.add(new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        final int[] last = { -1 };
+                        for (int i = 0; i < 100; i++) {
+                            final int index = i;
+                            promise.onResolve(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (last[0] != index - 1) {
+                                        outOfOrder.incrementAndGet();
+                                    }
+                                    last[0] = index;
+                                    count.incrementAndGet();
+                                    latch.countDown();
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            start.countDown();
+            def.resolve("Hello");
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertTrue("callbacks executed", latch.await(1, TimeUnit.SECONDS));
+            assertEquals("callbacks executed once", 400, count.get());
+            assertEquals("callbacks run in registration order", 0, outOfOrder.get());
+        }
+    }
+
+    @Test
+    public void testSharedCallbackThreads() throws Exception {
+        // Promises created without an executor must not start a thread each
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        for (int i = 0; i < 1000; i++) {
+            final CountDownLatch latch = new CountDownLatch(1);
+            Deferred<String> def = new Deferred<String>();
+            def.getPromise().onResolve(new Runnable() {
+                @Override
+                public void run() {
+                    threads.add(Thread.currentThread());
+                    latch.countDown();
+                }
+            });
+            def.resolve("Hello");
+            assertTrue("callback executed", latch.await(5, TimeUnit.SECONDS));
+        }
+
+        assertTrue("callbacks share threads: " + threads.size(), threads.size() < 100);
+    }
+
+    @Test
+    public void testBlockingCallbacks() throws Exception {
+        // Blocked callbacks must not prevent the callbacks of other promises from running
+        int blocked = Runtime.getRuntime().availableProcessors() * 4;
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(blocked);
+        for (int i = 0; i < blocked; i++) {
+            Deferred<String> def = new Deferred<String>();
+            def.getPromise().onResolve(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        gate.await();
+                        latch.countDown();
+                    } catch (InterruptedException e) {
+                        // the test fails
+                    }
+                }
+            });
+            def.resolve("Hello");
+        }
+        Deferred<String> def = new Deferred<String>();
+        def.getPromise().onResolve(new Runnable() {
+            @Override
+            public void run() {
+                gate.countDown();
+            }
+        });
+        def.resolve("Hello");
+
+        assertTrue("blocked callbacks released", latch.await(5, TimeUnit.SECONDS));
+    }
+
 
     class Callback implements Runnable {
         final CountDownLatch latch = new CountDownLatch(1);
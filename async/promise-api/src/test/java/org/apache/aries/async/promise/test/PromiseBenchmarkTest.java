@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.async.promise.test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.util.function.Function;
+import org.osgi.util.promise.Deferred;
+import org.osgi.util.promise.Promise;
+
+/**
+ * Measures the cost of creating, chaining and resolving promises. Run it by hand, the
+ * results are printed rather than checked.
+ */
+@Ignore("benchmark")
+public class PromiseBenchmarkTest {
+    private static final int WARMUP_TRIALS = 5;
+    private static final int TRIALS = 10;
+    private static final int ITERATIONS = 100000;
+    private static final int CHAIN_LENGTH = 10;
+    private static final int CALLBACKS = 10;
+
+    private static final Function<Integer, Integer> INCREMENT = new Function<Integer, Integer>() {
+        @Override
+        public Integer apply(Integer t) {
+            return t + 1;
+        }
+    };
+
+    @Test
+    public void testCreateAndResolve() throws Exception {
+        run("create and resolve", new Trial() {
+            @Override
+            public void run() throws Exception {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Deferred<Integer> def = new Deferred<Integer>();
+                    def.resolve(i);
+                    assertEquals(Integer.valueOf(i), def.getPromise().getValue());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testChain() throws Exception {
+        run("chain of " + CHAIN_LENGTH + " map()", new Trial() {
+            @Override
+            public void run() throws Exception {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Deferred<Integer> def = new Deferred<Integer>();
+                    Promise<Integer> chain = def.getPromise();
+                    for (int j = 0; j < CHAIN_LENGTH; j++) {
+                        chain = chain.map(INCREMENT);
+                    }
+                    def.resolve(i);
+                    assertEquals(Integer.valueOf(i + CHAIN_LENGTH), chain.getValue());
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testResolveWithCallbacks() throws Exception {
+        run("resolve with " + CALLBACKS + " onResolve()", new Trial() {
+            @Override
+            public void run() throws Exception {
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Deferred<Integer> def = new Deferred<Integer>();
+                    final CountDownLatch latch = new CountDownLatch(CALLBACKS);
+                    Runnable callback = new Runnable() {
+                        @Override
+                        public void run() {
+                            latch.countDown();
+                        }
+                    };
+                    for (int j = 0; j < CALLBACKS; j++) {
+                        def.getPromise().onResolve(callback);
+                    }
+                    def.resolve(i);
+                    assertTrue(latch.await(10, SECONDS));
+                }
+            }
+        });
+    }
+
+    private static void run(String name, Trial trial) throws Exception {
+        for (int i = 0; i < WARMUP_TRIALS; i++) {
+            trial.run();
+        }
+        long[] times = new long[TRIALS];
+        for (int i = 0; i < TRIALS; i++) {
+            long start = System.nanoTime();
+            trial.run();
+            times[i] = System.nanoTime() - start;
+        }
+        long sum = 0;
+        long best = Long.MAX_VALUE;
+        for (long time : times) {
+            sum += time;
+            best = Math.min(best, time);
+        }
+        System.out.println(name + ": average " + sum / TRIALS / ITERATIONS + " ns/op, best "
+                + best / ITERATIONS + " ns/op over " + TRIALS + " trials of " + ITERATIONS);
+    }
+
+    private interface Trial {
+        void run() throws Exception;
+    }
+}
@@ -17,6 +17,8 @@
 package org.apache.aries.blueprint.container;
 
 import java.io.ByteArrayInputStream;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
@@ -29,7 +31,6 @@ import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Dictionary;
 import java.util.Enumeration;
@@ -39,6 +40,9 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
@@ -88,8 +92,65 @@ public class AggregateConverter implements Converter {
         }
     }
 
+    /**
+     * The conversion rule applying to a given source class and target type,
+     * when no registered converter can handle the conversion.
+     */
+    private static enum Strategy {
+        Assignable,
+        Number,
+        String,
+        Array,
+        Map,
+        Dictionary,
+        Collection,
+        None
+    }
+
+    /**
+     * The source class is weakly referenced, as the converted values may come from other bundles,
+     * and stale keys are removed using the reference queue.  The target types belong to the
+     * blueprint bundle, which is already referenced by the container.
+     */
+    private static class StrategyKey extends WeakReference<Class<?>> {
+
+        private final ReifiedType to;
+        private final int hash;
+
+        public StrategyKey(Class<?> from, ReifiedType to, ReferenceQueue<Class<?>> queue) {
+            super(from, queue);
+            this.to = to;
+            this.hash = 31 * System.identityHashCode(from) + to.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StrategyKey)) {
+                return false;
+            }
+            StrategyKey other = (StrategyKey) o;
+            Class<?> from = get();
+            return from != null && from == other.get() && to.equals(other.to);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final int MAX_CACHED_STRATEGIES = 4096;
+
     private ExtendedBlueprintContainer blueprintContainer;
-    private List<Converter> converters = new ArrayList<Converter>();
+    private final List<Converter> converters = new CopyOnWriteArrayList<Converter>();
+    // Strategies only depend on the source class and target type, so they can be safely reused
+    private final ConcurrentMap<StrategyKey, Strategy> strategies = new ConcurrentHashMap<StrategyKey, Strategy>();
+    private final ReferenceQueue<Class<?>> staleKeys = new ReferenceQueue<Class<?>>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
 
     public AggregateConverter(ExtendedBlueprintContainer blueprintContainer) {
         this.blueprintContainer = blueprintContainer;
@@ -97,10 +158,29 @@ public class AggregateConverter implements Converter {
 
     public void registerConverter(Converter converter) {
         converters.add(converter);
+        strategies.clear();
     }
 
     public void unregisterConverter(Converter converter) {
         converters.remove(converter);
+        strategies.clear();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * The ratio of conversions for which the conversion strategy was found in the cache.
+     */
+    public double getCacheHitRate() {
+        long hits = cacheHits.get();
+        long total = hits + cacheMisses.get();
+        return total > 0 ? (double) hits / total : 0.0;
     }
 
     public boolean canConvert(Object fromValue, final ReifiedType toType) {
@@ -109,14 +189,17 @@ public class AggregateConverter implements Converter {
         } else if (fromValue instanceof UnwrapperedBeanHolder) {
             fromValue = ((UnwrapperedBeanHolder) fromValue).unwrapperedBean;
         }
-        if (isAssignable(fromValue, toType)) {
+        Strategy strategy = getStrategy(fromValue, toType);
+        if (strategy == Strategy.Assignable) {
             return true;
         }
         
         final Object toTest = fromValue;
         boolean canConvert = false;
         AccessControlContext acc = blueprintContainer.getAccessControlContext();
-        if (acc == null) {
+        if (converters.isEmpty()) {
+            // Nothing to check
+        } else if (acc == null) {
             canConvert = canConvertWithConverters(toTest, toType);
         } else {
             canConvert = AccessController.doPrivileged(new PrivilegedAction<Boolean>() {
@@ -128,6 +211,9 @@ public class AggregateConverter implements Converter {
         if (canConvert) {
             return true;
         }
+        if (strategy == Strategy.None && !(toTest instanceof Convertible)) {
+            return false;
+        }
         
         // TODO implement better logic ?!
         try {
@@ -143,25 +229,32 @@ public class AggregateConverter implements Converter {
         if (fromValue == null) {
             return null;
         }
+        Strategy strategy;
         // First convert service proxies
         if (fromValue instanceof Convertible) {
             return ((Convertible) fromValue).convert(type);
         } else if (fromValue instanceof UnwrapperedBeanHolder) {
             UnwrapperedBeanHolder holder = (UnwrapperedBeanHolder) fromValue;
-            if (isAssignable(holder.unwrapperedBean, type)) {
+            if (getStrategy(holder.unwrapperedBean, type) == Strategy.Assignable) {
                 return BeanRecipe.wrap(holder, type.getRawClass());
             } else {
                 fromValue = BeanRecipe.wrap(holder, Object.class);
+                strategy = getStrategy(fromValue, type);
+            }
+        } else {
+            strategy = getStrategy(fromValue, type);
+            if (strategy == Strategy.Assignable) {
+                // If the object is an instance of the type, just return it
+                return fromValue;
             }
-        } else if (isAssignable(fromValue, type)) {
-            // If the object is an instance of the type, just return it
-            return fromValue;
         }
         
         final Object finalFromValue = fromValue;
         ConversionResult result = null;
         AccessControlContext acc = blueprintContainer.getAccessControlContext();
-        if (acc == null) {
+        if (converters.isEmpty()) {
+            // Nothing to check
+        } else if (acc == null) {
             result = convertWithConverters(fromValue, type);
         } else {
             result = AccessController.doPrivileged(new PrivilegedExceptionAction<ConversionResult>() {
@@ -171,25 +264,73 @@ public class AggregateConverter implements Converter {
             }, acc);
         }
         if (result == null) {
-            if (fromValue instanceof Number && Number.class.isAssignableFrom(unwrap(toClass(type)))) {
-                return convertToNumber((Number) fromValue, toClass(type));
-            } else if (fromValue instanceof String) {
-                return convertFromString((String) fromValue, toClass(type), blueprintContainer);
-            } else if (toClass(type).isArray() && (fromValue instanceof Collection || fromValue.getClass().isArray())) {
-                return convertToArray(fromValue, type);
-            } else if (Map.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Map || fromValue instanceof Dictionary)) {
-                return convertToMap(fromValue, type);
-            } else if (Dictionary.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Map || fromValue instanceof Dictionary)) {
-                return convertToDictionary(fromValue, type);
-            } else if (Collection.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Collection || fromValue.getClass().isArray())) {
-                return convertToCollection(fromValue, type);
-            } else {
-                throw new Exception("Unable to convert value " + fromValue + " to type " + type);
+            switch (strategy) {
+                case Assignable:
+                    // Only when a wrapped bean is assignable to the type
+                    return fromValue;
+                case Number:
+                    return convertToNumber((Number) fromValue, toClass(type));
+                case String:
+                    return convertFromString((String) fromValue, toClass(type), blueprintContainer);
+                case Array:
+                    return convertToArray(fromValue, type);
+                case Map:
+                    return convertToMap(fromValue, type);
+                case Dictionary:
+                    return convertToDictionary(fromValue, type);
+                case Collection:
+                    return convertToCollection(fromValue, type);
+                default:
+                    throw new Exception("Unable to convert value " + fromValue + " to type " + type);
             }
         }
         return result.value;
     }
 
+    private Strategy getStrategy(Object source, ReifiedType type) {
+        // The assignability of classes depends on the class itself,
+        // and other implementations of ReifiedType may not implement equals
+        if (source instanceof Class || !(type instanceof GenericType)) {
+            return computeStrategy(source, type);
+        }
+        StrategyKey key = new StrategyKey(source.getClass(), type, null);
+        Strategy strategy = strategies.get(key);
+        if (strategy != null) {
+            cacheHits.incrementAndGet();
+        } else {
+            cacheMisses.incrementAndGet();
+            strategy = computeStrategy(source, type);
+            for (Object stale; (stale = staleKeys.poll()) != null;) {
+                strategies.remove(stale);
+            }
+            if (strategies.size() >= MAX_CACHED_STRATEGIES) {
+                strategies.clear();
+            }
+            strategies.put(new StrategyKey(source.getClass(), type, staleKeys), strategy);
+        }
+        return strategy;
+    }
+
+    private Strategy computeStrategy(Object fromValue, ReifiedType type) {
+        if (isAssignable(fromValue, type)) {
+            return Strategy.Assignable;
+        } else if (fromValue instanceof Number && Number.class.isAssignableFrom(unwrap(toClass(type)))) {
+            return Strategy.Number;
+        } else if (fromValue instanceof String) {
+            return Strategy.String;
+        } else if (toClass(type).isArray() && (fromValue instanceof Collection || fromValue.getClass().isArray())) {
+            return Strategy.Array;
+        } else if (Map.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Map || fromValue instanceof Dictionary)) {
+            return Strategy.Map;
+        } else if (Dictionary.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Map || fromValue instanceof Dictionary)) {
+            return Strategy.Dictionary;
+        } else if (Collection.class.isAssignableFrom(toClass(type)) && (fromValue instanceof Collection || fromValue.getClass().isArray())) {
+            return Strategy.Collection;
+        } else {
+            return Strategy.None;
+        }
+    }
+
     private Converter selectMatchingConverter(Object source, ReifiedType type) {
         for (Converter converter : converters) {
             if (converter.canConvert(source, type)) {
@@ -30,6 +30,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Dictionary;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -154,6 +155,12 @@ public class BlueprintContainerImpl
     private long timeout = 5 * 60 * 1000;
     private boolean waitForDependencies = true;
     private String xmlValidation;
+    private boolean parallelInstantiationDefault;
+    private boolean parallelInstantiation;
+    private boolean copyOnWriteReferenceLists;
+    private MetadataCache metadataCache;
+    private boolean populatedFromCache;
+    private final Map<State, Long> phaseTimes = new EnumMap<State, Long>(State.class);
     private ScheduledFuture timeoutFuture;
     private final AtomicBoolean scheduled = new AtomicBoolean();
     private List<ServiceRecipe> services;
@@ -210,6 +217,50 @@ public class BlueprintContainerImpl
         return eventDispatcher;
     }
 
+    /**
+     * Set whether independent eager components should be instantiated concurrently
+     * when the bundle does not specify the {@link BlueprintConstants#PARALLEL_INSTANTIATION} directive.
+     */
+    public void setParallelInstantiation(boolean parallelInstantiation) {
+        this.parallelInstantiationDefault = parallelInstantiation;
+    }
+
+    /**
+     * Set the cache used to store the parsed metadata and skip the xml parsing and validation on restart.
+     */
+    public void setMetadataCache(MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Returns the time spent in each state of the container creation, in milliseconds.
+     * Time spent waiting for namespace handlers or service dependencies is not accounted for.
+     */
+    public Map<State, Long> getPhaseTimes() {
+        Map<State, Long> times = new EnumMap<State, Long>(State.class);
+        synchronized (phaseTimes) {
+            for (Map.Entry<State, Long> entry : phaseTimes.entrySet()) {
+                times.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Records the time spent in a state which completed without waiting or failing.
+     */
+    private void phaseCompleted(State phase, long phaseStart) {
+        long nanos = System.nanoTime() - phaseStart;
+        synchronized (phaseTimes) {
+            Long previous = phaseTimes.get(phase);
+            phaseTimes.put(phase, previous != null ? previous + nanos : nanos);
+        }
+        if (state == State.Created) {
+            LOGGER.debug("Blueprint bundle {}/{} creation times (ms): {}", getBundle().getSymbolicName(), getBundle().getVersion(), getPhaseTimes());
+            LOGGER.debug("Blueprint bundle {}/{} conversion cache hit rate: {} ({} hits, {} misses)", getBundle().getSymbolicName(), getBundle().getVersion(), converter.getCacheHitRate(), converter.getCacheHits(), converter.getCacheMisses());
+        }
+    }
+
     private void readDirectives() {
         Dictionary headers = bundle.getHeaders();
         String symbolicName = (String) headers.get(Constants.BUNDLE_SYMBOLICNAME);
@@ -233,6 +284,26 @@ public class BlueprintContainerImpl
         }
         // enabled if null or "true"; structure-only if "structure"; disabled otherwise
         LOGGER.debug("Xml-validation directive: {}", xmlValidation);
+
+        String parallel = paths.get(0).getDirective(BlueprintConstants.PARALLEL_INSTANTIATION);
+        if (parallel != null) {
+            LOGGER.debug("Parallel-instantiation directive: {}", parallel);
+            parallelInstantiation = Boolean.parseBoolean(parallel);
+        } else {
+            parallelInstantiation = parallelInstantiationDefault;
+        }
+
+        String copyOnWrite = paths.get(0).getDirective(BlueprintConstants.COPY_ON_WRITE_REFERENCE_LISTS);
+        LOGGER.debug("Copy-on-write-reference-lists directive: {}", copyOnWrite);
+        copyOnWriteReferenceLists = Boolean.parseBoolean(copyOnWrite);
+    }
+
+    /**
+     * Whether reference lists should be backed by a CopyOnWriteDynamicCollection, which
+     * does not lock when iterated, rather than a DynamicCollection.
+     */
+    public boolean isCopyOnWriteReferenceLists() {
+        return copyOnWriteReferenceLists;
     }
 
     public void schedule() {
@@ -254,6 +325,9 @@ public class BlueprintContainerImpl
             timeout = 5 * 60 * 1000;
             waitForDependencies = true;
             xmlValidation = null;
+            synchronized (phaseTimes) {
+                phaseTimes.clear();
+            }
             if (handlerSet != null) {
                 handlerSet.removeListener(this);
                 handlerSet.destroy();
@@ -299,15 +373,27 @@ public class BlueprintContainerImpl
                     return;
                 }
                 LOGGER.debug("Running container for blueprint bundle {}/{} in state {}", getBundle().getSymbolicName(), getBundle().getVersion(), state);
+                State phase = state;
+                long phaseStart = System.nanoTime();
                 switch (state) {
                     case Unknown:
                         readDirectives();
                         eventDispatcher.blueprintEvent(new BlueprintEvent(BlueprintEvent.CREATING, getBundle(), getExtenderBundle()));
-                        parser = new Parser();
-                        parser.parse(pathList);
-                        namespaces = parser.getNamespaces();
-                        if (additionalNamespaces != null) {
-                            namespaces.addAll(additionalNamespaces);
+                        populatedFromCache = false;
+                        if (metadataCache != null && (additionalNamespaces == null || additionalNamespaces.isEmpty())) {
+                            resetComponentDefinitionRegistry();
+                            populatedFromCache = metadataCache.load(bundle, pathList, xmlValidation, componentDefinitionRegistry);
+                        }
+                        if (populatedFromCache) {
+                            parser = null;
+                            namespaces = new LinkedHashSet<URI>();
+                        } else {
+                            parser = new Parser();
+                            parser.parse(pathList);
+                            namespaces = parser.getNamespaces();
+                            if (additionalNamespaces != null) {
+                                namespaces.addAll(additionalNamespaces);
+                            }
                         }
                         handlerSet = handlers.getNamespaceHandlers(namespaces, getBundle());
                         handlerSet.addListener(this);
@@ -328,6 +414,11 @@ public class BlueprintContainerImpl
                             eventDispatcher.blueprintEvent(new BlueprintEvent(BlueprintEvent.GRACE_PERIOD, getBundle(), getExtenderBundle(), missing.toArray(new String[missing.size()])));
                             return;
                         }
+                        if (populatedFromCache) {
+                            // the registry has already been populated from the metadata cache
+                            state = State.Populated;
+                            break;
+                        }
                         resetComponentDefinitionRegistry();
                         if (xmlValidation == null || "true".equals(xmlValidation)) {
                             for (URI ns : handlerSet.getNamespaces()) {
@@ -349,6 +440,9 @@ public class BlueprintContainerImpl
                                 parser.validatePsvi(handlerSet.getSchema(parser.getSchemaLocations()));
                             }
                             parser.populate(handlerSet, componentDefinitionRegistry);
+                            if (metadataCache != null && handlerSet.getNamespaces().isEmpty()) {
+                                metadataCache.store(bundle, pathList, xmlValidation, componentDefinitionRegistry);
+                            }
                             state = State.Populated;
                         } catch (MissingNamespaceException e) {
                             // If we found a missing namespace when parsing the schema,
@@ -431,6 +525,7 @@ public class BlueprintContainerImpl
                     case Failed:
                         return;
                 }
+                phaseCompleted(phase, phaseStart);
             }
         } catch (Throwable t) {
             try {
@@ -714,7 +809,11 @@ public class BlueprintContainerImpl
         }
         LOGGER.debug("Instantiating components: {}", components);
         try {
-            repository.createAll(components);
+            if (parallelInstantiation) {
+                repository.createAll(components, executors);
+            } else {
+                repository.createAll(components);
+            }
         } catch (ComponentDefinitionException e) {
             throw e;
         } catch (Throwable t) {
@@ -36,6 +36,7 @@ import org.apache.aries.blueprint.annotation.service.BlueprintAnnotationScanner;
 import org.apache.aries.blueprint.namespace.NamespaceHandlerRegistryImpl;
 import org.apache.aries.blueprint.services.BlueprintExtenderService;
 import org.apache.aries.blueprint.services.ParserService;
+import org.apache.aries.blueprint.utils.BeanAccessor;
 import org.apache.aries.blueprint.utils.HeaderParser;
 import org.apache.aries.blueprint.utils.HeaderParser.PathElement;
 import org.apache.aries.blueprint.utils.ServiceUtil;
@@ -83,6 +84,7 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
     private ServiceRegistration quiesceParticipantReg;
     private SingleServiceTracker<ProxyManager> proxyManager;
     private ExecutorServiceFinder executorServiceFinder;
+    private MetadataCache metadataCache;
     private volatile boolean stopping;
 
     public void start(BundleContext ctx) {
@@ -93,12 +95,27 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
         BundleContext trackingContext = useSystemContext ? ctx.getBundle(Constants.SYSTEM_BUNDLE_LOCATION).getBundleContext() : ctx;
 
         handlers = new NamespaceHandlerRegistryImpl(trackingContext);
+        final int threads = getThreadCount(ctx);
+        LOGGER.debug("Using {} threads for the blueprint extender", threads);
         executors = new ScheduledExecutorServiceWrapper(ctx, "Blueprint Extender", new ScheduledExecutorServiceFactory() {
             public ScheduledExecutorService create(String name) {
-                return Executors.newScheduledThreadPool(3, new BlueprintThreadFactory(name));
+                return Executors.newScheduledThreadPool(threads, new BlueprintThreadFactory(name));
             }
         });
         eventDispatcher = new BlueprintEventDispatcher(ctx);
+        if (Boolean.parseBoolean(ctx.getProperty(BlueprintConstants.METADATA_CACHE_PROPERTY))) {
+            File dir = ctx.getDataFile("metadata");
+            if (dir != null) {
+                LOGGER.debug("Caching blueprint metadata in {}", dir);
+                metadataCache = new MetadataCache(dir);
+            } else {
+                LOGGER.info("No file system support, blueprint metadata will not be cached");
+            }
+        }
+        if (Boolean.parseBoolean(ctx.getProperty(BlueprintConstants.GENERATED_ACCESSORS_PROPERTY))) {
+            LOGGER.debug("Using generated accessors for bean injection");
+            BeanAccessor.setEnabled(true);
+        }
 
         // Ideally we'd want to only track STARTING and ACTIVE bundle, but this is not supported
         // when using equinox composites.  This would ensure that no STOPPING event is lost while
@@ -164,6 +181,26 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
         LOGGER.debug("Blueprint extender started");
     }
 
+    /**
+     * The pool is sized to the number of available processors (with a minimum of 3 threads) so that
+     * blueprint bundles are parsed, validated and created concurrently, unless configured explicitly.
+     */
+    private static int getThreadCount(BundleContext ctx) {
+        String val = ctx.getProperty(BlueprintConstants.EXTENDER_THREADS_PROPERTY);
+        if (val != null) {
+            try {
+                int threads = Integer.parseInt(val.trim());
+                if (threads > 0) {
+                    return threads;
+                }
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+            LOGGER.warn("Invalid value for {}: {}", BlueprintConstants.EXTENDER_THREADS_PROPERTY, val);
+        }
+        return Math.max(3, Runtime.getRuntime().availableProcessors());
+    }
+
     public void stop(BundleContext context) {
         LOGGER.debug("Stopping blueprint extender...");
 
@@ -190,6 +227,7 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
         this.eventDispatcher.destroy();
         this.handlers.destroy();
         executors.shutdown();
+        BeanAccessor.setEnabled(false);
         LOGGER.debug("Blueprint extender stopped");
     }
 
@@ -199,6 +237,9 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
 
     public void bundleChanged(BundleEvent event) {
         Bundle bundle = event.getBundle();
+        if (event.getType() == BundleEvent.UNINSTALLED && metadataCache != null) {
+            metadataCache.remove(bundle);
+        }
         if (bundle.getState() != Bundle.ACTIVE && bundle.getState() != Bundle.STARTING) {
             // The bundle is not in STARTING or ACTIVE state anymore
             // so destroy the context.  Ignore our own bundle since it
@@ -288,6 +329,9 @@ public class BlueprintExtender implements BundleActivator, BundleTrackerCustomiz
                                                                 context.getBundle(), eventDispatcher,
                                                                 handlers, getExecutorService(bundle),
                                                                 executors, paths, pm, namespaces);
+            blueprintContainer.setParallelInstantiation(
+                    Boolean.parseBoolean(context.getProperty(BlueprintConstants.PARALLEL_INSTANTIATION_PROPERTY)));
+            blueprintContainer.setMetadataCache(metadataCache);
             synchronized (containers) {
                 if (containers.putIfAbsent(bundle, blueprintContainer) != null) {
                     return false;
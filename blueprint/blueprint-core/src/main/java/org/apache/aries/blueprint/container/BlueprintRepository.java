@@ -29,11 +29,15 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.aries.blueprint.reflect.MetadataUtil;
 import org.apache.aries.blueprint.services.ExtendedBlueprintContainer;
@@ -194,6 +198,55 @@ public class BlueprintRepository implements Repository, ExecutionContext {
         }
     }
 
+    /**
+     * Create the given components, instantiating groups of components which do not share
+     * any recipe concurrently using the given executor.  The calling thread takes part in
+     * the work, so that progress is guaranteed even if the executor is saturated.
+     */
+    public void createAll(Collection<String> names, Executor executor) throws ComponentDefinitionException {
+        List<List<String>> groups = executor != null ? new DependencyGraph(this).getIndependentGroups(names) : null;
+        if (groups == null || groups.size() < 2) {
+            createAll(names);
+            return;
+        }
+        List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(groups.size());
+        for (final List<String> group : groups) {
+            FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+                public Void call() throws Exception {
+                    createAll(group);
+                    return null;
+                }
+            });
+            tasks.add(task);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // The task will be run by the calling thread
+            }
+        }
+        // run the tasks that have not been picked up yet, this is a no-op for the others
+        for (FutureTask<Void> task : tasks) {
+            task.run();
+        }
+        for (FutureTask<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ComponentDefinitionException("Interrupted while instantiating components", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    throw new ComponentDefinitionException("Unable to instantiate components", cause);
+                }
+            }
+        }
+    }
+
     public <T> List<T> getAllRecipes(Class<T> clazz, String... names) {
         List<T> recipes = new ArrayList<T>();
         for (Recipe r : getAllRecipes(names)) {
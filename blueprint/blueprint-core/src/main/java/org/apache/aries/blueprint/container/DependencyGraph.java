@@ -19,6 +19,7 @@ package org.apache.aries.blueprint.container;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -103,6 +104,63 @@ public class DependencyGraph {
         return sortedRecipes;
     }
 
+    /**
+     * Split the given top level components into groups which do not share any recipe.
+     * Components from different groups can be instantiated concurrently without any risk
+     * of two threads waiting on each other, while components within a group must be created
+     * by a single thread so that circular references can be resolved using partial objects.
+     * The groups and their content retain the ordering of the given names.
+     */
+    public List<List<String>> getIndependentGroups(Collection<String> names) {
+        // union-find on the top level components, joined through the recipes they reach
+        Map<String, String> parents = new LinkedHashMap<String, String>();
+        Map<Recipe, String> owners = new HashMap<Recipe, String>();
+        for (String name : names) {
+            parents.put(name, name);
+            for (Recipe recipe : repository.getAllRecipes(name)) {
+                String owner = owners.get(recipe);
+                if (owner == null) {
+                    owners.put(recipe, name);
+                } else {
+                    union(parents, owner, name);
+                }
+            }
+        }
+        Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+        for (String name : parents.keySet()) {
+            String root = find(parents, name);
+            List<String> group = groups.get(root);
+            if (group == null) {
+                group = new ArrayList<String>();
+                groups.put(root, group);
+            }
+            group.add(name);
+        }
+        return new ArrayList<List<String>>(groups.values());
+    }
+
+    private static String find(Map<String, String> parents, String name) {
+        String root = name;
+        while (!root.equals(parents.get(root))) {
+            root = parents.get(root);
+        }
+        // path compression
+        while (!name.equals(root)) {
+            String next = parents.get(name);
+            parents.put(name, root);
+            name = next;
+        }
+        return root;
+    }
+
+    private static void union(Map<String, String> parents, String n1, String n2) {
+        String r1 = find(parents, n1);
+        String r2 = find(parents, n2);
+        if (!r1.equals(r2)) {
+            parents.put(r2, r1);
+        }
+    }
+
     private void findCircuit(Node node, ArrayList<Recipe> stack) {
         if (stack.contains(node.recipe)) {
             ArrayList<Recipe> circularity = new ArrayList<Recipe>(stack.subList(stack.indexOf(node.recipe), stack.size()));
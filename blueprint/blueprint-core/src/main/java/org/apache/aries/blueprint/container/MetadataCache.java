@@ -0,0 +1,625 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.container;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.aries.blueprint.ComponentDefinitionRegistry;
+import org.apache.aries.blueprint.reflect.BeanArgumentImpl;
+import org.apache.aries.blueprint.reflect.BeanMetadataImpl;
+import org.apache.aries.blueprint.reflect.BeanPropertyImpl;
+import org.apache.aries.blueprint.reflect.CollectionMetadataImpl;
+import org.apache.aries.blueprint.reflect.ComponentMetadataImpl;
+import org.apache.aries.blueprint.reflect.IdRefMetadataImpl;
+import org.apache.aries.blueprint.reflect.MapEntryImpl;
+import org.apache.aries.blueprint.reflect.MapMetadataImpl;
+import org.apache.aries.blueprint.reflect.PassThroughMetadataImpl;
+import org.apache.aries.blueprint.reflect.PropsMetadataImpl;
+import org.apache.aries.blueprint.reflect.RefMetadataImpl;
+import org.apache.aries.blueprint.reflect.ReferenceListMetadataImpl;
+import org.apache.aries.blueprint.reflect.ReferenceListenerImpl;
+import org.apache.aries.blueprint.reflect.ReferenceMetadataImpl;
+import org.apache.aries.blueprint.reflect.RegistrationListenerImpl;
+import org.apache.aries.blueprint.reflect.ServiceMetadataImpl;
+import org.apache.aries.blueprint.reflect.ServiceReferenceMetadataImpl;
+import org.apache.aries.blueprint.reflect.ValueMetadataImpl;
+import org.osgi.framework.Bundle;
+import org.osgi.service.blueprint.reflect.BeanArgument;
+import org.osgi.service.blueprint.reflect.BeanProperty;
+import org.osgi.service.blueprint.reflect.ComponentMetadata;
+import org.osgi.service.blueprint.reflect.MapEntry;
+import org.osgi.service.blueprint.reflect.Metadata;
+import org.osgi.service.blueprint.reflect.NonNullMetadata;
+import org.osgi.service.blueprint.reflect.NullMetadata;
+import org.osgi.service.blueprint.reflect.ReferenceListener;
+import org.osgi.service.blueprint.reflect.RegistrationListener;
+import org.osgi.service.blueprint.reflect.Target;
+import org.osgi.service.blueprint.reflect.ValueMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk cache of the metadata parsed from the blueprint xml of a bundle.
+ * <p>
+ * The cache is only used for bundles that do not use any custom namespace, as namespace
+ * handlers can create arbitrary metadata or have side effects while parsing.  Entries are
+ * keyed by bundle id and are only reused if the bundle last modification time, the xml
+ * validation mode and a digest of the blueprint xml files all match, in which case the
+ * xml parsing and schema validation is skipped altogether.
+ * </p>
+ */
+public class MetadataCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataCache.class);
+
+    private static final int MAGIC = 0x42504d43;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Set<String> CONTAINER_COMPONENTS = new HashSet<String>(Arrays.asList(
+            "blueprintContainer", "blueprintBundle", "blueprintBundleContext", "blueprintConverter"));
+
+    private static final byte NULL = 0;
+    private static final byte NULL_METADATA = 1;
+    private static final byte BEAN = 2;
+    private static final byte SERVICE = 3;
+    private static final byte REFERENCE = 4;
+    private static final byte REFERENCE_LIST = 5;
+    private static final byte REF = 6;
+    private static final byte ID_REF = 7;
+    private static final byte VALUE = 8;
+    private static final byte COLLECTION = 9;
+    private static final byte MAP = 10;
+    private static final byte PROPS = 11;
+
+    private static final byte CONVERTER_COMPONENT = 1;
+    private static final byte CONVERTER_TARGET = 2;
+
+    private final File directory;
+
+    public MetadataCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Populate the registry with the cached metadata for the given bundle.
+     *
+     * @return <code>true</code> if a valid cache entry has been found, <code>false</code> otherwise,
+     *          in which case the registry has not been modified
+     */
+    public boolean load(Bundle bundle, List<URL> paths, String xmlValidation, ComponentDefinitionRegistry registry) {
+        File file = getFile(bundle);
+        if (!file.isFile()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                    return false;
+                }
+                if (in.readLong() != bundle.getLastModified() || !equals(xmlValidation, readString(in))) {
+                    return false;
+                }
+                byte[] digest = new byte[in.readInt()];
+                in.readFully(digest);
+                if (!Arrays.equals(digest, digest(paths))) {
+                    return false;
+                }
+                List<ComponentMetadata> components = new ArrayList<ComponentMetadata>();
+                int nb = in.readInt();
+                for (int i = 0; i < nb; i++) {
+                    components.add((ComponentMetadata) readMetadata(in));
+                }
+                List<Object> converters = new ArrayList<Object>();
+                nb = in.readInt();
+                for (int i = 0; i < nb; i++) {
+                    byte kind = in.readByte();
+                    converters.add(kind == CONVERTER_COMPONENT ? readString(in) : readMetadata(in));
+                }
+                // replay the registrations in the order they were originally made
+                int next = 0;
+                for (ComponentMetadata component : components) {
+                    int idx = converters.indexOf(component.getId());
+                    if (idx >= 0) {
+                        for (; next < idx; next++) {
+                            registry.registerTypeConverter((Target) converters.get(next));
+                        }
+                        registry.registerTypeConverter((Target) component);
+                        next = idx + 1;
+                    } else {
+                        registry.registerComponentDefinition(component);
+                    }
+                }
+                for (; next < converters.size(); next++) {
+                    registry.registerTypeConverter((Target) converters.get(next));
+                }
+                LOGGER.debug("Loaded cached metadata for blueprint bundle {}/{}", bundle.getSymbolicName(), bundle.getVersion());
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            LOGGER.debug("Unable to read cached metadata for blueprint bundle {}/{}", bundle.getSymbolicName(), bundle.getVersion(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Store the metadata contained in the registry for the given bundle if it can be cached.
+     */
+    public void store(Bundle bundle, List<URL> paths, String xmlValidation, ComponentDefinitionRegistry registry) {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(bundle.getLastModified());
+            writeString(out, xmlValidation);
+            byte[] digest = digest(paths);
+            out.writeInt(digest.length);
+            out.write(digest);
+            List<ComponentMetadata> components = new ArrayList<ComponentMetadata>();
+            for (String name : registry.getComponentDefinitionNames()) {
+                ComponentMetadata component = registry.getComponentDefinition(name);
+                if (component instanceof PassThroughMetadataImpl && CONTAINER_COMPONENTS.contains(name)) {
+                    continue;
+                }
+                if (!registry.getInterceptors(component).isEmpty()) {
+                    throw new NotCacheableException(component);
+                }
+                components.add(component);
+            }
+            out.writeInt(components.size());
+            for (ComponentMetadata component : components) {
+                writeMetadata(out, component);
+            }
+            List<Target> converters = registry.getTypeConverters();
+            out.writeInt(converters.size());
+            for (Target converter : converters) {
+                if (converter instanceof ComponentMetadata && components.contains(converter)) {
+                    out.writeByte(CONVERTER_COMPONENT);
+                    writeString(out, ((ComponentMetadata) converter).getId());
+                } else {
+                    out.writeByte(CONVERTER_TARGET);
+                    writeMetadata(out, converter);
+                }
+            }
+            out.flush();
+            write(getFile(bundle), baos.toByteArray());
+            LOGGER.debug("Cached metadata for blueprint bundle {}/{}", bundle.getSymbolicName(), bundle.getVersion());
+        } catch (NotCacheableException e) {
+            LOGGER.debug("Metadata for blueprint bundle {}/{} can not be cached: {}", bundle.getSymbolicName(), bundle.getVersion(), e.getMessage());
+        } catch (Exception e) {
+            LOGGER.debug("Unable to cache metadata for blueprint bundle {}/{}", bundle.getSymbolicName(), bundle.getVersion(), e);
+        }
+    }
+
+    /**
+     * Remove the cached metadata for the given bundle.
+     */
+    public void remove(Bundle bundle) {
+        File file = getFile(bundle);
+        if (file.exists() && !file.delete()) {
+            LOGGER.debug("Unable to delete cached metadata file {}", file);
+        }
+    }
+
+    private File getFile(Bundle bundle) {
+        return new File(directory, bundle.getBundleId() + ".bin");
+    }
+
+    private void write(File file, byte[] data) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        File tmp = new File(directory, file.getName() + ".tmp");
+        BufferedOutputStream os = new BufferedOutputStream(new FileOutputStream(tmp));
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to write " + file);
+        }
+    }
+
+    private static byte[] digest(List<URL> paths) throws IOException, NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        byte[] buffer = new byte[8192];
+        for (URL url : paths) {
+            md.update(url.toString().getBytes("UTF-8"));
+            InputStream is = url.openStream();
+            try {
+                int nb;
+                while ((nb = is.read(buffer)) >= 0) {
+                    md.update(buffer, 0, nb);
+                }
+            } finally {
+                is.close();
+            }
+        }
+        return md.digest();
+    }
+
+    private static boolean equals(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equals(s2);
+    }
+
+    //
+    // Encoding
+    //
+
+    private static void writeMetadata(DataOutputStream out, Object metadata) throws IOException, NotCacheableException {
+        if (metadata == null) {
+            out.writeByte(NULL);
+        } else if (metadata instanceof NullMetadata) {
+            out.writeByte(NULL_METADATA);
+        } else if (metadata.getClass() == BeanMetadataImpl.class) {
+            BeanMetadataImpl bean = (BeanMetadataImpl) metadata;
+            if (bean.getRuntimeClass() != null) {
+                throw new NotCacheableException(bean);
+            }
+            out.writeByte(BEAN);
+            writeComponent(out, bean);
+            writeString(out, bean.getClassName());
+            writeString(out, bean.getInitMethod());
+            writeString(out, bean.getDestroyMethod());
+            writeString(out, bean.getFactoryMethod());
+            writeMetadata(out, bean.getFactoryComponent());
+            writeString(out, bean.getScope());
+            out.writeBoolean(bean.isProcessor());
+            out.writeBoolean(bean.getFieldInjection());
+            out.writeBoolean(bean.getRawConversion());
+            out.writeBoolean(bean.getNonStandardSetters());
+            out.writeInt(bean.getArguments().size());
+            for (BeanArgument argument : bean.getArguments()) {
+                writeMetadata(out, argument.getValue());
+                writeString(out, argument.getValueType());
+                out.writeInt(argument.getIndex());
+            }
+            out.writeInt(bean.getProperties().size());
+            for (BeanProperty property : bean.getProperties()) {
+                writeString(out, property.getName());
+                writeMetadata(out, property.getValue());
+            }
+        } else if (metadata.getClass() == ServiceMetadataImpl.class) {
+            ServiceMetadataImpl service = (ServiceMetadataImpl) metadata;
+            out.writeByte(SERVICE);
+            writeComponent(out, service);
+            writeMetadata(out, service.getServiceComponent());
+            writeStrings(out, service.getInterfaces());
+            out.writeInt(service.getAutoExport());
+            out.writeInt(service.getRanking());
+            writeEntries(out, service.getServiceProperties());
+            out.writeInt(service.getRegistrationListeners().size());
+            for (RegistrationListener listener : service.getRegistrationListeners()) {
+                writeMetadata(out, listener.getListenerComponent());
+                writeString(out, listener.getRegistrationMethod());
+                writeString(out, listener.getUnregistrationMethod());
+            }
+        } else if (metadata.getClass() == ReferenceMetadataImpl.class) {
+            ReferenceMetadataImpl reference = (ReferenceMetadataImpl) metadata;
+            if (reference.getProxyChildBeanClasses() != null && !reference.getProxyChildBeanClasses().isEmpty()) {
+                throw new NotCacheableException(reference);
+            }
+            out.writeByte(REFERENCE);
+            writeServiceReference(out, reference);
+            out.writeLong(reference.getTimeout());
+            writeString(out, reference.getDefaultBean());
+            writeStrings(out, reference.getExtraInterfaces());
+            out.writeInt(reference.getDamping());
+            out.writeInt(reference.getLifecycle());
+        } else if (metadata.getClass() == ReferenceListMetadataImpl.class) {
+            ReferenceListMetadataImpl references = (ReferenceListMetadataImpl) metadata;
+            out.writeByte(REFERENCE_LIST);
+            writeServiceReference(out, references);
+            out.writeInt(references.getMemberType());
+        } else if (metadata.getClass() == RefMetadataImpl.class) {
+            out.writeByte(REF);
+            writeString(out, ((RefMetadataImpl) metadata).getComponentId());
+        } else if (metadata.getClass() == IdRefMetadataImpl.class) {
+            out.writeByte(ID_REF);
+            writeString(out, ((IdRefMetadataImpl) metadata).getComponentId());
+        } else if (metadata.getClass() == ValueMetadataImpl.class) {
+            ValueMetadataImpl value = (ValueMetadataImpl) metadata;
+            if (value.getValue() != null) {
+                throw new NotCacheableException(value);
+            }
+            out.writeByte(VALUE);
+            writeString(out, value.getStringValue());
+            writeString(out, value.getType());
+        } else if (metadata.getClass() == CollectionMetadataImpl.class) {
+            CollectionMetadataImpl collection = (CollectionMetadataImpl) metadata;
+            out.writeByte(COLLECTION);
+            writeString(out, getCollectionClassName(collection));
+            writeString(out, collection.getValueType());
+            out.writeInt(collection.getValues().size());
+            for (Metadata value : collection.getValues()) {
+                writeMetadata(out, value);
+            }
+        } else if (metadata.getClass() == MapMetadataImpl.class) {
+            MapMetadataImpl map = (MapMetadataImpl) metadata;
+            out.writeByte(MAP);
+            writeString(out, map.getKeyType());
+            writeString(out, map.getValueType());
+            writeEntries(out, map.getEntries());
+        } else if (metadata.getClass() == PropsMetadataImpl.class) {
+            out.writeByte(PROPS);
+            writeEntries(out, ((PropsMetadataImpl) metadata).getEntries());
+        } else {
+            throw new NotCacheableException(metadata);
+        }
+    }
+
+    private static void writeComponent(DataOutputStream out, ComponentMetadata component) throws IOException {
+        writeString(out, component.getId());
+        out.writeInt(component.getActivation());
+        writeStrings(out, component.getDependsOn());
+    }
+
+    private static void writeServiceReference(DataOutputStream out, ServiceReferenceMetadataImpl reference) throws IOException, NotCacheableException {
+        if (reference.getRuntimeInterface() != null || reference.getBundleContext() != null) {
+            throw new NotCacheableException(reference);
+        }
+        writeComponent(out, reference);
+        out.writeInt(reference.getAvailability());
+        writeString(out, reference.getInterface());
+        writeString(out, reference.getComponentName());
+        writeString(out, reference.getFilter());
+        out.writeInt(reference.getProxyMethod());
+        writeMetadata(out, reference.getExtendedFilter());
+        out.writeInt(reference.getReferenceListeners().size());
+        for (ReferenceListener listener : reference.getReferenceListeners()) {
+            writeMetadata(out, listener.getListenerComponent());
+            writeString(out, listener.getBindMethod());
+            writeString(out, listener.getUnbindMethod());
+        }
+    }
+
+    private static void writeEntries(DataOutputStream out, List<MapEntry> entries) throws IOException, NotCacheableException {
+        out.writeInt(entries.size());
+        for (MapEntry entry : entries) {
+            writeMetadata(out, entry.getKey());
+            writeMetadata(out, entry.getValue());
+        }
+    }
+
+    private static String getCollectionClassName(CollectionMetadataImpl collection) throws NotCacheableException {
+        Class clazz = collection.getCollectionClass();
+        if (clazz == null || clazz == List.class || clazz == Set.class || clazz == Object[].class) {
+            return clazz != null ? clazz.getName() : null;
+        }
+        throw new NotCacheableException(collection);
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String s : strings) {
+            writeString(out, s);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    //
+    // Decoding
+    //
+
+    private static Metadata readMetadata(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case NULL_METADATA:
+                return NullMetadata.NULL;
+            case BEAN: {
+                BeanMetadataImpl bean = new BeanMetadataImpl();
+                readComponent(in, bean);
+                bean.setClassName(readString(in));
+                bean.setInitMethod(readString(in));
+                bean.setDestroyMethod(readString(in));
+                bean.setFactoryMethod(readString(in));
+                bean.setFactoryComponent((Target) readMetadata(in));
+                bean.setScope(readString(in));
+                bean.setProcessor(in.readBoolean());
+                bean.setFieldInjection(in.readBoolean());
+                bean.setRawConversion(in.readBoolean());
+                bean.setNonStandardSetters(in.readBoolean());
+                int nb = in.readInt();
+                for (int i = 0; i < nb; i++) {
+                    Metadata value = readMetadata(in);
+                    String valueType = readString(in);
+                    bean.addArgument(new BeanArgumentImpl(value, valueType, in.readInt()));
+                }
+                nb = in.readInt();
+                for (int i = 0; i < nb; i++) {
+                    String name = readString(in);
+                    bean.addProperty(new BeanPropertyImpl(name, readMetadata(in)));
+                }
+                return bean;
+            }
+            case SERVICE: {
+                ServiceMetadataImpl service = new ServiceMetadataImpl();
+                readComponent(in, service);
+                service.setServiceComponent((Target) readMetadata(in));
+                int nb = in.readInt();
+                for (int i = 0; i < nb; i++) {
+                    service.addInterface(readString(in));
+                }
+                service.setAutoExport(in.readInt());
+                service.setRanking(in.readInt());
+                service.setServiceProperties(readEntries(in));
+                nb = in.readInt();
+                for (int i = 0; i < nb; i++) {
+                    Target listener = (Target) readMetadata(in);
+                    String registrationMethod = readString(in);
+                    service.addRegistrationListener(new RegistrationListenerImpl(listener, registrationMethod, readString(in)));
+                }
+                return service;
+            }
+            case REFERENCE: {
+                ReferenceMetadataImpl reference = new ReferenceMetadataImpl();
+                readServiceReference(in, reference);
+                reference.setTimeout(in.readLong());
+                reference.setDefaultBean(readString(in));
+                List<String> extraInterfaces = readStrings(in);
+                reference.setExtraInterfaces(extraInterfaces.isEmpty() ? null : extraInterfaces);
+                reference.setDamping(in.readInt());
+                reference.setLifecycle(in.readInt());
+                return reference;
+            }
+            case REFERENCE_LIST: {
+                ReferenceListMetadataImpl references = new ReferenceListMetadataImpl();
+                readServiceReference(in, references);
+                references.setMemberType(in.readInt());
+                return references;
+            }
+            case REF:
+                return new RefMetadataImpl(readString(in));
+            case ID_REF:
+                return new IdRefMetadataImpl(readString(in));
+            case VALUE: {
+                String stringValue = readString(in);
+                return new ValueMetadataImpl(stringValue, readString(in));
+            }
+            case COLLECTION: {
+                Class collectionClass = getCollectionClass(readString(in));
+                String valueType = readString(in);
+                int nb = in.readInt();
+                List<Metadata> values = new ArrayList<Metadata>(nb);
+                for (int i = 0; i < nb; i++) {
+                    values.add(readMetadata(in));
+                }
+                return new CollectionMetadataImpl(collectionClass, valueType, values);
+            }
+            case MAP: {
+                String keyType = readString(in);
+                String valueType = readString(in);
+                return new MapMetadataImpl(keyType, valueType, readEntries(in));
+            }
+            case PROPS:
+                return new PropsMetadataImpl(readEntries(in));
+            default:
+                throw new IOException("Unexpected metadata tag " + tag);
+        }
+    }
+
+    private static void readComponent(DataInputStream in, ComponentMetadataImpl component) throws IOException {
+        component.setId(readString(in));
+        component.setActivation(in.readInt());
+        for (String dependsOn : readStrings(in)) {
+            component.addDependsOn(dependsOn);
+        }
+    }
+
+    private static void readServiceReference(DataInputStream in, ServiceReferenceMetadataImpl reference) throws IOException {
+        readComponent(in, reference);
+        reference.setAvailability(in.readInt());
+        reference.setInterface(readString(in));
+        reference.setComponentName(readString(in));
+        reference.setFilter(readString(in));
+        reference.setProxyMethod(in.readInt());
+        reference.setExtendedFilter((ValueMetadata) readMetadata(in));
+        int nb = in.readInt();
+        for (int i = 0; i < nb; i++) {
+            Target listener = (Target) readMetadata(in);
+            String bindMethod = readString(in);
+            reference.addServiceListener(new ReferenceListenerImpl(listener, bindMethod, readString(in)));
+        }
+    }
+
+    private static List<MapEntry> readEntries(DataInputStream in) throws IOException {
+        int nb = in.readInt();
+        List<MapEntry> entries = new ArrayList<MapEntry>(nb);
+        for (int i = 0; i < nb; i++) {
+            NonNullMetadata key = (NonNullMetadata) readMetadata(in);
+            entries.add(new MapEntryImpl(key, readMetadata(in)));
+        }
+        return entries;
+    }
+
+    private static Class getCollectionClass(String name) throws IOException {
+        if (name == null) {
+            return null;
+        } else if (List.class.getName().equals(name)) {
+            return List.class;
+        } else if (Set.class.getName().equals(name)) {
+            return Set.class;
+        } else if (Object[].class.getName().equals(name)) {
+            return Object[].class;
+        }
+        throw new IOException("Unexpected collection class " + name);
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int nb = in.readInt();
+        List<String> strings = new ArrayList<String>(nb);
+        for (int i = 0; i < nb; i++) {
+            strings.add(readString(in));
+        }
+        return strings;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static class NotCacheableException extends Exception {
+
+        public NotCacheableException(Object metadata) {
+            super("unsupported metadata " + metadata);
+        }
+
+    }
+
+}
@@ -26,6 +26,7 @@ import org.apache.aries.blueprint.services.ExtendedBlueprintContainer;
 import org.apache.aries.blueprint.ExtendedReferenceListMetadata;
 import org.apache.aries.blueprint.di.Recipe;
 import org.apache.aries.blueprint.di.CollectionRecipe;
+import org.apache.aries.blueprint.utils.CopyOnWriteDynamicCollection;
 import org.apache.aries.blueprint.utils.DynamicCollection;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -49,7 +50,7 @@ public class ReferenceListRecipe extends AbstractServiceReferenceRecipe {
 
     private final ReferenceListMetadata metadata;
     private final List<ManagedCollection> collections = new ArrayList<ManagedCollection>();
-    private final DynamicCollection<ServiceDispatcher> storage = new DynamicCollection<ServiceDispatcher>();
+    private final DynamicCollection<ServiceDispatcher> storage;
     private final List<ServiceDispatcher> unboundDispatchers = new ArrayList<ServiceDispatcher>();
     private final Object monitor = new Object();
 
@@ -61,6 +62,12 @@ public class ReferenceListRecipe extends AbstractServiceReferenceRecipe {
                          List<Recipe> explicitDependencies) {
         super(name, blueprintContainer, metadata, filterRecipe, listenersRecipe, explicitDependencies);
         this.metadata = metadata;
+        if (blueprintContainer instanceof BlueprintContainerImpl
+                && ((BlueprintContainerImpl) blueprintContainer).isCopyOnWriteReferenceLists()) {
+            this.storage = new CopyOnWriteDynamicCollection<ServiceDispatcher>();
+        } else {
+            this.storage = new DynamicCollection<ServiceDispatcher>();
+        }
     }
 
     @Override
@@ -63,6 +63,7 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
 
     private final Object monitor = new Object();
     private volatile ServiceReference trackedServiceReference;
+    // Read without the monitor by the proxy dispatcher, so it must be cleared before the service is released
     private volatile Object trackedService;
     private Object defaultBean;
 
@@ -194,14 +195,15 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
             voidProxiedChildren();
             bind(trackedServiceReference, proxy);
             if (ref != oldReference) {
-                if (oldReference != null && trackedService != null) {
+                Object oldService = trackedService;
+                trackedService = null;
+                if (oldReference != null && oldService != null) {
                     try {
                         blueprintContainer.getBundleContext().ungetService(oldReference);
                     } catch (IllegalStateException ise) {
                         // In case the service no longer exists lets just cope and ignore.
                     }
                 }
-                trackedService = null;
             }
             monitor.notifyAll();
         }
@@ -216,12 +218,12 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
                 trackedServiceReference = null;
                 voidProxiedChildren();
                 if (trackedService != null) {
+                    trackedService = null;
                     try {
                         getBundleContextForServiceLookup().ungetService(oldReference);
                     } catch (IllegalStateException ise) {
                         // In case the service no longer exists lets just cope and ignore.
                     }
-                    trackedService = null;
                 }
                 monitor.notifyAll();
             }
@@ -229,6 +231,11 @@ public class ReferenceRecipe extends AbstractServiceReferenceRecipe {
     }
 
     private Object getService() throws InterruptedException {
+        // Fast path when the service is bound and has already been looked up
+        Object service = trackedService;
+        if (service != null) {
+            return service;
+        }
         synchronized (monitor) {
             if (isStarted() && trackedServiceReference == null && metadata.getTimeout() > 0
                     && metadata.getAvailability() == ServiceReferenceMetadata.AVAILABILITY_MANDATORY) {
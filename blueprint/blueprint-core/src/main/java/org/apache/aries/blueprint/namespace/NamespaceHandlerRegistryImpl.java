@@ -26,13 +26,12 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
-import java.lang.ref.Reference;
-import java.lang.ref.SoftReference;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -48,6 +47,7 @@ import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 
+import org.apache.aries.blueprint.BlueprintConstants;
 import org.apache.aries.blueprint.NamespaceHandler;
 import org.apache.aries.blueprint.ParserContext;
 import org.apache.aries.blueprint.container.NamespaceHandlerRegistry;
@@ -82,6 +82,8 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
 
     private static final Logger LOGGER = LoggerFactory.getLogger(NamespaceHandlerRegistryImpl.class);
 
+    private static final int DEFAULT_SCHEMA_CACHE_SIZE = 64;
+
     // The bundle context is thread safe
     private final BundleContext bundleContext;
 
@@ -92,9 +94,8 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
     private final ConcurrentHashMap<URI, CopyOnWriteArraySet<NamespaceHandler>> handlers =
                         new ConcurrentHashMap<URI, CopyOnWriteArraySet<NamespaceHandler>>();
 
-    // Access to the LRU schemas map is synchronized on itself
-    private final LRUMap<Map<URI, NamespaceHandler>, Reference<Schema>> schemas =
-                        new LRUMap<Map<URI, NamespaceHandler>, Reference<Schema>>(10);
+    // The schema cache is thread safe
+    private final SchemaCache schemas;
 
     // Access to this factory is synchronized on itself
     private final SchemaFactory schemaFactory =
@@ -106,6 +107,7 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
 
     public NamespaceHandlerRegistryImpl(BundleContext bundleContext) {
         this.bundleContext = bundleContext;
+        this.schemas = new SchemaCache(getSchemaCacheSize(bundleContext));
         tracker = new ServiceTracker(bundleContext, NamespaceHandler.class.getName(), this);
         tracker.open();
     }
@@ -188,7 +190,7 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
                 s.unregisterHandler(uri, handler);
             }
         }
-        removeSchemasFor(handler);
+        schemas.invalidate(handler);
     }
 
     private static List<URI> getNamespaces(Map properties) {
@@ -253,58 +255,23 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
         tracker.close();
     }
 
-    private Schema getExistingSchema(Map<URI, NamespaceHandler> handlers) {
-        synchronized (schemas) {
-            for (Map<URI, NamespaceHandler> key : schemas.keySet()) {
-                boolean found = true;
-                for (URI uri : handlers.keySet()) {
-                    if (!handlers.get(uri).equals(key.get(uri))) {
-                        found = false;
-                        break;
-                    }
-                }
-                if (found) {
-                    return schemas.get(key).get();
-                }
-            }
-            return null;
-        }
-    }
-
-    private void removeSchemasFor(NamespaceHandler handler) {
-        synchronized (schemas) {
-            List<Map<URI, NamespaceHandler>> keys = new ArrayList<Map<URI, NamespaceHandler>>();
-            for (Map<URI, NamespaceHandler> key : schemas.keySet()) {
-                if (key.values().contains(handler)) {
-                    keys.add(key);
-                }
-            }
-            for (Map<URI, NamespaceHandler> key : keys) {
-                schemas.remove(key);
-            }
-        }
+    /**
+     * Retrieve the statistics of the shared schema cache.
+     */
+    public SchemaCache getSchemaCache() {
+        return schemas;
     }
 
-    private void cacheSchema(Map<URI, NamespaceHandler> handlers, Schema schema) {
-        synchronized (schemas) {
-            // Remove schemas that are fully included
-            for (Iterator<Map<URI, NamespaceHandler>> iterator = schemas.keySet().iterator(); iterator.hasNext();) {
-                Map<URI, NamespaceHandler> key = iterator.next();
-                boolean found = true;
-                for (URI uri : key.keySet()) {
-                    if (!key.get(uri).equals(handlers.get(uri))) {
-                        found = false;
-                        break;
-                    }
-                }
-                if (found) {
-                    iterator.remove();
-                    break;
-                }
+    private static int getSchemaCacheSize(BundleContext bundleContext) {
+        String size = bundleContext.getProperty(BlueprintConstants.SCHEMA_CACHE_SIZE_PROPERTY);
+        if (size != null) {
+            try {
+                return Integer.parseInt(size.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid value for " + BlueprintConstants.SCHEMA_CACHE_SIZE_PROPERTY + ": " + size);
             }
-            // Add our new schema
-            schemas.put(handlers, new SoftReference<Schema>(schema));
         }
+        return DEFAULT_SCHEMA_CACHE_SIZE;
     }
 
     private static void closeQuietly(Closeable closeable) {
@@ -446,22 +413,32 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
             return schema;
         }
 
-        private Schema doGetSchema(Map<String, String> locations) throws IOException, SAXException {
+        private Schema doGetSchema(final Map<String, String> locations) throws IOException, SAXException {
+            // Schemas coming from the bundle itself are not shared
             if (schemaMap != null && !schemaMap.isEmpty()) {
                 return createSchema(locations);
             }
-            // Find a schema that can handle all the requested namespaces
-            // If it contains additional namespaces, it should not be a problem since
-            // they won't be used at all
-            Schema schema = getExistingSchema(handlers);
-            if (schema == null) {
-                // Create schema
-                schema = createSchema(locations);
-                cacheSchema(handlers, schema);
-            }
+            SchemaCache.Key key = getSchemaKey(locations);
+            Schema schema = schemas.getSchema(key, new Callable<Schema>() {
+                public Schema call() throws Exception {
+                    return createSchema(locations);
+                }
+            });
+            LOGGER.debug("Schema for namespaces {} retrieved from {}", key.getNamespaces(), schemas);
             return schema;
         }
 
+        private SchemaCache.Key getSchemaKey(Map<String, String> locations) {
+            Map<String, String> urls = new HashMap<String, String>();
+            Set<NamespaceHandler> used = new HashSet<NamespaceHandler>();
+            for (Map.Entry<URI, NamespaceHandler> entry : handlers.entrySet()) {
+                URL url = getSchemaLocation(entry.getKey(), entry.getValue(), locations);
+                urls.put(entry.getKey().toString(), url != null ? url.toExternalForm() : "");
+                used.add(unwrap(entry.getValue()));
+            }
+            return SchemaCache.key(urls, used);
+        }
+
         private class Loader implements LSResourceResolver, Closeable {
             final List<StreamSource> sources = new ArrayList<StreamSource>();
             final Map<String, URL> loaded = new HashMap<String, URL>();
@@ -625,13 +602,7 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
 
                 // Create a schema for the namespaces
                 for (URI ns : handlers.keySet()) {
-                    URL url = handlers.get(ns).getSchemaLocation(ns.toString());
-                    if (url == null && locations != null) {
-                        String loc = locations.get(ns.toString());
-                        if (loc != null) {
-                            url = handlers.get(ns).getSchemaLocation(loc);
-                        }
-                    }
+                    URL url = getSchemaLocation(ns, handlers.get(ns), locations);
                     if (url == null) {
                         LOGGER.warn("No URL is defined for schema " + ns + ". This schema will not be validated");
                     } else {
@@ -655,6 +626,17 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
             }
         }
 
+        private URL getSchemaLocation(URI ns, NamespaceHandler handler, Map<String, String> locations) {
+            URL url = handler.getSchemaLocation(ns.toString());
+            if (url == null && locations != null) {
+                String loc = locations.get(ns.toString());
+                if (loc != null) {
+                    url = handler.getSchemaLocation(loc);
+                }
+            }
+            return url;
+        }
+
         public void addListener(Listener listener) {
             listeners.add(listener);
         }
@@ -684,7 +666,7 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
         }
 
         public void unregisterHandler(URI uri, NamespaceHandler handler) {
-            if (handlers.get(uri) == handler) {
+            if (unwrap(handlers.get(uri)) == handler) {
                 handlers.remove(uri);
                 for (Listener listener : listeners) {
                     try {
@@ -753,141 +735,73 @@ public class NamespaceHandlerRegistryImpl implements NamespaceHandlerRegistry, S
         }
         if (result != null) {
             LOGGER.warn("NamespaceHandler " + handler.getClass().getName() + " is behaving badly and should be fixed");
-            final URL res = result;
-            return new NamespaceHandler() {
-                final ConcurrentMap<String, Boolean> cache = new ConcurrentHashMap<String, Boolean>();
-                @Override
-                public URL getSchemaLocation(String s) {
-                    URL url = handler.getSchemaLocation(s);
-                    if (url != null && url.equals(res)) {
-                        Boolean v, newValue;
-                        Boolean valid = ((v = cache.get(s)) == null &&
-                                (newValue = isValidSchema(s, url)) != null &&
-                                (v = cache.putIfAbsent(s, newValue)) == null) ? newValue : v;
-                        return valid ? url : null;
-                    }
-                    return url;
-                }
-                @Override
-                public Set<Class> getManagedClasses() {
-                    return handler.getManagedClasses();
-                }
-                @Override
-                public Metadata parse(Element element, ParserContext parserContext) {
-                    return handler.parse(element, parserContext);
-                }
-                @Override
-                public ComponentMetadata decorate(Node node, ComponentMetadata componentMetadata, ParserContext parserContext) {
-                    return handler.decorate(node, componentMetadata, parserContext);
-                }
-                private boolean isValidSchema(String ns, URL url) {
-                    try {
-                        InputStream is = url.openStream();
-                        try {
-                            XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(is);
-                            try {
-                                reader.nextTag();
-                                String nsuri = reader.getNamespaceURI();
-                                String name = reader.getLocalName();
-                                if ("http://www.w3.org/2001/XMLSchema".equals(nsuri) && "schema".equals(name)) {
-                                    String target = reader.getAttributeValue(null, "targetNamespace");
-                                    if (ns.equals(target)) {
-                                        return true;
-                                    }
-                                }
-                            } finally {
-                                reader.close();
-                            }
-                        } finally {
-                            is.close();
-                        }
-                    } catch (Throwable t) {
-                        // Ignore
-                    }
-                    return false;
-                }
-            };
+            return new WrappedNamespaceHandler(handler, result);
         } else {
             return handler;
         }
     }
 
-    public static class LRUMap<K, V> extends AbstractMap<K, V> {
-
-        private final int bound;
-        private final LinkedList<Entry<K, V>> entries = new LinkedList<Entry<K, V>>();
-
-        private static class LRUEntry<K, V> implements Entry<K, V> {
-            private final K key;
-            private final V value;
-
-            private LRUEntry(K key, V value) {
-                this.key = key;
-                this.value = value;
-            }
-
-            public K getKey() {
-                return key;
-            }
-
-            public V getValue() {
-                return value;
-            }
-
-            public V setValue(V value) {
-                throw new UnsupportedOperationException();
-            }
-        }
-
-        private LRUMap(int bound) {
-            this.bound = bound;
-        }
-
-        public V get(Object key) {
-            if (key == null) {
-                throw new NullPointerException();
-            }
-            for (Entry<K, V> e : entries) {
-                if (e.getKey().equals(key)) {
-                    entries.remove(e);
-                    entries.addFirst(e);
-                    return e.getValue();
-                }
-            }
-            return null;
-        }
+    private static NamespaceHandler unwrap(NamespaceHandler handler) {
+        return handler instanceof WrappedNamespaceHandler ? ((WrappedNamespaceHandler) handler).handler : handler;
+    }
 
-        public V put(K key, V value) {
-            if (key == null) {
-                throw new NullPointerException();
-            }
-            V old = null;
-            for (Entry<K, V> e : entries) {
-                if (e.getKey().equals(key)) {
-                    entries.remove(e);
-                    old = e.getValue();
-                    break;
-                }
-            }
-            if (value != null) {
-                entries.addFirst(new LRUEntry<K, V>(key, value));
-                while (entries.size() > bound) {
-                    entries.removeLast();
+    private static class WrappedNamespaceHandler implements NamespaceHandler {
+        final NamespaceHandler handler;
+        final URL res;
+        final ConcurrentMap<String, Boolean> cache = new ConcurrentHashMap<String, Boolean>();
+        WrappedNamespaceHandler(NamespaceHandler handler, URL res) {
+            this.handler = handler;
+            this.res = res;
+        }
+        @Override
+        public URL getSchemaLocation(String s) {
+            URL url = handler.getSchemaLocation(s);
+            if (url != null && url.equals(res)) {
+                Boolean v, newValue;
+                Boolean valid = ((v = cache.get(s)) == null &&
+                        (newValue = isValidSchema(s, url)) != null &&
+                        (v = cache.putIfAbsent(s, newValue)) == null) ? newValue : v;
+                return valid ? url : null;
+            }
+            return url;
+        }
+        @Override
+        public Set<Class> getManagedClasses() {
+            return handler.getManagedClasses();
+        }
+        @Override
+        public Metadata parse(Element element, ParserContext parserContext) {
+            return handler.parse(element, parserContext);
+        }
+        @Override
+        public ComponentMetadata decorate(Node node, ComponentMetadata componentMetadata, ParserContext parserContext) {
+            return handler.decorate(node, componentMetadata, parserContext);
+        }
+        private boolean isValidSchema(String ns, URL url) {
+            try {
+                InputStream is = url.openStream();
+                try {
+                    XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(is);
+                    try {
+                        reader.nextTag();
+                        String nsuri = reader.getNamespaceURI();
+                        String name = reader.getLocalName();
+                        if ("http://www.w3.org/2001/XMLSchema".equals(nsuri) && "schema".equals(name)) {
+                            String target = reader.getAttributeValue(null, "targetNamespace");
+                            if (ns.equals(target)) {
+                                return true;
+                            }
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                } finally {
+                    is.close();
                 }
+            } catch (Throwable t) {
+                // Ignore
             }
-            return old;
-        }
-
-        public Set<Entry<K, V>> entrySet() {
-            return new AbstractSet<Entry<K, V>>() {
-                public Iterator<Entry<K, V>> iterator() {
-                    return entries.iterator();
-                }
-
-                public int size() {
-                    return entries.size();
-                }
-            };
+            return false;
         }
     }
 
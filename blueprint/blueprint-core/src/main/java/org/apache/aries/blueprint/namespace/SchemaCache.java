@@ -0,0 +1,213 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.namespace;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.validation.Schema;
+
+import org.apache.aries.blueprint.NamespaceHandler;
+import org.xml.sax.SAXException;
+
+/**
+ * A thread safe cache of compiled schemas shared by all the namespace handler sets.
+ * <p>
+ * Schemas are keyed by the schema urls used for each namespace, so that all the blueprint
+ * bundles using the same namespaces share the same compiled schema.  Since the schema urls
+ * of a bundle contain its revision, an updated namespace handler bundle leads to a different key.
+ * Each entry also keeps track of the namespace handlers that have contributed to it, so that
+ * the entries can be evicted when one of those handlers is unregistered.  Concurrent requests
+ * for the same key wait for a single schema creation.
+ * </p>
+ */
+public class SchemaCache {
+
+    private final int bound;
+    private final Map<Key, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public SchemaCache(int bound) {
+        this.bound = bound;
+        // Access to the entries is synchronized on the map itself
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > SchemaCache.this.bound) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create a key for the given schema locations.
+     *
+     * @param locations the schema url for each namespace
+     * @param handlers the namespace handlers the schemas are provided by
+     */
+    public static Key key(Map<String, String> locations, Collection<NamespaceHandler> handlers) {
+        return new Key(new TreeMap<String, String>(locations), new HashSet<NamespaceHandler>(handlers));
+    }
+
+    /**
+     * Retrieve the schema for the given key, creating it if needed.
+     */
+    public Schema getSchema(Key key, Callable<Schema> factory) throws IOException, SAXException {
+        Entry entry;
+        boolean create = false;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key.handlers, new FutureTask<Schema>(factory));
+                entries.put(key, entry);
+                create = true;
+            }
+        }
+        if (create) {
+            misses.incrementAndGet();
+            entry.schema.run();
+        } else {
+            hits.incrementAndGet();
+        }
+        try {
+            return entry.schema.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for schema creation");
+        } catch (ExecutionException e) {
+            // Do not keep failed creations
+            synchronized (entries) {
+                if (entries.get(key) == entry) {
+                    entries.remove(key);
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new IOException("Unable to create schema", cause);
+            }
+        }
+    }
+
+    /**
+     * Evict all the schemas that have been built using the given handler.
+     */
+    public void invalidate(NamespaceHandler handler) {
+        synchronized (entries) {
+            for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+                if (iterator.next().handlers.contains(handler)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public String toString() {
+        return "SchemaCache[size=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+
+    public static final class Key {
+        private final SortedMap<String, String> locations;
+        private final Set<NamespaceHandler> handlers;
+
+        private Key(SortedMap<String, String> locations, Set<NamespaceHandler> handlers) {
+            this.locations = locations;
+            this.handlers = handlers;
+        }
+
+        public List<String> getNamespaces() {
+            return Collections.unmodifiableList(new ArrayList<String>(locations.keySet()));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && locations.equals(((Key) o).locations);
+        }
+
+        @Override
+        public int hashCode() {
+            return locations.hashCode();
+        }
+
+        public String toString() {
+            return locations.toString();
+        }
+    }
+
+    private static final class Entry {
+        private final Set<NamespaceHandler> handlers;
+        private final FutureTask<Schema> schema;
+
+        private Entry(Set<NamespaceHandler> handlers, FutureTask<Schema> schema) {
+            this.handlers = handlers;
+            this.schema = schema;
+        }
+    }
+
+}
@@ -20,11 +20,13 @@ package org.apache.aries.blueprint.proxy;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.aries.blueprint.Interceptor;
+import org.apache.aries.blueprint.Interceptor2;
 import org.apache.aries.proxy.InvocationListener;
 import org.osgi.service.blueprint.reflect.ComponentMetadata;
 import org.slf4j.Logger;
@@ -32,7 +34,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A collaborator which ensures preInvoke and postInvoke occur before and after
- * method invocation
+ * method invocation.
+ * <p>
+ * The interceptors to call around each method are computed once, leaving out
+ * the {@link Interceptor2} which do not intercept it. The token of an invocation
+ * is an array holding this chain followed by the token of each interceptor, and
+ * no token at all is created for the methods which are not intercepted.
  */
 public class Collaborator implements InvocationListener, Serializable {
 
@@ -42,12 +49,19 @@ public class Collaborator implements InvocationListener, Serializable {
     private static final Logger LOGGER = LoggerFactory
             .getLogger(Collaborator.class);
 
-    private transient List<Interceptor> interceptors = null;
+    private static final Interceptor[] NO_INTERCEPTORS = new Interceptor[0];
+
+    /** Marks the interceptors whose post call must not be called */
+    private static final Object NOT_CALLED = new Object();
+
+    private transient Interceptor[] interceptors = null;
     private transient ComponentMetadata cm = null;
+    private transient ConcurrentMap<Method, Interceptor[]> chains = null;
 
     public Collaborator(ComponentMetadata cm, List<Interceptor> interceptors) {
         this.cm = cm;
-        this.interceptors = interceptors;
+        this.interceptors = interceptors.toArray(new Interceptor[interceptors.size()]);
+        this.chains = new ConcurrentHashMap<Method, Interceptor[]>();
     }
 
     /**
@@ -60,24 +74,28 @@ public class Collaborator implements InvocationListener, Serializable {
      */
     public Object preInvoke(Object o, Method m, Object[] parameters)
             throws Throwable {
-        Deque<StackElement> stack = new ArrayDeque<StackElement>(interceptors.size());
-        if (interceptors != null) {
-            try {
-                for (Interceptor im : interceptors) {
-                    Collaborator.StackElement se = new StackElement(im);
-
-                    // should we do this before or after the preCall ?
-                    stack.push(se);
+        Interceptor[] chain = getChain(m);
+        if (chain.length == 0) {
+            return null;
+        }
+        Object[] frame = new Object[chain.length + 1];
+        frame[0] = chain;
+        for (int i = 1; i < frame.length; i++) {
+            frame[i] = NOT_CALLED;
+        }
+        try {
+            for (int i = 0; i < chain.length; i++) {
+                // the interceptor gets its post call even if its preCall fails
+                frame[i + 1] = null;
 
-                    // allow exceptions to propagate
-                    se.setPreCallToken(im.preCall(cm, m, parameters));
-                }
-            } catch (Throwable t) {
-                postInvokeExceptionalReturn(stack, o, m, t);
-                throw t;
+                // allow exceptions to propagate
+                frame[i + 1] = chain[i].preCall(cm, m, parameters);
             }
+        } catch (Throwable t) {
+            postInvokeExceptionalReturn(frame, o, m, t);
+            throw t;
         }
-        return stack;
+        return frame;
     }
 
     /**
@@ -86,21 +104,21 @@ public class Collaborator implements InvocationListener, Serializable {
     public void postInvoke(Object token, Object o, Method method,
                            Object returnType) throws Throwable {
 
-        Deque<StackElement> calledInterceptors =
-                (Deque<StackElement>) token;
-        if (calledInterceptors != null) {
-            while (!calledInterceptors.isEmpty()) {
-                Collaborator.StackElement se = calledInterceptors.pop();
+        Object[] frame = (Object[]) token;
+        if (frame != null) {
+            Interceptor[] chain = (Interceptor[]) frame[0];
+            for (int i = chain.length - 1; i >= 0; i--) {
+                Object preCallToken = frame[i + 1];
+                frame[i + 1] = NOT_CALLED;
                 try {
-                    se.interceptor.postCallWithReturn(cm, method, returnType, se
-                            .getPreCallToken());
+                    chain[i].postCallWithReturn(cm, method, returnType, preCallToken);
                 } catch (Throwable t) {
                     LOGGER.debug("postCallInterceptorWithReturn", t);
                     // propagate this to invoke ... further interceptors will be
                     // called via the postCallInterceptorWithException method
                     throw t;
                 }
-            } // end while
+            }
         }
     }
 
@@ -110,14 +128,20 @@ public class Collaborator implements InvocationListener, Serializable {
     public void postInvokeExceptionalReturn(Object token, Object o, Method method,
                                             Throwable exception) throws Throwable {
         Throwable tobeRethrown = null;
-        Deque<StackElement> calledInterceptors =
-                (Deque<StackElement>) token;
-        while (!calledInterceptors.isEmpty()) {
-            Collaborator.StackElement se = calledInterceptors.pop();
+        Object[] frame = (Object[]) token;
+        if (frame == null) {
+            return;
+        }
+        Interceptor[] chain = (Interceptor[]) frame[0];
+        for (int i = chain.length - 1; i >= 0; i--) {
+            Object preCallToken = frame[i + 1];
+            if (preCallToken == NOT_CALLED) {
+                continue;
+            }
+            frame[i + 1] = NOT_CALLED;
 
             try {
-                se.interceptor.postCallWithException(cm, method, exception, se
-                        .getPreCallToken());
+                chain[i].postCallWithException(cm, method, exception, preCallToken);
             } catch (Throwable t) {
                 // log the exception
                 LOGGER.debug("postCallInterceptorWithException", t);
@@ -128,28 +152,31 @@ public class Collaborator implements InvocationListener, Serializable {
                 }
             }
 
-        } // end while
+        } // end for
 
         if (tobeRethrown != null)
             throw tobeRethrown;
     }
 
-    // info to store on interceptor stack during invoke
-    private static class StackElement {
-        private final Interceptor interceptor;
-        private Object preCallToken;
-
-        private StackElement(Interceptor i) {
-            interceptor = i;
-        }
-
-        private void setPreCallToken(Object preCallToken) {
-            this.preCallToken = preCallToken;
-        }
-
-        private Object getPreCallToken() {
-            return preCallToken;
+    private Interceptor[] getChain(Method m) {
+        Interceptor[] chain = chains.get(m);
+        if (chain == null) {
+            List<Interceptor> applicable = new ArrayList<Interceptor>(interceptors.length);
+            for (Interceptor interceptor : interceptors) {
+                if (intercepts(interceptor, cm, m)) {
+                    applicable.add(interceptor);
+                }
+            }
+            chain = applicable.isEmpty() ? NO_INTERCEPTORS
+                    : applicable.toArray(new Interceptor[applicable.size()]);
+            // computing the same chain twice is harmless
+            chains.put(m, chain);
         }
+        return chain;
+    }
 
+    static boolean intercepts(Interceptor interceptor, ComponentMetadata cm, Method m) {
+        return !(interceptor instanceof Interceptor2)
+                || ((Interceptor2) interceptor).intercepts(cm, m);
     }
-}
\ No newline at end of file
+}
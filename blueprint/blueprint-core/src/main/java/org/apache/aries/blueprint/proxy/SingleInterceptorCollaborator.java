@@ -20,6 +20,8 @@ package org.apache.aries.blueprint.proxy;
 
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.aries.blueprint.Interceptor;
 import org.apache.aries.proxy.InvocationListener;
@@ -41,12 +43,14 @@ public class SingleInterceptorCollaborator implements InvocationListener, Serial
 
     private transient Interceptor interceptor;
     private transient ComponentMetadata cm;
+    private transient ConcurrentMap<Method, Boolean> intercepted;
 
     private static final Object NON_INVOKED = new Object();
 
     public SingleInterceptorCollaborator(ComponentMetadata cm, Interceptor interceptor) {
         this.cm = cm;
         this.interceptor = interceptor;
+        this.intercepted = new ConcurrentHashMap<Method, Boolean>();
     }
 
     /**
@@ -54,6 +58,9 @@ public class SingleInterceptorCollaborator implements InvocationListener, Serial
      */
     public Object preInvoke(Object o, Method m, Object[] parameters)
             throws Throwable {
+        if (!isIntercepted(m)) {
+            return NON_INVOKED;
+        }
         Object callToken = NON_INVOKED;
         try {
             callToken = interceptor.preCall(cm, m, parameters);
@@ -86,6 +93,9 @@ public class SingleInterceptorCollaborator implements InvocationListener, Serial
      */
     public void postInvokeExceptionalReturn(Object token, Object o, Method method,
                                             Throwable exception) throws Throwable {
+        if (token == NON_INVOKED) {
+            return;
+        }
         try {
             interceptor.postCallWithException(cm, method, exception, token);
         } catch (Throwable t) {
@@ -94,4 +104,13 @@ public class SingleInterceptorCollaborator implements InvocationListener, Serial
             throw t;
         }
     }
+
+    private boolean isIntercepted(Method m) {
+        Boolean result = intercepted.get(m);
+        if (result == null) {
+            result = Collaborator.intercepts(interceptor, cm, m);
+            intercepted.put(m, result);
+        }
+        return result;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.utils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Direct access to the public constructors, methods and fields of a class.
+ * <p>
+ * Subclasses are generated at runtime for each public class by {@link BeanAccessorGenerator}
+ * and invoke the members using plain bytecode instead of reflection.  Generated accessors
+ * are only used when enabled using {@link #setEnabled(boolean)}, and the static helpers
+ * fall back to reflection for members which can not be accessed this way (non public classes
+ * or members, classes loaded by the boot class loader) or when ASM is not available.
+ * </p>
+ * <p>
+ * Exceptions thrown by the invoked members are wrapped in an {@link InvocationTargetException}
+ * in the same way reflection does.  Calls with arguments which do not exactly match the parameter
+ * types are delegated to reflection, which performs the widening conversions or reports the
+ * mismatch with an {@link IllegalArgumentException}.  No security checks are performed, so the
+ * accessors must not be used when the blueprint container has an access control context.
+ * </p>
+ */
+public abstract class BeanAccessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BeanAccessor.class);
+
+    // The accessors are weakly referenced as they hold strong references to their classes,
+    // they are kept alive by the class loader which defined them
+    private static final ClassCache<Class<?>, Reference<BeanAccessor>> accessors =
+            new ClassCache<Class<?>, Reference<BeanAccessor>>();
+
+    // Marker for classes for which no accessor can be generated
+    private static final BeanAccessor NONE = new BeanAccessor(Collections.<Member, Integer>emptyMap()) {
+        protected Object newInstance(int index, Object[] args) {
+            throw new UnsupportedOperationException();
+        }
+        protected Object invoke(int index, Object instance, Object[] args) {
+            throw new UnsupportedOperationException();
+        }
+        protected void set(int index, Object instance, Object value) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private static volatile boolean enabled;
+
+    private final Map<Member, Target> targets;
+
+    protected BeanAccessor(Map<Member, Integer> indexes) {
+        Map<Member, Target> targets = new HashMap<Member, Target>();
+        for (Map.Entry<Member, Integer> entry : indexes.entrySet()) {
+            targets.put(entry.getKey(), new Target(entry.getKey(), entry.getValue()));
+        }
+        this.targets = targets;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        BeanAccessor.enabled = enabled;
+        if (!enabled) {
+            accessors.clear();
+        }
+    }
+
+    /**
+     * Retrieve the accessor for the given class, or <code>null</code> if
+     * generated accessors are disabled or can not be used for this class.
+     */
+    public static BeanAccessor getAccessor(Class<?> clazz) {
+        if (!enabled) {
+            return null;
+        }
+        Reference<BeanAccessor> ref = accessors.get(clazz);
+        BeanAccessor accessor = ref != null ? ref.get() : null;
+        if (accessor == null) {
+            accessor = createAccessor(clazz);
+            accessors.put(clazz, new WeakReference<BeanAccessor>(accessor));
+        }
+        return accessor != NONE ? accessor : null;
+    }
+
+    private static BeanAccessor createAccessor(Class<?> clazz) {
+        if (!BeanAccessorGenerator.isSupported(clazz)) {
+            return NONE;
+        }
+        try {
+            return BeanAccessorGenerator.generate(clazz);
+        } catch (LinkageError e) {
+            // ASM is an optional dependency
+            LOGGER.debug("Unable to generate accessor for class {}, using reflection", clazz.getName(), e);
+        } catch (Exception e) {
+            LOGGER.debug("Unable to generate accessor for class {}, using reflection", clazz.getName(), e);
+        }
+        return NONE;
+    }
+
+    public static Object invoke(Method method, Object instance, Object... args) throws Exception {
+        BeanAccessor accessor = getAccessor(method.getDeclaringClass());
+        Target target = accessor != null ? accessor.targets.get(method) : null;
+        if (target == null || !target.accepts(instance, args)) {
+            return method.invoke(instance, args);
+        }
+        try {
+            return accessor.invoke(target.index, instance, args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    public static Object newInstance(Constructor<?> constructor, Object... args) throws Exception {
+        BeanAccessor accessor = getAccessor(constructor.getDeclaringClass());
+        Target target = accessor != null ? accessor.targets.get(constructor) : null;
+        if (target == null || !target.accepts(null, args)) {
+            return constructor.newInstance(args);
+        }
+        try {
+            return accessor.newInstance(target.index, args);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Set the value of the given field if it can be accessed using a generated accessor.
+     *
+     * @return <code>false</code> if the field has to be set using reflection
+     */
+    public static boolean set(Field field, Object instance, Object value) {
+        BeanAccessor accessor = getAccessor(field.getDeclaringClass());
+        Target target = accessor != null ? accessor.targets.get(field) : null;
+        if (target == null || !target.accepts(instance, value)) {
+            return false;
+        }
+        accessor.set(target.index, instance, value);
+        return true;
+    }
+
+    protected abstract Object newInstance(int index, Object[] args) throws Exception;
+
+    protected abstract Object invoke(int index, Object instance, Object[] args) throws Exception;
+
+    protected abstract void set(int index, Object instance, Object value);
+
+    /**
+     * A member of the class with the types its generated accessor casts the instance and arguments to.
+     */
+    private static final class Target {
+        private final int index;
+        private final Class<?> owner;
+        private final Class<?>[] types;
+
+        Target(Member member, int index) {
+            this.index = index;
+            this.owner = member instanceof Constructor || Modifier.isStatic(member.getModifiers())
+                    ? null : member.getDeclaringClass();
+            if (member instanceof Method) {
+                types = ((Method) member).getParameterTypes();
+            } else if (member instanceof Constructor) {
+                types = ((Constructor<?>) member).getParameterTypes();
+            } else {
+                types = new Class<?>[] { ((Field) member).getType() };
+            }
+        }
+
+        boolean accepts(Object instance, Object... args) {
+            if (owner != null && !owner.isInstance(instance)) {
+                return false;
+            }
+            int length = args != null ? args.length : 0;
+            if (length != types.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                Class<?> type = types[i];
+                Object arg = args[i];
+                if (type.isPrimitive()
+                        ? arg == null || arg.getClass() != BeanAccessorGenerator.getWrapper(type)
+                        : arg != null && !type.isInstance(arg)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
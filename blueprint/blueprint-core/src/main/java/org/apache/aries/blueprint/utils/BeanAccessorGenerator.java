@@ -0,0 +1,332 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.utils;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates {@link BeanAccessor} subclasses using ASM.
+ * <p>
+ * The generated classes are defined in a class loader delegating to the class loader of
+ * the bean class, so that they can only access public members.  Such a class loader is
+ * shared by all the accessors generated for the classes of a given class loader, and
+ * keeps these accessors alive so that each class is only generated once.
+ * </p>
+ */
+final class BeanAccessorGenerator implements Opcodes {
+
+    private static final String ACCESSOR_SUFFIX = "$$BlueprintAccessor";
+    private static final String SUPER_NAME = Type.getInternalName(BeanAccessor.class);
+
+    // The class loaders are softly referenced as they hold strong references to their parent,
+    // so they are only discarded with their accessors when the bean class loader goes away
+    // or when the memory runs low
+    private static final ClassCache<ClassLoader, Reference<AccessorClassLoader>> loaders =
+            new ClassCache<ClassLoader, Reference<AccessorClassLoader>>();
+
+    private static final Comparator<Member> MEMBER_COMPARATOR = new Comparator<Member>() {
+        public int compare(Member m1, Member m2) {
+            return m1.toString().compareTo(m2.toString());
+        }
+    };
+
+    private BeanAccessorGenerator() {
+    }
+
+    static boolean isSupported(Class<?> clazz) {
+        return Modifier.isPublic(clazz.getModifiers())
+                && !clazz.isArray()
+                && !clazz.isPrimitive()
+                && clazz.getClassLoader() != null;
+    }
+
+    static BeanAccessor generate(Class<?> clazz) throws Exception {
+        return getClassLoader(clazz.getClassLoader()).getAccessor(clazz);
+    }
+
+    private static BeanAccessor newAccessor(AccessorClassLoader loader, Class<?> clazz) throws Exception {
+        List<Constructor<?>> constructors = new ArrayList<Constructor<?>>();
+        if (!clazz.isInterface() && !Modifier.isAbstract(clazz.getModifiers())) {
+            for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+                if (Modifier.isPublic(constructor.getModifiers()) && areAccessible(constructor.getParameterTypes())) {
+                    constructors.add(constructor);
+                }
+            }
+        }
+        List<Method> methods = new ArrayList<Method>();
+        for (Method method : clazz.getDeclaredMethods()) {
+            int mod = method.getModifiers();
+            if (Modifier.isPublic(mod) && !method.isBridge() && !method.isSynthetic()
+                    && !(clazz.isInterface() && Modifier.isStatic(mod))
+                    && areAccessible(method.getParameterTypes())) {
+                methods.add(method);
+            }
+        }
+        List<Field> fields = new ArrayList<Field>();
+        for (Field field : clazz.getDeclaredFields()) {
+            int mod = field.getModifiers();
+            if (Modifier.isPublic(mod) && !Modifier.isStatic(mod) && !Modifier.isFinal(mod)
+                    && areAccessible(field.getType())) {
+                fields.add(field);
+            }
+        }
+
+        // Use a stable order, as the class may have been generated already
+        Collections.sort(constructors, MEMBER_COMPARATOR);
+        Collections.sort(methods, MEMBER_COMPARATOR);
+        Collections.sort(fields, MEMBER_COMPARATOR);
+
+        Map<Member, Integer> indexes = new HashMap<Member, Integer>();
+        for (int i = 0; i < constructors.size(); i++) {
+            indexes.put(constructors.get(i), i);
+        }
+        for (int i = 0; i < methods.size(); i++) {
+            indexes.put(methods.get(i), i);
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            indexes.put(fields.get(i), i);
+        }
+
+        String name = clazz.getName() + ACCESSOR_SUFFIX;
+        Class<?> accessorClass = loader.define(name, generateBytes(name, clazz, constructors, methods, fields));
+        return (BeanAccessor) accessorClass.getConstructor(Map.class)
+                .newInstance(Collections.unmodifiableMap(indexes));
+    }
+
+    private static AccessorClassLoader getClassLoader(ClassLoader parent) {
+        // Both the lookup and the creation have to be atomic so that a class loader is shared
+        synchronized (loaders) {
+            Reference<AccessorClassLoader> ref = loaders.get(parent);
+            AccessorClassLoader loader = ref != null ? ref.get() : null;
+            if (loader == null) {
+                loader = new AccessorClassLoader(parent);
+                loaders.put(parent, new SoftReference<AccessorClassLoader>(loader));
+            }
+            return loader;
+        }
+    }
+
+    private static boolean areAccessible(Class<?>... types) {
+        for (Class<?> type : types) {
+            while (type.isArray()) {
+                type = type.getComponentType();
+            }
+            if (!type.isPrimitive() && !Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte[] generateBytes(String name, Class<?> clazz, List<Constructor<?>> constructors,
+                                List<Method> methods, List<Field> fields) {
+        String internalName = name.replace('.', '/');
+        String owner = Type.getInternalName(clazz);
+
+        // Use an old class file version so that no stack map frames are needed
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, internalName, null, SUPER_NAME, null);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(Ljava/util/Map;)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKESPECIAL, SUPER_NAME, "<init>", "(Ljava/util/Map;)V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // Object newInstance(int index, Object[] args)
+        mv = cw.visitMethod(ACC_PROTECTED, "newInstance", "(I[Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        Label[] labels = visitSwitch(mv, constructors.size());
+        for (int i = 0; i < constructors.size(); i++) {
+            Constructor<?> constructor = constructors.get(i);
+            mv.visitLabel(labels[i]);
+            mv.visitTypeInsn(NEW, owner);
+            mv.visitInsn(DUP);
+            loadArguments(mv, 2, constructor.getParameterTypes());
+            mv.visitMethodInsn(INVOKESPECIAL, owner, "<init>", Type.getConstructorDescriptor(constructor), false);
+            mv.visitInsn(ARETURN);
+        }
+        visitInvalidIndex(mv, labels);
+
+        // Object invoke(int index, Object instance, Object[] args)
+        mv = cw.visitMethod(ACC_PROTECTED, "invoke", "(ILjava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        labels = visitSwitch(mv, methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            Method method = methods.get(i);
+            boolean isStatic = Modifier.isStatic(method.getModifiers());
+            mv.visitLabel(labels[i]);
+            if (!isStatic) {
+                mv.visitVarInsn(ALOAD, 2);
+                mv.visitTypeInsn(CHECKCAST, owner);
+            }
+            loadArguments(mv, 3, method.getParameterTypes());
+            int opcode = isStatic ? INVOKESTATIC : clazz.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL;
+            mv.visitMethodInsn(opcode, owner, method.getName(), Type.getMethodDescriptor(method), clazz.isInterface());
+            Class<?> returnType = method.getReturnType();
+            if (returnType == Void.TYPE) {
+                mv.visitInsn(ACONST_NULL);
+            } else if (returnType.isPrimitive()) {
+                Type wrapper = Type.getType(getWrapper(returnType));
+                mv.visitMethodInsn(INVOKESTATIC, wrapper.getInternalName(), "valueOf",
+                        Type.getMethodDescriptor(wrapper, Type.getType(returnType)), false);
+            }
+            mv.visitInsn(ARETURN);
+        }
+        visitInvalidIndex(mv, labels);
+
+        // void set(int index, Object instance, Object value)
+        mv = cw.visitMethod(ACC_PROTECTED, "set", "(ILjava/lang/Object;Ljava/lang/Object;)V", null, null);
+        mv.visitCode();
+        labels = visitSwitch(mv, fields.size());
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            mv.visitLabel(labels[i]);
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitTypeInsn(CHECKCAST, owner);
+            mv.visitVarInsn(ALOAD, 3);
+            unbox(mv, field.getType());
+            mv.visitFieldInsn(PUTFIELD, owner, field.getName(), Type.getDescriptor(field.getType()));
+            mv.visitInsn(RETURN);
+        }
+        visitInvalidIndex(mv, labels);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static Label[] visitSwitch(MethodVisitor mv, int size) {
+        Label[] labels = new Label[size + 1];
+        for (int i = 0; i <= size; i++) {
+            labels[i] = new Label();
+        }
+        if (size > 0) {
+            Label[] cases = new Label[size];
+            System.arraycopy(labels, 0, cases, 0, size);
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitTableSwitchInsn(0, size - 1, labels[size], cases);
+        }
+        return labels;
+    }
+
+    private static void visitInvalidIndex(MethodVisitor mv, Label[] labels) {
+        mv.visitLabel(labels[labels.length - 1]);
+        mv.visitTypeInsn(NEW, "java/lang/IllegalArgumentException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("Invalid index");
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "(Ljava/lang/String;)V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void loadArguments(MethodVisitor mv, int argsVar, Class<?>[] types) {
+        for (int i = 0; i < types.length; i++) {
+            mv.visitVarInsn(ALOAD, argsVar);
+            mv.visitLdcInsn(i);
+            mv.visitInsn(AALOAD);
+            unbox(mv, types[i]);
+        }
+    }
+
+    private static void unbox(MethodVisitor mv, Class<?> type) {
+        if (type.isPrimitive()) {
+            String wrapper = Type.getInternalName(getWrapper(type));
+            mv.visitTypeInsn(CHECKCAST, wrapper);
+            mv.visitMethodInsn(INVOKEVIRTUAL, wrapper, type.getName() + "Value",
+                    Type.getMethodDescriptor(Type.getType(type)), false);
+        } else if (type != Object.class) {
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+        }
+    }
+
+    static Class<?> getWrapper(Class<?> type) {
+        if (type == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (type == Byte.TYPE) {
+            return Byte.class;
+        } else if (type == Character.TYPE) {
+            return Character.class;
+        } else if (type == Short.TYPE) {
+            return Short.class;
+        } else if (type == Integer.TYPE) {
+            return Integer.class;
+        } else if (type == Long.TYPE) {
+            return Long.class;
+        } else if (type == Float.TYPE) {
+            return Float.class;
+        } else {
+            return Double.class;
+        }
+    }
+
+    private static final class AccessorClassLoader extends ClassLoader {
+
+        // The accessors of the classes of the parent class loader, guarded by this
+        private final Map<Class<?>, BeanAccessor> accessors = new HashMap<Class<?>, BeanAccessor>();
+
+        AccessorClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            // The bean class loader may not see the blueprint classes
+            if (SUPER_NAME.replace('/', '.').equals(name)) {
+                return BeanAccessor.class;
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        synchronized BeanAccessor getAccessor(Class<?> clazz) throws Exception {
+            BeanAccessor accessor = accessors.get(clazz);
+            if (accessor == null) {
+                accessor = newAccessor(this, clazz);
+                accessors.put(clazz, accessor);
+            }
+            return accessor;
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+}
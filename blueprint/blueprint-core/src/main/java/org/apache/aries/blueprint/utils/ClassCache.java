@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.utils;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A weak keyed map of classes or class loaders, split into stripes to limit lock
+ * contention between the threads creating containers concurrently.
+ */
+final class ClassCache<K, V> {
+    private static final int STRIPES = 16;
+
+    private final Map<K, V>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    ClassCache() {
+        stripes = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new WeakHashMap<K, V>();
+        }
+    }
+
+    private Map<K, V> stripe(K key) {
+        int h = System.identityHashCode(key);
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    V get(K key) {
+        Map<K, V> map = stripe(key);
+        synchronized (map) {
+            return map.get(key);
+        }
+    }
+
+    void put(K key, V value) {
+        Map<K, V> map = stripe(key);
+        synchronized (map) {
+            map.put(key, value);
+        }
+    }
+
+    /**
+     * Store the value if no value is present and return the current value.
+     */
+    V putIfAbsent(K key, V value) {
+        Map<K, V> map = stripe(key);
+        synchronized (map) {
+            V current = map.get(key);
+            if (current == null) {
+                map.put(key, value);
+                current = value;
+            }
+            return current;
+        }
+    }
+
+    void clear() {
+        for (Map<K, V> map : stripes) {
+            synchronized (map) {
+                map.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * DynamicCollection whose reads and iterations never lock.
+ * The elements are held in an immutable snapshot which is copied on each modification, along
+ * with the insertion sequence of each element. As elements are always added at the end, the
+ * sequences of a snapshot are ordered and an iterator finds its position in the latest snapshot
+ * from the sequence of the last element it returned, so that iterators do not need to be tracked.
+ * Iterators see the same additions and removals as those of DynamicCollection, but should not be
+ * shared between threads.
+ *
+ * @version $Rev$, $Date$
+ */
+public class CopyOnWriteDynamicCollection<E> extends DynamicCollection<E> {
+
+    private static final Snapshot EMPTY = new Snapshot(new Object[0], new long[0]);
+
+    private volatile Snapshot snapshot = EMPTY;
+    private long sequence;
+
+    @Override
+    public DynamicIterator iterator(int index) {
+        return createIterator(index);
+    }
+
+    @Override
+    protected DynamicIterator createIterator(int index) {
+        return new SnapshotIterator(index);
+    }
+
+    @Override
+    public int size() {
+        return snapshot.elements.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        return snapshot.indexOf(o) >= 0;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return snapshot.elements.clone();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        return Arrays.asList(snapshot.elements).toArray(a);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        Snapshot s = snapshot;
+        for (Object o : c) {
+            if (s.indexOf(o) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean add(E o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        synchronized (lock) {
+            Snapshot s = snapshot;
+            int size = s.elements.length;
+            Object[] elements = Arrays.copyOf(s.elements, size + 1);
+            long[] sequences = Arrays.copyOf(s.sequences, size + 1);
+            elements[size] = o;
+            sequences[size] = sequence++;
+            snapshot = new Snapshot(elements, sequences);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        synchronized (lock) {
+            int index = snapshot.indexOf(o);
+            return index >= 0 && remove(index) != null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) snapshot.elements[index];
+    }
+
+    @Override
+    public void clear() {
+        synchronized (lock) {
+            snapshot = EMPTY;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        synchronized (lock) {
+            Snapshot s = snapshot;
+            int size = s.elements.length;
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            Object[] elements = new Object[size - 1];
+            long[] sequences = new long[size - 1];
+            System.arraycopy(s.elements, 0, elements, 0, index);
+            System.arraycopy(s.elements, index + 1, elements, index, size - index - 1);
+            System.arraycopy(s.sequences, 0, sequences, 0, index);
+            System.arraycopy(s.sequences, index + 1, sequences, index, size - index - 1);
+            snapshot = new Snapshot(elements, sequences);
+            return (E) s.elements[index];
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E first() {
+        Object[] elements = snapshot.elements;
+        if (elements.length == 0) {
+            throw new NoSuchElementException();
+        }
+        return (E) elements[0];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E last() {
+        Object[] elements = snapshot.elements;
+        if (elements.length == 0) {
+            throw new NoSuchElementException();
+        }
+        return (E) elements[elements.length - 1];
+    }
+
+    private static final class Snapshot {
+
+        final Object[] elements;
+        final long[] sequences;
+
+        Snapshot(Object[] elements, long[] sequences) {
+            this.elements = elements;
+            this.sequences = sequences;
+        }
+
+        int indexOf(Object o) {
+            for (int i = 0; i < elements.length; i++) {
+                if (o.equals(elements[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the index of the first element added after the given sequence
+         */
+        int indexAfter(long sequence) {
+            int low = 0;
+            int high = sequences.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sequences[mid] <= sequence) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Iterator whose position is the sequence of the last element before it,
+     * or -1 when it is before all the elements.
+     */
+    public class SnapshotIterator extends DynamicIterator {
+
+        protected long cursor;
+        protected long nextSequence;
+        protected long previousSequence;
+
+        public SnapshotIterator(int index) {
+            Snapshot s = snapshot;
+            index = Math.min(index, s.sequences.length);
+            cursor = index > 0 ? s.sequences[index - 1] : -1;
+        }
+
+        @Override
+        protected void removedIndex(int index) {
+            // not tracked
+        }
+
+        @Override
+        protected void addedIndex(int index) {
+            // not tracked
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            hasPreviousCalled = false;
+            hasNextCalled = true;
+            Snapshot s = snapshot;
+            int i = s.indexAfter(cursor);
+            if (i < s.elements.length) {
+                next = (E) s.elements[i];
+                nextSequence = s.sequences[i];
+            } else {
+                next = null;
+            }
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasPrevious() {
+            hasPreviousCalled = true;
+            hasNextCalled = false;
+            Snapshot s = snapshot;
+            int i = s.indexAfter(cursor) - 1;
+            if (i >= 0) {
+                previous = (E) s.elements[i];
+                previousSequence = s.sequences[i];
+            } else {
+                previous = null;
+            }
+            return previous != null;
+        }
+
+        @Override
+        public E next() {
+            try {
+                if (!hasNextCalled) {
+                    hasNext();
+                }
+                last = next;
+                if (next != null) {
+                    cursor = nextSequence;
+                    return next;
+                } else {
+                    throw new NoSuchElementException();
+                }
+            } finally {
+                hasPreviousCalled = false;
+                hasNextCalled = false;
+                next = null;
+                previous = null;
+            }
+        }
+
+        @Override
+        public E previous() {
+            try {
+                if (!hasPreviousCalled) {
+                    hasPrevious();
+                }
+                last = previous;
+                if (previous != null) {
+                    cursor = previousSequence - 1;
+                    return previous;
+                } else {
+                    throw new NoSuchElementException();
+                }
+            } finally {
+                hasPreviousCalled = false;
+                hasNextCalled = false;
+                next = null;
+                previous = null;
+            }
+        }
+
+        @Override
+        public int nextIndex() {
+            return snapshot.indexAfter(cursor);
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex() - 1;
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.aries.blueprint.utils;
 
+import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
@@ -32,6 +33,7 @@ import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -40,7 +42,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.aries.blueprint.container.GenericType;
 import org.apache.aries.blueprint.di.ExecutionContext;
@@ -55,8 +59,10 @@ import org.osgi.service.blueprint.container.ComponentDefinitionException;
  */
 public class ReflectionUtils {
 
-    private static Map<Class<?>, WeakReference<Method[]>> publicMethods = Collections.synchronizedMap(new WeakHashMap<Class<?>, WeakReference<Method[]>>());
-    private static Map<Class<?>, PropertyDescriptor[][]> beanInfos = Collections.synchronizedMap(new WeakHashMap<Class<?>, PropertyDescriptor[][]>());
+    // Method infos only hold weak references to the classes
+    private static final ClassCache<Class<?>, MethodInfo> methodInfos = new ClassCache<Class<?>, MethodInfo>();
+    // Property descriptors only hold weak references to the classes
+    private static final ClassCache<Class<?>, AtomicReferenceArray<PropertyDescriptor[]>> beanInfos = new ClassCache<Class<?>, AtomicReferenceArray<PropertyDescriptor[]>>();
 
     public static boolean hasDefaultConstructor(Class type) {
         if (!Modifier.isPublic(type.getModifiers())) {
@@ -113,25 +119,55 @@ public class ReflectionUtils {
 
     public static Method getLifecycleMethod(Class clazz, String name) {
         if (name != null) {
-            for (Method method : getPublicMethods(clazz)) {
+            MethodInfo info = getMethodInfo(clazz);
+            MethodDescriptor[] cached = info.lifecycleMethods.get(name);
+            if (cached != null) {
+                List<Method> methods = getMethods(Arrays.asList(cached));
+                if (methods != null) {
+                    return methods.isEmpty() ? null : methods.get(0);
+                }
+            }
+            Method lifecycleMethod = null;
+            for (Method method : info.getPublicMethods(clazz)) {
                 if (method.getName().equals(name)
                         && method.getParameterTypes().length == 0
                         && Void.TYPE.equals(method.getReturnType())) {
-                    return method;
+                    lifecycleMethod = method;
+                    break;
                 }
             }
+            info.lifecycleMethods.put(name, lifecycleMethod != null
+                    ? new MethodDescriptor[] { new MethodDescriptor(lifecycleMethod) } : new MethodDescriptor[0]);
+            return lifecycleMethod;
         }
         return null;
     }
 
     public static Method[] getPublicMethods(Class clazz) {
-        WeakReference<Method[]> ref = publicMethods.get(clazz);
-        Method[] methods = ref != null ? ref.get() : null;
-        if (methods == null) {
-            ArrayList<Method> array = new ArrayList<Method>();
-            doGetPublicMethods(clazz, array);
-            methods = array.toArray(new Method[array.size()]);
-            publicMethods.put(clazz, new WeakReference<Method[]>(methods));
+        return getMethodInfo(clazz).getPublicMethods(clazz);
+    }
+
+    private static MethodInfo getMethodInfo(Class<?> clazz) {
+        MethodInfo info = methodInfos.get(clazz);
+        if (info == null) {
+            info = methodInfos.putIfAbsent(clazz, new MethodInfo());
+        }
+        return info;
+    }
+
+    /**
+     * Resolves cached method descriptors, or returns null if a class they refer to has been unloaded
+     */
+    private static List<Method> getMethods(List<MethodDescriptor> descriptors) {
+        List<Method> methods = new ArrayList<Method>(descriptors.size());
+        try {
+            for (MethodDescriptor descriptor : descriptors) {
+                methods.add(descriptor.getMethod());
+            }
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
         }
         return methods;
     }
@@ -184,8 +220,27 @@ public class ReflectionUtils {
     }
 
     public static List<Method> findCompatibleMethods(Class clazz, String name, Class[] paramTypes) {
+        MethodInfo info = getMethodInfo(clazz);
+        MethodKey key = new MethodKey(name, paramTypes);
+        List<MethodDescriptor> cached = info.compatibleMethods.get(key);
+        if (cached != null) {
+            List<Method> methods = getMethods(cached);
+            if (methods != null) {
+                return methods;
+            }
+        }
+        List<Method> methods = doFindCompatibleMethods(info.getPublicMethods(clazz), name, paramTypes);
+        List<MethodDescriptor> descriptors = new ArrayList<MethodDescriptor>(methods.size());
+        for (Method method : methods) {
+            descriptors.add(new MethodDescriptor(method));
+        }
+        info.compatibleMethods.put(key, descriptors);
+        return methods;
+    }
+
+    private static List<Method> doFindCompatibleMethods(Method[] publicMethods, String name, Class[] paramTypes) {
         List<Method> methods = new ArrayList<Method>();
-        for (Method method : getPublicMethods(clazz)) {
+        for (Method method : publicMethods) {
             Class[] methodParams = method.getParameterTypes();
             if (name.equals(method.getName()) && Void.TYPE.equals(method.getReturnType()) && methodParams.length == paramTypes.length && !method.isBridge()) {
                 boolean assignable = true;
@@ -205,15 +260,15 @@ public class ReflectionUtils {
     }
 
     public static PropertyDescriptor[] getPropertyDescriptors(Class clazz, boolean allowFieldInjection, boolean allowNonStandardSetters) {
-        PropertyDescriptor[][] properties = beanInfos.get(clazz);
+        AtomicReferenceArray<PropertyDescriptor[]> properties = beanInfos.get(clazz);
         int index = (allowFieldInjection ? 0 : 2) + (allowNonStandardSetters ? 0 : 1);
         
         if (properties == null) {
-            properties = new PropertyDescriptor[4][];
-            beanInfos.put(clazz, properties);
+            properties = beanInfos.putIfAbsent(clazz, new AtomicReferenceArray<PropertyDescriptor[]>(4));
         }
         
-        if (properties[index] == null) {
+        PropertyDescriptor[] descriptors = properties.get(index);
+        if (descriptors == null) {
             Set<String> propertyNames = new HashSet<String>();
             Map<String, Method> getters = new HashMap<String, Method>();
             Map<String, List<Method>> setters = new HashMap<String, List<Method>>();
@@ -308,9 +363,12 @@ public class ReflectionUtils {
                 if (!!!illegalProperties.contains(prop.getName())) result.add(prop);
             }
             
-            properties[index] = result.toArray(new PropertyDescriptor[result.size()]); 
+            descriptors = result.toArray(new PropertyDescriptor[result.size()]);
+            if (!properties.compareAndSet(index, null, descriptors)) {
+                descriptors = properties.get(index);
+            }
         }
-        return properties[index];
+        return descriptors;
     }
 
     private static String decapitalize(String name) {
@@ -328,7 +386,7 @@ public class ReflectionUtils {
 
     public static Object invoke(AccessControlContext acc, final Method method, final Object instance, final Object... args) throws Exception {
         if (acc == null) {
-            return method.invoke(instance, args);
+            return BeanAccessor.invoke(method, instance, args);
         } else {
             try {
                 return AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
@@ -360,7 +418,7 @@ public class ReflectionUtils {
     
     public static Object newInstance(AccessControlContext acc, final Constructor constructor, final Object... args) throws Exception {
         if (acc == null) {
-            return constructor.newInstance(args);
+            return BeanAccessor.newInstance(constructor, args);
         } else {
             try {
                 return AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
@@ -374,6 +432,14 @@ public class ReflectionUtils {
         }
     }
     
+    private static Object invoke(ExtendedBlueprintContainer container, Method method, Object instance, Object... args) throws Exception {
+        if (container.getAccessControlContext() == null) {
+            return BeanAccessor.invoke(method, instance, args);
+        } else {
+            return method.invoke(instance, args);
+        }
+    }
+
     public static abstract class PropertyDescriptor {
         private final String name;
         
@@ -541,6 +607,9 @@ public class ReflectionUtils {
         private void doInternalSet(ExtendedBlueprintContainer container, Object instance, Object value) throws Exception {
             Field field = getField(container);
             final Object convertedValue = convert(value, field.getGenericType());
+            if (container.getAccessControlContext() == null && BeanAccessor.set(field, instance, convertedValue)) {
+                return;
+            }
             boolean isAccessible = field.isAccessible();
             field.setAccessible(true);
             try {
@@ -577,6 +646,8 @@ public class ReflectionUtils {
         private final String methodName;
         private final WeakReference<Class<?>> declaringClass;
         private final List<WeakReference<Class<?>>> argClasses;
+        // the resolved method is weakly referenced so that it does not prevent the class from being unloaded
+        private volatile Reference<Method> method;
         
         public MethodDescriptor(Method method) {
             methodName = method.getName();
@@ -589,7 +660,17 @@ public class ReflectionUtils {
             argClasses = Collections.unmodifiableList(accumulator);
         }
         
-        public Method getMethod(ExtendedBlueprintContainer container) throws ClassNotFoundException, NoSuchMethodException {
+        public Method getMethod() throws ClassNotFoundException, NoSuchMethodException {
+            Reference<Method> ref = method;
+            Method m = ref != null ? ref.get() : null;
+            if (m == null) {
+                m = lookupMethod();
+                method = new WeakReference<Method>(m);
+            }
+            return m;
+        }
+
+        private Method lookupMethod() throws ClassNotFoundException, NoSuchMethodException {
             Class<?>[] argumentClasses = new Class<?>[argClasses.size()];
             for (int i=0; i<argClasses.size(); i++) {
                 argumentClasses[i] = argClasses.get(i).get();
@@ -648,7 +729,7 @@ public class ReflectionUtils {
         protected Object internalGet(ExtendedBlueprintContainer container, Object instance) 
                 throws Exception {
             if (getter != null) {
-                return getter.getMethod(container).invoke(instance);
+                return invoke(container, getter.getMethod(), instance);
             } else {
                 throw new UnsupportedOperationException();
             }
@@ -659,7 +740,7 @@ public class ReflectionUtils {
             Method setterMethod = findSetter(container, value);
 
             if (setterMethod != null) {
-                setterMethod.invoke(instance, convert(value, resolveParameterType(instance.getClass(), setterMethod)));
+                invoke(container, setterMethod, instance, convert(value, resolveParameterType(instance.getClass(), setterMethod)));
             } else {
                 throw new ComponentDefinitionException(
                         "No converter available to convert value "+value+" into a form applicable for the " + 
@@ -713,7 +794,7 @@ public class ReflectionUtils {
         private Method findSetter(ExtendedBlueprintContainer container, Object value) throws Exception {
             Class<?> valueType = (value == null) ? null : value.getClass();
             
-            Method getterMethod = (getter != null) ? getter.getMethod(container) : null;
+            Method getterMethod = (getter != null) ? getter.getMethod() : null;
             Collection<Method> setterMethods = getSetters(container);
             
             Method result = findMethodByClass(getterMethod, setterMethods, valueType);
@@ -725,7 +806,7 @@ public class ReflectionUtils {
         
         private Collection<Method> getSetters(ExtendedBlueprintContainer container) throws Exception {
             Collection<Method> result = new ArrayList<Method>();
-            for (MethodDescriptor md : setters) result.add(md.getMethod(container));
+            for (MethodDescriptor md : setters) result.add(md.getMethod());
             
             return result;
         }
@@ -810,6 +891,81 @@ public class ReflectionUtils {
         }
     }
 
+    /**
+     * The methods of a class. Like the property descriptors, the lookups are cached as method
+     * descriptors, so that they are kept without preventing the class from being unloaded.
+     */
+    private static final class MethodInfo {
+        // Methods hold strong references to their classes, so they are weakly referenced to allow class unloading
+        private volatile Reference<Method[]> publicMethods;
+        // Descriptors are stored in arrays so that missing lifecycle methods can be cached too
+        final ConcurrentMap<String, MethodDescriptor[]> lifecycleMethods = new ConcurrentHashMap<String, MethodDescriptor[]>();
+        final ConcurrentMap<MethodKey, List<MethodDescriptor>> compatibleMethods = new ConcurrentHashMap<MethodKey, List<MethodDescriptor>>();
+
+        Method[] getPublicMethods(Class<?> clazz) {
+            Reference<Method[]> ref = publicMethods;
+            Method[] methods = ref != null ? ref.get() : null;
+            if (methods == null) {
+                ArrayList<Method> array = new ArrayList<Method>();
+                doGetPublicMethods(clazz, array);
+                methods = array.toArray(new Method[array.size()]);
+                publicMethods = new WeakReference<Method[]>(methods);
+            }
+            return methods;
+        }
+    }
+
+    /**
+     * The name and parameter types of a compatible methods lookup. The parameter types are weakly
+     * referenced, a key whose types have been unloaded no longer equals any other key.
+     */
+    private static final class MethodKey {
+        private final String name;
+        // null parameter types match any type, so they are kept as null rather than as empty references
+        private final WeakReference<Class<?>>[] paramTypes;
+        private final int hash;
+
+        @SuppressWarnings("unchecked")
+        MethodKey(String name, Class[] paramTypes) {
+            this.name = name;
+            this.paramTypes = new WeakReference[paramTypes.length];
+            for (int i = 0; i < paramTypes.length; i++) {
+                if (paramTypes[i] != null) {
+                    this.paramTypes[i] = new WeakReference<Class<?>>(paramTypes[i]);
+                }
+            }
+            this.hash = 31 * name.hashCode() + Arrays.hashCode(paramTypes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof MethodKey)) {
+                return false;
+            }
+            MethodKey other = (MethodKey) o;
+            if (hash != other.hash || !name.equals(other.name) || paramTypes.length != other.paramTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < paramTypes.length; i++) {
+                WeakReference<Class<?>> type = paramTypes[i];
+                WeakReference<Class<?>> otherType = other.paramTypes[i];
+                if (type == null || otherType == null) {
+                    if (type != otherType) {
+                        return false;
+                    }
+                } else if (type.get() == null || type.get() != otherType.get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
     public static Throwable getRealCause(Throwable t) {
         if (t instanceof InvocationTargetException && t.getCause() != null) {
             return t.getCause();
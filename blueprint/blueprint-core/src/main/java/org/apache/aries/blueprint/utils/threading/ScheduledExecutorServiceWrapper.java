@@ -48,7 +48,7 @@ import org.osgi.framework.InvalidSyntaxException;
 
 /**
  * This class looks like a ScheduledExecutorService to the outside world. Internally it uses either
- * a scheduled thread pool with a core size of 3, or it picks one up from the service registry. If
+ * a scheduled thread pool created by the given factory, or it picks one up from the service registry. If
  * it picks one up from the service registry then it shuts the internal one down. This doesn't fully meet
  * the spec for a SchedueledExecutorService. It does not properly implement shutdownNow, but this isn't used
  * by blueprint so for now that should be fine.
@@ -32,11 +32,14 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import junit.framework.Assert;
 
 import org.apache.aries.blueprint.CallbackTracker.Callback;
 import org.apache.aries.blueprint.container.BlueprintRepository;
+import org.apache.aries.blueprint.container.DependencyGraph;
 import org.apache.aries.blueprint.container.ServiceRecipe;
 import org.apache.aries.blueprint.di.CircularDependencyException;
 import org.apache.aries.blueprint.di.ExecutionContext;
@@ -246,6 +249,36 @@ public class WiringTest extends AbstractBlueprintTest {
         checkDestroyCallback(instances.get("d"), callback.get(5));
     }
 
+    public void testParallelDependencies() throws Exception {
+        CallbackTracker.clear();
+
+        ComponentDefinitionRegistryImpl registry = parse("/test-parallel.xml");
+        BlueprintRepository repository = new TestBlueprintContainer(registry).getRepository();
+        List<String> names = Arrays.asList("c", "d", "e", "a1", "a2");
+
+        List<List<String>> groups = new DependencyGraph(repository).getIndependentGroups(names);
+        assertEquals(3, groups.size());
+        assertEquals(Arrays.asList("c", "d", "e"), groups.get(0));
+        assertEquals(Arrays.asList("a1"), groups.get(1));
+        assertEquals(Arrays.asList("a2"), groups.get(2));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            repository.createAll(names, executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        for (String name : names) {
+            assertNotNull(repository.getInstance(name));
+        }
+        List<Callback> callback = CallbackTracker.getCallbacks();
+        assertEquals(3, callback.size());
+        checkInitCallback(repository.getInstance("d"), callback.get(0));
+        checkInitCallback(repository.getInstance("c"), callback.get(1));
+        checkInitCallback(repository.getInstance("e"), callback.get(2));
+    }
+
     private void checkInitCallback(Object obj, Callback callback) { 
         assertEquals(Callback.INIT, callback.getType());
         assertEquals(obj, callback.getObject());
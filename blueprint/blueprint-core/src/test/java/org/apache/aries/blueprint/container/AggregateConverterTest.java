@@ -273,6 +273,23 @@ public class AggregateConverterTest extends TestCase {
         assertSame(org, obj);;
     }
     
+    public void testStrategyCache() throws Exception {
+        AggregateConverter s = new AggregateConverter(new TestBlueprintContainer(null));
+        assertEquals(123, s.convert("123", int.class));
+        assertEquals(0, s.getCacheHits());
+        assertEquals(456, s.convert("456", int.class));
+        assertEquals(1, s.getCacheHits());
+        assertTrue(s.canConvert("789", new GenericType(int.class)));
+        assertEquals(3, s.getCacheHits());
+
+        // cached strategies must not prevent registered converters from being used
+        s.registerConverter(new RegionConverter());
+        assertTrue(s.convert("123", Region.class) instanceof Region);
+        assertFalse(s.canConvert(new Object(), new GenericType(Integer.class)));
+        assertTrue(s.canConvert(new Object(), new GenericType(Region.class)));
+        assertTrue(s.getCacheHitRate() > 0.0);
+    }
+
     private interface Region {} 
     
     private interface EuRegion extends Region {}
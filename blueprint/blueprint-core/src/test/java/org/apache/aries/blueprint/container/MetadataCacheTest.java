@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.container;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.aries.blueprint.AbstractBlueprintTest;
+import org.apache.aries.blueprint.parser.ComponentDefinitionRegistryImpl;
+import org.easymock.EasyMock;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.Version;
+import org.osgi.service.blueprint.reflect.Target;
+
+public class MetadataCacheTest extends AbstractBlueprintTest {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("metadata", "cache");
+        dir.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    public void testRoundTrip() throws Exception {
+        List<URL> paths = Collections.singletonList(getClass().getResource("/test.xml"));
+        ComponentDefinitionRegistryImpl registry = parse("/test.xml");
+        Bundle bundle = createBundle(1L);
+
+        MetadataCache cache = new MetadataCache(dir);
+        cache.store(bundle, paths, null, registry);
+
+        ComponentDefinitionRegistryImpl loaded = new ComponentDefinitionRegistryImpl();
+        assertTrue(cache.load(bundle, paths, null, loaded));
+
+        assertEquals(new ArrayList<String>(registry.getComponentDefinitionNames()),
+                     new ArrayList<String>(loaded.getComponentDefinitionNames()));
+        for (String name : registry.getComponentDefinitionNames()) {
+            assertEquals(registry.getComponentDefinition(name).toString(),
+                         loaded.getComponentDefinition(name).toString());
+        }
+        assertEquals(registry.getTypeConverters().size(), loaded.getTypeConverters().size());
+        for (int i = 0; i < registry.getTypeConverters().size(); i++) {
+            Target expected = registry.getTypeConverters().get(i);
+            Target actual = loaded.getTypeConverters().get(i);
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    public void testInvalidation() throws Exception {
+        List<URL> paths = Collections.singletonList(getClass().getResource("/test.xml"));
+        ComponentDefinitionRegistryImpl registry = parse("/test.xml");
+
+        MetadataCache cache = new MetadataCache(dir);
+        cache.store(createBundle(1L), paths, null, registry);
+
+        // bundle updated
+        assertFalse(cache.load(createBundle(2L), paths, null, new ComponentDefinitionRegistryImpl()));
+        // validation mode changed
+        assertFalse(cache.load(createBundle(1L), paths, "false", new ComponentDefinitionRegistryImpl()));
+        // content changed
+        List<URL> otherPaths = Collections.singletonList(getClass().getResource("/test-depends-on.xml"));
+        assertFalse(cache.load(createBundle(1L), otherPaths, null, new ComponentDefinitionRegistryImpl()));
+
+        cache.remove(createBundle(1L));
+        assertFalse(cache.load(createBundle(1L), paths, null, new ComponentDefinitionRegistryImpl()));
+    }
+
+    private Bundle createBundle(long lastModified) {
+        Bundle bundle = EasyMock.createNiceMock(Bundle.class);
+        EasyMock.expect(bundle.getBundleId()).andReturn(42L).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(lastModified).anyTimes();
+        EasyMock.expect(bundle.getSymbolicName()).andReturn("test").anyTimes();
+        EasyMock.expect(bundle.getVersion()).andReturn(Version.emptyVersion).anyTimes();
+        EasyMock.replay(bundle);
+        return bundle;
+    }
+
+}
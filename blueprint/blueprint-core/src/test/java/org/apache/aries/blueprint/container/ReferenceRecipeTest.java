@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.container;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.aries.blueprint.ExtendedReferenceMetadata;
+import org.apache.aries.blueprint.container.SatisfiableRecipe.SatisfactionListener;
+import org.apache.aries.blueprint.reflect.ReferenceMetadataImpl;
+import org.apache.aries.blueprint.services.ExtendedBlueprintContainer;
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+
+public class ReferenceRecipeTest {
+
+    @Test
+    public void testConcurrentDispatch() throws Exception {
+        ExtendedBlueprintContainer container = EasyMock.createMock(ExtendedBlueprintContainer.class);
+        BundleContext containerContext = EasyMock.createMock(BundleContext.class);
+
+        ReferenceMetadataImpl metadata = new ReferenceMetadataImpl();
+        metadata.setInterface("my.interface");
+        metadata.setDamping(ExtendedReferenceMetadata.DAMPING_GREEDY);
+
+        ReferenceRecipe recipe = new ReferenceRecipe("myref", container, metadata, null, null, null);
+        SatisfactionListener listener = new SatisfactionListener() {
+            @Override
+            public void notifySatisfaction(SatisfiableRecipe satisfiable) {
+
+            }
+        };
+
+        ServiceReference svcRef1 = EasyMock.createMock(ServiceReference.class);
+        Object service1 = new Object();
+
+        EasyMock.expect(container.getBundleContext()).andReturn(containerContext).anyTimes();
+        containerContext.addServiceListener(recipe, "(objectClass=my.interface)");
+        EasyMock.expectLastCall();
+        EasyMock.expect(containerContext.getServiceReferences((String) null, "(objectClass=my.interface)"))
+                .andReturn(new ServiceReference[] { svcRef1 });
+        // The bound service is only looked up once, whatever the number of callers
+        EasyMock.expect(containerContext.getService(svcRef1)).andReturn(service1).once();
+        EasyMock.replay(container, containerContext, svcRef1);
+
+        recipe.start(listener);
+        Callable<Object> dispatcher = recipe.new ServiceDispatcher();
+        for (int threads : new int[] { 1, 8, 64 }) {
+            assertDispatches(dispatcher, service1, threads);
+        }
+        EasyMock.verify(container, containerContext, svcRef1);
+
+        EasyMock.reset(container, containerContext, svcRef1);
+
+        // A better service is registered and the greedy reference rebinds to it
+        ServiceReference svcRef2 = EasyMock.createMock(ServiceReference.class);
+        Object service2 = new Object();
+
+        EasyMock.expect(container.getBundleContext()).andReturn(containerContext).anyTimes();
+        EasyMock.expect(svcRef1.getProperty(Constants.SERVICE_ID)).andReturn(0L).anyTimes();
+        EasyMock.expect(svcRef1.getProperty(Constants.SERVICE_RANKING)).andReturn(0).anyTimes();
+        EasyMock.expect(svcRef2.getProperty(Constants.SERVICE_ID)).andReturn(1L).anyTimes();
+        EasyMock.expect(svcRef2.getProperty(Constants.SERVICE_RANKING)).andReturn(1).anyTimes();
+        EasyMock.expect(containerContext.ungetService(svcRef1)).andReturn(true).once();
+        EasyMock.expect(containerContext.getService(svcRef2)).andReturn(service2).once();
+        EasyMock.replay(container, containerContext, svcRef1, svcRef2);
+
+        recipe.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, svcRef2));
+        for (int threads : new int[] { 1, 8, 64 }) {
+            assertDispatches(dispatcher, service2, threads);
+        }
+        EasyMock.verify(container, containerContext, svcRef1, svcRef2);
+    }
+
+    private static void assertDispatches(final Callable<Object> dispatcher, final Object expected, int threads)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        for (int j = 0; j < 10000; j++) {
+                            if (dispatcher.call() != expected) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                Assert.assertTrue("Dispatched to the bound service", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.namespace;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import junit.framework.TestCase;
+import org.apache.aries.blueprint.NamespaceHandler;
+import org.easymock.EasyMock;
+
+public class SchemaCacheTest extends TestCase {
+
+    private final NamespaceHandler handler1 = EasyMock.createMock(NamespaceHandler.class);
+    private final NamespaceHandler handler2 = EasyMock.createMock(NamespaceHandler.class);
+
+    public void testHitsAndMisses() throws Exception {
+        SchemaCache cache = new SchemaCache(10);
+        SchemaCache.Key key = key("http://ns1", "bundle://1.0:1/ns1.xsd", handler1);
+
+        Schema schema = cache.getSchema(key, new SchemaCreator());
+        assertSame(schema, cache.getSchema(key("http://ns1", "bundle://1.0:1/ns1.xsd", handler2), new SchemaCreator()));
+        assertNotSame(schema, cache.getSchema(key("http://ns1", "bundle://1.1:1/ns1.xsd", handler1), new SchemaCreator()));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+
+    public void testEviction() throws Exception {
+        SchemaCache cache = new SchemaCache(2);
+        SchemaCache.Key key1 = key("http://ns1", "url1", handler1);
+        SchemaCache.Key key2 = key("http://ns2", "url2", handler1);
+        SchemaCache.Key key3 = key("http://ns3", "url3", handler1);
+
+        Schema schema1 = cache.getSchema(key1, new SchemaCreator());
+        cache.getSchema(key2, new SchemaCreator());
+        // key1 is now the most recently used entry
+        assertSame(schema1, cache.getSchema(key1, new SchemaCreator()));
+        cache.getSchema(key3, new SchemaCreator());
+        assertEquals(1, cache.getEvictions());
+        assertSame(schema1, cache.getSchema(key1, new SchemaCreator()));
+        assertEquals(2, cache.size());
+    }
+
+    public void testInvalidate() throws Exception {
+        SchemaCache cache = new SchemaCache(10);
+        SchemaCache.Key key1 = key("http://ns1", "url1", handler1);
+        SchemaCache.Key key2 = key("http://ns2", "url2", handler2);
+
+        Schema schema1 = cache.getSchema(key1, new SchemaCreator());
+        Schema schema2 = cache.getSchema(key2, new SchemaCreator());
+        cache.invalidate(handler1);
+        assertEquals(1, cache.size());
+        assertNotSame(schema1, cache.getSchema(key1, new SchemaCreator()));
+        assertSame(schema2, cache.getSchema(key2, new SchemaCreator()));
+    }
+
+    public void testFailedCreationIsNotCached() throws Exception {
+        SchemaCache cache = new SchemaCache(10);
+        SchemaCache.Key key = key("http://ns1", "url1", handler1);
+        try {
+            cache.getSchema(key, new Callable<Schema>() {
+                public Schema call() throws Exception {
+                    throw new IOException("failure");
+                }
+            });
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("failure", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+        assertNotNull(cache.getSchema(key, new SchemaCreator()));
+    }
+
+    private static SchemaCache.Key key(String ns, String url, NamespaceHandler handler) {
+        return SchemaCache.key(Collections.singletonMap(ns, url), Collections.singleton(handler));
+    }
+
+    private static class SchemaCreator implements Callable<Schema> {
+        public Schema call() throws Exception {
+            return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema();
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.proxy;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.aries.blueprint.Interceptor;
+import org.apache.aries.blueprint.Interceptor2;
+import org.apache.aries.proxy.InvocationListener;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.blueprint.reflect.ComponentMetadata;
+
+public class CollaboratorTest {
+
+    private final List<String> calls = new ArrayList<String>();
+
+    @Test
+    public void testCallOrder() throws Throwable {
+        Method m = Runnable.class.getMethod("run");
+        Collaborator collaborator = new Collaborator(null, Arrays.<Interceptor>asList(
+                new RecordingInterceptor("a", null), new RecordingInterceptor("b", null)));
+
+        Object token = collaborator.preInvoke(null, m, null);
+        collaborator.postInvoke(token, null, m, null);
+        Assert.assertEquals(Arrays.asList("a.pre", "b.pre", "b.return:b", "a.return:a"), calls);
+
+        calls.clear();
+        token = collaborator.preInvoke(null, m, null);
+        collaborator.postInvokeExceptionalReturn(token, null, m, new Exception());
+        Assert.assertEquals(Arrays.asList("a.pre", "b.pre", "b.exception:b", "a.exception:a"), calls);
+    }
+
+    @Test
+    public void testSkipsInterceptorsNotInterceptingTheMethod() throws Throwable {
+        Method run = Runnable.class.getMethod("run");
+        Method toString = Object.class.getMethod("toString");
+        Collaborator collaborator = new Collaborator(null, Arrays.<Interceptor>asList(
+                new RecordingInterceptor("a", run), new RecordingInterceptor("b", null)));
+
+        Object token = collaborator.preInvoke(null, toString, null);
+        collaborator.postInvoke(token, null, toString, null);
+        Assert.assertEquals(Arrays.asList("b.pre", "b.return:b"), calls);
+
+        calls.clear();
+        collaborator = new Collaborator(null, Arrays.<Interceptor>asList(new RecordingInterceptor("a", run)));
+        token = collaborator.preInvoke(null, toString, null);
+        Assert.assertNull("No token for a method which is not intercepted", token);
+        collaborator.postInvoke(token, null, toString, null);
+        collaborator.postInvokeExceptionalReturn(token, null, toString, new Exception());
+        Assert.assertTrue(calls.isEmpty());
+
+        InvocationListener single = new SingleInterceptorCollaborator(null, new RecordingInterceptor("a", run));
+        token = single.preInvoke(null, toString, null);
+        single.postInvoke(token, null, toString, null);
+        single.postInvokeExceptionalReturn(token, null, toString, new Exception());
+        Assert.assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void testPreCallFailure() throws Throwable {
+        Method m = Runnable.class.getMethod("run");
+        Collaborator collaborator = new Collaborator(null, Arrays.<Interceptor>asList(
+                new RecordingInterceptor("a", null), new FailingInterceptor("b", true),
+                new RecordingInterceptor("c", null)));
+        try {
+            collaborator.preInvoke(null, m, null);
+            Assert.fail("Expected the preCall exception");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("b.pre", e.getMessage());
+        }
+        // the failing interceptor is called with a null token, the next one is never called
+        Assert.assertEquals(Arrays.asList("a.pre", "b.pre", "b.exception:null", "a.exception:a"), calls);
+    }
+
+    @Test
+    public void testPostCallFailure() throws Throwable {
+        Method m = Runnable.class.getMethod("run");
+        Collaborator collaborator = new Collaborator(null, Arrays.<Interceptor>asList(
+                new RecordingInterceptor("a", null), new FailingInterceptor("b", false),
+                new RecordingInterceptor("c", null)));
+        Object token = collaborator.preInvoke(null, m, null);
+        calls.clear();
+        try {
+            collaborator.postInvoke(token, null, m, null);
+            Assert.fail("Expected the postCall exception");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("b.return", e.getMessage());
+            collaborator.postInvokeExceptionalReturn(token, null, m, e);
+        }
+        Assert.assertEquals(Arrays.asList("c.return:c", "b.return:b", "a.exception:a"), calls);
+    }
+
+    private class RecordingInterceptor implements Interceptor2 {
+        private final String name;
+        private final Method intercepted;
+
+        RecordingInterceptor(String name, Method intercepted) {
+            this.name = name;
+            this.intercepted = intercepted;
+        }
+
+        public boolean intercepts(ComponentMetadata cm, Method m) {
+            return intercepted == null || intercepted.equals(m);
+        }
+
+        public Object preCall(ComponentMetadata cm, Method m, Object... parameters) throws Throwable {
+            calls.add(name + ".pre");
+            return name;
+        }
+
+        public void postCallWithReturn(ComponentMetadata cm, Method m, Object returnType, Object preCallToken)
+                throws Throwable {
+            calls.add(name + ".return:" + preCallToken);
+        }
+
+        public void postCallWithException(ComponentMetadata cm, Method m, Throwable ex, Object preCallToken)
+                throws Throwable {
+            calls.add(name + ".exception:" + preCallToken);
+        }
+
+        public int getRank() {
+            return 0;
+        }
+    }
+
+    /**
+     * Fails either in preCall or in postCallWithReturn
+     */
+    private class FailingInterceptor extends RecordingInterceptor {
+        private final boolean failPreCall;
+
+        FailingInterceptor(String name, boolean failPreCall) {
+            super(name, null);
+            this.failPreCall = failPreCall;
+        }
+
+        @Override
+        public Object preCall(ComponentMetadata cm, Method m, Object... parameters) throws Throwable {
+            Object token = super.preCall(cm, m, parameters);
+            if (failPreCall) {
+                throw new IllegalStateException(token + ".pre");
+            }
+            return token;
+        }
+
+        @Override
+        public void postCallWithReturn(ComponentMetadata cm, Method m, Object returnType, Object preCallToken)
+                throws Throwable {
+            super.postCallWithReturn(cm, m, returnType, preCallToken);
+            throw new IllegalStateException(preCallToken + ".return");
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BeanAccessorTest {
+
+    public static class Bean {
+        public String name;
+        public int count;
+        private long total;
+
+        public Bean() {
+        }
+
+        public Bean(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void setValues(List<String> values, boolean[] flags) {
+            this.name = values.get(0) + flags.length;
+        }
+
+        public void fail(String message) throws Exception {
+            throw new Exception(message);
+        }
+
+        public static Bean create(String name) {
+            return new Bean(name, 1);
+        }
+    }
+
+    static class HiddenBean {
+        public void setName(String name) {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        BeanAccessor.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        BeanAccessor.setEnabled(false);
+    }
+
+    @Test
+    public void testAccessor() throws Exception {
+        assertNotNull(BeanAccessor.getAccessor(Bean.class));
+        assertSame(BeanAccessor.getAccessor(Bean.class), BeanAccessor.getAccessor(Bean.class));
+        assertNull(BeanAccessor.getAccessor(HiddenBean.class));
+        assertNull(BeanAccessor.getAccessor(String.class));
+
+        BeanAccessor.setEnabled(false);
+        assertNull(BeanAccessor.getAccessor(Bean.class));
+    }
+
+    @Test
+    public void testAccessorLifetime() throws Exception {
+        WeakReference<BeanAccessor> accessor = new WeakReference<BeanAccessor>(BeanAccessor.getAccessor(Bean.class));
+        System.gc();
+        assertSame(accessor.get(), BeanAccessor.getAccessor(Bean.class));
+        // the accessor is kept by its class loader when the cache of accessors is cleared
+        BeanAccessor.setEnabled(false);
+        BeanAccessor.setEnabled(true);
+        System.gc();
+        assertSame(accessor.get(), BeanAccessor.getAccessor(Bean.class));
+    }
+
+    @Test
+    public void testConstructors() throws Exception {
+        Bean bean = (Bean) BeanAccessor.newInstance(Bean.class.getConstructor());
+        assertNull(bean.name);
+        bean = (Bean) BeanAccessor.newInstance(Bean.class.getConstructor(String.class, int.class), "foo", 3);
+        assertEquals("foo", bean.name);
+        assertEquals(3, bean.count);
+    }
+
+    @Test
+    public void testMethods() throws Exception {
+        Bean bean = new Bean();
+        assertNull(BeanAccessor.invoke(Bean.class.getMethod("setTotal", long.class), bean, 42L));
+        assertEquals(42L, BeanAccessor.invoke(Bean.class.getMethod("getTotal"), bean));
+        BeanAccessor.invoke(Bean.class.getMethod("setValues", List.class, boolean[].class), bean,
+                Collections.singletonList("bar"), new boolean[2]);
+        assertEquals("bar2", bean.name);
+
+        bean = (Bean) BeanAccessor.invoke(Bean.class.getMethod("create", String.class), null, "baz");
+        assertEquals("baz", bean.name);
+    }
+
+    @Test
+    public void testExceptions() throws Exception {
+        try {
+            BeanAccessor.invoke(Bean.class.getMethod("fail", String.class), new Bean(), "error");
+            fail("Expected an InvocationTargetException");
+        } catch (InvocationTargetException e) {
+            assertEquals("error", e.getTargetException().getMessage());
+        }
+        try {
+            BeanAccessor.invoke(Bean.class.getMethod("getTotal"), null);
+            fail("Expected a NullPointerException");
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testArgumentMismatch() throws Exception {
+        Bean bean = new Bean();
+        // widening conversions are performed in the same way as reflection
+        BeanAccessor.invoke(Bean.class.getMethod("setTotal", long.class), bean, 42);
+        assertEquals(42L, bean.getTotal());
+        try {
+            BeanAccessor.invoke(Bean.class.getMethod("setTotal", long.class), bean, "42");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            BeanAccessor.invoke(Bean.class.getMethod("getTotal"), "foo");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            BeanAccessor.newInstance(Bean.class.getConstructor(String.class, int.class), "foo", null);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertFalse(BeanAccessor.set(Bean.class.getField("count"), bean, "5"));
+    }
+
+    @Test
+    public void testFields() throws Exception {
+        Bean bean = new Bean();
+        assertTrue(BeanAccessor.set(Bean.class.getField("name"), bean, "foo"));
+        assertTrue(BeanAccessor.set(Bean.class.getField("count"), bean, 5));
+        assertEquals("foo", bean.name);
+        assertEquals(5, bean.count);
+        assertFalse(BeanAccessor.set(Bean.class.getDeclaredField("total"), bean, 1L));
+    }
+
+    @Test
+    public void testFallback() throws Exception {
+        // non public classes are invoked using reflection
+        HiddenBean bean = new HiddenBean();
+        assertNull(BeanAccessor.invoke(HiddenBean.class.getMethod("setName", String.class), bean, "foo"));
+        assertEquals("foo".length(), BeanAccessor.invoke(String.class.getMethod("length"), "foo"));
+    }
+
+}
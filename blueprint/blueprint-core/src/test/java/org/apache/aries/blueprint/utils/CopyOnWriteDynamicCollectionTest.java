@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.utils;
+
+import java.util.ListIterator;
+
+public class CopyOnWriteDynamicCollectionTest extends DynamicCollectionTest {
+
+    protected void setUp() {
+        collection = new CopyOnWriteDynamicCollection<Object>();
+    }
+
+    public void testIteratorFromIndex() throws Exception {
+        collection.add(O0);
+        collection.add(O1);
+        collection.add(O2);
+
+        ListIterator iterator = collection.iterator(1);
+        assertEquals(1, iterator.nextIndex());
+        assertEquals(O1, iterator.next());
+        collection.add(O3);
+        assertEquals(O2, iterator.next());
+        assertEquals(O3, iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    public void testPreviousWhileRemoving() throws Exception {
+        collection.add(O0);
+        collection.add(O1);
+        collection.add(O2);
+
+        ListIterator iterator = collection.iterator(3);
+        assertEquals(O2, iterator.previous());
+        collection.remove(O1);
+        assertTrue(iterator.hasPrevious());
+        assertEquals(0, iterator.previousIndex());
+        assertEquals(O0, iterator.previous());
+        assertFalse(iterator.hasPrevious());
+        assertEquals(O0, iterator.next());
+        assertEquals(O2, iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    public void testDuplicates() throws Exception {
+        collection.add(O0);
+        collection.add(O1);
+        collection.add(O0);
+
+        ListIterator iterator = collection.iterator();
+        assertEquals(O0, iterator.next());
+        assertTrue(collection.remove(O0));
+        assertEquals(O1, iterator.next());
+        assertEquals(O0, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertFalse(collection.remove(O2));
+    }
+
+}
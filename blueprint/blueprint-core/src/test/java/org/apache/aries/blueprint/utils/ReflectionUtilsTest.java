@@ -20,8 +20,17 @@ package org.apache.aries.blueprint.utils;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -31,7 +40,12 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.aries.blueprint.di.CircularDependencyException;
 import org.apache.aries.blueprint.di.ExecutionContext;
@@ -287,6 +301,117 @@ public class ReflectionUtilsTest {
         assertEquals(-1, NullSetterDisambiguation.field);
     }
     
+    public static class Lifecycle {
+        public void init() {}
+        public void setValue(String value) {}
+    }
+
+    @Test
+    public void testCachedMetadata() throws Exception {
+        assertSame(ReflectionUtils.getPublicMethods(GetterOnly.class), ReflectionUtils.getPublicMethods(GetterOnly.class));
+        assertSame(ReflectionUtils.getPropertyDescriptors(GetterOnly.class, false, false),
+                ReflectionUtils.getPropertyDescriptors(GetterOnly.class, false, false));
+        assertEquals(Lifecycle.class.getMethod("init"), ReflectionUtils.getLifecycleMethod(Lifecycle.class, "init"));
+        assertEquals(Lifecycle.class.getMethod("init"), ReflectionUtils.getLifecycleMethod(Lifecycle.class, "init"));
+        assertNull(ReflectionUtils.getLifecycleMethod(Lifecycle.class, "missing"));
+        assertNull(ReflectionUtils.getLifecycleMethod(Lifecycle.class, "missing"));
+
+        // callers are free to modify the returned list
+        List<Method> methods = ReflectionUtils.findCompatibleMethods(Lifecycle.class, "setValue", new Class[] { String.class });
+        assertEquals(Arrays.asList(Lifecycle.class.getMethod("setValue", String.class)), methods);
+        methods.clear();
+        assertEquals(1, ReflectionUtils.findCompatibleMethods(Lifecycle.class, "setValue", new Class[] { String.class }).size());
+        assertEquals(1, ReflectionUtils.findCompatibleMethods(Lifecycle.class, "setValue", new Class[] { null }).size());
+        assertEquals(0, ReflectionUtils.findCompatibleMethods(Lifecycle.class, "setValue", new Class[] { Integer.class }).size());
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final Class<?>[] classes = { GetterOnly.class, FieldsAndProps.class, OverloadedSetters.class,
+                MultipleMatchesByConversion.class, MultipleMatchesByType.class, NullSetterDisambiguation.class };
+        final PropertyDescriptor[][] expected = new PropertyDescriptor[classes.length][];
+        int threads = 8;
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        barrier.await();
+                        for (int i = 0; i < 1000; i++) {
+                            int index = i % classes.length;
+                            Class<?> clazz = classes[index];
+                            PropertyDescriptor[] props = ReflectionUtils.getPropertyDescriptors(clazz, true, true);
+                            synchronized (expected) {
+                                if (expected[index] == null) {
+                                    expected[index] = props;
+                                }
+                                assertSame(expected[index], props);
+                            }
+                            ReflectionUtils.getPublicMethods(clazz);
+                            ReflectionUtils.getLifecycleMethod(clazz, "init");
+                            ReflectionUtils.findCompatibleMethods(clazz, "setValue", new Class[] { String.class });
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCachedMethodsDoNotPinClassLoader() throws Exception {
+        WeakReference<ClassLoader> loader = lookupInOwnClassLoader(Lifecycle.class);
+        for (int i = 0; i < 20 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("class loader was not collected", loader.get());
+    }
+
+    private WeakReference<ClassLoader> lookupInOwnClassLoader(Class<?> type) throws Exception {
+        IsolatingClassLoader loader = new IsolatingClassLoader();
+        Class<?> clazz = loader.define(type);
+        assertNotSame(type, clazz);
+
+        ReflectionUtils.getPublicMethods(clazz);
+        assertNotNull(ReflectionUtils.getLifecycleMethod(clazz, "init"));
+        assertNull(ReflectionUtils.getLifecycleMethod(clazz, "missing"));
+        assertEquals(1, ReflectionUtils.findCompatibleMethods(clazz, "setValue", new Class[] { String.class }).size());
+        // the parameter types of a lookup on a class which outlives them
+        ReflectionUtils.findCompatibleMethods(Object.class, "setValue", new Class[] { clazz });
+        ReflectionUtils.getPropertyDescriptors(clazz, true, true);
+        return new WeakReference<ClassLoader>(loader);
+    }
+
+    /** Defines its own copy of a class, so that the copy can be unloaded */
+    private static class IsolatingClassLoader extends ClassLoader {
+        IsolatingClassLoader() {
+            super(ReflectionUtilsTest.class.getClassLoader());
+        }
+
+        Class<?> define(Class<?> type) throws IOException {
+            String name = type.getName();
+            InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int read; (read = is.read(buffer)) != -1;) {
+                    bytes.write(buffer, 0, read);
+                }
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            } finally {
+                is.close();
+            }
+        }
+    }
+
     private void loadProps(Class<?> clazz, boolean allowFieldInjection, boolean allowNonStandardSetters)
     {
         List<PropertyDescriptor> props = new ArrayList<PropertyDescriptor>(
@@ -38,6 +38,10 @@ public interface BlueprintConstants  {
 
     String XML_VALIDATION = "blueprint.aries.xml-validation";
 
+    String PARALLEL_INSTANTIATION = "blueprint.aries.parallel-instantiation";
+
+    String COPY_ON_WRITE_REFERENCE_LISTS = "blueprint.aries.copy-on-write-reference-lists";
+
     String USE_SYSTEM_CONTEXT_PROPERTY = "org.apache.aries.blueprint.use.system.context";
 
     String IGNORE_UNKNOWN_NAMESPACE_HANDLERS_PROPERTY = "org.apache.aries.blueprint.parser.service.ignore.unknown.namespace.handlers";
@@ -48,4 +52,14 @@ public interface BlueprintConstants  {
 
     String XML_VALIDATION_PROPERTY = "org.apache.aries.blueprint.xml.validation";
 
+    String EXTENDER_THREADS_PROPERTY = "org.apache.aries.blueprint.extender.threads";
+
+    String PARALLEL_INSTANTIATION_PROPERTY = "org.apache.aries.blueprint.parallel.instantiation";
+
+    String METADATA_CACHE_PROPERTY = "org.apache.aries.blueprint.metadata.cache";
+
+    String SCHEMA_CACHE_SIZE_PROPERTY = "org.apache.aries.blueprint.schema.cache.size";
+
+    String GENERATED_ACCESSORS_PROPERTY = "org.apache.aries.blueprint.generated.accessors";
+
 }
@@ -0,0 +1,38 @@
+/**
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.aries.blueprint;
+
+import java.lang.reflect.Method;
+
+import org.osgi.service.blueprint.reflect.ComponentMetadata;
+
+/**
+ * Additional interceptor features
+ */
+public interface Interceptor2 extends Interceptor {
+
+    /**
+     * An interceptor can return false if it has nothing to do for the given
+     * method, in which case it is not called at all when the method is invoked.
+     * The answer is cached, so it must not change for a given component and method.
+     * @param cm : the component's metadata
+     * @param m : the method which may be invoked
+     * @return whether the interceptor must be called around the method
+     */
+    boolean intercepts(ComponentMetadata cm, Method m);
+
+}
@@ -0,0 +1,29 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+def wovenProxy = 'org/apache/aries/proxy/weaving/WovenProxy'
+def classFile = { name -> new File(basedir, "target/classes/${name}.class").getText('ISO-8859-1') }
+
+assert classFile('p1/T1').contains(wovenProxy)
+assert classFile('p1/T2').contains(wovenProxy)
+// Interfaces are not woven
+assert !classFile('p1/I1').contains(wovenProxy)
+// Classes outside the scan paths are not woven
+assert !classFile('p2/T3').contains(wovenProxy)
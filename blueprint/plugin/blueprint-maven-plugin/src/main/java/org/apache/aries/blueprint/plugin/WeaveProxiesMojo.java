@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.plugin;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Weaves the classes of the project at build time so that the Aries proxy service
+ * can proxy them without weaving them when they are loaded.
+ * <p>
+ * The woven classes reference the org.apache.aries.proxy and org.apache.aries.proxy.weaving
+ * packages, which are imported by the bundle when its manifest is generated afterwards.
+ * Add the Aries-Proxy-Prewoven: true header to the manifest so that the proxy weaving hook
+ * skips the bundle entirely.
+ * </p>
+ */
+@Mojo(name = "weave-proxies", requiresDependencyResolution = ResolutionScope.COMPILE,
+        defaultPhase = LifecyclePhase.PROCESS_CLASSES, inheritByDefault = false, threadSafe = true)
+public class WeaveProxiesMojo extends AbstractMojo {
+
+    /**
+     * The header checked by the proxy weaving hook, see ProxyWeavingHook.WEAVING_PREWOVEN_HEADER
+     */
+    static final String PREWOVEN_HEADER = "Aries-Proxy-Prewoven";
+
+    @Parameter(defaultValue = "${project}", required = true)
+    protected MavenProject project;
+
+    /**
+     * Packages whose classes should be woven, all the classes of the project are woven if not specified
+     */
+    @Parameter
+    protected List<String> scanPaths;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        File classesDir = new File(project.getBuild().getOutputDirectory());
+        if (!classesDir.isDirectory()) {
+            getLog().info("Skipping proxy weaving because there are no classes");
+            return;
+        }
+
+        List<String> classNames = new ArrayList<>();
+        findClasses(classesDir, "", classNames);
+
+        int woven = 0;
+        try (WeavingClassLoader loader = createWeavingClassLoader(classesDir)) {
+            for (String className : classNames) {
+                byte[] bytes = loader.weave(className);
+                if (bytes != null) {
+                    getLog().debug("Weaving class " + className);
+                    Files.write(new File(classesDir, className.replace('.', File.separatorChar) + ".class").toPath(), bytes);
+                    woven++;
+                }
+            }
+        } catch (Exception e) {
+            throw new MojoExecutionException("Error during proxy weaving", e);
+        }
+        getLog().info("Woven " + woven + " classes, the bundle should declare the "
+                + PREWOVEN_HEADER + ": true header to disable weaving at runtime");
+    }
+
+    private static void findClasses(File dir, String packagePrefix, List<String> classNames) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                findClasses(file, packagePrefix + name + ".", classNames);
+            } else if (name.endsWith(".class")) {
+                classNames.add(packagePrefix + name.substring(0, name.length() - ".class".length()));
+            }
+        }
+    }
+
+    private WeavingClassLoader createWeavingClassLoader(File classesDir) throws MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (Object artifactO : project.getArtifacts()) {
+            Artifact artifact = (Artifact) artifactO;
+            File file = artifact.getFile();
+            if (file != null) {
+                urls.add(file.toURI().toURL());
+            }
+        }
+        List<String> packages = scanPaths == null || scanPaths.isEmpty() ? null : scanPaths;
+        return new WeavingClassLoader(classesDir, packages, urls.toArray(new URL[urls.size()]), getClass().getClassLoader());
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.blueprint.plugin;
+
+import org.apache.aries.proxy.UnableToProxyException;
+import org.apache.aries.proxy.impl.common.AbstractWovenProxyAdapter;
+import org.apache.aries.proxy.impl.weaving.WovenProxyGenerator;
+import org.apache.aries.proxy.weaving.WovenProxy;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the classes of the project after weaving them, in the same way the proxy weaving hook
+ * does at runtime. Superclasses are therefore always woven before their subclasses, so that
+ * only the topmost woven class of a hierarchy implements the WovenProxy interface.
+ */
+class WeavingClassLoader extends URLClassLoader {
+
+    private static final String WOVEN_PROXY = Type.getInternalName(WovenProxy.class);
+
+    private final File classesDir;
+    private final List<String> packages;
+    private final Map<String, byte[]> wovenClasses = new HashMap<>();
+
+    /**
+     * @param classesDir the directory containing the classes to weave
+     * @param packages the packages to weave, or <code>null</code> to weave all the classes
+     * @param dependencies the compile dependencies of the project
+     * @param parent the class loader providing the proxy classes
+     */
+    WeavingClassLoader(File classesDir, List<String> packages, URL[] dependencies, ClassLoader parent) {
+        super(dependencies, parent);
+        this.classesDir = classesDir;
+        this.packages = packages;
+    }
+
+    /**
+     * Weave the given class of the project.
+     *
+     * @return the woven bytes, or <code>null</code> if the class has not been woven
+     */
+    synchronized byte[] weave(String className) throws IOException {
+        if (!wovenClasses.containsKey(className)) {
+            byte[] original = Files.readAllBytes(getClassFile(className).toPath());
+            wovenClasses.put(className, shouldWeave(className) ? doWeave(original) : null);
+        }
+        return wovenClasses.get(className);
+    }
+
+    private byte[] doWeave(byte[] original) {
+        if (isWoven(original)) {
+            // Already woven by a previous build
+            return null;
+        }
+        try {
+            byte[] woven = WovenProxyGenerator.getWovenProxy(original, this);
+            return woven != null && woven.length != 0 ? woven : null;
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof UnableToProxyException) {
+                // The class can still be proxied using a subclass at runtime
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isWoven(byte[] bytes) {
+        for (String iface : new ClassReader(bytes).getInterfaces()) {
+            if (WOVEN_PROXY.equals(iface)) {
+                return true;
+            }
+        }
+        // Subclasses of woven classes do not implement WovenProxy themselves, but use the dispatcher field
+        return new String(bytes, StandardCharsets.ISO_8859_1).contains(AbstractWovenProxyAdapter.DISPATCHER_FIELD);
+    }
+
+    private boolean shouldWeave(String className) {
+        if (packages == null) {
+            return true;
+        }
+        for (String aPackage : packages) {
+            if (className.startsWith(aPackage + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected synchronized Class<?> findClass(String name) throws ClassNotFoundException {
+        File file = getClassFile(name);
+        if (!file.isFile()) {
+            return super.findClass(name);
+        }
+        try {
+            byte[] bytes = weave(name);
+            if (bytes == null) {
+                bytes = Files.readAllBytes(file.toPath());
+            }
+            return defineClass(name, bytes, 0, bytes.length);
+        } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+    }
+
+    @Override
+    public URL findResource(String name) {
+        // The original class files of the project are read by ASM to compute stack frames
+        File file = new File(classesDir, name);
+        if (name.endsWith(".class") && file.isFile()) {
+            try {
+                return file.toURI().toURL();
+            } catch (IOException e) {
+                // Fall back to the dependencies
+            }
+        }
+        return super.findResource(name);
+    }
+
+    private File getClassFile(String className) {
+        return new File(classesDir, className.replace('.', File.separatorChar) + ".class");
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.jndi;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Finds the first caller of a class on the call stack which satisfies a condition.
+ * <p>
+ * On Java 9 and later the stack is walked with java.lang.StackWalker, which creates
+ * the frames lazily and does not copy the whole class stack. As this bundle is
+ * built for Java 8, StackWalker is looked up reflectively and the class context of
+ * a SecurityManager is used when it is not available.
+ */
+final class CallStack {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CallStack.class);
+
+    /** StackWalker.walk bound to a walker retaining the classes, or null on Java 8 */
+    private static final MethodHandle WALK;
+    /** StackWalker.StackFrame.getDeclaringClass, taking an Object */
+    private static final MethodHandle GET_DECLARING_CLASS;
+
+    static {
+        MethodHandle walk = null;
+        MethodHandle getDeclaringClass = null;
+        try {
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            Object option = optionClass.getField("RETAIN_CLASS_REFERENCE").get(null);
+            Object walker = walkerClass.getMethod("getInstance", optionClass).invoke(null, option);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            walk = lookup.findVirtual(walkerClass, "walk", MethodType.methodType(Object.class, Function.class))
+                    .bindTo(walker);
+            getDeclaringClass = lookup.findVirtual(frameClass, "getDeclaringClass", MethodType.methodType(Class.class))
+                    .asType(MethodType.methodType(Class.class, Object.class));
+        } catch (ClassNotFoundException e) {
+            // Java 8
+        } catch (Exception e) {
+            LOGGER.debug("StackWalker is not available, the SecurityManager class context will be used", e);
+            walk = null;
+        }
+        WALK = walk;
+        GET_DECLARING_CLASS = getDeclaringClass;
+    }
+
+    private CallStack() {
+        throw new RuntimeException();
+    }
+
+    /**
+     * Looks for the outermost frame of the given class on the stack, and returns the first non null
+     * result of the resolver for the classes of its callers. If the class is not on the stack, the
+     * first non null result for any class is returned.
+     */
+    static <T> T findCaller(Class<?> namingClass, Function<Class<?>, T> resolver) {
+        if (WALK != null) {
+            Function<Stream<?>, T> search = frames -> {
+                Iterator<?> it = frames.iterator();
+                return findCaller(new Iterator<Class<?>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public Class<?> next() {
+                        return getDeclaringClass(it.next());
+                    }
+                }, namingClass, resolver);
+            };
+            try {
+                @SuppressWarnings("unchecked")
+                T result = (T) WALK.invoke(search);
+                return result;
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+        Class<?>[] classStack = new StackFinder().getClassContext();
+        return findCaller(Arrays.asList(classStack).iterator(), namingClass, resolver);
+    }
+
+    /**
+     * Walks the stack from the most recent frame. The callers of a frame of the naming class
+     * are only resolved until a result is found, and a deeper frame of the naming class
+     * discards this result.
+     */
+    static <T> T findCaller(Iterator<Class<?>> classes, Class<?> namingClass, Function<Class<?>, T> resolver) {
+        T result = null;
+        T fallback = null;
+        boolean found = false;
+        while (classes.hasNext()) {
+            Class<?> c = classes.next();
+            if (namingClass.isAssignableFrom(c)) {
+                found = true;
+                result = null;
+            } else if (found) {
+                if (result == null) {
+                    result = resolver.apply(c);
+                }
+            } else if (fallback == null) {
+                fallback = resolver.apply(c);
+            }
+        }
+        return found ? result : fallback;
+    }
+
+    private static Class<?> getDeclaringClass(Object frame) {
+        try {
+            return (Class<?>) GET_DECLARING_CLASS.invokeExact(frame);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static class StackFinder extends SecurityManager {
+        public Class<?>[] getClassContext() {
+            return super.getClassContext();
+        }
+    }
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.aries.jndi;
 
+import org.apache.aries.jndi.ResolutionCache.Resolution;
+import org.apache.aries.jndi.ResolutionCache.Role;
 import org.apache.aries.jndi.startup.Activator;
 import org.apache.aries.jndi.urls.URLObjectFactoryFinder;
 import org.osgi.framework.Bundle;
@@ -33,7 +35,7 @@ import javax.naming.spi.InitialContextFactoryBuilder;
 import javax.naming.spi.ObjectFactory;
 import java.util.Collection;
 import java.util.Hashtable;
-import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +47,10 @@ public final class ContextHelper {
 
     private static final Logger logger = Logger.getLogger(ContextHelper.class.getName());
 
+    private static final AtomicLong resolutionHits = new AtomicLong();
+    private static final AtomicLong resolutionMisses = new AtomicLong();
+    private static final AtomicLong resolutionTime = new AtomicLong();
+
     /**
      * Ensure no one constructs us
      */
@@ -77,30 +83,75 @@ public final class ContextHelper {
 
     public static ServicePair<ObjectFactory> getURLObjectFactory(final BundleContext ctx, String urlScheme, Hashtable<?, ?> environment)
             throws NamingException {
-        ServicePair<ObjectFactory> result = null;
+        ResolutionCache cache = Activator.getResolutionCache(ctx);
+        Object key = ResolutionCache.key(urlScheme, environment);
+        long version = Activator.getServicesVersion();
 
-        ServiceReference<ObjectFactory> ref = Activator.getUrlFactory(urlScheme);
+        Resolution resolution = cache.get(key, version);
+        if (resolution != null) {
+            ServicePair<ObjectFactory> result = getURLObjectFactory(ctx, urlScheme, environment, resolution);
+            if (result != null || resolution.getRole() == Role.NONE) {
+                resolutionHits.incrementAndGet();
+                return result;
+            }
+        }
 
-        if (ref == null) {
+        resolutionMisses.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return resolveURLObjectFactory(ctx, urlScheme, environment, cache, key, version);
+        } finally {
+            resolutionTime.addAndGet(System.nanoTime() - start);
+        }
+    }
 
-            Collection<ServiceReference<URLObjectFactoryFinder>> refs = Activator.getURLObjectFactoryFinderServices();
-            for (final ServiceReference<URLObjectFactoryFinder> finderRef : refs) {
-                URLObjectFactoryFinder finder = Activator.getService(ctx, finderRef);
+    @SuppressWarnings("unchecked")
+    private static ServicePair<ObjectFactory> getURLObjectFactory(BundleContext ctx, String urlScheme, Hashtable<?, ?> environment,
+                                                                  Resolution resolution)
+            throws NamingException {
+        switch (resolution.getRole()) {
+            case URL_FACTORY:
+                return new ServicePair<>(ctx, (ServiceReference<ObjectFactory>) resolution.getReference());
+            case URL_FINDER:
+                return findURLObjectFactory(ctx, (ServiceReference<URLObjectFactoryFinder>) resolution.getReference(),
+                        urlScheme, environment);
+            default:
+                return null;
+        }
+    }
 
-                if (finder != null) {
-                    ObjectFactory f = finder.findFactory(urlScheme, environment);
+    private static ServicePair<ObjectFactory> resolveURLObjectFactory(BundleContext ctx, String urlScheme, Hashtable<?, ?> environment,
+                                                                      ResolutionCache cache, Object key, long version)
+            throws NamingException {
+        ServiceReference<ObjectFactory> ref = Activator.getUrlFactory(urlScheme);
+        if (ref != null) {
+            cache.put(key, version, Role.URL_FACTORY, ref);
+            return new ServicePair<>(ctx, ref);
+        }
 
-                    if (f != null) {
-                        result = new ServicePair<>(ctx, finderRef, f);
-                        break;
-                    }
-                }
+        Collection<ServiceReference<URLObjectFactoryFinder>> refs = Activator.getURLObjectFactoryFinderServices();
+        for (final ServiceReference<URLObjectFactoryFinder> finderRef : refs) {
+            ServicePair<ObjectFactory> result = findURLObjectFactory(ctx, finderRef, urlScheme, environment);
+            if (result != null) {
+                cache.put(key, version, Role.URL_FINDER, finderRef);
+                return result;
             }
-        } else {
-            result = new ServicePair<>(ctx, ref);
         }
+        cache.put(key, version, Role.NONE, null);
+        return null;
+    }
 
-        return result;
+    private static ServicePair<ObjectFactory> findURLObjectFactory(BundleContext ctx, ServiceReference<URLObjectFactoryFinder> finderRef,
+                                                                   String urlScheme, Hashtable<?, ?> environment)
+            throws NamingException {
+        URLObjectFactoryFinder finder = Activator.getService(ctx, finderRef);
+        if (finder != null) {
+            ObjectFactory f = finder.findFactory(urlScheme, environment);
+            if (f != null) {
+                return new ServicePair<>(ctx, finderRef, f);
+            }
+        }
+        return null;
     }
 
     public static Context getInitialContext(BundleContext context, Hashtable<?, ?> environment)
@@ -134,70 +185,163 @@ public final class ContextHelper {
     public static ContextProvider getContextProvider(BundleContext context,
                                                      Hashtable<?, ?> environment)
             throws NamingException {
+        ResolutionCache cache = Activator.getResolutionCache(context);
+        Object key = ResolutionCache.key(ContextProvider.class, environment);
+        long version = Activator.getServicesVersion();
+
+        Resolution resolution = cache.get(key, version);
+        if (resolution != null) {
+            ContextProvider provider = getContextProvider(context, environment, resolution);
+            if (provider != null || resolution.getRole() == Role.NONE) {
+                resolutionHits.incrementAndGet();
+                return provider;
+            }
+        }
+
+        resolutionMisses.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            return resolveContextProvider(context, environment, cache, key, version);
+        } finally {
+            resolutionTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ContextProvider getContextProvider(BundleContext context, Hashtable<?, ?> environment, Resolution resolution)
+            throws NamingException {
+        switch (resolution.getRole()) {
+            case BUILDER:
+                return getInitialContextUsingBuilder(context,
+                        (ServiceReference<InitialContextFactoryBuilder>) resolution.getReference(), environment);
+            case FACTORY:
+                ServiceReference<InitialContextFactory> ref = (ServiceReference<InitialContextFactory>) resolution.getReference();
+                if (environment.get(Context.INITIAL_CONTEXT_FACTORY) == null) {
+                    return getInitialContextUsingFactoryService(context, ref, environment);
+                }
+                return getInitialContextUsingFactory(context, ref, environment);
+            default:
+                return null;
+        }
+    }
 
-        ContextProvider provider = null;
+    private static ContextProvider resolveContextProvider(BundleContext context, Hashtable<?, ?> environment,
+                                                          ResolutionCache cache, Object key, long version)
+            throws NamingException {
         String contextFactoryClass = (String) environment.get(Context.INITIAL_CONTEXT_FACTORY);
         if (contextFactoryClass == null) {
             // 1. get ContextFactory using builder
-            provider = getInitialContextUsingBuilder(context, environment)
+            ContextProvider provider = getInitialContextUsingBuilder(context, environment, cache, key, version);
+            if (provider != null) {
+                return provider;
+            }
             // 2. lookup all ContextFactory services
-                    .orElseGet(() -> getInitialContextUsingFactoryServices(context, environment)
-                            .orElse(null));
+            for (ServiceReference<InitialContextFactory> reference : Activator.getInitialContextFactoryServices()) {
+                provider = getInitialContextUsingFactoryService(context, reference, environment);
+                if (provider != null) {
+                    cache.put(key, version, Role.FACTORY, reference);
+                    return provider;
+                }
+            }
+            cache.put(key, version, Role.NONE, null);
+            return null;
 
         } else {
             // 1. lookup using specified InitialContextFactory
             ServiceReference<InitialContextFactory> ref = Activator.getInitialContextFactory(contextFactoryClass);
             if (ref != null) {
-                InitialContextFactory factory = Activator.getService(context, ref);
-                if (factory != null) {
-                    Context initialContext = factory.getInitialContext(environment);
-                    provider = new SingleContextProvider(context, ref, initialContext);
+                ContextProvider provider = getInitialContextUsingFactory(context, ref, environment);
+                if (provider != null) {
+                    cache.put(key, version, Role.FACTORY, ref);
+                    return provider;
                 }
             }
 
             // 2. get ContextFactory using builder
+            ContextProvider provider = getInitialContextUsingBuilder(context, environment, cache, key, version);
             if (provider == null) {
-                provider = getInitialContextUsingBuilder(context, environment).orElse(null);
+                cache.put(key, version, Role.NONE, null);
             }
+            return provider;
         }
+    }
 
-        return provider;
+    private static ContextProvider getInitialContextUsingFactory(BundleContext context, ServiceReference<InitialContextFactory> ref,
+                                                                 Hashtable<?, ?> environment)
+            throws NamingException {
+        InitialContextFactory factory = Activator.getService(context, ref);
+        if (factory != null) {
+            Context initialContext = factory.getInitialContext(environment);
+            return new SingleContextProvider(context, ref, initialContext);
+        }
+        return null;
     }
 
-    private static Optional<ContextProvider> getInitialContextUsingFactoryServices(BundleContext context, Hashtable<?, ?> environment) {
-        for (ServiceReference<InitialContextFactory> reference : Activator.getInitialContextFactoryServices()) {
-            try {
-                InitialContextFactory factory = Activator.getService(context, reference);
-                Context initialContext = factory.getInitialContext(environment);
-                if (initialContext != null) {
-                    return Optional.of(new SingleContextProvider(context, reference, initialContext));
-                }
-            } catch (NamingException e) {
-                // ignore this, if the builder fails we want to move onto the next one
-                logger.log(Level.FINE, "Exception caught", e);
+    private static ContextProvider getInitialContextUsingFactoryService(BundleContext context, ServiceReference<InitialContextFactory> reference,
+                                                                        Hashtable<?, ?> environment) {
+        try {
+            InitialContextFactory factory = Activator.getService(context, reference);
+            Context initialContext = factory.getInitialContext(environment);
+            if (initialContext != null) {
+                return new SingleContextProvider(context, reference, initialContext);
             }
+        } catch (NamingException e) {
+            // ignore this, if the builder fails we want to move onto the next one
+            logger.log(Level.FINE, "Exception caught", e);
         }
-        return Optional.empty();
+        return null;
     }
 
-    private static Optional<ContextProvider> getInitialContextUsingBuilder(BundleContext context,
-                                                                           Hashtable<?, ?> environment) {
+    private static ContextProvider getInitialContextUsingBuilder(BundleContext context, Hashtable<?, ?> environment,
+                                                                 ResolutionCache cache, Object key, long version) {
         for (ServiceReference<InitialContextFactoryBuilder> ref : Activator.getInitialContextFactoryBuilderServices()) {
-            InitialContextFactoryBuilder builder = Activator.getService(context, ref);
-            try {
-                InitialContextFactory factory = builder.createInitialContextFactory(environment);
-                if (factory != null) {
-                    return Optional.of(new SingleContextProvider(context, ref, factory.getInitialContext(environment)));
-                }
-            } catch (NamingException ne) {
-                // ignore this, if the builder fails we want to move onto the next one
-                logger.log(Level.FINE, "Exception caught", ne);
-            } catch (NullPointerException npe) {
-                logger.log(Level.SEVERE, "NPE caught in ContextHelper.getInitialContextUsingBuilder. context=" + context + " ref=" + ref);
-                throw npe;
+            ContextProvider provider = getInitialContextUsingBuilder(context, ref, environment);
+            if (provider != null) {
+                cache.put(key, version, Role.BUILDER, ref);
+                return provider;
+            }
+        }
+        return null;
+    }
+
+    private static ContextProvider getInitialContextUsingBuilder(BundleContext context, ServiceReference<InitialContextFactoryBuilder> ref,
+                                                                 Hashtable<?, ?> environment) {
+        InitialContextFactoryBuilder builder = Activator.getService(context, ref);
+        try {
+            InitialContextFactory factory = builder.createInitialContextFactory(environment);
+            if (factory != null) {
+                return new SingleContextProvider(context, ref, factory.getInitialContext(environment));
             }
+        } catch (NamingException ne) {
+            // ignore this, if the builder fails we want to move onto the next one
+            logger.log(Level.FINE, "Exception caught", ne);
+        } catch (NullPointerException npe) {
+            logger.log(Level.SEVERE, "NPE caught in ContextHelper.getInitialContextUsingBuilder. context=" + context + " ref=" + ref);
+            throw npe;
         }
-        return Optional.empty();
+        return null;
+    }
+
+    /**
+     * @return the number of provider and URL object factory lookups answered by the services
+     * resolved for an earlier lookup of the same bundle with the same environment
+     */
+    public static long getResolutionHits() {
+        return resolutionHits.get();
+    }
+
+    /**
+     * @return the number of provider and URL object factory lookups which went through the services
+     */
+    public static long getResolutionMisses() {
+        return resolutionMisses.get();
+    }
+
+    /**
+     * @return the total time spent by the lookups which went through the services, in nanoseconds
+     */
+    public static long getResolutionTime() {
+        return resolutionTime.get();
     }
 
 }
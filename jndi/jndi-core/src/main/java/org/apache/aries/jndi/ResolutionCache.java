@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.jndi;
+
+import org.osgi.framework.ServiceReference;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The services chosen by ContextHelper for the lookups of a bundle. A lookup is
+ * identified by its kind, such as a URL scheme, and a copy of its environment.
+ * Each resolution records the version of the JNDI services it was made with, and
+ * is ignored once a service event has changed this version.
+ */
+public class ResolutionCache {
+
+    /**
+     * The role of a cached service
+     */
+    public enum Role {
+        /** An InitialContextFactoryBuilder */
+        BUILDER,
+        /** An InitialContextFactory */
+        FACTORY,
+        /** An ObjectFactory registered for a URL scheme */
+        URL_FACTORY,
+        /** A URLObjectFactoryFinder */
+        URL_FINDER,
+        /** No service provides the lookup */
+        NONE
+    }
+
+    private static final int MAX_RESOLUTIONS = 32;
+
+    /** Guarded by itself, the least recently used resolution comes first */
+    private final Map<Object, Resolution> resolutions = new LinkedHashMap<Object, Resolution>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, Resolution> eldest) {
+            return size() > MAX_RESOLUTIONS;
+        }
+    };
+
+    public static Object key(Object kind, Hashtable<?, ?> environment) {
+        return Arrays.asList(kind, environment == null ? null : new HashMap<Object, Object>(environment));
+    }
+
+    /**
+     * @return the resolution made for the key with the given services version, or null
+     */
+    public Resolution get(Object key, long version) {
+        Resolution resolution;
+        synchronized (resolutions) {
+            resolution = resolutions.get(key);
+        }
+        return resolution != null && resolution.version == version ? resolution : null;
+    }
+
+    public void put(Object key, long version, Role role, ServiceReference<?> reference) {
+        synchronized (resolutions) {
+            resolutions.put(key, new Resolution(version, role, reference));
+        }
+    }
+
+    public static final class Resolution {
+        private final long version;
+        private final Role role;
+        private final ServiceReference<?> reference;
+
+        Resolution(long version, Role role, ServiceReference<?> reference) {
+            this.version = version;
+            this.role = role;
+            this.reference = reference;
+        }
+
+        public Role getRole() {
+            return role;
+        }
+
+        public ServiceReference<?> getReference() {
+            return reference;
+        }
+    }
+}
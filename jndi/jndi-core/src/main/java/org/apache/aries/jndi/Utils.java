@@ -33,6 +33,8 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -40,6 +42,11 @@ import java.util.function.Supplier;
  */
 public final class Utils {
 
+    /**
+     * The bundle contexts found for class loaders, cleared by the activator on bundle events
+     */
+    private static final ConcurrentMap<ClassLoader, BundleContext> BUNDLE_CONTEXTS = new ConcurrentHashMap<>();
+
     /**
      * Ensure no one constructs us
      */
@@ -69,27 +76,28 @@ public final class Utils {
         }
 
         if (result == null) {
-            StackFinder finder = new StackFinder();
-            Class<?>[] classStack = finder.getClassContext();
+            // the first caller of the outermost naming class with a bundle context
+            result = CallStack.findCaller(namingClass, c -> getBundleContext(c.getClassLoader()));
+        }
 
-            // working from the root of the stack look for the first instance in the stack of this class
-            int i = classStack.length - 1;
-            for (; i >= 0; i--) {
-                if (namingClass.isAssignableFrom(classStack[i])) {
-                    break;
-                }
-            }
+        return result;
+    }
 
-            // then go to the parent of the namingClass down the stack until we find a BundleContext
-            for (i++; i < classStack.length && result == null; i++) {
-                result = getBundleContext(classStack[i].getClassLoader());
+    private static BundleContext getBundleContext(ClassLoader cl) {
+        if (cl == null) {
+            return null;
+        }
+        BundleContext result = BUNDLE_CONTEXTS.get(cl);
+        if (result == null) {
+            result = findBundleContext(cl);
+            if (result != null) {
+                BUNDLE_CONTEXTS.put(cl, result);
             }
         }
-
         return result;
     }
 
-    private static BundleContext getBundleContext(ClassLoader cl2) {
+    private static BundleContext findBundleContext(ClassLoader cl2) {
         ClassLoader cl = cl2;
         BundleContext result = null;
         while (result == null && cl != null) {
@@ -112,6 +120,15 @@ public final class Utils {
         return result;
     }
 
+    /**
+     * Forgets the bundle contexts found for class loaders. The contexts of stopped bundles
+     * are no longer valid, and the class loaders of updated or uninstalled bundles must
+     * not be retained.
+     */
+    public static void clearBundleContextCache() {
+        BUNDLE_CONTEXTS.clear();
+    }
+
     public static String getSystemProperty(final String key, final String defaultValue) {
         return doPrivileged(() -> System.getProperty(key, defaultValue));
     }
@@ -159,12 +176,6 @@ public final class Utils {
         }
     }
 
-    private static class StackFinder extends SecurityManager {
-        public Class<?>[] getClassContext() {
-            return super.getClassContext();
-        }
-    }
-
     public static <U, V> Iterator<V> map(Iterator<U> iterator, Function<U, V> mapper) {
         return new MappedIterator<>(iterator, mapper);
     }
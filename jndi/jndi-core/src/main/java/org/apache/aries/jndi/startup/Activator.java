@@ -51,6 +51,7 @@ public class Activator implements BundleActivator {
     private static volatile Activator instance;
 
     private BundleTracker<ServiceCache> bundleServiceCaches;
+    private SynchronousBundleListener bundleContextCacheCleaner;
 
     private CachingServiceTracker<InitialContextFactoryBuilder> icfBuilders;
     private CachingServiceTracker<URLObjectFactoryFinder> urlObjectFactoryFinders;
@@ -85,6 +86,25 @@ public class Activator implements BundleActivator {
         return instance.initialContextFactories.find(interfaceName);
     }
 
+    /**
+     * @return a number which changes whenever an InitialContextFactoryBuilder, InitialContextFactory,
+     * URLObjectFactoryFinder or URL ObjectFactory service is registered, modified or unregistered
+     */
+    public static long getServicesVersion() {
+        Activator a = instance;
+        return (long) a.icfBuilders.getTrackingCount()
+                + a.initialContextFactories.getTrackingCount()
+                + a.urlObjectFactoryFinders.getTrackingCount()
+                + a.objectFactories.getTrackingCount();
+    }
+
+    /**
+     * @return the services chosen for the lookups of the bundle of the context
+     */
+    public static ResolutionCache getResolutionCache(BundleContext context) {
+        return getServiceCache(context).resolutions;
+    }
+
     public static AugmenterInvoker getAugmenterInvoker() {
         return instance.augmenterInvoker;
     }
@@ -135,6 +155,22 @@ public class Activator implements BundleActivator {
         };
         bundleServiceCaches.open();
 
+        // the bundle contexts found by Utils must not outlive their bundles
+        bundleContextCacheCleaner = event -> {
+            switch (event.getType()) {
+                case BundleEvent.STOPPING:
+                case BundleEvent.STOPPED:
+                case BundleEvent.UPDATED:
+                case BundleEvent.UNRESOLVED:
+                case BundleEvent.UNINSTALLED:
+                    Utils.clearBundleContextCache();
+                    break;
+                default:
+                    break;
+            }
+        };
+        context.addBundleListener(bundleContextCacheCleaner);
+
         initialContextFactories = new CachingServiceTracker<>(context, InitialContextFactory.class, Activator::getInitialContextFactoryInterfaces);
         objectFactories = new CachingServiceTracker<>(context, ObjectFactory.class, Activator::getObjectFactorySchemes);
         icfBuilders = new CachingServiceTracker<>(context, InitialContextFactoryBuilder.class);
@@ -207,6 +243,8 @@ public class Activator implements BundleActivator {
 
     public void stop(BundleContext context) {
         bundleServiceCaches.close();
+        context.removeBundleListener(bundleContextCacheCleaner);
+        Utils.clearBundleContextCache();
 
         /*
          * Try to reset the InitialContextFactoryBuilder and ObjectFactoryBuilder
@@ -315,6 +353,7 @@ public class Activator implements BundleActivator {
         private final BundleContext context;
         private final Map<ServiceReference<?>, Object> cache = new ConcurrentHashMap<>();
         private final Map<Class<?>, CachingServiceTracker<?>> trackers = new ConcurrentHashMap<>();
+        private final ResolutionCache resolutions = new ResolutionCache();
 
         ServiceCache(BundleContext context) {
             this.context = context;
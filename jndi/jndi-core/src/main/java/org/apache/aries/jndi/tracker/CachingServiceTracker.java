@@ -30,6 +30,8 @@ public class CachingServiceTracker<S> extends ServiceTracker<S, ServiceReference
 
     /** The cached references */
     private volatile Map<String, ServiceReference<S>> cache;
+    /** The references sorted by ranking, with the tracking count they were obtained at */
+    private volatile Snapshot<S> references;
     /** The funtion to obtain the identifiers */
     private final Function<ServiceReference<S>, Iterable<String>> properties;
 
@@ -62,13 +64,23 @@ public class CachingServiceTracker<S> extends ServiceTracker<S, ServiceReference
     }
 
     public List<ServiceReference<S>> getReferences() {
-        ServiceReference<S>[] refs = Utils.doPrivileged(this::getServiceReferences);
-        if (refs != null) {
-            Arrays.sort(refs, Comparator.reverseOrder());
-            return Arrays.asList(refs);
-        } else {
-            return Collections.emptyList();
+        // addingService is called before the service is tracked, so the tracking
+        // count tells whether the sorted references are still current
+        int trackingCount = getTrackingCount();
+        Snapshot<S> s = references;
+        if (s == null || s.trackingCount != trackingCount) {
+            ServiceReference<S>[] refs = Utils.doPrivileged(this::getServiceReferences);
+            List<ServiceReference<S>> sorted;
+            if (refs != null) {
+                Arrays.sort(refs, Comparator.reverseOrder());
+                sorted = Collections.unmodifiableList(Arrays.asList(refs));
+            } else {
+                sorted = Collections.emptyList();
+            }
+            s = new Snapshot<>(trackingCount, sorted);
+            references = s;
         }
+        return s.references;
     }
 
     public synchronized ServiceReference<S> addingService(ServiceReference<S> reference) {
@@ -83,4 +95,14 @@ public class CachingServiceTracker<S> extends ServiceTracker<S, ServiceReference
     public void modifiedService(ServiceReference<S> reference, ServiceReference<S> service) {
         cache = null;
     }
+
+    private static final class Snapshot<S> {
+        final int trackingCount;
+        final List<ServiceReference<S>> references;
+
+        Snapshot(int trackingCount, List<ServiceReference<S>> references) {
+            this.trackingCount = trackingCount;
+            this.references = references;
+        }
+    }
 }
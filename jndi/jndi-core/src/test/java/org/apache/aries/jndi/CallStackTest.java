@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.jndi;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class CallStackTest {
+
+    interface Naming {
+    }
+
+    static class InnerNaming implements Naming {
+    }
+
+    static class OuterNaming implements Naming {
+    }
+
+    static class A {
+    }
+
+    static class B {
+    }
+
+    static class C {
+    }
+
+    /** The classes given to the resolver, in order */
+    private final List<Class<?>> resolved = new ArrayList<>();
+    /** The results of the resolver, null for the other classes */
+    private final Map<Class<?>, String> results = new HashMap<>();
+
+    @Test
+    public void testOutermostNamingFrameWins() {
+        results.put(A.class, "a");
+        results.put(B.class, "b");
+        results.put(C.class, "c");
+
+        assertEquals("c", findCaller(A.class, InnerNaming.class, B.class, OuterNaming.class, C.class, A.class));
+        // the fallback is resolved until a naming frame is found, and the classes
+        // after a result are not resolved
+        assertEquals(Arrays.asList(A.class, B.class, C.class), resolved);
+    }
+
+    @Test
+    public void testResultAfterInnerNamingFrameDiscarded() {
+        results.put(B.class, "b");
+
+        assertNull(findCaller(InnerNaming.class, B.class, OuterNaming.class, C.class, A.class));
+        assertEquals(Arrays.asList(B.class, C.class, A.class), resolved);
+    }
+
+    @Test
+    public void testFirstResultAfterNamingFrame() {
+        results.put(B.class, "b");
+        results.put(C.class, "c");
+
+        assertEquals("b", findCaller(OuterNaming.class, A.class, B.class, C.class));
+        assertEquals(Arrays.asList(A.class, B.class), resolved);
+    }
+
+    @Test
+    public void testFallbackWithoutNamingFrame() {
+        results.put(B.class, "b");
+        results.put(C.class, "c");
+
+        assertEquals("b", findCaller(A.class, B.class, C.class));
+        assertEquals(Arrays.asList(A.class, B.class), resolved);
+
+        resolved.clear();
+        assertNull(findCaller(A.class));
+        assertNull(findCaller());
+    }
+
+    @Test
+    public void testFindCallerOnStack() {
+        // this test is the naming class, and the stack above it belongs to the test runner
+        Class<?> caller = CallStack.findCaller(CallStackTest.class, c -> c == CallStack.class ? null : c);
+        assertNotNull(caller);
+        assertFalse(CallStackTest.class.isAssignableFrom(caller));
+
+        // without a frame of the naming class, the most recent frame with a result wins
+        assertSame(CallStackTest.class, CallStack.findCaller(Naming.class, c -> c == CallStackTest.class ? c : null));
+    }
+
+    private String findCaller(Class<?>... stack) {
+        Function<Class<?>, String> resolver = c -> {
+            resolved.add(c);
+            return results.get(c);
+        };
+        return CallStack.findCaller(Arrays.<Class<?>>asList(stack).iterator(), Naming.class, resolver);
+    }
+}
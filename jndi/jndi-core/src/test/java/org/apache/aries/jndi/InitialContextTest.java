@@ -27,6 +27,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.jndi.JNDIConstants;
 
 import javax.naming.*;
@@ -37,8 +40,11 @@ import javax.naming.ldap.LdapContext;
 import javax.naming.spi.InitialContextFactory;
 import javax.naming.spi.InitialContextFactoryBuilder;
 import javax.naming.spi.ObjectFactory;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -202,6 +208,121 @@ public class InitialContextTest {
         }
     }
 
+    @Test
+    public void testRepeatedLookupReusesResolution() throws Exception {
+        registerBuilder(dummyContext("one"), 0);
+        long hits = ContextHelper.getResolutionHits();
+        long misses = ContextHelper.getResolutionMisses();
+        long time = ContextHelper.getResolutionTime();
+
+        assertEquals("one", initialContext().lookup("something"));
+        assertEquals(hits, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+        assertTrue(ContextHelper.getResolutionTime() > time);
+
+        time = ContextHelper.getResolutionTime();
+        assertEquals("one", initialContext().lookup("something"));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+        assertEquals(time, ContextHelper.getResolutionTime());
+    }
+
+    @Test
+    public void testHigherRankedBuilderInvalidatesResolution() throws Exception {
+        registerBuilder(dummyContext("one"), 0);
+        assertEquals("one", initialContext().lookup("something"));
+
+        long hits = ContextHelper.getResolutionHits();
+        long misses = ContextHelper.getResolutionMisses();
+        registerBuilder(dummyContext("two"), 10);
+        assertEquals("two", initialContext().lookup("something"));
+        assertEquals(hits, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+    }
+
+    @Test
+    public void testHigherRankedFactoryInvalidatesResolution() throws Exception {
+        registerFactory(dummyContext("one"), 0);
+        assertEquals("one", initialContext().lookup("something"));
+        assertEquals("one", initialContext().lookup("something"));
+
+        long hits = ContextHelper.getResolutionHits();
+        long misses = ContextHelper.getResolutionMisses();
+        registerFactory(dummyContext("two"), 10);
+        assertEquals("two", initialContext().lookup("something"));
+        assertEquals(hits, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+    }
+
+    @Test
+    public void testDecliningBuilderFallsBackToResolution() throws Exception {
+        AtomicBoolean enabled = registerBuilder(dummyContext("one"), 10);
+        registerBuilder(dummyContext("two"), 0);
+        assertEquals("one", initialContext().lookup("something"));
+
+        // the services did not change, but the cached builder now declines the environment
+        enabled.set(false);
+        long hits = ContextHelper.getResolutionHits();
+        long misses = ContextHelper.getResolutionMisses();
+        assertEquals("two", initialContext().lookup("something"));
+        assertEquals(hits, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+
+        assertEquals("two", initialContext().lookup("something"));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+    }
+
+    @Test
+    public void testNoProviderResolution() throws Exception {
+        Hashtable<Object, Object> env = new Hashtable<Object, Object>();
+        env.put(JNDIConstants.BUNDLE_CONTEXT, bc);
+        long hits = ContextHelper.getResolutionHits();
+        long misses = ContextHelper.getResolutionMisses();
+
+        assertNull(ContextHelper.getContextProvider(bc, env));
+        assertNull(ContextHelper.getContextProvider(bc, env));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+
+        // another environment is another lookup
+        env.put("some.property", "value");
+        assertNull(ContextHelper.getContextProvider(bc, env));
+        assertEquals(misses + 2, ContextHelper.getResolutionMisses());
+
+        registerFactory(dummyContext("one"), 0);
+        ContextProvider provider = ContextHelper.getContextProvider(bc, env);
+        assertNotNull(provider);
+        assertEquals("one", provider.getContext().lookup("something"));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 3, ContextHelper.getResolutionMisses());
+    }
+
+    @Test
+    public void testSortedBuildersFollowRanking() throws Exception {
+        InitialContextFactoryBuilder builder = Skeleton.newMock(InitialContextFactoryBuilder.class);
+        Properties props = new Properties();
+        props.put(Constants.SERVICE_RANKING, 5);
+        ServiceRegistration<?> reg = bc.registerService(InitialContextFactoryBuilder.class.getName(), builder, (Dictionary) props);
+
+        List<ServiceReference<InitialContextFactoryBuilder>> builders = new ArrayList<>(Activator.getInitialContextFactoryBuilderServices());
+        assertEquals(2, builders.size());
+        assertEquals(reg.getReference(), builders.get(0));
+        // the references are only sorted again once the builders changed
+        assertSame(Activator.getInitialContextFactoryBuilderServices(), Activator.getInitialContextFactoryBuilderServices());
+
+        Collection<ServiceReference<InitialContextFactoryBuilder>> before = Activator.getInitialContextFactoryBuilderServices();
+        props.put(Constants.SERVICE_RANKING, -5);
+        reg.setProperties((Dictionary) props);
+        builders = new ArrayList<>(Activator.getInitialContextFactoryBuilderServices());
+        assertNotSame(before, Activator.getInitialContextFactoryBuilderServices());
+        assertEquals(2, builders.size());
+        assertEquals(reg.getReference(), builders.get(1));
+
+        reg.unregister();
+        assertEquals(1, Activator.getInitialContextFactoryBuilderServices().size());
+    }
+
     /**
      * Create a minimal initial context with just the bundle context in the environment
      * @return
@@ -225,6 +346,37 @@ public class InitialContextTest {
         bc.registerService(ObjectFactory.class.getName(), of, (Dictionary) props);
     }
 
+    /**
+     * Registers a builder whose factories create the given context
+     * @param ctx
+     * @param ranking
+     * @return a flag which makes the builder decline all environments once cleared
+     */
+    private AtomicBoolean registerBuilder(final Context ctx, int ranking) {
+        final AtomicBoolean enabled = new AtomicBoolean(true);
+        InitialContextFactoryBuilder builder = new InitialContextFactoryBuilder() {
+            public InitialContextFactory createInitialContextFactory(Hashtable<?, ?> environment) {
+                return enabled.get() ? env -> ctx : null;
+            }
+        };
+        Properties props = new Properties();
+        props.put(Constants.SERVICE_RANKING, ranking);
+        bc.registerService(InitialContextFactoryBuilder.class.getName(), builder, (Dictionary) props);
+        return enabled;
+    }
+
+    /**
+     * Registers an InitialContextFactory creating the given context
+     * @param ctx
+     * @param ranking
+     */
+    private void registerFactory(final Context ctx, int ranking) {
+        InitialContextFactory factory = env -> ctx;
+        Properties props = new Properties();
+        props.put(Constants.SERVICE_RANKING, ranking);
+        bc.registerService(InitialContextFactory.class.getName(), factory, (Dictionary) props);
+    }
+
     /**
      * Creates a context that always returns the given object
      * @param toReturn
@@ -27,6 +27,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.service.jndi.JNDIConstants;
 
 import javax.naming.Context;
@@ -38,6 +39,7 @@ import javax.naming.spi.ObjectFactory;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.*;
 
@@ -198,6 +200,98 @@ public class ObjectFactoryTest {
         env.remove(Context.OBJECT_FACTORIES);
     }
 
+    @Test
+    public void testURLFactoryResolutionReused() throws Exception {
+        registerURLObjectFactory("Test object", "wibble", 0);
+        long hits = ContextHelper.getResolutionHits();
+        long misses = ContextHelper.getResolutionMisses();
+
+        assertEquals("Test object", NamingManager.getObjectInstance(urlReference("wibble"), null, null, env));
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+        assertEquals("Test object", NamingManager.getObjectInstance(urlReference("wibble"), null, null, env));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+
+        // the factory of a higher ranking is used once registered
+        registerURLObjectFactory("Other object", "wibble", 10);
+        assertEquals("Other object", NamingManager.getObjectInstance(urlReference("wibble"), null, null, env));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 2, ContextHelper.getResolutionMisses());
+    }
+
+    @Test
+    public void testNoURLFactoryResolution() throws Exception {
+        long hits = ContextHelper.getResolutionHits();
+        long misses = ContextHelper.getResolutionMisses();
+        long time = ContextHelper.getResolutionTime();
+
+        Reference ref = urlReference("wibble");
+        assertSame(ref, NamingManager.getObjectInstance(ref, null, null, env));
+        assertTrue(ContextHelper.getResolutionTime() > time);
+        time = ContextHelper.getResolutionTime();
+        assertSame(ref, NamingManager.getObjectInstance(ref, null, null, env));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+        assertEquals(time, ContextHelper.getResolutionTime());
+
+        registerURLObjectFactory("Test object", "wibble", 0);
+        assertEquals("Test object", NamingManager.getObjectInstance(ref, null, null, env));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 2, ContextHelper.getResolutionMisses());
+    }
+
+    @Test
+    public void testDecliningURLObjectFactoryFinderFallsBack() throws Exception {
+        AtomicBoolean enabled = registerURLObjectFactoryFinder("Test object", 10);
+        registerURLObjectFactoryFinder("Other object", 0);
+        assertEquals("Test object", NamingManager.getObjectInstance(urlReference("wibble"), null, null, env));
+
+        // the services did not change, but the cached finder now declines the scheme
+        enabled.set(false);
+        long hits = ContextHelper.getResolutionHits();
+        long misses = ContextHelper.getResolutionMisses();
+        assertEquals("Other object", NamingManager.getObjectInstance(urlReference("wibble"), null, null, env));
+        assertEquals(hits, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+
+        assertEquals("Other object", NamingManager.getObjectInstance(urlReference("wibble"), null, null, env));
+        assertEquals(hits + 1, ContextHelper.getResolutionHits());
+        assertEquals(misses + 1, ContextHelper.getResolutionMisses());
+    }
+
+    private static Reference urlReference(String url) {
+        Reference ref = new Reference(null);
+        ref.add(new StringRefAddr("URL", url));
+        return ref;
+    }
+
+    private void registerURLObjectFactory(final Object result, String scheme, int ranking) {
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put(JNDIConstants.JNDI_URLSCHEME, scheme);
+        props.put(Constants.SERVICE_RANKING, ranking);
+        bc.registerService(ObjectFactory.class.getName(), new ObjectFactory() {
+            public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable<?, ?> environment) {
+                return result;
+            }
+        }, props);
+    }
+
+    /**
+     * @return a flag which makes the finder decline all schemes once cleared
+     */
+    private AtomicBoolean registerURLObjectFactoryFinder(final Object result, int ranking) {
+        final AtomicBoolean enabled = new AtomicBoolean(true);
+        URLObjectFactoryFinder finder = new URLObjectFactoryFinder() {
+            public ObjectFactory findFactory(String url, Hashtable<?, ?> environment) {
+                return enabled.get() ? (obj, name, nameCtx, environment1) -> result : null;
+            }
+        };
+        Hashtable<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_RANKING, ranking);
+        bc.registerService(URLObjectFactoryFinder.class.getName(), finder, props);
+        return enabled;
+    }
+
     public static class DummyObjectFactory implements ObjectFactory {
 
         public Object getObjectInstance(Object obj, Name name, Context nameCtx,
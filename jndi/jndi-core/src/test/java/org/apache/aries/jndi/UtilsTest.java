@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.jndi;
+
+import org.apache.aries.jndi.startup.Activator;
+import org.apache.aries.mocks.BundleContextMock;
+import org.apache.aries.unittest.mocks.MethodCall;
+import org.apache.aries.unittest.mocks.Skeleton;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.BundleReference;
+
+import javax.naming.InitialContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UtilsTest {
+    private Activator activator;
+    private BundleContext bc;
+    private final List<BundleListener> bundleListeners = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        BundleContextMock mock = new BundleContextMock();
+        mock.addBundle(mock.getBundle());
+        bc = Skeleton.newMock(mock, BundleContext.class);
+        Skeleton.getSkeleton(bc).registerMethodCallHandler(
+                new MethodCall(BundleContext.class, "addBundleListener", BundleListener.class),
+                (call, skeleton) -> bundleListeners.add((BundleListener) call.getArguments()[0]));
+        activator = new Activator();
+        activator.start(bc);
+    }
+
+    @After
+    public void teardown() {
+        activator.stop(bc);
+        BundleContextMock.clear();
+    }
+
+    @Test
+    public void testBundleContextCacheCleared() {
+        BundleContext first = Skeleton.newMock(BundleContext.class);
+        BundleContext second = Skeleton.newMock(BundleContext.class);
+        Bundle bundle = Skeleton.newMock(Bundle.class);
+        MethodCall getBundleContext = new MethodCall(Bundle.class, "getBundleContext");
+        Skeleton.getSkeleton(bundle).setReturnValue(getBundleContext, first);
+        BundleListener cleaner = bundleListeners.get(0);
+
+        ClassLoader loader = new BundleClassLoader(bundle);
+        assertSame(first, getBundleContext(loader));
+
+        for (int type : new int[] {BundleEvent.STOPPING, BundleEvent.STOPPED, BundleEvent.UPDATED,
+                BundleEvent.UNRESOLVED, BundleEvent.UNINSTALLED}) {
+            BundleContext previous = getBundleContext(loader);
+            BundleContext next = previous == first ? second : first;
+            Skeleton.getSkeleton(bundle).setReturnValue(getBundleContext, next);
+            // the context found for the class loader is cached
+            assertSame(previous, getBundleContext(loader));
+
+            cleaner.bundleChanged(new BundleEvent(type, bundle));
+            assertSame("event " + type, next, getBundleContext(loader));
+        }
+
+        for (int type : new int[] {BundleEvent.INSTALLED, BundleEvent.RESOLVED, BundleEvent.STARTING,
+                BundleEvent.STARTED, BundleEvent.LAZY_ACTIVATION}) {
+            BundleContext previous = getBundleContext(loader);
+            Skeleton.getSkeleton(bundle).setReturnValue(getBundleContext, previous == first ? second : first);
+            cleaner.bundleChanged(new BundleEvent(type, bundle));
+            assertSame("event " + type, previous, getBundleContext(loader));
+        }
+    }
+
+    private static BundleContext getBundleContext(ClassLoader loader) {
+        Thread thread = Thread.currentThread();
+        ClassLoader tccl = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            return Utils.getBundleContext(Collections.emptyMap(), InitialContext.class);
+        } finally {
+            thread.setContextClassLoader(tccl);
+        }
+    }
+
+    private static final class BundleClassLoader extends ClassLoader implements BundleReference {
+        private final Bundle bundle;
+
+        BundleClassLoader(Bundle bundle) {
+            super(null);
+            this.bundle = bundle;
+        }
+
+        public Bundle getBundle() {
+            return bundle;
+        }
+    }
+}
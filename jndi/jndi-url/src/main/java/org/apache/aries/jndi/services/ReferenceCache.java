@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.jndi.services;
+
+import org.osgi.framework.*;
+import org.osgi.util.tracker.ServiceTracker;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the services matching the lookups of each bundle, so that repeating a
+ * lookup does not parse its filter nor query the service registry. A tracker
+ * only sorts its references again once its services have changed.
+ */
+final class ReferenceCache {
+
+    /**
+     * Beyond this number of trackers the least recently used one is closed
+     */
+    private static final int MAX_TRACKERS = 1024;
+
+    /** Guarded by itself, the least recently used tracker comes first */
+    private final Map<LookupKey, LookupTracker> trackers = new LinkedHashMap<>(16, 0.75f, true);
+    /** Called with the context of a new tracker, so that it can be removed when its bundle stops */
+    private final Consumer<BundleContext> trackerAdded;
+
+    ReferenceCache(Consumer<BundleContext> trackerAdded) {
+        this.trackerAdded = trackerAdded;
+    }
+
+    /**
+     * @return the references the bundle context would get for the interface and filter,
+     * highest ranking first, or null if there are none. The array must not be modified.
+     */
+    ServiceReference<?>[] getReferences(BundleContext ctx, String interfaceName, String filter)
+            throws InvalidSyntaxException {
+        LookupKey key = new LookupKey(ctx.getBundle(), interfaceName, filter);
+        LookupTracker tracker;
+        synchronized (trackers) {
+            tracker = trackers.get(key);
+        }
+        if (tracker == null) {
+            // the trackers are opened and closed outside the lock, as they call the framework
+            tracker = new LookupTracker(ctx, interfaceName, filter);
+            tracker.open();
+            LookupTracker existing;
+            LookupTracker evicted = null;
+            synchronized (trackers) {
+                existing = trackers.putIfAbsent(key, tracker);
+                if (existing == null && trackers.size() > MAX_TRACKERS) {
+                    Iterator<LookupTracker> eldest = trackers.values().iterator();
+                    evicted = eldest.next();
+                    eldest.remove();
+                }
+            }
+            if (evicted != null) {
+                evicted.close();
+            }
+            if (existing != null) {
+                tracker.close();
+                tracker = existing;
+            } else {
+                trackerAdded.accept(ctx);
+            }
+        }
+        return tracker.getSortedReferences();
+    }
+
+    /**
+     * Closes the trackers of a bundle, whose context is no longer valid
+     */
+    void remove(Bundle bundle) {
+        List<LookupTracker> removed = new ArrayList<>();
+        synchronized (trackers) {
+            trackers.entrySet().removeIf(e -> {
+                if (e.getKey().bundle == bundle) {
+                    removed.add(e.getValue());
+                    return true;
+                }
+                return false;
+            });
+        }
+        removed.forEach(LookupTracker::close);
+    }
+
+    void clear() {
+        List<LookupTracker> removed;
+        synchronized (trackers) {
+            removed = new ArrayList<>(trackers.values());
+            trackers.clear();
+        }
+        removed.forEach(LookupTracker::close);
+    }
+
+    private static final class LookupKey {
+        private final Bundle bundle;
+        private final String interfaceName;
+        private final String filter;
+        private final int hash;
+
+        LookupKey(Bundle bundle, String interfaceName, String filter) {
+            this.bundle = bundle;
+            this.interfaceName = interfaceName;
+            this.filter = filter;
+            hash = (System.identityHashCode(bundle) * 31 + Objects.hashCode(interfaceName)) * 31 + Objects.hashCode(filter);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            if (other == this) return true;
+            if (!(other instanceof LookupKey)) return false;
+            LookupKey otherKey = (LookupKey) other;
+            return otherKey.bundle == bundle
+                    && Objects.equals(otherKey.interfaceName, interfaceName)
+                    && Objects.equals(otherKey.filter, filter);
+        }
+    }
+
+    private static final class LookupTracker extends ServiceTracker<Object, Object> {
+        private final Bundle bundle;
+        private final String interfaceName;
+        /** The sorted references, with the tracking count they were obtained at */
+        private volatile Snapshot snapshot;
+
+        LookupTracker(BundleContext ctx, String interfaceName, String filter) throws InvalidSyntaxException {
+            super(ctx, createFilter(interfaceName, filter), null);
+            this.bundle = ctx.getBundle();
+            this.interfaceName = interfaceName;
+        }
+
+        private static Filter createFilter(String interfaceName, String filter) throws InvalidSyntaxException {
+            String filterString;
+            if (interfaceName == null) {
+                filterString = filter == null ? "(" + Constants.OBJECTCLASS + "=*)" : filter;
+            } else if (filter == null) {
+                filterString = '(' + Constants.OBJECTCLASS + '=' + interfaceName + ')';
+            } else {
+                filterString = "(&(" + Constants.OBJECTCLASS + '=' + interfaceName + ')' + filter + ')';
+            }
+            return FrameworkUtil.createFilter(filterString);
+        }
+
+        @Override
+        public Object addingService(ServiceReference<Object> reference) {
+            // the services are obtained by the lookups
+            return reference;
+        }
+
+        @Override
+        public void removedService(ServiceReference<Object> reference, Object service) {
+        }
+
+        ServiceReference<?>[] getSortedReferences() throws InvalidSyntaxException {
+            // addingService is called before the service is tracked, so the
+            // tracking count tells whether the snapshot is still current
+            int trackingCount = getTrackingCount();
+            if (trackingCount < 0) {
+                // closed by an eviction during the lookup
+                return sort(context.getServiceReferences((String) null, filter.toString()));
+            }
+            Snapshot s = snapshot;
+            if (s == null || s.trackingCount != trackingCount) {
+                s = new Snapshot(trackingCount, sort(getServiceReferences()));
+                snapshot = s;
+            }
+            return s.references;
+        }
+
+        private ServiceReference<?>[] sort(ServiceReference<?>[] tracked) {
+            if (tracked == null) {
+                return null;
+            }
+            List<ServiceReference<?>> refs = new ArrayList<>(tracked.length);
+            for (ServiceReference<?> ref : tracked) {
+                // the registry only returns the services of a class the caller is wired to
+                if (interfaceName == null || ref.isAssignableTo(bundle, interfaceName)) {
+                    refs.add(ref);
+                }
+            }
+            if (refs.isEmpty()) {
+                return null;
+            }
+            // natural order is the exact opposite of the order we desire.
+            refs.sort(Comparator.reverseOrder());
+            return refs.toArray(new ServiceReference<?>[refs.size()]);
+        }
+    }
+
+    private static final class Snapshot {
+        final int trackingCount;
+        final ServiceReference<?>[] references;
+
+        Snapshot(int trackingCount, ServiceReference<?>[] references) {
+            this.trackingCount = trackingCount;
+            this.references = references;
+        }
+    }
+}
@@ -52,6 +52,10 @@ public final class ServiceHelper {
      * A cache of proxies returned to the client
      */
     private static final ConcurrentMap<ServiceKey, WeakReference<Object>> proxyCache = new ConcurrentHashMap<>();
+    /**
+     * The references matching the lookups of each bundle
+     */
+    private static final ReferenceCache referenceCache = new ReferenceCache(ctx -> ServiceHelper.cacheClearoutListener.add(ctx, null));
     private static final CacheClearoutListener cacheClearoutListener = new CacheClearoutListener(proxyCache);
 
     public static Object getService(BundleContext ctx, OsgiName lookupName, String id,
@@ -225,12 +229,9 @@ public final class ServiceHelper {
         ServicePair p = null;
 
         try {
-            ServiceReference<?>[] refs = ctx.getServiceReferences(interface1, filter);
+            ServiceReference<?>[] refs = getReferences(ctx, interface1, filter);
 
             if (refs != null) {
-                // natural order is the exact opposite of the order we desire.
-                Arrays.sort(refs, Comparator.reverseOrder());
-
                 for (ServiceReference<?> ref : refs) {
                     Object service = ctx.getService(ref);
 
@@ -258,22 +259,33 @@ public final class ServiceHelper {
         ServiceReference<?>[] refs;
 
         try {
-            refs = ctx.getServiceReferences(interface1, filter);
+            refs = getReferences(ctx, interface1, filter);
 
-            if (refs == null || refs.length == 0) {
-                refs = ctx.getServiceReferences((String) null, "(" + JNDIConstants.JNDI_SERVICENAME + "="
+            if (refs == null) {
+                refs = getReferences(ctx, null, "(" + JNDIConstants.JNDI_SERVICENAME + "="
                         + serviceName + ')');
             }
         } catch (InvalidSyntaxException e) {
             throw (NamingException) new NamingException(e.getFilter()).initCause(e);
         }
 
-        if (refs != null) {
-            // natural order is the exact opposite of the order we desire.
-            Arrays.sort(refs, Comparator.reverseOrder());
-        }
+        return refs == null ? null : refs.clone();
+    }
 
-        return refs;
+    /**
+     * @return the references matching the interface and filter, highest ranking first, or null.
+     * The array is shared by the lookups and must not be modified.
+     */
+    private static ServiceReference<?>[] getReferences(BundleContext ctx, String interface1, String filter)
+            throws InvalidSyntaxException {
+        return referenceCache.getReferences(ctx, interface1, filter);
+    }
+
+    /**
+     * Closes the trackers of the lookups, when this bundle stops.
+     */
+    public static void close() {
+        referenceCache.clear();
     }
 
     public static Object getService(BundleContext ctx, ServiceReference<?> ref) {
@@ -317,6 +329,7 @@ public final class ServiceHelper {
             if (event.getType() == BundleEvent.STOPPED) {
                 Bundle b = event.getBundle();
                 cache.keySet().removeIf(key -> key.requesting == b);
+                referenceCache.remove(b);
             }
         }
 
@@ -18,6 +18,7 @@
  */
 package org.apache.aries.jndi.url;
 
+import org.apache.aries.jndi.services.ServiceHelper;
 import org.apache.aries.proxy.ProxyManager;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -66,6 +67,7 @@ public class Activator implements BundleActivator {
     @Override
     public void stop(BundleContext context) {
         proxyManager.close();
+        ServiceHelper.close();
         safeUnregisterService(osgiUrlReg);
         safeUnregisterService(blueprintUrlReg);
     }
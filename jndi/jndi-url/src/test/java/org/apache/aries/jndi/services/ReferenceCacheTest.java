@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.jndi.services;
+
+import org.apache.aries.mocks.BundleContextMock;
+import org.apache.aries.unittest.mocks.MethodCall;
+import org.apache.aries.unittest.mocks.Skeleton;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.jndi.JNDIConstants;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ReferenceCacheTest {
+
+    private static final String RUNNABLE = Runnable.class.getName();
+
+    private BundleContext bc;
+    /** The contexts passed to the callback of the cache, once per new tracker */
+    private final List<BundleContext> added = new ArrayList<>();
+    private ReferenceCache cache;
+    /** Closes the trackers of the cache as soon as one is added */
+    private boolean clearOnAdd;
+
+    @Before
+    public void setUp() {
+        BundleContextMock.clear();
+        bc = Skeleton.newMock(new BundleContextMock(), BundleContext.class);
+        cache = new ReferenceCache(ctx -> {
+            added.add(ctx);
+            if (clearOnAdd) {
+                cache.clear();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        cache.clear();
+        ServiceHelper.close();
+        BundleContextMock.clear();
+    }
+
+    @Test
+    public void testRankingOrderAfterModification() throws Exception {
+        ServiceRegistration<?> low = register(bc, RUNNABLE, 0);
+        ServiceRegistration<?> high = register(bc, RUNNABLE, 1);
+
+        ServiceReference<?>[] refs = cache.getReferences(bc, RUNNABLE, null);
+        assertRefs(refs, high, low);
+        // nothing changed, so the references are not sorted again
+        assertSame(refs, cache.getReferences(bc, RUNNABLE, null));
+        assertEquals(1, added.size());
+
+        low.setProperties(properties(2));
+        assertRefs(cache.getReferences(bc, RUNNABLE, null), low, high);
+
+        high.unregister();
+        assertRefs(cache.getReferences(bc, RUNNABLE, null), low);
+        low.unregister();
+        assertNull(cache.getReferences(bc, RUNNABLE, null));
+        assertEquals(1, added.size());
+    }
+
+    @Test
+    public void testServiceNameFallback() throws Exception {
+        Dictionary<String, Object> props = properties(0);
+        props.put(JNDIConstants.JNDI_SERVICENAME, "myService");
+        ServiceRegistration<?> named = bc.registerService(Callable.class.getName(), (Callable<Object>) () -> null, props);
+
+        ServiceReference<?>[] refs = ServiceHelper.getServiceReferences(bc, RUNNABLE, null, "myService", new HashMap<>());
+        assertRefs(refs, named);
+        // the caller gets a copy of the cached array
+        refs[0] = null;
+        assertRefs(ServiceHelper.getServiceReferences(bc, RUNNABLE, null, "myService", new HashMap<>()), named);
+
+        // a service of the interface takes precedence once registered
+        ServiceRegistration<?> runnable = register(bc, RUNNABLE, 0);
+        assertRefs(ServiceHelper.getServiceReferences(bc, RUNNABLE, null, "myService", new HashMap<>()), runnable);
+        assertNull(ServiceHelper.getServiceReferences(bc, RUNNABLE, "(a=b)", "other", new HashMap<>()));
+    }
+
+    @Test
+    public void testIsAssignableToFiltering() throws Exception {
+        // the references of the services marked unwired are not assignable to the caller
+        Skeleton.getSkeleton(bc).registerMethodCallHandler(
+                new MethodCall(BundleContext.class, "getServiceReferences", String.class, String.class),
+                (call, skeleton) -> {
+                    Object[] args = call.getArguments();
+                    ServiceReference<?>[] refs = ((BundleContextMock) skeleton.getTemplateObject())
+                            .getServiceReferences((String) args[0], (String) args[1]);
+                    if (refs != null) {
+                        for (ServiceReference<?> ref : refs) {
+                            if ("true".equals(ref.getProperty("unwired"))) {
+                                Skeleton.getSkeleton(ref).registerMethodCallHandler(
+                                        new MethodCall(ServiceReference.class, "isAssignableTo", Bundle.class, String.class),
+                                        (c, s) -> false);
+                            }
+                        }
+                    }
+                    return refs;
+                });
+        ServiceRegistration<?> wired = register(bc, RUNNABLE, 0);
+        Dictionary<String, Object> props = properties(1);
+        props.put("unwired", "true");
+        ServiceRegistration<?> unwired = bc.registerService(RUNNABLE, (Runnable) () -> {}, props);
+
+        assertRefs(cache.getReferences(bc, RUNNABLE, null), wired);
+        assertNull(cache.getReferences(bc, RUNNABLE, "(unwired=true)"));
+        // a lookup without interface is not filtered
+        assertRefs(cache.getReferences(bc, null, "(" + Constants.OBJECTCLASS + "=" + RUNNABLE + ")"), unwired, wired);
+    }
+
+    @Test
+    public void testEvictionClosesTracker() throws Exception {
+        register(bc, RUNNABLE, 0);
+        for (int i = 0; i < 1024; i++) {
+            cache.getReferences(bc, RUNNABLE, "(id=" + i + ")");
+        }
+        assertEquals(1024, trackers());
+        assertEquals(1024, added.size());
+
+        // the first lookup is now the most recently used
+        cache.getReferences(bc, RUNNABLE, "(id=0)");
+        cache.getReferences(bc, RUNNABLE, "(id=1024)");
+        assertEquals(1025, added.size());
+        assertEquals(1024, trackers());
+
+        cache.getReferences(bc, RUNNABLE, "(id=0)");
+        assertEquals(1025, added.size());
+        cache.getReferences(bc, RUNNABLE, "(id=1)");
+        assertEquals(1026, added.size());
+        assertEquals(1024, trackers());
+    }
+
+    @Test
+    public void testClosedTrackerFallback() throws Exception {
+        ServiceRegistration<?> low = register(bc, RUNNABLE, 0);
+        ServiceRegistration<?> high = register(bc, RUNNABLE, 5);
+        register(bc, Callable.class.getName(), 10);
+
+        // the tracker is closed before the references are read from it
+        clearOnAdd = true;
+        assertRefs(cache.getReferences(bc, RUNNABLE, null), high, low);
+        assertNull(cache.getReferences(bc, RUNNABLE, "(" + Constants.SERVICE_RANKING + ">=6)"));
+        assertEquals(0, trackers());
+        assertEquals(2, added.size());
+    }
+
+    @Test
+    public void testRemoveBundle() throws Exception {
+        BundleContext other = Skeleton.newMock(new BundleContextMock(), BundleContext.class);
+        ServiceRegistration<?> reg = register(bc, RUNNABLE, 0);
+        cache.getReferences(bc, RUNNABLE, null);
+        cache.getReferences(other, RUNNABLE, null);
+        assertEquals(2, trackers());
+
+        cache.remove(bc.getBundle());
+        assertEquals(1, trackers());
+        // the lookups of the other bundle are still cached
+        assertRefs(cache.getReferences(other, RUNNABLE, null), reg);
+        assertEquals(2, added.size());
+        assertRefs(cache.getReferences(bc, RUNNABLE, null), reg);
+        assertEquals(3, added.size());
+    }
+
+    @Test
+    public void testRemoveOnBundleStopped() throws Exception {
+        List<BundleListener> bundleListeners = new ArrayList<>();
+        Skeleton.getSkeleton(bc).registerMethodCallHandler(
+                new MethodCall(BundleContext.class, "addBundleListener", BundleListener.class),
+                (call, skeleton) -> bundleListeners.add((BundleListener) call.getArguments()[0]));
+        register(bc, RUNNABLE, 0);
+
+        ServiceHelper.getServiceReferences(bc, RUNNABLE, null, "myService", new HashMap<>());
+        assertEquals(1, trackers());
+        BundleListener listener = bundleListeners.get(0);
+
+        for (int type : new int[] {BundleEvent.STARTED, BundleEvent.STOPPING, BundleEvent.UPDATED}) {
+            listener.bundleChanged(new BundleEvent(type, bc.getBundle()));
+            assertEquals(1, trackers());
+        }
+        listener.bundleChanged(new BundleEvent(BundleEvent.STOPPED, bc.getBundle()));
+        assertEquals(0, trackers());
+    }
+
+    /**
+     * @return the number of open trackers, each of which has a service listener
+     */
+    private static int trackers() {
+        int trackers = 0;
+        for (ServiceListener listener : BundleContextMock.getServiceListeners()) {
+            if (!(listener instanceof ServiceHelper.CacheClearoutListener)) {
+                trackers++;
+            }
+        }
+        return trackers;
+    }
+
+    private static ServiceRegistration<?> register(BundleContext ctx, String interfaceName, int ranking) {
+        Object service = interfaceName.equals(RUNNABLE) ? (Runnable) () -> {} : (Callable<Object>) () -> null;
+        return ctx.registerService(interfaceName, service, properties(ranking));
+    }
+
+    private static Dictionary<String, Object> properties(int ranking) {
+        Dictionary<String, Object> props = new Hashtable<>();
+        props.put(Constants.SERVICE_RANKING, ranking);
+        return props;
+    }
+
+    private static void assertRefs(ServiceReference<?>[] refs, ServiceRegistration<?>... expected) {
+        ServiceReference<?>[] expectedRefs = new ServiceReference<?>[expected.length];
+        for (int i = 0; i < expected.length; i++) {
+            expectedRefs[i] = expected[i].getReference();
+        }
+        assertArrayEquals(expectedRefs, refs);
+    }
+}
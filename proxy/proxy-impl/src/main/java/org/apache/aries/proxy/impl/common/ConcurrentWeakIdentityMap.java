@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.proxy.impl.common;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent map whose keys are weakly referenced and compared by identity.
+ * Keys must not be null. Lookups never block, entries for collected keys are
+ * purged on updates.
+ * As with a WeakHashMap, values must not hold strong references to their
+ * own key, or the entries will never be collected.
+ */
+public final class ConcurrentWeakIdentityMap<K, V> {
+
+  private final ConcurrentMap<Object, V> map = new ConcurrentHashMap<Object, V>();
+  private final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+
+  public V get(K key) {
+    return map.get(new LookupKey(key));
+  }
+
+  public V putIfAbsent(K key, V value) {
+    purge();
+    return map.putIfAbsent(new WeakKey<K>(key, queue), value);
+  }
+
+  public boolean replace(K key, V oldValue, V newValue) {
+    purge();
+    return map.replace(new LookupKey(key), oldValue, newValue);
+  }
+
+  public boolean remove(K key, V value) {
+    return map.remove(new LookupKey(key), value);
+  }
+
+  public int size() {
+    purge();
+    return map.size();
+  }
+
+  private void purge() {
+    Object ref;
+    while ((ref = queue.poll()) != null) {
+      map.remove(ref);
+    }
+  }
+
+  private interface Key {
+    Object referent();
+  }
+
+  private static final class WeakKey<K> extends WeakReference<K> implements Key {
+    private final int hash;
+
+    WeakKey(K key, ReferenceQueue<K> queue) {
+      super(key, queue);
+      hash = System.identityHashCode(key);
+    }
+
+    public Object referent() {
+      return get();
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      // A cleared key is only equal to itself, so that it can be purged
+      Object referent = get();
+      return referent != null && o instanceof Key && ((Key) o).referent() == referent;
+    }
+  }
+
+  /** Short lived key used for lookups, which avoids creating a weak reference */
+  private static final class LookupKey implements Key {
+    private final Object key;
+
+    LookupKey(Object key) {
+      this.key = key;
+    }
+
+    public Object referent() {
+      return key;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Key && ((Key) o).referent() == key;
+    }
+  }
+}
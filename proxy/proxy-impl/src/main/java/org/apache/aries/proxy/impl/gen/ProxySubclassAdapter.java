@@ -47,9 +47,13 @@ public class ProxySubclassAdapter extends ClassVisitor implements Opcodes
   private static final Type OBJECT_TYPE = Type.getType(Object.class);
   private static final Type METHOD_TYPE = Type.getType(java.lang.reflect.Method.class);
   private static final Type IH_TYPE = Type.getType(InvocationHandler.class);
+  private static final Type CONSTRUCTOR_TYPE = Type.getType(Constructor.class);
+  private static final Type OBJECT_ARRAY_TYPE = Type.getType(Object[].class);
   private static final Type[] NO_ARGS = new Type[] {};
 
   private static final String IH_FIELD = "ih";
+  static final String CONSTRUCTOR_FIELD = "$constructor";
+  static final String FACTORY_METHOD = "$newInstance";
 
   private static Logger LOGGER = LoggerFactory.getLogger(ProxySubclassAdapter.class);
 
@@ -94,8 +98,9 @@ public class ProxySubclassAdapter extends ClassVisitor implements Opcodes
    * instantiates an instance of the superclass 6. The constructor method sets
    * the invocation handler so the invoke method can be called from all the
    * subsequently rewritten methods 7. Add a getInvocationHandler() method 8.
-   * store a static Class object of the superclass so we can reflectively find
-   * methods later
+   * Add a static $newInstance(InvocationHandler) factory method which creates
+   * an instance without running the superclass constructor 9. store a static
+   * Class object of the superclass so we can reflectively find methods later
    */
   public void visit(int version, int access, String name, String signature, String superName,
       String[] interfaces)
@@ -233,6 +238,30 @@ public class ProxySubclassAdapter extends ClassVisitor implements Opcodes
     methodAdapter.returnValue();
     methodAdapter.endMethod();
 
+    // add a private static field for the constructor used to create instances
+    // it is set by the ProxySubclassGenerator, so that it is created once and
+    // lives as long as this class
+    cv.visitField(ACC_PRIVATE | ACC_STATIC | ACC_VOLATILE, CONSTRUCTOR_FIELD,
+        CONSTRUCTOR_TYPE.getDescriptor(), null, null);
+
+    // add a static factory method which creates an instance with the
+    // constructor and sets its invocation handler
+    m = new Method(FACTORY_METHOD, newClassType, new Type[] { IH_TYPE });
+    methodAdapter = new GeneratorAdapter(ACC_PUBLIC | ACC_STATIC | ACC_FINAL, m, null, null, cv);
+    // invoke the constructor with no arguments
+    methodAdapter.getStatic(newClassType, CONSTRUCTOR_FIELD, CONSTRUCTOR_TYPE);
+    methodAdapter.push(0);
+    methodAdapter.newArray(OBJECT_TYPE);
+    methodAdapter.invokeVirtual(CONSTRUCTOR_TYPE, new Method("newInstance", OBJECT_TYPE,
+        new Type[] { OBJECT_ARRAY_TYPE }));
+    methodAdapter.checkCast(newClassType);
+    // keep the instance to return and set the ih field on it
+    methodAdapter.dup();
+    methodAdapter.loadArgs();
+    methodAdapter.putField(newClassType, IH_FIELD, IH_TYPE);
+    methodAdapter.returnValue();
+    methodAdapter.endMethod();
+
     // loop through the class hierarchy to get any needed methods off the
     // supertypes
     // start by finding the methods declared on the class of interest (the
@@ -21,7 +21,10 @@ package org.apache.aries.proxy.impl.gen;
 import static java.lang.reflect.Modifier.isFinal;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -30,13 +33,16 @@ import java.security.ProtectionDomain;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.aries.proxy.FinalModifierException;
 import org.apache.aries.proxy.UnableToProxyException;
+import org.apache.aries.proxy.impl.common.ConcurrentWeakIdentityMap;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
@@ -51,22 +57,15 @@ public class ProxySubclassGenerator
 
   private final static Logger LOGGER = LoggerFactory.getLogger(ProxySubclassGenerator.class);
 
-  // This map holds references to the names of classes created by this Class
-  // It is a weak map (so when a ClassLoader is garbage collected we remove
-  // the map of
-  // Class names to sub-Class names)
-  private static final Map<ClassLoader, ConcurrentMap<String, String>> proxyClassesByClassLoader;
+  // This map holds the proxy classes created by this Class for each
+  // ClassLoader. It is a weak map (so when a ClassLoader is garbage collected
+  // we remove the proxies of its classes), and lookups for proxy classes
+  // which already exist do not take any lock
+  private static final ConcurrentWeakIdentityMap<ClassLoader, ProxyMap> proxyClassesByClassLoader =
+      new ConcurrentWeakIdentityMap<ClassLoader, ProxyMap>();
   
   private static final ClassLoader defaultClassLoader = new ClassLoader() {};
 
-  static {
-    // Ensure that this is a synchronized map as we may use it from multiple
-    // threads concurrently
-    //
-    proxyClassesByClassLoader = Collections
-        .synchronizedMap(new WeakHashMap<ClassLoader, ConcurrentMap<String, String>>());
-  }
-
   private static final char FINAL_MODIFIER = '!';
   private static final char UNABLE_TO_PROXY = '#';
 
@@ -79,78 +78,98 @@ public class ProxySubclassGenerator
   {
     LOGGER.debug(Constants.LOG_ENTRY, "getProxySubclass", new Object[] { aClass });
 
+    Class<?> classToReturn = getProxyClass(aClass, loader).getProxyClass();
+
+    LOGGER.debug(Constants.LOG_EXIT, "getProxySubclass", classToReturn);
+
+    return classToReturn;
+  }
+
+  private static ProxyClass getProxyClass(final Class<?> aClass, ClassLoader classLoader) throws UnableToProxyException
+  {
     // in the special case where the loader is null we use a default classloader
     // this is for subclassing java.* or javax.* packages, so that one will do
-    if (loader == null) loader = defaultClassLoader;
-
-    ConcurrentMap<String, String> proxyMap;
-    synchronized (loader) {
-      proxyMap = proxyClassesByClassLoader.get(loader);
-      if (proxyMap == null) {
-        proxyMap = new ConcurrentHashMap<String, String>();
-        proxyClassesByClassLoader.put(loader, proxyMap);
+    final ClassLoader loader = classLoader == null ? defaultClassLoader : classLoader;
+
+    ProxyMap proxyMap = proxyClassesByClassLoader.get(loader);
+    if (proxyMap == null) {
+      proxyMap = new ProxyMap();
+      ProxyMap existing = proxyClassesByClassLoader.putIfAbsent(loader, proxyMap);
+      if (existing != null) {
+        proxyMap = existing;
       }
     }
 
     // check the map to see if we have already generated a subclass for this
-    // class
+    // class, or if another thread is generating it
     // if we have return the mapped class object
     // if we haven't generate the subclass and return it
-    Class<?> classToReturn = null;
-    synchronized (aClass) {
-      String key = aClass.getName();
-      String className = proxyMap.get(key);
-      if (className != null) {
-
-        LOGGER.debug("Found proxy subclass with key {} and name {}.", key, className);
-
-        if (className.charAt(0) == FINAL_MODIFIER) {
-          String[] exceptionParts = className.substring(1).split(":");
-          if (exceptionParts.length == 1) {
-            throw new FinalModifierException(aClass);
-          } else {
-            throw new FinalModifierException(aClass, exceptionParts[1]);
-          }
-        } else if (className.charAt(0) == UNABLE_TO_PROXY) {
-          throw new UnableToProxyException(aClass);
-        }
-
-        try {
-          classToReturn = loader.loadClass(className);
-        } catch (ClassNotFoundException cnfe) {
-          LOGGER.debug(Constants.LOG_EXCEPTION, cnfe);
-          throw new UnableToLoadProxyException(className, cnfe);
-        }
-      } else {
-
-        LOGGER.debug("Need to generate subclass. Using key {}.", key);
-        try {
-          scanForFinalModifiers(aClass);
-
-          classToReturn = generateAndLoadSubclass(aClass, loader);
-
-          if (classToReturn != null) {
-            proxyMap.put(key, classToReturn.getName());
-          } else {
-            proxyMap.put(key, UNABLE_TO_PROXY + aClass.getName());
-            throw new UnableToProxyException(aClass);
+    String key = aClass.getName();
+    FutureTask<ProxyClass> task = proxyMap.proxies.get(key);
+    if (task == null) {
+      LOGGER.debug("Need to generate subclass. Using key {}.", key);
+      final Set<String> proxyNames = proxyMap.names;
+      FutureTask<ProxyClass> newTask = new FutureTask<ProxyClass>(new Callable<ProxyClass>() {
+        public ProxyClass call() throws UnableToProxyException {
+          try {
+            scanForFinalModifiers(aClass);
+          } catch (FinalModifierException e) {
+            if (e.isFinalClass()) {
+              return new ProxyClass(FINAL_MODIFIER + e.getClassName(), null);
+            } else {
+              return new ProxyClass(FINAL_MODIFIER + e.getClassName() + ':' + e.getFinalMethods(), null);
+            }
           }
-        } catch (FinalModifierException e) {
-          if (e.isFinalClass()) {
-            proxyMap.put(key, FINAL_MODIFIER + e.getClassName());
-            throw e;
-          } else {
-            proxyMap.put(key, FINAL_MODIFIER + e.getClassName() + ':' + e.getFinalMethods());
-            throw e;
+          Class<?> generated = generateAndLoadSubclass(aClass, loader);
+          if (generated == null) {
+            return new ProxyClass(UNABLE_TO_PROXY + aClass.getName(), null);
           }
+          proxyNames.add(generated.getName());
+          return new ProxyClass(generated.getName(), generated);
         }
+      });
+      task = proxyMap.proxies.putIfAbsent(key, newTask);
+      if (task == null) {
+        task = newTask;
+        task.run();
+      }
+    }
 
+    ProxyClass proxyClass;
+    try {
+      proxyClass = task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UnableToProxyException(aClass, e);
+    } catch (ExecutionException e) {
+      // failures to generate the class are not remembered
+      proxyMap.proxies.remove(key, task);
+      Throwable cause = e.getCause();
+      if (cause instanceof UnableToProxyException) {
+        throw (UnableToProxyException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
       }
+      throw new UnableToProxyException(aClass, cause);
     }
 
-    LOGGER.debug(Constants.LOG_EXIT, "getProxySubclass", classToReturn);
+    String className = proxyClass.name;
+    LOGGER.debug("Found proxy subclass with key {} and name {}.", key, className);
 
-    return classToReturn;
+    if (className.charAt(0) == FINAL_MODIFIER) {
+      String[] exceptionParts = className.substring(1).split(":");
+      if (exceptionParts.length == 1) {
+        throw new FinalModifierException(aClass);
+      } else {
+        throw new FinalModifierException(aClass, exceptionParts[1]);
+      }
+    } else if (className.charAt(0) == UNABLE_TO_PROXY) {
+      throw new UnableToProxyException(aClass);
+    }
+
+    return proxyClass;
   }
 
   public static Object newProxySubclassInstance(Class<?> classToProxy, InvocationHandler ih)
@@ -168,30 +187,19 @@ public class ProxySubclassGenerator
 
     Object proxySubclassInstance = null;
     try {
-      Class<?> generatedProxySubclass = getProxySubclass(classToProxy, loader);
-      LOGGER.debug("Getting the proxy subclass constructor");
-      // Because the newer JVMs throw a VerifyError if a class attempts to in a constructor other than their superclasses constructor,
-      // and because we can't know what objects/values we need to pass into the class being proxied constructor, 
-      // we instantiate the proxy class using the ReflectionFactory.newConstructorForSerialization() method which allows us to instantiate the 
-      // proxy class without calling the proxy class' constructor. It is in fact using the java.lang.Object constructor so is in effect 
-      // doing what we were doing before.
-      ReflectionFactory factory = ReflectionFactory.getReflectionFactory();
-      Constructor<?> constr = Object.class.getConstructor();
-      Constructor<?> subclassConstructor = factory.newConstructorForSerialization(generatedProxySubclass, constr);
-      proxySubclassInstance = subclassConstructor.newInstance();
-      
-      Method setIHMethod = proxySubclassInstance.getClass().getMethod("setInvocationHandler", InvocationHandler.class);
-      setIHMethod.invoke(proxySubclassInstance, ih);
-      LOGGER.debug("Invoked proxy subclass constructor");
+      ProxyClass proxyClass = getProxyClass(classToProxy, loader);
+      LOGGER.debug("Getting the proxy subclass factory method");
+      proxySubclassInstance = proxyClass.getFactory().invoke(null, ih);
+      LOGGER.debug("Invoked proxy subclass factory method");
     } catch (NoSuchMethodException nsme) {
       LOGGER.debug(Constants.LOG_EXCEPTION, nsme);
       throw new ProxyClassInstantiationException(classToProxy, nsme);
+    } catch (NoSuchFieldException nsfe) {
+      LOGGER.debug(Constants.LOG_EXCEPTION, nsfe);
+      throw new ProxyClassInstantiationException(classToProxy, nsfe);
     } catch (InvocationTargetException ite) {
       LOGGER.debug(Constants.LOG_EXCEPTION, ite);
       throw new ProxyClassInstantiationException(classToProxy, ite);
-    } catch (InstantiationException ie) {
-      LOGGER.debug(Constants.LOG_EXCEPTION, ie);
-      throw new ProxyClassInstantiationException(classToProxy, ie);
     } catch (IllegalAccessException iae) {
       LOGGER.debug(Constants.LOG_EXCEPTION, iae);
       throw new ProxyClassInstantiationException(classToProxy, iae);
@@ -314,9 +322,10 @@ public class ProxySubclassGenerator
     // We will always have a proxy map for the class loader of any proxy
     // class, so if
     // this is null we know to return false
-    Map<String, String> proxies = proxyClassesByClassLoader.get(aClass.getClassLoader());
+    ClassLoader loader = aClass.getClassLoader();
+    ProxyMap proxies = loader != null ? proxyClassesByClassLoader.get(loader) : null;
 
-    boolean isProxySubclass = (proxies != null && proxies.containsValue(aClass.getName()));
+    boolean isProxySubclass = (proxies != null && proxies.names.contains(aClass.getName()));
 
     LOGGER.debug(Constants.LOG_EXIT, "isProxySubclass", isProxySubclass);
 
@@ -387,4 +396,67 @@ public class ProxySubclassGenerator
     return ih;
   }
 
+  /** The proxy classes generated for the classes of a ClassLoader */
+  private static final class ProxyMap
+  {
+    // proxy class names, or the reason why no proxy could be generated,
+    // keyed by the name of the proxied class
+    final ConcurrentMap<String, FutureTask<ProxyClass>> proxies = new ConcurrentHashMap<String, FutureTask<ProxyClass>>();
+    final Set<String> names = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  }
+
+  private static final class ProxyClass
+  {
+    final String name;
+    // Strong references to the generated classes would prevent the ClassLoader
+    // from being collected. The weak reference is never cleared while the
+    // ClassLoader is reachable. The factory method also references the class,
+    // so it is weakly referenced as well and looked up again after it has been
+    // collected. The constructor it uses is held by the generated class itself
+    private final WeakReference<Class<?>> proxyClass;
+    private volatile Reference<Method> factory;
+
+    ProxyClass(String name, Class<?> proxyClass)
+    {
+      this.name = name;
+      this.proxyClass = new WeakReference<Class<?>>(proxyClass);
+    }
+
+    Class<?> getProxyClass()
+    {
+      return proxyClass.get();
+    }
+
+    Method getFactory() throws NoSuchMethodException, NoSuchFieldException, IllegalAccessException
+    {
+      Reference<Method> ref = factory;
+      Method result = ref != null ? ref.get() : null;
+      if (result == null) {
+        Class<?> generatedProxySubclass = getProxyClass();
+        initConstructor(generatedProxySubclass);
+        result = generatedProxySubclass.getMethod(ProxySubclassAdapter.FACTORY_METHOD, InvocationHandler.class);
+        // the generated class has the visibility of the proxied class
+        result.setAccessible(true);
+        factory = new WeakReference<Method>(result);
+      }
+      return result;
+    }
+  }
+
+  private static void initConstructor(Class<?> generatedProxySubclass)
+      throws NoSuchMethodException, NoSuchFieldException, IllegalAccessException
+  {
+    Field field = generatedProxySubclass.getDeclaredField(ProxySubclassAdapter.CONSTRUCTOR_FIELD);
+    field.setAccessible(true);
+    if (field.get(null) == null) {
+      // Because the newer JVMs throw a VerifyError if a class attempts to in a constructor other than their superclasses constructor,
+      // and because we can't know what objects/values we need to pass into the class being proxied constructor, 
+      // we instantiate the proxy class using the ReflectionFactory.newConstructorForSerialization() method which allows us to instantiate the 
+      // proxy class without calling the proxy class' constructor. It is in fact using the java.lang.Object constructor so is in effect 
+      // doing what we were doing before.
+      ReflectionFactory factory = ReflectionFactory.getReflectionFactory();
+      Constructor<?> constr = Object.class.getConstructor();
+      field.set(null, factory.newConstructorForSerialization(generatedProxySubclass, constr));
+    }
+  }
 }
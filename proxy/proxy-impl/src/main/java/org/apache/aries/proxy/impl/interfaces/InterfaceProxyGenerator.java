@@ -24,15 +24,15 @@ import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 
 import org.apache.aries.proxy.FinalModifierException;
 import org.apache.aries.proxy.InvocationListener;
 import org.apache.aries.proxy.UnableToProxyException;
+import org.apache.aries.proxy.impl.common.ConcurrentWeakIdentityMap;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.Opcodes;
 import org.osgi.framework.Bundle;
@@ -52,8 +52,12 @@ public final class InterfaceProxyGenerator extends ClassVisitor implements Opcod
     
   }
 
-  private static final Map<BundleWiring, WeakReference<ProxyClassLoader>> cache =
-            new WeakHashMap<BundleWiring, WeakReference<ProxyClassLoader>>(128);
+  /** The proxy class loader of each client bundle wiring */
+  private static final ConcurrentWeakIdentityMap<Object, WeakReference<ProxyClassLoader>> cache =
+            new ConcurrentWeakIdentityMap<Object, WeakReference<ProxyClassLoader>>();
+  
+  /** The key used for proxies without a client bundle wiring */
+  private static final Object NO_WIRING = new Object();
   
   /**
    * Generate a new proxy instance implementing the supplied interfaces and using the supplied
@@ -72,39 +76,39 @@ public final class InterfaceProxyGenerator extends ClassVisitor implements Opcod
     if(superclass != null && (superclass.getModifiers() & Modifier.FINAL) != 0)
       throw new FinalModifierException(superclass);
     
-    ProxyClassLoader pcl = null;
-    
     SortedSet<Class<?>> interfaces = createSet(ifaces);
     
-    synchronized (cache) {
-      BundleWiring wiring = client == null ? null : (BundleWiring)client.adapt(BundleWiring.class);
-      WeakReference<ProxyClassLoader> ref = cache.get(wiring);
-      
-      if(ref != null)
-        pcl = ref.get();
-      
-      if (pcl != null && pcl.isInvalid(interfaces)) {
-          pcl = null;
-          cache.remove(wiring);
-      }
-      
-      if(pcl == null) {
-        pcl = new ProxyClassLoader(client);
-        cache.put(wiring, new WeakReference<ProxyClassLoader>(pcl));
-      }
-    }
+    ProxyClassLoader pcl = getProxyClassLoader(client, interfaces);
 
-    Class<?> c = pcl.createProxyClass(superclass, interfaces);
+    Constructor<?> con = pcl.getProxyConstructor(superclass, interfaces);
 
     try {
-      Constructor<?> con = c.getDeclaredConstructor(Callable.class, InvocationListener.class);
-      con.setAccessible(true);
       return con.newInstance(dispatcher, listener);
     } catch (Exception e) {
       throw new UnableToProxyException(ifaces.iterator().next(), e);
     }
   }
 
+  private static ProxyClassLoader getProxyClassLoader(Bundle client, Set<Class<?>> interfaces) {
+    BundleWiring wiring = client == null ? null : (BundleWiring)client.adapt(BundleWiring.class);
+    Object key = wiring == null ? NO_WIRING : wiring;
+    
+    while(true) {
+      WeakReference<ProxyClassLoader> ref = cache.get(key);
+      ProxyClassLoader pcl = ref == null ? null : ref.get();
+      
+      if(pcl != null && !!!pcl.isInvalid(interfaces))
+        return pcl;
+      
+      pcl = new ProxyClassLoader(client);
+      WeakReference<ProxyClassLoader> newRef = new WeakReference<ProxyClassLoader>(pcl);
+      
+      //Only one thread wins if several threads replace the same entry, the others retry
+      if(ref == null ? cache.putIfAbsent(key, newRef) == null : cache.replace(key, ref, newRef))
+        return pcl;
+    }
+  }
+
   /**
    * Get the set of interfaces we need to process. This will return a HashSet 
    * that includes includes the supplied collection and any super-interfaces of 
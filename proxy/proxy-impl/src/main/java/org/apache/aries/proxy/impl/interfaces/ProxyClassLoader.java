@@ -18,6 +18,7 @@
  */
 package org.apache.aries.proxy.impl.interfaces;
 
+import java.lang.reflect.Constructor;
 import java.security.AllPermission;
 import java.security.PermissionCollection;
 import java.security.Permissions;
@@ -28,7 +29,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -51,9 +55,9 @@ final class ProxyClassLoader extends ClassLoader {
     PROXY_PROTECTION_DOMAIN = new ProtectionDomain(null, pc);
   }
   
-  /** A {@link Map} of classes we already know */
-  private final ConcurrentMap<LinkedHashSet<Class<?>>, String> classes = 
-                new ConcurrentHashMap<LinkedHashSet<Class<?>>, String>();
+  /** A {@link Map} of the constructors of the classes we already know, or are being generated */
+  private final ConcurrentMap<LinkedHashSet<Class<?>>, FutureTask<Constructor<?>>> classes = 
+                new ConcurrentHashMap<LinkedHashSet<Class<?>>, FutureTask<Constructor<?>>>();
   
   private final ConcurrentMap<String, Class<?>> locatedClasses = 
                 new ConcurrentHashMap<String, Class<?>>();
@@ -123,23 +127,57 @@ final class ProxyClassLoader extends ClassLoader {
       return false;
   }
 
-  public Class<?> createProxyClass(Class<?> superclass, SortedSet<Class<?>> interfaces) throws UnableToProxyException {
+  /**
+   * Get the constructor of the proxy class for the given superclass and interfaces,
+   * generating the class if needed. Concurrent calls for the same set of classes
+   * wait for a single class generation.
+   */
+  public Constructor<?> getProxyConstructor(final Class<?> superclass, final SortedSet<Class<?>> interfaces) throws UnableToProxyException {
     
-    LinkedHashSet<Class<?>> createSet = new LinkedHashSet<Class<?>>(interfaces);
+    final LinkedHashSet<Class<?>> createSet = new LinkedHashSet<Class<?>>(interfaces);
     //Even a null superclass helps with key uniqueness
     createSet.add(superclass);
     
-    String className = classes.get(createSet);
+    FutureTask<Constructor<?>> task = classes.get(createSet);
     
-    if(className != null) {
-      try {
-        return Class.forName(className, false, this);
-      } catch (ClassNotFoundException cnfe) {
-        //This is odd, but we should be able to recreate the class, continue
-        classes.remove(createSet);
+    if(task == null) {
+      FutureTask<Constructor<?>> newTask = new FutureTask<Constructor<?>>(new Callable<Constructor<?>>() {
+        public Constructor<?> call() throws Exception {
+          Class<?> c = createProxyClass(createSet, superclass, interfaces);
+          Constructor<?> con = c.getDeclaredConstructor(Callable.class, InvocationListener.class);
+          con.setAccessible(true);
+          return con;
+        }
+      });
+      task = classes.putIfAbsent(createSet, newTask);
+      if(task == null) {
+        task = newTask;
+        task.run();
       }
     }
     
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UnableToProxyException(createSet.iterator().next(), e);
+    } catch (ExecutionException e) {
+      //Do not keep failed generations, so that they can be retried
+      classes.remove(createSet, task);
+      Throwable cause = e.getCause();
+      if(cause instanceof UnableToProxyException)
+        throw (UnableToProxyException) cause;
+      else if(cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      else if(cause instanceof Error)
+        throw (Error) cause;
+      throw new UnableToProxyException(createSet.iterator().next(), cause);
+    }
+  }
+
+  private Class<?> createProxyClass(LinkedHashSet<Class<?>> createSet, Class<?> superclass, 
+      SortedSet<Class<?>> interfaces) throws UnableToProxyException {
+    
     Lock wLock = ifacesLock.writeLock();
     wLock.lock();
     try {
@@ -150,7 +188,7 @@ final class ProxyClassLoader extends ClassLoader {
       wLock.unlock();
     }
     
-    className = "Proxy" + AbstractWovenProxyAdapter.getSanitizedUUIDString();
+    String className = "Proxy" + AbstractWovenProxyAdapter.getSanitizedUUIDString();
     
     InterfaceCombiningClassAdapter icca = new InterfaceCombiningClassAdapter(
         className, this, superclass, interfaces);
@@ -161,17 +199,10 @@ final class ProxyClassLoader extends ClassLoader {
     
     try {
       byte[] bytes = icca.generateBytes();
-      Class<?> c = defineClass(className, bytes, 0, bytes.length, 
+      return defineClass(className, bytes, 0, bytes.length, 
           PROXY_PROTECTION_DOMAIN);
-      String old = classes.putIfAbsent(createSet, className);
-      if(old != null) {
-        c = Class.forName(className, false, this);
-      }
-      return c;
     } catch (ClassFormatError cfe) {
       throw new UnableToProxyException(createSet.iterator().next(), cfe);
-    } catch (ClassNotFoundException e) {
-      throw new UnableToProxyException(createSet.iterator().next(), e);
     }
   }
 }
\ No newline at end of file
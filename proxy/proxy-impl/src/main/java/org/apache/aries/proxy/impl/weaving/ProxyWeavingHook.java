@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.regex.Pattern;
 
 import org.apache.aries.proxy.UnableToProxyException;
+import org.apache.aries.proxy.impl.common.ConcurrentWeakIdentityMap;
 import org.apache.aries.proxy.weaving.WovenProxy;
 import org.apache.aries.proxy.weavinghook.ProxyWeavingController;
 import org.apache.aries.proxy.weavinghook.WeavingHelper;
@@ -46,6 +47,13 @@ public final class ProxyWeavingHook implements WeavingHook, WeavingHelper {
   public static final String WEAVING_ENABLED_CLASSES = "org.apache.aries.proxy.weaving.enabled";
   public static final String WEAVING_DISABLED_CLASSES = "org.apache.aries.proxy.weaving.disabled";
 
+  /**
+   * A manifest header indicating that the classes of a bundle have been woven at
+   * build time, for instance with the weave-proxies goal of the blueprint-maven-plugin.
+   * The classes of such bundles are never woven at runtime.
+   */
+  public static final String WEAVING_PREWOVEN_HEADER = "Aries-Proxy-Prewoven";
+
   public static final String WEAVING_ENABLED_CLASSES_DEFAULT = "*";
   public static final String WEAVING_DISABLED_CLASSES_DEFAULT = "org.objectweb.asm.*,org.slf4j.*,org.apache.log4j.*,javax.*,ch.qos.logback.*";
 
@@ -61,6 +69,9 @@ public final class ProxyWeavingHook implements WeavingHook, WeavingHelper {
 
   private final List<Pattern> enabled;
   private final List<Pattern> disabled;
+  /** Whether the classes of each bundle wiring have been woven at build time */
+  private final ConcurrentWeakIdentityMap<BundleWiring, Boolean> prewoven =
+      new ConcurrentWeakIdentityMap<BundleWiring, Boolean>();
   @SuppressWarnings("rawtypes")
   private final ServiceTracker controllers;
 
@@ -93,7 +104,8 @@ public ProxyWeavingHook(BundleContext context) {
         
         if(b.getBundleId() == 0 || 
             b.getSymbolicName().startsWith("org.apache.aries.proxy") ||
-            b.getSymbolicName().startsWith("org.apache.aries.util")) {
+            b.getSymbolicName().startsWith("org.apache.aries.util") ||
+            isPrewoven(bw)) {
           return;
         }
     }
@@ -163,6 +175,20 @@ public ProxyWeavingHook(BundleContext context) {
         return false;
     }
     
+    boolean isPrewoven(BundleWiring wiring) {
+        Boolean result = prewoven.get(wiring);
+        if (result == null) {
+            // Use the raw headers, there is no need to localize them
+            Dictionary<String, String> headers = wiring.getBundle().getHeaders("");
+            result = Boolean.valueOf(headers.get(WEAVING_PREWOVEN_HEADER));
+            if (result) {
+                LOGGER.debug("Bundle {} has been woven at build time, skipping runtime weaving", wiring.getBundle().getSymbolicName());
+            }
+            prewoven.putIfAbsent(wiring, result);
+        }
+        return result;
+    }
+
     public boolean isWoven(Class<?> clazz)
     {
       return WovenProxy.class.isAssignableFrom(clazz);
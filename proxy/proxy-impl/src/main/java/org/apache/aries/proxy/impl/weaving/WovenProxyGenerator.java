@@ -25,20 +25,28 @@ import static org.objectweb.asm.Opcodes.ACC_INTERFACE;
 import org.apache.aries.proxy.impl.common.AbstractWovenProxyAdapter;
 import org.apache.aries.proxy.impl.common.OSGiFriendlyClassVisitor;
 import org.apache.aries.proxy.impl.common.OSGiFriendlyClassWriter;
+import org.apache.aries.proxy.weaving.WovenProxy;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
 
 /**
  * This class is used to weave the bytes of a class into a proxyable class
  */
 public final class WovenProxyGenerator
 {
+  private static final String WOVEN_PROXY_IFACE = Type.getInternalName(WovenProxy.class);
+  private static final byte[] DISPATCHER_FIELD_BYTES = asciiBytes(AbstractWovenProxyAdapter.DISPATCHER_FIELD);
+  
   public static final byte[] getWovenProxy(byte[] original, ClassLoader loader){
     ClassReader cReader = new ClassReader(original);
     //Don't weave interfaces, enums or annotations
     if((cReader.getAccess() & (ACC_INTERFACE | ACC_ANNOTATION | ACC_ENUM)) != 0)
       return null;
+    //Don't weave classes that have already been woven, for instance at build time
+    if(isWoven(original, cReader))
+      return null;
     
     //If we are Java 1.6 + compiled then we need to compute stack frames, otherwise
     //maxs are fine (and faster)
@@ -55,4 +63,32 @@ public final class WovenProxyGenerator
     
     return cWriter.toByteArray();
   }
+
+  /**
+   * @return true if the class implements {@link WovenProxy}, or if it is a woven
+   * subclass of a woven class, in which case it refers to the dispatcher field
+   */
+  public static boolean isWoven(byte[] bytes, ClassReader cReader) {
+    for(String iface : cReader.getInterfaces()) {
+      if(WOVEN_PROXY_IFACE.equals(iface))
+        return true;
+    }
+    //The field name contains a UUID, and is stored as is in the constant pool
+    outer: for(int i = 0; i <= bytes.length - DISPATCHER_FIELD_BYTES.length; i++) {
+      for(int j = 0; j < DISPATCHER_FIELD_BYTES.length; j++) {
+        if(bytes[i + j] != DISPATCHER_FIELD_BYTES[j])
+          continue outer;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static byte[] asciiBytes(String s) {
+    byte[] bytes = new byte[s.length()];
+    for(int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) s.charAt(i);
+    }
+    return bytes;
+  }
 }
\ No newline at end of file
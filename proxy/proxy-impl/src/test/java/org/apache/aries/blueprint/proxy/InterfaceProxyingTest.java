@@ -37,6 +37,11 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.aries.blueprint.proxy.AbstractProxyTest.TestListener;
 import org.apache.aries.blueprint.proxy.complex.AriesTransactionManager;
@@ -297,6 +302,32 @@ public class InterfaceProxyingTest {
     assertEquals(ex, listener.postInvokeExceptionalReturn);
   }
   
+  @Test
+  public void testConcurrentProxyCreation() throws Exception {
+    final Collection<Class<?>> classes = new ArrayList<Class<?>>(Arrays.asList(Closeable.class, Runnable.class));
+    int threads = 8;
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Class<?>>> futures = new ArrayList<Future<Class<?>>>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new Callable<Class<?>>() {
+          public Class<?> call() throws Exception {
+            barrier.await();
+            return InterfaceProxyGenerator.getProxyInstance(testBundle, null, classes, constantly(null), null).getClass();
+          }
+        }));
+      }
+      // all the threads must share a single generated class
+      Class<?> proxyClass = futures.get(0).get(30, TimeUnit.SECONDS);
+      for (Future<Class<?>> future : futures) {
+        assertSame(proxyClass, future.get(30, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   private Callable<Object> constantly(final Object result) {
       return new Callable<Object>() {
           public Object call() throws Exception {
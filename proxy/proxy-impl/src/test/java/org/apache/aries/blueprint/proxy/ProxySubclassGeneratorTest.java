@@ -21,11 +21,14 @@ package org.apache.aries.blueprint.proxy;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -118,11 +121,12 @@ public class ProxySubclassGeneratorTest extends AbstractProxyTest
 
     // add the getter and setter for the invocation handler to the expected
     // set
-    // and the unwrapObject method
+    // and the factory method
     Method[] ihMethods = new Method[] {
         generatedProxySubclass.getMethod("setInvocationHandler",
             new Class[] { InvocationHandler.class }),
-        generatedProxySubclass.getMethod("getInvocationHandler", new Class[] {}) };
+        generatedProxySubclass.getMethod("getInvocationHandler", new Class[] {}),
+        generatedProxySubclass.getMethod("$newInstance", new Class[] { InvocationHandler.class }) };
     expectedMethods.addMethodArray(ihMethods);
 
     Method[] generatedProxySubclassMethods = generatedProxySubclass.getDeclaredMethods();
@@ -181,6 +185,28 @@ public class ProxySubclassGeneratorTest extends AbstractProxyTest
 
   }
 
+  /**
+   * Test that proxy instances are created with the handler already set, and
+   * that the constructor used to create them lives as long as the proxy class
+   */
+  @Test
+  public void testNewProxySubclassInstance() throws Exception
+  {
+    Object proxy = ProxySubclassGenerator.newProxySubclassInstance(getTestClass(), ih);
+    assertSame(generatedProxySubclass, proxy.getClass());
+    assertSame(ih, ProxySubclassGenerator.getInvocationHandler(proxy));
+
+    Field constructor = generatedProxySubclass.getDeclaredField("$constructor");
+    constructor.setAccessible(true);
+    WeakReference<Object> ref = new WeakReference<Object>(constructor.get(null));
+    assertNotNull(ref.get());
+
+    System.gc();
+    proxy = ProxySubclassGenerator.newProxySubclassInstance(getTestClass(), ih);
+    assertSame(ih, ProxySubclassGenerator.getInvocationHandler(proxy));
+    assertSame(ref.get(), constructor.get(null));
+  }
+
   /**
    * Test a generating proxy class of class with package access constructor.
    */
@@ -18,14 +18,21 @@
  */
 package org.apache.aries.proxy.impl.weaving;
 
+import java.io.InputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.Hashtable;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.wiring.BundleWiring;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class ProxyWeavingHookTest {
@@ -66,4 +73,39 @@ public class ProxyWeavingHookTest {
         assertFalse(hook.isDisabled("org.apache.fooBar"));
         assertFalse(hook.isDisabled("orgXapache.foo.Bar"));
     }
+
+    @Test
+    public void testPrewoven() {
+        ProxyWeavingHook hook = new ProxyWeavingHook(proxy(BundleContext.class, null));
+        Hashtable<String, String> headers = new Hashtable<String, String>();
+        headers.put(ProxyWeavingHook.WEAVING_PREWOVEN_HEADER, "true");
+        assertTrue(hook.isPrewoven(proxy(BundleWiring.class, proxy(Bundle.class, headers))));
+        assertFalse(hook.isPrewoven(proxy(BundleWiring.class, proxy(Bundle.class, new Hashtable<String, String>()))));
+    }
+
+    @Test
+    public void testWovenClassesAreNotWovenAgain() throws Exception {
+        String name = ProxyWeavingHookTest.class.getName().replace('.', '/') + ".class";
+        InputStream is = getClass().getClassLoader().getResourceAsStream(name);
+        byte[] bytes = IOUtils.toByteArray(is);
+        is.close();
+        ClassLoader loader = getClass().getClassLoader();
+
+        byte[] woven = WovenProxyGenerator.getWovenProxy(bytes, loader);
+        assertFalse(WovenProxyGenerator.isWoven(bytes, new ClassReader(bytes)));
+        assertTrue(WovenProxyGenerator.isWoven(woven, new ClassReader(woven)));
+        assertNull(WovenProxyGenerator.getWovenProxy(woven, loader));
+    }
+
+    /**
+     * Create a proxy returning the given value from every method
+     */
+    private static <T> T proxy(Class<T> type, final Object value) {
+        return type.cast(Proxy.newProxyInstance(ProxyWeavingHookTest.class.getClassLoader(), new Class[] { type },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return method.getReturnType().isInstance(value) ? value : null;
+                    }
+                }));
+    }
 }
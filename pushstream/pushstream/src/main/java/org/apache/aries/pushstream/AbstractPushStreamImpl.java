@@ -19,6 +19,7 @@
 package org.apache.aries.pushstream;
 
 import static java.util.Collections.emptyList;
+import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.apache.aries.pushstream.AbstractPushStreamImpl.State.*;
 import static org.osgi.util.pushstream.PushEventConsumer.*;
@@ -32,8 +33,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Queue;
@@ -41,6 +44,7 @@ import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -62,6 +66,7 @@ import java.util.function.Supplier;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
+import org.apache.aries.pushstream.api.AriesPushStream;
 import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
 import org.osgi.util.pushstream.PushEvent;
@@ -72,7 +77,7 @@ import org.osgi.util.pushstream.PushStreamBuilder;
 import org.osgi.util.pushstream.PushStreamProvider;
 import org.osgi.util.pushstream.PushEvent.EventType;
 
-public abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
+public abstract class AbstractPushStreamImpl<T> implements AriesPushStream<T> {
 	
 	public static enum State {
 		BUILDING, STARTED, CLOSED
@@ -210,7 +215,7 @@ public abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 	}
 
 	@Override
-	public PushStream<T> filter(Predicate< ? super T> predicate) {
+	public AbstractPushStreamImpl<T> filter(Predicate< ? super T> predicate) {
 		AbstractPushStreamImpl<T> eventStream = new IntermediatePushStreamImpl<>(
 				psp, defaultExecutor, scheduler, this);
 		updateNext((event) -> {
@@ -306,6 +311,49 @@ public abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 		return filter(set::add);
 	}
 
+	@Override
+	public AriesPushStream<T> distinct(int maxSize) {
+		return distinct(Long.MAX_VALUE, maxSize);
+	}
+
+	@Override
+	public AriesPushStream<T> distinct(Duration d, int maxSize) {
+		requireNonNull(d, "The duration must not be null");
+		if (d.isNegative() || d.isZero()) {
+			throw new IllegalArgumentException(
+					"The duration must be positive. It was " + d);
+		}
+		return distinct(d.toNanos(), maxSize);
+	}
+
+	private AriesPushStream<T> distinct(long maxAge, int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException(
+					"The maximum size must be at least 1. It was " + maxSize);
+		}
+		// Access ordered, so that the least recently seen payload comes first
+		Map<T,Long> seen = new LinkedHashMap<T,Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<T,Long> eldest) {
+				return size() > maxSize;
+			}
+		};
+		return filter(t -> {
+			long now = System.nanoTime();
+			synchronized (seen) {
+				if (maxAge != Long.MAX_VALUE) {
+					Iterator<Long> it = seen.values().iterator();
+					while (it.hasNext() && now - it.next() >= maxAge) {
+						it.remove();
+					}
+				}
+				return seen.put(t, now) == null;
+			}
+		});
+	}
+
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public PushStream<T> sorted() {
@@ -328,12 +376,44 @@ public abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 						for(T t : list) {
 							eventStream.handleEvent(PushEvent.data(t));
 						}
-						return ABORT;
+						return eventStream.handleEvent(event.nodata());
+					case ERROR :
+						return eventStream.handleEvent(event.nodata());
+				}
+				return eventStream.handleEvent(event.nodata());
+			} catch (Exception e) {
+				close(PushEvent.error(e));
+				return ABORT;
+			}
+		});
+		return eventStream;
+	}
+
+	@Override
+	public AriesPushStream<T> sorted(Comparator< ? super T> comparator,
+			int maxBuffered, Function< ? super T,byte[]> serializer,
+			Function<byte[], ? extends T> deserializer) {
+		ExternalSorter<T> sorter = new ExternalSorter<>(comparator, maxBuffered,
+				serializer, deserializer);
+		AbstractPushStreamImpl<T> eventStream = new IntermediatePushStreamImpl<>(
+				psp, defaultExecutor, scheduler, this);
+		updateNext(event -> {
+			try {
+				switch(event.getType()) {
+					case DATA : 
+						sorter.add(event.getData());
+						return CONTINUE;
+					case CLOSE :
+						sorter.forEachSorted(
+								t -> eventStream.handleEvent(PushEvent.data(t)));
+						return eventStream.handleEvent(event.nodata());
 					case ERROR :
+						sorter.discard();
 						return eventStream.handleEvent(event.nodata());
 				}
 				return eventStream.handleEvent(event.nodata());
 			} catch (Exception e) {
+				sorter.discard();
 				close(PushEvent.error(e));
 				return ABORT;
 			}
@@ -434,6 +514,23 @@ public abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 		return eventStream;
 	}
 	
+	@Override
+	public <R> AriesPushStream<R> mapParallel(int n, Executor ex,
+			Function< ? super T, ? extends R> mapper) {
+		if (n < 1) {
+			throw new IllegalArgumentException(
+					"The number of simultaneous tasks must be at least 1. It was "
+							+ n);
+		}
+		if (ex == null) {
+			throw new NullPointerException("The executor must not be null");
+		}
+		AbstractPushStreamImpl<R> eventStream = new IntermediatePushStreamImpl<>(
+				psp, ex, scheduler, this);
+		updateNext(new OrderedParallelMapper<>(this, eventStream, n, ex, mapper));
+		return eventStream;
+	}
+
 	@Override
 	public PushStream<T> buffer() {
 		return psp.createStream(c -> {
@@ -888,6 +985,102 @@ public abstract class AbstractPushStreamImpl<T> implements PushStream<T> {
 		return eventStream;
 	}
 
+	@Override
+	public <K, A, V> AriesPushStream<Map<K,V>> windowByKey(Duration d,
+			Function< ? super T, ? extends K> classifier,
+			Collector< ? super T,A,V> collector) {
+		return windowByKey(d, d, classifier, collector);
+	}
+
+	@Override
+	public <K, A, V> AriesPushStream<Map<K,V>> windowByKey(Duration size,
+			Duration slide, Function< ? super T, ? extends K> classifier,
+			Collector< ? super T,A,V> collector) {
+		long slideNanos = slide.toNanos();
+		long sizeNanos = size.toNanos();
+		if (slideNanos <= 0 || sizeNanos < slideNanos
+				|| sizeNanos % slideNanos != 0) {
+			throw new IllegalArgumentException(
+					"The window size must be a positive multiple of the slide. They were "
+							+ size + " and " + slide);
+		}
+
+		KeyedWindow<T,K,A,V> window = new KeyedWindow<>(classifier, collector,
+				(int) (sizeNanos / slideNanos));
+		AtomicReference<Future< ? >> tick = new AtomicReference<>();
+		// Set while holding the window, no result is sent after the end
+		AtomicBoolean ended = new AtomicBoolean(false);
+
+		// This code is declared as a separate block to avoid any confusion
+		// about which instance's methods and variables are in scope
+		Consumer<AbstractPushStreamImpl<Map<K,V>>> begin = p -> {
+			// A single task on the shared scheduler closes the windows of
+			// all the keys, rotating the window in the executor keeps the
+			// results in order
+			Runnable forward = () -> {
+				synchronized (window) {
+					if (!ended.get()) {
+						p.handleEvent(PushEvent.data(window.rotate()));
+					}
+				}
+			};
+			tick.set(scheduler.scheduleAtFixedRate(() -> {
+				if (p.closed.get() == CLOSED || ended.get()) {
+					Future< ? > f = tick.getAndSet(null);
+					if (f != null) {
+						f.cancel(false);
+					}
+				} else {
+					defaultExecutor.execute(forward);
+				}
+			}, slideNanos, slideNanos, NANOSECONDS));
+		};
+
+		@SuppressWarnings("resource")
+		AbstractPushStreamImpl<Map<K,V>> eventStream = new IntermediatePushStreamImpl<Map<K,V>>(
+				psp, defaultExecutor, scheduler, this) {
+			@Override
+			protected void beginning() {
+				begin.accept(this);
+			}
+		};
+
+		updateNext((event) -> {
+			try {
+				if (eventStream.closed.get() == CLOSED) {
+					return ABORT;
+				}
+				if (!event.isTerminal()) {
+					window.accumulate(event.getData());
+					return CONTINUE;
+				}
+				Future< ? > f = tick.getAndSet(null);
+				if (f != null) {
+					f.cancel(false);
+				}
+				defaultExecutor.execute(() -> {
+					synchronized (window) {
+						if (ended.getAndSet(true)) {
+							return;
+						}
+						try {
+							eventStream.handleEvent(
+									PushEvent.data(window.rotate()));
+						} catch (Exception e) {
+							close(PushEvent.error(e));
+						}
+						eventStream.handleEvent(event.nodata());
+					}
+				});
+				return ABORT;
+			} catch (Exception e) {
+				close(PushEvent.error(e));
+				return ABORT;
+			}
+		});
+		return eventStream;
+	}
+
 	protected Queue<T> getQueueForInternalBuffering(int size) {
 		if (size == 0) {
 			return new LinkedList<T>();
@@ -0,0 +1,326 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sorts elements using a bounded amount of memory. The buffered elements are
+ * sorted and written to a temporary file, a run, each time the buffer is full.
+ * The runs and the remaining buffered elements are then merged, keeping one
+ * element of each run in memory. At most {@code mergeWidth} runs are open at
+ * once, when there are more runs, consecutive groups of runs are first merged
+ * into longer runs, as many times as needed.
+ *
+ * @param <T> The type of the elements
+ */
+class ExternalSorter<T> {
+
+	/** The default maximum number of runs read at the same time */
+	static final int							MERGE_WIDTH	= 64;
+
+	private final Comparator< ? super T>		comparator;
+
+	private final int							maxBuffered;
+
+	private final int							mergeWidth;
+
+	private final Function< ? super T,byte[]>	serializer;
+
+	private final Function<byte[], ? extends T>	deserializer;
+
+	private final List<T>						buffer	= new ArrayList<>();
+
+	private final List<Path>					runs	= new ArrayList<>();
+
+	ExternalSorter(Comparator< ? super T> comparator, int maxBuffered,
+			Function< ? super T,byte[]> serializer,
+			Function<byte[], ? extends T> deserializer) {
+		this(comparator, maxBuffered, MERGE_WIDTH, serializer, deserializer);
+	}
+
+	ExternalSorter(Comparator< ? super T> comparator, int maxBuffered,
+			int mergeWidth, Function< ? super T,byte[]> serializer,
+			Function<byte[], ? extends T> deserializer) {
+		if (maxBuffered < 1) {
+			throw new IllegalArgumentException(
+					"The number of buffered elements must be at least 1. It was "
+							+ maxBuffered);
+		}
+		if (mergeWidth < 2) {
+			throw new IllegalArgumentException(
+					"The number of merged runs must be at least 2. It was "
+							+ mergeWidth);
+		}
+		this.comparator = requireNonNull(comparator, "comparator");
+		this.maxBuffered = maxBuffered;
+		this.mergeWidth = mergeWidth;
+		this.serializer = requireNonNull(serializer, "serializer");
+		this.deserializer = requireNonNull(deserializer, "deserializer");
+	}
+
+	synchronized void add(T t) throws IOException {
+		buffer.add(t);
+		if (buffer.size() >= maxBuffered) {
+			spill();
+		}
+	}
+
+	private void spill() throws IOException {
+		buffer.sort(comparator);
+		Path run = Files.createTempFile("pushstream-sort", ".run");
+		runs.add(run);
+		try (DataOutputStream out = newRunOutput(run)) {
+			for (T t : buffer) {
+				write(out, t);
+			}
+		}
+		buffer.clear();
+	}
+
+	private DataOutputStream newRunOutput(Path run) throws IOException {
+		return new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(run)));
+	}
+
+	private void write(DataOutputStream out, T t) throws IOException {
+		byte[] bytes = serializer.apply(t);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Passes all the elements to the action in order, and then deletes the
+	 * runs.
+	 */
+	synchronized void forEachSorted(Consumer< ? super T> action)
+			throws IOException {
+		buffer.sort(comparator);
+		if (runs.isEmpty()) {
+			buffer.forEach(action);
+			buffer.clear();
+			return;
+		}
+
+		try {
+			// The final merge also reads the buffer
+			while (runs.size() >= mergeWidth) {
+				mergePass();
+			}
+			List<Cursor<T>> cursors = new ArrayList<>(runs.size() + 1);
+			try {
+				for (Path run : runs) {
+					cursors.add(new RunCursor(cursors.size(), run));
+				}
+				cursors.add(
+						new BufferCursor<>(cursors.size(), buffer.iterator()));
+				merge(cursors, action);
+			} finally {
+				for (Cursor<T> cursor : cursors) {
+					cursor.close();
+				}
+			}
+		} finally {
+			discard();
+		}
+	}
+
+	/**
+	 * Replaces each group of {@code mergeWidth} consecutive runs with a
+	 * single run. Merging consecutive runs keeps equal elements in order.
+	 */
+	private void mergePass() throws IOException {
+		List<Path> merged = new ArrayList<>(runs.size() / mergeWidth + 1);
+		try {
+			for (int from = 0; from < runs.size(); from += mergeWidth) {
+				List<Path> group = runs.subList(from,
+						Math.min(from + mergeWidth, runs.size()));
+				if (group.size() == 1) {
+					merged.add(group.get(0));
+					continue;
+				}
+				Path run = Files.createTempFile("pushstream-sort", ".run");
+				merged.add(run);
+				List<Cursor<T>> cursors = new ArrayList<>(group.size());
+				try (DataOutputStream out = newRunOutput(run)) {
+					for (Path p : group) {
+						cursors.add(new RunCursor(cursors.size(), p));
+					}
+					merge(cursors, t -> {
+						try {
+							write(out, t);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+				} catch (UncheckedIOException e) {
+					throw e.getCause();
+				} finally {
+					for (Cursor<T> cursor : cursors) {
+						cursor.close();
+					}
+				}
+				for (Path p : group) {
+					delete(p);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// So that discard() deletes the new runs as well
+			for (Path run : merged) {
+				if (!runs.contains(run)) {
+					runs.add(run);
+				}
+			}
+			throw e;
+		}
+		runs.clear();
+		runs.addAll(merged);
+	}
+
+	/**
+	 * Passes the elements of the cursors to the action in order. Equal
+	 * elements are taken from the oldest cursor first to keep the sort
+	 * stable.
+	 */
+	private void merge(List<Cursor<T>> cursors, Consumer< ? super T> action)
+			throws IOException {
+		PriorityQueue<Cursor<T>> queue = new PriorityQueue<>(cursors.size(),
+				(a, b) -> {
+					int c = comparator.compare(a.current, b.current);
+					return c != 0 ? c : Integer.compare(a.index, b.index);
+				});
+		for (Cursor<T> cursor : cursors) {
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+		Cursor<T> cursor;
+		while ((cursor = queue.poll()) != null) {
+			action.accept(cursor.current);
+			if (cursor.advance()) {
+				queue.add(cursor);
+			}
+		}
+	}
+
+	private static void delete(Path run) {
+		try {
+			Files.deleteIfExists(run);
+		} catch (IOException e) {
+			run.toFile().deleteOnExit();
+		}
+	}
+
+	/**
+	 * Drops the buffered elements and deletes the runs.
+	 */
+	synchronized void discard() {
+		buffer.clear();
+		for (Path run : runs) {
+			delete(run);
+		}
+		runs.clear();
+	}
+
+	private static abstract class Cursor<T> {
+		final int	index;
+		T			current;
+
+		Cursor(int index) {
+			this.index = index;
+		}
+
+		/**
+		 * Moves to the next element
+		 *
+		 * @return false if there are no more elements
+		 */
+		abstract boolean advance() throws IOException;
+
+		void close() {}
+	}
+
+	private static class BufferCursor<T> extends Cursor<T> {
+		private final Iterator<T> it;
+
+		BufferCursor(int index, Iterator<T> it) {
+			super(index);
+			this.it = it;
+		}
+
+		@Override
+		boolean advance() {
+			if (it.hasNext()) {
+				current = it.next();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	private class RunCursor extends Cursor<T> {
+		private final DataInputStream in;
+
+		RunCursor(int index, Path run) throws IOException {
+			super(index);
+			in = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(run)));
+		}
+
+		@Override
+		boolean advance() throws IOException {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				return false;
+			}
+			byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			current = deserializer.apply(bytes);
+			return true;
+		}
+
+		@Override
+		void close() {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// The run is deleted anyway
+			}
+		}
+	}
+}
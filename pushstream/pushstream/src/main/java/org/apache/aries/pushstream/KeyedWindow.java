@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * The per key accumulators of a keyed window.
+ * <p>
+ * The keys are spread over a fixed number of stripes, each with its own lock,
+ * so that events for different keys rarely contend. A sliding window of n
+ * slides has n windows open at any time, ending at each of the next n
+ * rotations, and every event is accumulated into each of them. Rotating the
+ * window removes the accumulators of the window which ends from every stripe
+ * and opens a new one. The combiner of the collector is never used, so the
+ * results never share state with the accumulators which are still open,
+ * whatever the collector. A tumbling window has a single open window.
+ *
+ * @param <T> The type of the elements
+ * @param <K> The type of the keys
+ * @param <A> The type of the accumulators
+ * @param <V> The type of the results
+ */
+class KeyedWindow<T, K, A, V> {
+
+	private static final int				STRIPES	= stripes();
+
+	private final Function< ? super T, ? extends K>	classifier;
+
+	private final Supplier<A>				supplier;
+
+	private final BiConsumer<A, ? super T>	accumulator;
+
+	private final Function<A,V>				finisher;
+
+	private final Stripe<K,A>[]				stripes;
+
+	@SuppressWarnings("unchecked")
+	KeyedWindow(Function< ? super T, ? extends K> classifier,
+			Collector< ? super T,A,V> collector, int panesPerWindow) {
+		this.classifier = classifier;
+		this.supplier = collector.supplier();
+		this.accumulator = collector.accumulator();
+		this.finisher = collector.finisher();
+		stripes = new Stripe[STRIPES];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new Stripe<>(panesPerWindow);
+		}
+	}
+
+	private static int stripes() {
+		int stripes = Integer.highestOneBit(
+				Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+		return Math.max(stripes, 4);
+	}
+
+	void accumulate(T t) {
+		K key = classifier.apply(t);
+		int h = Objects.hashCode(key);
+		Stripe<K,A> stripe = stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
+		stripe.lock.lock();
+		try {
+			for (Map<K,A> window : stripe.windows) {
+				A acc = window.get(key);
+				if (acc == null) {
+					acc = supplier.get();
+					window.put(key, acc);
+				}
+				accumulator.accept(acc, t);
+			}
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the window ending now, opens the window ending after the longest
+	 * one still open, and returns the results of the closed window.
+	 */
+	synchronized Map<K,V> rotate() {
+		Map<K,V> results = new HashMap<>();
+		for (Stripe<K,A> stripe : stripes) {
+			Map<K,A> accumulators;
+			stripe.lock.lock();
+			try {
+				accumulators = stripe.windows[stripe.oldest];
+				stripe.windows[stripe.oldest] = new HashMap<>();
+				stripe.oldest = (stripe.oldest + 1) % stripe.windows.length;
+			} finally {
+				stripe.lock.unlock();
+			}
+			// The stripes hold disjoint keys, and the closed accumulators are
+			// no longer reachable from the stripe
+			for (Entry<K,A> e : accumulators.entrySet()) {
+				results.put(e.getKey(), finisher.apply(e.getValue()));
+			}
+		}
+		return results;
+	}
+
+	private static final class Stripe<K, A> {
+		final ReentrantLock	lock	= new ReentrantLock();
+
+		/** The open windows, guarded by the lock */
+		final Map<K,A>[]	windows;
+
+		/** The index of the window ending first, guarded by the lock */
+		int					oldest;
+
+		@SuppressWarnings("unchecked")
+		Stripe(int panesPerWindow) {
+			windows = new Map[panesPerWindow];
+			for (int i = 0; i < windows.length; i++) {
+				windows[i] = new HashMap<>();
+			}
+		}
+	}
+}
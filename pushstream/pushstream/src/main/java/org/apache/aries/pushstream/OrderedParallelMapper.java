@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import static org.apache.aries.pushstream.AbstractPushStreamImpl.State.CLOSED;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventConsumer;
+
+/**
+ * Maps the events of a stream using several tasks at once, and forwards the
+ * results in the order of the events.
+ * <p>
+ * Each event gets a sequence number and its result is stored in the slot of a
+ * ring with one slot per task. At most one thread at a time forwards the
+ * results, in sequence order, and frees their slots. The events wait for a
+ * free slot, so that at most {@code parallelism} events are being mapped or
+ * waiting for an earlier one. The back pressure returned by the next stage is
+ * passed back to the previous stage with the next event.
+ *
+ * @param <T> The type of the events
+ * @param <R> The type of the results
+ */
+class OrderedParallelMapper<T, R> implements PushEventConsumer<T> {
+
+	private static final Object					NULL		= new Object();
+
+	private final AbstractPushStreamImpl<T>		previous;
+
+	private final AbstractPushStreamImpl<R>		next;
+
+	private final Executor						executor;
+
+	private final Function< ? super T, ? extends R>	mapper;
+
+	private final Semaphore						permits;
+
+	private final AtomicReferenceArray<Object>	slots;
+
+	private final AtomicLong					sequence	= new AtomicLong();
+
+	private final AtomicLong					backPressure	= new AtomicLong();
+
+	/** The number of pending forwarding requests */
+	private final AtomicInteger					wip			= new AtomicInteger();
+
+	/** Only used by the forwarding thread */
+	private long								nextToForward;
+
+	private long								terminalSequence;
+
+	private volatile PushEvent< ? extends T>	terminal;
+
+	OrderedParallelMapper(AbstractPushStreamImpl<T> previous,
+			AbstractPushStreamImpl<R> next, int parallelism, Executor executor,
+			Function< ? super T, ? extends R> mapper) {
+		this.previous = previous;
+		this.next = next;
+		this.executor = executor;
+		this.mapper = mapper;
+		this.permits = new Semaphore(parallelism);
+		this.slots = new AtomicReferenceArray<>(parallelism);
+	}
+
+	@Override
+	public long accept(PushEvent< ? extends T> event) throws Exception {
+		if (next.closed.get() == CLOSED) {
+			return ABORT;
+		}
+		if (event.isTerminal()) {
+			// Forwarded after the results of all the previous events
+			terminalSequence = sequence.get();
+			terminal = event;
+			forward();
+			return ABORT;
+		}
+
+		permits.acquire();
+		long seq = sequence.getAndIncrement();
+		int index = (int) (seq % slots.length());
+		T data = event.getData();
+		try {
+			executor.execute(() -> {
+				Object result;
+				try {
+					result = mapper.apply(data);
+					if (result == null) {
+						result = NULL;
+					}
+				} catch (Throwable t) {
+					result = new Failure(t);
+				}
+				// The slot is always filled, or the later results would
+				// never be forwarded
+				slots.set(index, result);
+				forward();
+			});
+		} catch (RuntimeException e) {
+			// The sequence number is taken, fail it so that the earlier
+			// results are forwarded before the stream closes
+			slots.set(index, new Failure(e));
+			forward();
+			return ABORT;
+		}
+		return backPressure.getAndSet(0);
+	}
+
+	private void forward() {
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+		int missed = 1;
+		for (;;) {
+			for (;;) {
+				int index = (int) (nextToForward % slots.length());
+				Object result = slots.get(index);
+				if (result == null) {
+					PushEvent< ? extends T> end = terminal;
+					if (end != null && terminalSequence == nextToForward) {
+						terminal = null;
+						next.handleEvent(end.nodata());
+					}
+					break;
+				}
+				slots.set(index, null);
+				nextToForward++;
+				permits.release();
+				forward(result);
+			}
+			missed = wip.addAndGet(-missed);
+			if (missed == 0) {
+				return;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void forward(Object result) {
+		if (result instanceof Failure) {
+			next.close(PushEvent.error(((Failure) result).cause));
+			previous.close();
+			return;
+		}
+		long bp = next.handleEvent(
+				PushEvent.data(result == NULL ? null : (R) result));
+		if (bp < 0) {
+			previous.close();
+		} else if (bp > 0) {
+			backPressure.accumulateAndGet(bp, Math::max);
+		}
+	}
+
+	private static final class Failure {
+		final Exception cause;
+
+		Failure(Throwable cause) {
+			this.cause = cause instanceof Exception ? (Exception) cause
+					: new Exception(cause);
+		}
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventSource;
+import org.osgi.util.pushstream.PushStreamBuilder;
+import org.osgi.util.pushstream.PushStreamProvider;
+
+/**
+ * A bounded, lock-free {@link BlockingQueue} backed by a ring buffer, which
+ * supports any number of producers and consumers.
+ * <p>
+ * Each slot of the ring carries a sequence number telling whether it can be
+ * written or read for the current lap, so that offering and polling an
+ * element costs a single compare and swap. {@link #size()} and
+ * {@link #remainingCapacity()} only read the two cursors, which makes them
+ * cheap enough for the pushback policies to call after every event.
+ * <p>
+ * An element is published with a volatile write, so a consumer which checks
+ * the queue after a producer has signalled it always sees the element. A
+ * slot which has been claimed by a producer or a consumer, but not yet
+ * written or released, is waited for rather than reported as empty or full.
+ * <p>
+ * The capacity is rounded up to the next power of two. The blocking methods
+ * yield and then park the calling thread for short periods rather than
+ * waiting on a condition, they are only meant for the {@code BLOCK} queue
+ * policy. Use
+ * {@link #buildStream(PushStreamProvider, PushEventSource, int)} to buffer a
+ * stream with a ring buffer.
+ *
+ * @param <E> The type of the elements
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E>
+		implements BlockingQueue<E> {
+
+	private static final int	MAX_SPINS	= 100;
+
+	private static final long	PARK_NANOS	= TimeUnit.MICROSECONDS.toNanos(50);
+
+	private final Object[]		buffer;
+
+	private final AtomicLongArray	sequences;
+
+	private final int			mask;
+
+	/** The position of the next element to read */
+	private final AtomicLong	head		= new AtomicLong();
+
+	/** The position of the next element to write */
+	private final AtomicLong	tail		= new AtomicLong();
+
+	public RingBufferQueue(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException(
+					"The capacity must be between 1 and 2^30. It was "
+							+ capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		buffer = new Object[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+	}
+
+	/**
+	 * Starts building a stream buffered with a ring buffer of the given
+	 * capacity.
+	 * 
+	 * @param psp the provider creating the stream
+	 * @param eventSource the source of the events
+	 * @param capacity the number of events which may be buffered
+	 * @return the builder
+	 */
+	public static <T> PushStreamBuilder<T,RingBufferQueue<PushEvent< ? extends T>>> buildStream(
+			PushStreamProvider psp, PushEventSource<T> eventSource,
+			int capacity) {
+		return psp.<T, RingBufferQueue<PushEvent< ? extends T>>> buildStream(
+				eventSource).withBuffer(new RingBufferQueue<>(capacity));
+	}
+
+	@Override
+	public boolean offer(E e) {
+		if (e == null) {
+			throw new NullPointerException();
+		}
+		long pos = tail.get();
+		for (;;) {
+			int index = (int) pos & mask;
+			long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					buffer[index] = e;
+					// Publishes the element to the consumers, the volatile
+					// write must not be reordered with the producer checking
+					// whether a consumer is running
+					sequences.set(index, pos + 1);
+					return true;
+				}
+				pos = tail.get();
+			} else if (diff < 0) {
+				if (head.get() + buffer.length <= pos) {
+					// The slot still holds the element from the previous lap
+					return false;
+				}
+				// A consumer has taken the element but not released the slot
+				Thread.yield();
+				pos = tail.get();
+			} else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		long pos = head.get();
+		for (;;) {
+			int index = (int) pos & mask;
+			long diff = sequences.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					E e = (E) buffer[index];
+					buffer[index] = null;
+					// Hands the slot over to the producers of the next lap
+					sequences.lazySet(index, pos + buffer.length);
+					return e;
+				}
+				pos = head.get();
+			} else if (diff < 0) {
+				if (tail.get() <= pos) {
+					return null;
+				}
+				// A producer has claimed the slot but not published the
+				// element yet
+				Thread.yield();
+				pos = head.get();
+			} else {
+				pos = head.get();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E peek() {
+		for (;;) {
+			long pos = head.get();
+			int index = (int) pos & mask;
+			if (sequences.get(index) != pos + 1) {
+				if (tail.get() <= pos) {
+					return null;
+				}
+				// Wait for the element to be published, or taken
+				Thread.yield();
+				continue;
+			}
+			E e = (E) buffer[index];
+			if (e != null && head.get() == pos) {
+				return e;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		long h = head.get();
+		long size = tail.get() - h;
+		return (int) Math.max(0, Math.min(size, buffer.length));
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return buffer.length - size();
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException {
+		for (int spins = 0; !offer(e); spins++) {
+			idle(spins);
+		}
+	}
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (int spins = 0; !offer(e); spins++) {
+			if (System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+			idle(spins);
+		}
+		return true;
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+		E e;
+		for (int spins = 0; (e = poll()) == null; spins++) {
+			idle(spins);
+		}
+		return e;
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		E e;
+		for (int spins = 0; (e = poll()) == null; spins++) {
+			if (System.nanoTime() - deadline >= 0) {
+				return null;
+			}
+			idle(spins);
+		}
+		return e;
+	}
+
+	/**
+	 * Yields for the first attempts, as the other side is usually about to
+	 * make progress, and parks afterwards.
+	 */
+	private void idle(int spins) throws InterruptedException {
+		if (spins < MAX_SPINS) {
+			Thread.yield();
+		} else {
+			LockSupport.parkNanos(this, PARK_NANOS);
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection< ? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection< ? super E> c, int maxElements) {
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+		int count = 0;
+		E e;
+		while (count < maxElements && (e = poll()) != null) {
+			c.add(e);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns an iterator over a snapshot of the elements, which does not
+	 * support removal.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Iterator<E> iterator() {
+		List<E> snapshot = new ArrayList<>(size());
+		for (long pos = head.get(), end = tail.get(); pos < end; pos++) {
+			int index = (int) pos & mask;
+			Object e = buffer[index];
+			if (sequences.get(index) == pos + 1 && e != null) {
+				snapshot.add((E) e);
+			}
+		}
+		return Collections.unmodifiableList(snapshot).iterator();
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream.api;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+import org.osgi.annotation.versioning.ProviderType;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamProvider;
+
+/**
+ * The operations of the Aries push streams which are not part of the OSGi Push
+ * Stream specification. All the streams created by the
+ * {@link PushStreamProvider} implement this interface, use
+ * {@link #of(PushStream)} to access these operations from a
+ * {@link PushStream}.
+ *
+ * @param <T> The type of the payloads
+ */
+@ProviderType
+public interface AriesPushStream<T> extends PushStream<T> {
+
+	/**
+	 * Gives access to the Aries operations of a stream.
+	 * 
+	 * @param stream A stream created by the Aries {@link PushStreamProvider}
+	 * @return the same stream
+	 * @throws IllegalArgumentException if the stream is not an Aries stream
+	 */
+	static <T> AriesPushStream<T> of(PushStream<T> stream) {
+		if (stream instanceof AriesPushStream) {
+			return (AriesPushStream<T>) stream;
+		}
+		throw new IllegalArgumentException(
+				"The stream was not created by the Aries PushStreamProvider: "
+						+ stream);
+	}
+
+	/**
+	 * Remove the duplicates of the most recently seen payloads. At most
+	 * {@code maxSize} payloads are tracked, the least recently seen payload
+	 * being forgotten when a new one arrives. A payload is therefore only
+	 * removed if an equal payload was seen among the last {@code maxSize}
+	 * distinct payloads.
+	 * 
+	 * @param maxSize The maximum number of payloads to track
+	 * @return Builder style (can be a new or the same object)
+	 * @throws IllegalArgumentException if the maximum size is < 1
+	 */
+	AriesPushStream<T> distinct(int maxSize);
+
+	/**
+	 * Remove the duplicates of the payloads seen recently. A payload is
+	 * forgotten once no equal payload has been seen for the given duration,
+	 * and at most {@code maxSize} payloads are tracked, the least recently
+	 * seen payload being forgotten first.
+	 * 
+	 * @param d How long a payload is tracked after it was last seen
+	 * @param maxSize The maximum number of payloads to track
+	 * @return Builder style (can be a new or the same object)
+	 * @throws NullPointerException if the duration is null
+	 * @throws IllegalArgumentException if the duration is not positive or
+	 *             the maximum size is < 1
+	 */
+	AriesPushStream<T> distinct(Duration d, int maxSize);
+
+	/**
+	 * Sorted the elements with the given comparator, using at most
+	 * {@code maxBuffered} elements of memory. Whenever this number of elements
+	 * is buffered they are sorted and written to a temporary file using the
+	 * serializer. The sorted files are merged when the stream closes, reading
+	 * them back with the deserializer, and deleted afterwards. A bounded
+	 * number of files is read at the same time, the files being merged in
+	 * several passes when there are more of them.
+	 * <p>
+	 * Elements which compare as equal keep their order, as with
+	 * {@link #sorted(Comparator)}.
+	 * 
+	 * @param comparator
+	 * @param maxBuffered The maximum number of elements kept in memory
+	 * @param serializer Turns an element into the bytes written to the
+	 *            temporary files
+	 * @param deserializer Reads an element back from its bytes
+	 * @return Builder style (can be a new or the same object)
+	 * @throws NullPointerException if an argument is null
+	 * @throws IllegalArgumentException if the number of buffered elements is
+	 *             < 1
+	 */
+	AriesPushStream<T> sorted(Comparator< ? super T> comparator,
+			int maxBuffered, Function< ? super T,byte[]> serializer,
+			Function<byte[], ? extends T> deserializer);
+
+	/**
+	 * Groups the events by key over fixed, consecutive time intervals, and
+	 * forwards the results of all the keys at the end of each interval. The
+	 * events of each key are reduced using the collector as they arrive, so
+	 * only one accumulator per key is kept in memory. Note that:
+	 * <ul>
+	 * <li>The map forwarded at the end of an interval only contains the keys
+	 * which had events during the interval, and is empty if no events
+	 * arrived.</li>
+	 * <li>The results are delivered as a different task, (and therefore
+	 * potentially on a different thread) from the one that delivered the
+	 * event to this {@link PushStream}.</li>
+	 * <li>Due to the buffering and asynchronous delivery required, this method
+	 * prevents the propagation of back-pressure to earlier stages</li>
+	 * </ul>
+	 * 
+	 * @param d The length of the windows
+	 * @param classifier Gives the key of an event
+	 * @param collector Reduces the events of a key
+	 * @return Builder style (can be a new or the same object)
+	 */
+	<K, A, V> AriesPushStream<Map<K,V>> windowByKey(Duration d,
+			Function< ? super T, ? extends K> classifier,
+			Collector< ? super T,A,V> collector);
+
+	/**
+	 * Groups the events by key over sliding time windows, and forwards the
+	 * results of all the keys each time the windows slide. The size of the
+	 * windows must be a multiple of the slide. The events of each key are
+	 * reduced using the collector, each event being accumulated into every
+	 * window it belongs to, so one accumulator per key is kept for each of
+	 * the size / slide windows open at the same time. Note that:
+	 * <ul>
+	 * <li>The map forwarded when the windows slide only contains the keys
+	 * which had events during the window, and is empty if no events
+	 * arrived.</li>
+	 * <li>The results are delivered as a different task, (and therefore
+	 * potentially on a different thread) from the one that delivered the
+	 * event to this {@link PushStream}.</li>
+	 * <li>Due to the buffering and asynchronous delivery required, this method
+	 * prevents the propagation of back-pressure to earlier stages</li>
+	 * </ul>
+	 * 
+	 * @param size The length of the windows
+	 * @param slide The time between the ends of two consecutive windows
+	 * @param classifier Gives the key of an event
+	 * @param collector Reduces the events of a key
+	 * @return Builder style (can be a new or the same object)
+	 * @throws IllegalArgumentException if the size is not a positive
+	 *             multiple of the slide
+	 */
+	<K, A, V> AriesPushStream<Map<K,V>> windowByKey(Duration size, Duration slide,
+			Function< ? super T, ? extends K> classifier,
+			Collector< ? super T,A,V> collector);
+
+	/**
+	 * Map the payload values in up to n background tasks, forwarding the
+	 * results in the order of the events. An event waits for one of the n
+	 * tasks to be free, so that at most n events are being mapped or waiting
+	 * for the result of an earlier event. The back pressure of the downstream
+	 * stages is applied to the upstream ones. A mapper which throws an
+	 * exception, an executor which rejects a task, or a downstream channel
+	 * that is closed, will cause the stream to close.
+	 * 
+	 * @param n number of simultaneous background tasks to use
+	 * @param e an executor to use for the background tasks
+	 * @param mapper The map function
+	 * @return Builder style (can be a new or the same object)
+	 * @throws IllegalArgumentException if the number of tasks is < 1
+	 * @throws NullPointerException if the Executor is null
+	 */
+	<R> AriesPushStream<R> mapParallel(int n, Executor e,
+			Function< ? super T, ? extends R> mapper);
+}
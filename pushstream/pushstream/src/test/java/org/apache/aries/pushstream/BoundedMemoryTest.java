@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.Function;
+
+import org.apache.aries.pushstream.api.AriesPushStream;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventSource;
+import org.osgi.util.pushstream.PushStream;
+import org.osgi.util.pushstream.PushStreamProvider;
+
+public class BoundedMemoryTest {
+
+	int	elements	= 2000000;
+	int	maxSize		= 10000;
+
+	private final PushStreamProvider psp = new PushStreamProvider();
+
+	@Test
+	@Ignore
+	public void testDistinctHeap() throws Exception {
+		benchmarkHeap("distinct()", s -> s.distinct());
+		benchmarkHeap("distinct(" + maxSize + ")", s -> s.distinct(maxSize));
+	}
+
+	@Test
+	@Ignore
+	public void testSortedHeap() throws Exception {
+		benchmarkHeap("sorted()", s -> s.sorted(Comparator.naturalOrder()));
+		benchmarkHeap("sorted(" + maxSize + ")",
+				s -> s.sorted(Comparator.naturalOrder(), maxSize,
+						e -> ByteBuffer.allocate(8).putLong(e).array(),
+						b -> ByteBuffer.wrap(b).getLong()));
+	}
+
+	private void benchmarkHeap(String name,
+			Function<AriesPushStream<Long>,PushStream<Long>> operation)
+			throws Exception {
+		PushEventSource<Long> source = pec -> {
+			Thread t = new Thread(() -> {
+				try {
+					// Mostly distinct values, so that nothing is discarded early
+					Random random = new Random(42);
+					for (int i = 0; i < elements; i++) {
+						if (pec.accept(PushEvent.data(random.nextLong())) < 0) {
+							return;
+						}
+					}
+					pec.accept(PushEvent.close());
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+			t.start();
+			return t::interrupt;
+		};
+		AriesPushStream<Long> stream = AriesPushStream
+				.of(psp.buildStream(source).unbuffered().create());
+
+		resetPeakHeap();
+		long t0 = System.nanoTime();
+		long count = operation.apply(stream).count().getValue();
+		long ms = (System.nanoTime() - t0) / 1000000;
+		System.err.println(name);
+		System.err.println("Elements = " + count + ", time (ms) = " + ms
+				+ ", peak heap (MB) = " + peakHeap() / (1024 * 1024));
+		System.err.println();
+		System.err.flush();
+	}
+
+	private static void resetPeakHeap() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long peakHeap() {
+		// The sum of the peaks of the pools is an upper bound of the peak of
+		// the heap, which includes the garbage created by the operations
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+}
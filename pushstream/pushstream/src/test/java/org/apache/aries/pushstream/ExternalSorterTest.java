@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class ExternalSorterTest {
+
+	@Test
+	public void testMultiPassMerge() throws Exception {
+		long runsBefore = countRuns();
+		// 1000 elements in 100 runs, merged 3 at a time
+		ExternalSorter<long[]> sorter = new ExternalSorter<>(
+				Comparator.comparingLong(a -> a[0]), 10, 3,
+				ExternalSorterTest::serialize,
+				ExternalSorterTest::deserialize);
+		Random random = new Random(42);
+		List<long[]> expected = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			// The second value records the arrival order
+			long[] e = new long[] {
+					random.nextInt(50), i
+			};
+			expected.add(e);
+			sorter.add(e);
+		}
+		expected.sort(Comparator.comparingLong(a -> a[0]));
+
+		List<long[]> sorted = new ArrayList<>();
+		sorter.forEachSorted(sorted::add);
+
+		assertEquals(expected.size(), sorted.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("key " + i, expected.get(i)[0], sorted.get(i)[0]);
+			assertEquals("order " + i, expected.get(i)[1], sorted.get(i)[1]);
+		}
+		assertEquals("The runs are deleted", runsBefore, countRuns());
+	}
+
+	private static byte[] serialize(long[] e) {
+		return ByteBuffer.allocate(16).putLong(e[0]).putLong(e[1]).array();
+	}
+
+	private static long[] deserialize(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		return new long[] {
+				buffer.getLong(), buffer.getLong()
+		};
+	}
+
+	private static long countRuns() throws Exception {
+		Path tmp = Paths.get(System.getProperty("java.io.tmpdir"));
+		try (Stream<Path> files = Files.list(tmp)) {
+			return files.filter(
+					p -> p.getFileName().toString().startsWith("pushstream-sort"))
+					.count();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.aries.pushstream.api.AriesPushStream;
+import org.junit.Test;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEventSource;
+import org.osgi.util.pushstream.PushStreamProvider;
+
+public class KeyedWindowTest {
+
+	private final PushStreamProvider psp = new PushStreamProvider();
+
+	@Test
+	public void testTumblingWindow() {
+		KeyedWindow<String,Character,?,Long> window = new KeyedWindow<>(
+				s -> s.charAt(0), counting(), 1);
+		accumulate(window, "a1", "a2", "b1");
+		assertEquals(counts('a', 2L, 'b', 1L), window.rotate());
+		accumulate(window, "b2");
+		assertEquals(counts('b', 1L), window.rotate());
+		assertEquals(Collections.emptyMap(), window.rotate());
+	}
+
+	@Test
+	public void testSlidingWindow() {
+		// Windows of three slides
+		KeyedWindow<String,Character,?,Long> window = new KeyedWindow<>(
+				s -> s.charAt(0), counting(), 3);
+		accumulate(window, "a1", "b1");
+		assertEquals(counts('a', 1L, 'b', 1L), window.rotate());
+		accumulate(window, "a2");
+		assertEquals(counts('a', 2L, 'b', 1L), window.rotate());
+		accumulate(window, "a3", "a4");
+		assertEquals(counts('a', 4L, 'b', 1L), window.rotate());
+		assertEquals(counts('a', 3L), window.rotate());
+		assertEquals(counts('a', 2L), window.rotate());
+		assertEquals(Collections.emptyMap(), window.rotate());
+	}
+
+	@Test
+	public void testSlidingWindowToSet() {
+		// The combiner of toSet() adds to the larger of its arguments, the
+		// results must neither include expired events nor change afterwards
+		KeyedWindow<String,Character,?,Set<String>> window = new KeyedWindow<>(
+				s -> s.charAt(0), toSet(), 2);
+		accumulate(window, "a1");
+		assertEquals(sets('a', "a1"), window.rotate());
+		accumulate(window, "a2", "a3");
+		Map<Character,Set<String>> second = window.rotate();
+		assertEquals(sets('a', "a1", "a2", "a3"), second);
+		accumulate(window, "a4");
+		assertEquals(sets('a', "a2", "a3", "a4"), window.rotate());
+		assertEquals(sets('a', "a4"), window.rotate());
+		assertEquals(sets('a', "a1", "a2", "a3"), second);
+	}
+
+	@Test
+	public void testTumblingWindowByKey() throws Exception {
+		// The window only ends with the stream
+		List<Map<Character,List<String>>> results = AriesPushStream
+				.of(psp.buildStream(source("a1", "b1", "a2"))
+						.unbuffered()
+						.create())
+				.windowByKey(Duration.ofHours(1), s -> s.charAt(0), toList())
+				.collect(toList())
+				.getValue();
+		Map<Character,List<String>> expected = new HashMap<>();
+		expected.put('a', Arrays.asList("a1", "a2"));
+		expected.put('b', Arrays.asList("b1"));
+		assertEquals(Collections.singletonList(expected), results);
+	}
+
+	@Test
+	public void testSlidingWindowByKey() throws Exception {
+		List<Map<Character,Set<String>>> results = AriesPushStream
+				.of(psp.buildStream(source("a1", "b1", "a2"))
+						.unbuffered()
+						.create())
+				.windowByKey(Duration.ofHours(2), Duration.ofHours(1),
+						s -> s.charAt(0), toSet())
+				.collect(toList())
+				.getValue();
+		Map<Character,Set<String>> expected = new HashMap<>();
+		expected.put('a', new HashSet<>(Arrays.asList("a1", "a2")));
+		expected.put('b', Collections.singleton("b1"));
+		assertEquals(Collections.singletonList(expected), results);
+	}
+
+	@Test
+	public void testWindowByKeyTicks() throws Exception {
+		// Every event is counted in exactly one tumbling window
+		int events = 200;
+		List<Map<Integer,Long>> results = AriesPushStream
+				.of(psp.buildStream(source(events, 1))
+						.unbuffered()
+						.create())
+				.windowByKey(Duration.ofMillis(20), i -> i % 3, counting())
+				.collect(toList())
+				.getValue();
+		assertTrue("Several windows: " + results.size(), results.size() > 1);
+		long[] counts = new long[3];
+		for (Map<Integer,Long> result : results) {
+			result.forEach((k, v) -> counts[k] += v);
+		}
+		assertEquals(67, counts[0]);
+		assertEquals(67, counts[1]);
+		assertEquals(66, counts[2]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSlideNotDividingSize() {
+		AriesPushStream.of(psp.buildStream(source("a1")).unbuffered().create())
+				.windowByKey(Duration.ofSeconds(3), Duration.ofSeconds(2),
+						s -> s.charAt(0), toList());
+	}
+
+	@SafeVarargs
+	private static <T> void accumulate(KeyedWindow<T,?,?,?> window,
+			T... elements) {
+		for (T t : elements) {
+			window.accumulate(t);
+		}
+	}
+
+	private static Map<Character,Long> counts(Object... entries) {
+		Map<Character,Long> counts = new HashMap<>();
+		for (int i = 0; i < entries.length; i += 2) {
+			counts.put((Character) entries[i], (Long) entries[i + 1]);
+		}
+		return counts;
+	}
+
+	private static Map<Character,Set<String>> sets(char key,
+			String... elements) {
+		return Collections.singletonMap(key,
+				new HashSet<>(Arrays.asList(elements)));
+	}
+
+	private static PushEventSource<String> source(String... elements) {
+		return pec -> {
+			Thread t = new Thread(() -> {
+				try {
+					for (String e : elements) {
+						pec.accept(PushEvent.data(e));
+					}
+					pec.accept(PushEvent.close());
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+			t.start();
+			return t::interrupt;
+		};
+	}
+
+	private static PushEventSource<Integer> source(int elements,
+			long delayMillis) {
+		return pec -> {
+			Thread t = new Thread(() -> {
+				try {
+					for (int i = 0; i < elements; i++) {
+						pec.accept(PushEvent.data(i));
+						Thread.sleep(delayMillis);
+					}
+					pec.accept(PushEvent.close());
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+			t.start();
+			return t::interrupt;
+		};
+	}
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.osgi.util.pushstream.PushEventConsumer.ABORT;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import org.apache.aries.pushstream.api.AriesPushStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.osgi.util.pushstream.PushEvent;
+import org.osgi.util.pushstream.PushEvent.EventType;
+import org.osgi.util.pushstream.PushEventConsumer;
+import org.osgi.util.pushstream.PushEventSource;
+import org.osgi.util.pushstream.PushStreamProvider;
+
+public class OrderedParallelMapperTest {
+
+	private final PushStreamProvider psp = new PushStreamProvider();
+
+	private final AtomicReference<PushEventConsumer< ? super Integer>> pec = new AtomicReference<>();
+
+	private final List<PushEvent< ? extends Integer>> received = new CopyOnWriteArrayList<>();
+
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(8);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testOrderWithRandomDelays() throws Exception {
+		int events = 1000;
+		List<Integer> results = stream(source(events))
+				.mapParallel(8, executor, i -> {
+					LockSupport.parkNanos(ThreadLocalRandom.current()
+							.nextLong(TimeUnit.MILLISECONDS.toNanos(1)));
+					return i * 2;
+				})
+				.collect(toList())
+				.getValue();
+		assertEquals(IntStream.range(0, events)
+				.mapToObj(i -> i * 2)
+				.collect(toList()), results);
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+		// The tasks run in the calling thread, so each result has been
+		// forwarded before accept returns
+		stream(manualSource()).mapParallel(2, Runnable::run, i -> i)
+				.forEachEvent(e -> e.isTerminal() ? ABORT
+						: e.getData() < 2 ? 50 : e.getData() < 3 ? 0 : ABORT);
+		PushEventConsumer< ? super Integer> consumer = pec.get();
+		assertNotNull(consumer);
+
+		assertEquals(50, consumer.accept(PushEvent.data(0)));
+		// Only reported once
+		assertEquals(0, consumer.accept(PushEvent.data(2)));
+		assertEquals(50, consumer.accept(PushEvent.data(1)));
+		// The next stage closes the stream, which refuses the next event
+		consumer.accept(PushEvent.data(3));
+		assertTrue(consumer.accept(PushEvent.data(4)) < 0);
+	}
+
+	@Test
+	public void testFailingMapper() throws Exception {
+		// Several tasks fail, the earlier results are forwarded and the
+		// stream terminates once with the first failure
+		RuntimeException failure = new RuntimeException("fail");
+		stream(source(100)).mapParallel(4, executor, i -> {
+			LockSupport.parkNanos(ThreadLocalRandom.current()
+					.nextLong(TimeUnit.MILLISECONDS.toNanos(1)));
+			if (i >= 50) {
+				throw i == 50 ? failure : new RuntimeException("later");
+			}
+			return i;
+		}).forEachEvent(this::record);
+
+		assertTrue(terminated.await(10, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(IntStream.range(0, 50).boxed().collect(toList()),
+				data());
+		PushEvent< ? extends Integer> terminal = terminal();
+		assertEquals(EventType.ERROR, terminal.getType());
+		assertSame(failure, terminal.getFailure());
+	}
+
+	@Test
+	public void testRejectedExecution() throws Exception {
+		AtomicInteger tasks = new AtomicInteger();
+		stream(manualSource()).mapParallel(2, r -> {
+			if (tasks.incrementAndGet() > 3) {
+				throw new RejectedExecutionException();
+			}
+			r.run();
+		}, i -> i).forEachEvent(this::record);
+		PushEventConsumer< ? super Integer> consumer = pec.get();
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, consumer.accept(PushEvent.data(i)));
+		}
+		assertTrue(consumer.accept(PushEvent.data(3)) < 0);
+		assertTrue(consumer.accept(PushEvent.data(4)) < 0);
+
+		assertEquals(0, terminated.getCount());
+		assertEquals(IntStream.range(0, 3).boxed().collect(toList()), data());
+		PushEvent< ? extends Integer> terminal = terminal();
+		assertEquals(EventType.ERROR, terminal.getType());
+		assertTrue(String.valueOf(terminal.getFailure()),
+				terminal.getFailure() instanceof RejectedExecutionException);
+	}
+
+	@Test
+	public void testCloseWithTasksInFlight() throws Exception {
+		CountDownLatch started = new CountDownLatch(3);
+		CountDownLatch release = new CountDownLatch(1);
+		AriesPushStream<Integer> mapped = stream(manualSource())
+				.mapParallel(4, executor, i -> {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return i;
+				});
+		mapped.forEachEvent(this::record);
+		PushEventConsumer< ? super Integer> consumer = pec.get();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, consumer.accept(PushEvent.data(i)));
+		}
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		mapped.close();
+		assertEquals(0, terminated.getCount());
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		// The results of the tasks are dropped and new events are refused
+		assertTrue(consumer.accept(PushEvent.data(3)) < 0);
+		assertEquals(new ArrayList<>(), data());
+		assertEquals(EventType.CLOSE, terminal().getType());
+	}
+
+	@Test
+	@Ignore
+	public void testSpeedup() throws Exception {
+		// The mapper waits, as it would for I/O
+		benchmarkSpeedup(i -> {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(500));
+			return i;
+		});
+	}
+
+	private void benchmarkSpeedup(Function<Integer,Integer> mapper)
+			throws Exception {
+		int events = 2000;
+		long t0 = System.nanoTime();
+		stream(source(events)).map(mapper).count().getValue();
+		long sequential = System.nanoTime() - t0;
+		System.err.println("map: Elements/s = "
+				+ (events / (sequential / 1000000000.0)));
+		for (int n = 1; n <= 8; n *= 2) {
+			t0 = System.nanoTime();
+			stream(source(events)).mapParallel(n, executor, mapper)
+					.count()
+					.getValue();
+			long nanos = System.nanoTime() - t0;
+			System.err.println("mapParallel(" + n + "): Elements/s = "
+					+ (events / (nanos / 1000000000.0)) + ", speedup = "
+					+ ((double) sequential / nanos));
+		}
+		System.err.println();
+		System.err.flush();
+	}
+
+	private AriesPushStream<Integer> stream(PushEventSource<Integer> source) {
+		return AriesPushStream
+				.of(psp.buildStream(source).unbuffered().create());
+	}
+
+	private long record(PushEvent< ? extends Integer> event) {
+		received.add(event);
+		if (event.isTerminal()) {
+			terminated.countDown();
+		}
+		return 0;
+	}
+
+	private List<Integer> data() {
+		return received.stream()
+				.filter(e -> !e.isTerminal())
+				.map(PushEvent::getData)
+				.collect(toList());
+	}
+
+	/**
+	 * @return the only terminal event, which must be the last event
+	 */
+	private PushEvent< ? extends Integer> terminal() {
+		List<PushEvent< ? extends Integer>> terminals = received.stream()
+				.filter(PushEvent::isTerminal)
+				.collect(toList());
+		assertEquals(1, terminals.size());
+		assertSame(terminals.get(0), received.get(received.size() - 1));
+		return terminals.get(0);
+	}
+
+	/**
+	 * A source whose events are pushed by the test through {@link #pec}
+	 */
+	private PushEventSource<Integer> manualSource() {
+		return c -> {
+			pec.set(c);
+			return () -> {};
+		};
+	}
+
+	private static PushEventSource<Integer> source(int elements) {
+		return c -> {
+			Thread t = new Thread(() -> {
+				try {
+					for (int i = 0; i < elements; i++) {
+						if (c.accept(PushEvent.data(i)) < 0) {
+							return;
+						}
+					}
+					c.accept(PushEvent.close());
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			});
+			t.start();
+			return t::interrupt;
+		};
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIESOR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.pushstream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+public class RingBufferQueueTest {
+
+	int	producers		= 4;
+	int	elementsPerProducer	= 1000000;
+	int	roundTrips		= 100000;
+
+	@Test
+	public void testOfferAndPoll() {
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(3);
+		assertEquals(4, queue.remainingCapacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer(i));
+		}
+		assertFalse(queue.offer(4));
+		assertEquals(4, queue.size());
+		assertEquals(Integer.valueOf(0), queue.peek());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(Integer.valueOf(i), queue.poll());
+		}
+		assertNull(queue.poll());
+		assertNull(queue.peek());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testConcurrentProducersAndConsumers() throws Exception {
+		// Every element is received exactly once
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(64);
+		int perProducer = 100000;
+		AtomicIntegerArray received = new AtomicIntegerArray(
+				producers * perProducer);
+		List<Thread> threads = new ArrayList<>();
+		for (int p = 0; p < producers; p++) {
+			int first = p * perProducer;
+			threads.add(new Thread(() -> {
+				try {
+					for (int i = 0; i < perProducer; i++) {
+						queue.put(first + i);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}));
+			threads.add(new Thread(() -> {
+				try {
+					for (int i = 0; i < perProducer; i++) {
+						received.incrementAndGet(queue.take());
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}));
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		for (Thread t : threads) {
+			t.join(TimeUnit.SECONDS.toMillis(30));
+			assertFalse("The queue is stuck", t.isAlive());
+		}
+		for (int i = 0; i < received.length(); i++) {
+			assertEquals("element " + i, 1, received.get(i));
+		}
+	}
+
+	@Test
+	public void testNoMissedSignal() throws Exception {
+		// A consumer which is signalled after an offer must see the element,
+		// which is how the buffered streams hand events to their worker
+		RingBufferQueue<Integer> queue = new RingBufferQueue<>(1024);
+		Semaphore signal = new Semaphore(0);
+		int count = 200000;
+		CountDownLatch done = new CountDownLatch(1);
+		AtomicReference<String> error = new AtomicReference<>();
+		Thread consumer = new Thread(() -> {
+			try {
+				for (int i = 0; i < count; i++) {
+					if (!signal.tryAcquire(5, TimeUnit.SECONDS)) {
+						error.set("No signal for element " + i);
+						return;
+					}
+					if (queue.poll() == null) {
+						error.set("Element " + i + " is missing");
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				error.set("interrupted");
+			} finally {
+				done.countDown();
+			}
+		});
+		consumer.start();
+		for (int i = 0; i < count; i++) {
+			while (!queue.offer(i)) {
+				Thread.yield();
+			}
+			signal.release();
+		}
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertNull(error.get());
+	}
+
+	@Test
+	@Ignore
+	public void testThroughput() throws Exception {
+		benchmarkThroughput("ArrayBlockingQueue", ArrayBlockingQueue::new);
+		benchmarkThroughput("RingBufferQueue", RingBufferQueue::new);
+	}
+
+	@Test
+	@Ignore
+	public void testLatency() throws Exception {
+		benchmarkLatency("ArrayBlockingQueue", ArrayBlockingQueue::new);
+		benchmarkLatency("RingBufferQueue", RingBufferQueue::new);
+	}
+
+	private void benchmarkThroughput(String name,
+			IntFunction<BlockingQueue<Integer>> factory) throws Exception {
+		System.err.println(name);
+		for (int n = 1; n <= producers; n *= 2) {
+			BlockingQueue<Integer> queue = factory.apply(1024);
+			int nbThreads = n;
+			List<Thread> threads = new ArrayList<>();
+			for (int p = 0; p < nbThreads; p++) {
+				threads.add(new Thread(() -> {
+					try {
+						Integer e = 1;
+						for (int i = 0; i < elementsPerProducer; i++) {
+							queue.put(e);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}));
+				threads.add(new Thread(() -> {
+					try {
+						for (int i = 0; i < elementsPerProducer; i++) {
+							queue.take();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}));
+			}
+			long t0 = System.nanoTime();
+			for (Thread t : threads) {
+				t.start();
+			}
+			for (Thread t : threads) {
+				t.join();
+			}
+			long nanos = System.nanoTime() - t0;
+			System.err.println("Elements/s (" + n + " producers, " + n
+					+ " consumers) = " + ((n * (long) elementsPerProducer)
+							/ (nanos / 1000000000.0)));
+		}
+		System.err.println();
+		System.err.flush();
+	}
+
+	private void benchmarkLatency(String name,
+			IntFunction<BlockingQueue<Integer>> factory) throws Exception {
+		// Round trips between two threads through a pair of queues
+		BlockingQueue<Integer> ping = factory.apply(1024);
+		BlockingQueue<Integer> pong = factory.apply(1024);
+		Thread echo = new Thread(() -> {
+			try {
+				for (int i = 0; i < roundTrips; i++) {
+					pong.put(ping.take());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		echo.start();
+		long[] times = new long[roundTrips];
+		Integer e = 1;
+		for (int i = 0; i < roundTrips; i++) {
+			long t0 = System.nanoTime();
+			ping.put(e);
+			pong.take();
+			times[i] = System.nanoTime() - t0;
+		}
+		echo.join();
+		Arrays.sort(times);
+		System.err.println(name);
+		System.err.println("Round trip (us) median = " + times[roundTrips / 2] / 1000.0
+				+ ", 99% = " + times[(int) (roundTrips * 0.99)] / 1000.0
+				+ ", max = " + times[roundTrips - 1] / 1000.0);
+		System.err.println();
+		System.err.flush();
+	}
+}
@@ -15,7 +15,11 @@ public class ComponentTxData {
     private static final Logger LOG = LoggerFactory.getLogger(ComponentTxData.class);
     private static final int BANNED_MODIFIERS = Modifier.PRIVATE | Modifier.STATIC;
     
-    private Map<Method, TransactionalAnnotationAttributes> txMap = new HashMap<Method, TransactionalAnnotationAttributes>();
+    /**
+     * The effective transaction attributes of the methods which can be invoked on the bean.
+     * It is filled by the constructor and never modified afterwards, so it can be read concurrently.
+     */
+    private final Map<Method, TransactionalAnnotationAttributes> txMap = new HashMap<Method, TransactionalAnnotationAttributes>();
     private boolean isTransactional;
     private Class<?> beanClass;
     
@@ -31,17 +35,50 @@ public class ComponentTxData {
             }
             current = current.getSuperclass();
         }
+        resolveEffectiveTypes();
     }
 
     TransactionalAnnotationAttributes getEffectiveType(Method m) {
-        if (txMap.containsKey(m)) {
-                return txMap.get(m);
+        TransactionalAnnotationAttributes txData = txMap.get(m);
+        if (txData == null && !txMap.containsKey(m)) {
+            // Not a method of the bean class or of its interfaces
+            return findEffectiveType(m);
         }
+        return txData;
+    }
+
+    /**
+     * Computes the effective attributes of all the methods of the bean class, its superclasses
+     * and its interfaces, so that they do not need to be looked up when the methods are invoked.
+     */
+    private void resolveEffectiveTypes() {
+        Map<Method, TransactionalAnnotationAttributes> effectiveTypes = new HashMap<Method, TransactionalAnnotationAttributes>();
+        for (Class<?> current = beanClass; current != null; current = current.getSuperclass()) {
+            for (Method m : current.getDeclaredMethods()) {
+                addEffectiveType(effectiveTypes, m);
+            }
+            for (Class<?> iface : current.getInterfaces()) {
+                for (Method m : iface.getMethods()) {
+                    addEffectiveType(effectiveTypes, m);
+                }
+            }
+        }
+        for (Method m : beanClass.getMethods()) {
+            addEffectiveType(effectiveTypes, m);
+        }
+        txMap.putAll(effectiveTypes);
+    }
+
+    private void addEffectiveType(Map<Method, TransactionalAnnotationAttributes> effectiveTypes, Method m) {
+        if (!txMap.containsKey(m) && !effectiveTypes.containsKey(m)) {
+            effectiveTypes.put(m, findEffectiveType(m));
+        }
+    }
+
+    private TransactionalAnnotationAttributes findEffectiveType(Method m) {
         try {
             Method effectiveMethod = beanClass.getDeclaredMethod(m.getName(), m.getParameterTypes());
-            TransactionalAnnotationAttributes txData = txMap.get(effectiveMethod);
-            txMap.put(m, txData);
-            return txData;
+            return txMap.get(effectiveMethod);
         } catch (NoSuchMethodException e) { // NOSONAR
             return getFromMethod(m);
         } catch (SecurityException e) {
@@ -52,9 +89,7 @@ public class ComponentTxData {
     private TransactionalAnnotationAttributes getFromMethod(Method m) {
         try {
             Method effectiveMethod = beanClass.getMethod(m.getName(), m.getParameterTypes());
-            TransactionalAnnotationAttributes txData = txMap.get(effectiveMethod);
-            txMap.put(m, txData);
-            return txData;
+            return txMap.get(effectiveMethod);
         } catch (NoSuchMethodException e1) {
             LOG.debug("No method found when scanning for transactions", e1);
             return null;
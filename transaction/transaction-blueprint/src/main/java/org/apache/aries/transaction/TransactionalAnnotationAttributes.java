@@ -8,15 +8,16 @@ import java.util.List;
 public class TransactionalAnnotationAttributes {
 
 	private TxType txType;
+	private TransactionAttribute txAttribute;
 	private List<Class> rollbackOn = new ArrayList<Class>();
 	private List<Class> dontRollbackOn = new ArrayList<Class>();
 
 	public TransactionalAnnotationAttributes(TxType defaultType) {
-		this.txType = defaultType;
+		setTxType(defaultType);
 	}
 
 	public TransactionalAnnotationAttributes(TxType txType, Class[] dontRollbackOn, Class[] rollbackOn) {
-		this.txType = txType;
+		setTxType(txType);
 		if (dontRollbackOn != null) {
 			this.dontRollbackOn = Arrays.asList(dontRollbackOn);
 		}
@@ -31,6 +32,14 @@ public class TransactionalAnnotationAttributes {
 
 	public void setTxType(TxType txType) {
 		this.txType = txType;
+		this.txAttribute = txType != null ? TransactionAttribute.fromValue(txType) : null;
+	}
+
+	/**
+	 * @return the strategy matching the transaction type, resolved once
+	 */
+	public TransactionAttribute getTransactionAttribute() {
+		return txAttribute;
 	}
 
 	public List<Class> getRollbackOn() {
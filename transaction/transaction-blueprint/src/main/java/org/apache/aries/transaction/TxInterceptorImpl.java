@@ -19,24 +19,27 @@
 package org.apache.aries.transaction;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.transaction.RollbackException;
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 
-import org.apache.aries.blueprint.Interceptor;
+import org.apache.aries.blueprint.Interceptor2;
 import org.osgi.service.blueprint.reflect.ComponentMetadata;
 import org.osgi.service.coordinator.Coordination;
 import org.osgi.service.coordinator.Coordinator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class TxInterceptorImpl implements Interceptor {
+public class TxInterceptorImpl implements Interceptor2 {
     private static final Logger LOGGER = LoggerFactory.getLogger(TxInterceptorImpl.class);
 
     private TransactionManager tm;
     private Coordinator coordinator;
     private ComponentTxData txData;
+    private final ConcurrentMap<Method, String> coordinationNames = new ConcurrentHashMap<Method, String>();
 
     public TxInterceptorImpl(TransactionManager tm, Coordinator coordinator, ComponentTxData txData) {
         this.tm = tm;
@@ -49,6 +52,11 @@ public class TxInterceptorImpl implements Interceptor {
         return 1; // Higher rank than jpa interceptor to make sure transaction is started first
     }
 
+    @Override
+    public boolean intercepts(ComponentMetadata cm, Method m) {
+        return txData.getEffectiveType(m) != null;
+    }
+
     @Override
     public Object preCall(ComponentMetadata cm, Method m, Object... parameters) throws Throwable {
         final TransactionalAnnotationAttributes type = txData.getEffectiveType(m);
@@ -56,12 +64,13 @@ public class TxInterceptorImpl implements Interceptor {
             // No transaction
             return null;
         }
-        TransactionAttribute txAttribute = TransactionAttribute.fromValue(type.getTxType());
+        TransactionAttribute txAttribute = type.getTransactionAttribute();
 
-        LOGGER.debug("PreCall for bean {}, method {} with tx strategy {}.", getCmId(cm), m.getName(), txAttribute);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("PreCall for bean {}, method {} with tx strategy {}.", getCmId(cm), m.getName(), txAttribute);
+        }
         TransactionToken token = txAttribute.begin(tm);
-        String coordName = "txInterceptor." + m.getDeclaringClass().getName() + "." + m.getName();
-        Coordination coord = coordinator.begin(coordName , 0);
+        Coordination coord = coordinator.begin(getCoordinationName(m), 0);
         token.setCoordination(coord);
         return token;
     }
@@ -111,6 +120,15 @@ public class TxInterceptorImpl implements Interceptor {
         }
     }
 
+    private String getCoordinationName(Method m) {
+        String name = coordinationNames.get(m);
+        if (name == null) {
+            name = "txInterceptor." + m.getDeclaringClass().getName() + "." + m.getName();
+            coordinationNames.put(m, name);
+        }
+        return name;
+    }
+
     private void safeEndCoordination(final TransactionToken token) {
         try {
             if (token != null && token.getCoordination() != null) {
@@ -21,6 +21,12 @@ package org.apache.aries.transaction;
 import static org.junit.Assert.assertEquals;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.transaction.Transactional.TxType;
 
@@ -65,6 +71,34 @@ public class ComponentTxDataTest {
         assertEquals(TxType.REQUIRED, getType(txData, "supports"));
     }
 
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        final ComponentTxData txData = new ComponentTxData(ExtendedPojo3.class);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < 1000; j++) {
+                            assertEquals(TxType.MANDATORY, getType(txData, "defaultType"));
+                            assertEquals(TxType.REQUIRED, getType(txData, "supports"));
+                            Assert.assertNull(txData.getEffectiveType(Object.class.getMethod("hashCode")));
+                            Assert.assertNull(txData.getEffectiveType(Runnable.class.getMethod("run")));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void testNoPrivateAnnotation() {
         new ComponentTxData(BadlyAnnotatedPojo1.class);
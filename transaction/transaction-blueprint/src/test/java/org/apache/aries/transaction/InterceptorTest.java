@@ -29,6 +29,7 @@ import javax.transaction.TransactionManager;
 import org.apache.aries.transaction.pojo.AnnotatedPojo;
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
+import org.junit.Assert;
 import org.junit.Test;
 import org.osgi.service.coordinator.Coordination;
 import org.osgi.service.coordinator.CoordinationException;
@@ -42,6 +43,14 @@ public class InterceptorTest {
         runPostCall(true);
     }
 
+    @Test
+    public void testInterceptsTransactionalMethodsOnly() throws Exception {
+        ComponentTxData txData = new ComponentTxData(AnnotatedPojo.class);
+        TxInterceptorImpl sut = new TxInterceptorImpl(null, null, txData);
+        Assert.assertTrue(sut.intercepts(null, AnnotatedPojo.class.getMethod("increment", String.class)));
+        Assert.assertFalse(sut.intercepts(null, Object.class.getMethod("hashCode")));
+    }
+
     private void runPostCall(boolean failCoordination) throws Throwable {
         postCallWithTransaction(new IllegalStateException(), true, failCoordination);
         postCallWithTransaction(new Error(), true, failCoordination);
@@ -23,6 +23,7 @@ import org.apache.aries.transaction.jdbc.internal.AbstractMCFFactory;
 import org.apache.aries.transaction.jdbc.internal.ConnectionManagerFactory;
 import org.apache.aries.transaction.jdbc.internal.DataSourceMCFFactory;
 import org.apache.aries.transaction.jdbc.internal.Recovery;
+import org.apache.aries.transaction.jdbc.internal.ValidatingDelegatingManagedConnectionFactory;
 import org.apache.aries.transaction.jdbc.internal.XADataSourceMCFFactory;
 import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 
@@ -62,6 +63,7 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
     private boolean validateOnMatch = true;
     private boolean backgroundValidation = false;
     private int backgroundValidationMilliseconds = 600000;
+    private int validationWindowMilliseconds = 0;
 
     private ConnectionManagerFactory cm;
     private DataSource delegate;
@@ -180,6 +182,15 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
         this.backgroundValidationMilliseconds = backgroundValidationMilliseconds;
     }
 
+    /**
+     * Time after a successful use or validation of a connection during which it is
+     * not validated again (defaults to 0, always validate).
+     * @param validationWindowMilliseconds
+     */
+    public void setValidationWindowMilliseconds(int validationWindowMilliseconds) {
+        this.validationWindowMilliseconds = validationWindowMilliseconds;
+    }
+
     /**
      * Transaction support.
      * Can be none, local or xa (defaults to xa).
@@ -231,6 +242,7 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
         cm.setValidateOnMatch(validateOnMatch);
         cm.setBackgroundValidation(backgroundValidation);
         cm.setBackgroundValidationMilliseconds(backgroundValidationMilliseconds);
+        cm.setValidationWindowMilliseconds(validationWindowMilliseconds);
         cm.setTransaction(transaction);
         cm.setName(name);
         cm.init();
@@ -311,6 +323,10 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
         return backgroundValidationMilliseconds;
     }
 
+    public int getValidationWindowMilliseconds() {
+        return validationWindowMilliseconds;
+    }
+
     public String getTransaction() {
         return transaction;
     }
@@ -323,6 +339,38 @@ public class RecoverableDataSource implements DataSource, RecoverableDataSourceM
         return cm.getPoolingSupport().getIdleConnectionCount();
     }
 
+    public long getValidationCount() {
+        ValidatingDelegatingManagedConnectionFactory mcf = getValidatingManagedConnectionFactory();
+        return mcf != null ? mcf.getValidationCount() : 0;
+    }
+
+    public long getFailedValidationCount() {
+        ValidatingDelegatingManagedConnectionFactory mcf = getValidatingManagedConnectionFactory();
+        return mcf != null ? mcf.getFailedValidationCount() : 0;
+    }
+
+    public long getSkippedValidationCount() {
+        ValidatingDelegatingManagedConnectionFactory mcf = getValidatingManagedConnectionFactory();
+        return mcf != null ? mcf.getSkippedValidationCount() : 0;
+    }
+
+    public long getValidationTimeMicroseconds() {
+        ValidatingDelegatingManagedConnectionFactory mcf = getValidatingManagedConnectionFactory();
+        return mcf != null ? mcf.getValidationTimeMicroseconds() : 0;
+    }
+
+    public long getMaxValidationTimeMicroseconds() {
+        ValidatingDelegatingManagedConnectionFactory mcf = getValidatingManagedConnectionFactory();
+        return mcf != null ? mcf.getMaxValidationTimeMicroseconds() : 0;
+    }
+
+    private ValidatingDelegatingManagedConnectionFactory getValidatingManagedConnectionFactory() {
+        if (cm != null && cm.getManagedConnectionFactory() instanceof ValidatingDelegatingManagedConnectionFactory) {
+            return (ValidatingDelegatingManagedConnectionFactory) cm.getManagedConnectionFactory();
+        }
+        return null;
+    }
+
     //---------------------------
     // DataSource implementation
     //---------------------------
@@ -48,9 +48,21 @@ public interface RecoverableDataSourceMBean {
 
     int getBackgroundValidationMilliseconds();
 
+    int getValidationWindowMilliseconds();
+
     String getTransaction();
 
     int getConnectionCount();
 
     int getIdleConnectionCount();
+
+    long getValidationCount();
+
+    long getFailedValidationCount();
+
+    long getSkippedValidationCount();
+
+    long getValidationTimeMicroseconds();
+
+    long getMaxValidationTimeMicroseconds();
 }
@@ -59,6 +59,7 @@ public class ConnectionManagerFactory {
     private boolean validateOnMatch = true;
     private boolean backgroundValidation = false;
     private int backgroundValidationMilliseconds = 600000;
+    private int validationWindowMilliseconds = 0;
 
     private SubjectSource subjectSource;
 
@@ -145,7 +146,7 @@ public class ConnectionManagerFactory {
         if (connectionManager == null) {
             if (validateOnMatch || backgroundValidation) {
                 // Wrap the original ManagedConnectionFactory to add validation capability
-                managedConnectionFactory = new ValidatingDelegatingManagedConnectionFactory((UserPasswordManagedConnectionFactory) managedConnectionFactory);
+                managedConnectionFactory = new ValidatingDelegatingManagedConnectionFactory((UserPasswordManagedConnectionFactory) managedConnectionFactory, validationWindowMilliseconds);
             }
             if (backgroundValidation) {
                 // Instantiate the Validating Connection Manager
@@ -314,6 +315,14 @@ public class ConnectionManagerFactory {
         this.backgroundValidationMilliseconds = backgroundValidationMilliseconds;
     }
 
+    public int getValidationWindowMilliseconds() {
+        return validationWindowMilliseconds;
+    }
+
+    public void setValidationWindowMilliseconds(int validationWindowMilliseconds) {
+        this.validationWindowMilliseconds = validationWindowMilliseconds;
+    }
+
     public SubjectSource getSubjectSource() {
         return subjectSource;
     }
@@ -28,6 +28,8 @@ import org.tranql.connector.jdbc.TranqlDataSource;
 
 import javax.resource.NotSupportedException;
 import javax.resource.ResourceException;
+import javax.resource.spi.ConnectionEvent;
+import javax.resource.spi.ConnectionEventListener;
 import javax.resource.spi.ConnectionManager;
 import javax.resource.spi.ConnectionRequestInfo;
 import javax.resource.spi.ManagedConnection;
@@ -39,9 +41,22 @@ import javax.security.auth.Subject;
 import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Validates the pooled connections with Connection.isValid(), on match and in the background.
+ * <p>
+ * When a validation window is set, a connection which was validated or used without error within
+ * the window is considered valid without a round trip to the database.  A successful use is
+ * either a connection handle being closed or a local transaction being committed, as reported
+ * by the events of the ManagedConnection.
+ */
 @SuppressWarnings({
     "rawtypes", "serial", "unchecked"
 })
@@ -49,23 +64,102 @@ public final class ValidatingDelegatingManagedConnectionFactory implements UserP
 
     private static final Logger LOG = LoggerFactory.getLogger(ValidatingDelegatingManagedConnectionFactory.class);
     private final ManagedConnectionFactory delegate;
+    private final long validationWindow;
+    private final Map<ManagedConnection, Usage> usages = Collections.synchronizedMap(new WeakHashMap<ManagedConnection, Usage>());
+
+    private final AtomicLong validationCount = new AtomicLong();
+    private final AtomicLong failedValidationCount = new AtomicLong();
+    private final AtomicLong skippedValidationCount = new AtomicLong();
+    private final AtomicLong validationTime = new AtomicLong();
+    private final AtomicLong maxValidationTime = new AtomicLong();
 
     public ValidatingDelegatingManagedConnectionFactory(ManagedConnectionFactory managedConnectionFactory) {
+        this(managedConnectionFactory, 0);
+    }
+
+    /**
+     * @param validationWindowMilliseconds the time after a successful use or validation during which
+     *                                     a connection is not validated, 0 to always validate it
+     */
+    public ValidatingDelegatingManagedConnectionFactory(ManagedConnectionFactory managedConnectionFactory, long validationWindowMilliseconds) {
         this.delegate = managedConnectionFactory;
+        this.validationWindow = TimeUnit.MILLISECONDS.toNanos(validationWindowMilliseconds);
     }
 
-    private boolean isValidConnection(Connection c) {
+    /**
+     * @return true if the connection was used or validated within the validation window, or is valid
+     */
+    boolean isValidConnection(ManagedConnection mc, Connection c) {
+        Usage usage = validationWindow > 0 ? usages.get(mc) : null;
+        if (usage != null && usage.isRecentlyUsed(validationWindow)) {
+            skippedValidationCount.incrementAndGet();
+            LOG.trace("Connection validation skipped for recently used managed connection {}.", c);
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean valid = false;
         try {
-            if (c.isValid(0)) {
-                LOG.debug("Connection validation succeeded for managed connection {}.", c);
-                return true;
-            } else {
-                LOG.debug("Connection validation failed for managed connection {}.", c);
-            }
+            valid = c.isValid(0);
         } catch (SQLException e) {
             // no-op
         }
-        return false;
+        recordValidation(System.nanoTime() - start, valid);
+        if (valid) {
+            LOG.debug("Connection validation succeeded for managed connection {}.", c);
+            if (usage != null) {
+                usage.validated();
+            }
+        } else {
+            LOG.debug("Connection validation failed for managed connection {}.", c);
+        }
+        return valid;
+    }
+
+    private void recordValidation(long time, boolean valid) {
+        validationCount.incrementAndGet();
+        if (!valid) {
+            failedValidationCount.incrementAndGet();
+        }
+        validationTime.addAndGet(time);
+        long max = maxValidationTime.get();
+        while (time > max && !maxValidationTime.compareAndSet(max, time)) {
+            max = maxValidationTime.get();
+        }
+    }
+
+    /**
+     * @return the number of connections validated with a round trip to the database
+     */
+    public long getValidationCount() {
+        return validationCount.get();
+    }
+
+    /**
+     * @return the number of validations which found an invalid connection
+     */
+    public long getFailedValidationCount() {
+        return failedValidationCount.get();
+    }
+
+    /**
+     * @return the number of validations skipped as the connection was used within the validation window
+     */
+    public long getSkippedValidationCount() {
+        return skippedValidationCount.get();
+    }
+
+    /**
+     * @return the total time spent validating connections, in microseconds
+     */
+    public long getValidationTimeMicroseconds() {
+        return TimeUnit.NANOSECONDS.toMicros(validationTime.get());
+    }
+
+    /**
+     * @return the time taken by the slowest validation, in microseconds
+     */
+    public long getMaxValidationTimeMicroseconds() {
+        return TimeUnit.NANOSECONDS.toMicros(maxValidationTime.get());
     }
 
     @Override
@@ -81,7 +175,7 @@ public final class ValidatingDelegatingManagedConnectionFactory implements UserP
             if (o instanceof AbstractManagedConnection) {
                 AbstractManagedConnection<Connection, ConnectionHandle> amc = AbstractManagedConnection.class.cast(o);
 
-                if (!isValidConnection(amc.getPhysicalConnection())) {
+                if (!isValidConnection(amc, amc.getPhysicalConnection())) {
                     invalid.add(amc);
                 }
             }
@@ -112,7 +206,14 @@ public final class ValidatingDelegatingManagedConnectionFactory implements UserP
 
     @Override
     public ManagedConnection createManagedConnection(Subject subject, ConnectionRequestInfo cxRequestInfo) throws ResourceException {
-        return delegate.createManagedConnection(subject, cxRequestInfo);
+        ManagedConnection mc = delegate.createManagedConnection(subject, cxRequestInfo);
+        if (validationWindow > 0) {
+            // a new connection is valid, and is then tracked through its events
+            Usage usage = new Usage();
+            mc.addConnectionEventListener(usage);
+            usages.put(mc, usage);
+        }
+        return mc;
     }
 
     @Override
@@ -123,7 +224,7 @@ public final class ValidatingDelegatingManagedConnectionFactory implements UserP
                 if (mch.matches(this, subject, cxRequestInfo)) {
                     if (mch instanceof AbstractManagedConnection) {
                         AbstractManagedConnection<Connection, ConnectionHandle> amc = AbstractManagedConnection.class.cast(mch);
-                        if (isValidConnection(amc.getPhysicalConnection())) {
+                        if (isValidConnection(amc, amc.getPhysicalConnection())) {
                             return amc;
                         }
                     } else {
@@ -155,4 +256,49 @@ public final class ValidatingDelegatingManagedConnectionFactory implements UserP
     public boolean equals(Object other) {
         return delegate.equals(other);
     }
+
+    /**
+     * The time of the last successful use or validation of a ManagedConnection.
+     */
+    private static final class Usage implements ConnectionEventListener {
+
+        private volatile long lastUsed = System.nanoTime();
+        private volatile boolean failed;
+
+        boolean isRecentlyUsed(long window) {
+            return !failed && System.nanoTime() - lastUsed < window;
+        }
+
+        void used() {
+            lastUsed = System.nanoTime();
+        }
+
+        void validated() {
+            failed = false;
+            used();
+        }
+
+        @Override
+        public void connectionClosed(ConnectionEvent event) {
+            used();
+        }
+
+        @Override
+        public void localTransactionStarted(ConnectionEvent event) {
+        }
+
+        @Override
+        public void localTransactionCommitted(ConnectionEvent event) {
+            used();
+        }
+
+        @Override
+        public void localTransactionRolledback(ConnectionEvent event) {
+        }
+
+        @Override
+        public void connectionErrorOccurred(ConnectionEvent event) {
+            failed = true;
+        }
+    }
 }
@@ -42,8 +42,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 
 @SuppressWarnings({
@@ -51,9 +55,8 @@ import java.util.concurrent.locks.ReadWriteLock;
 })
 public final class ValidatingGenericConnectionManager extends GenericConnectionManager {
 
-    private static final Timer TIMER = new Timer("ValidatingGenericConnectionManagerTimer", true);
-
-    private transient final TimerTask validatingTask;
+    private transient final Runnable validatingTask;
+    private transient ScheduledFuture<?> validatingFuture;
     private final long validatingInterval;
 
     private final ReadWriteLock lock;
@@ -106,19 +109,20 @@ public final class ValidatingGenericConnectionManager extends GenericConnectionM
     public void doStart() throws Exception {
         super.doStart();
         if (validatingTask != null) {
-            TIMER.schedule(validatingTask, validatingInterval, validatingInterval);
+            validatingFuture = Validators.schedule(validatingTask, validatingInterval);
         }
     }
 
     @Override
     public void doStop() throws Exception {
-        if (validatingTask != null) {
-            validatingTask.cancel();
+        if (validatingFuture != null) {
+            Validators.cancel(validatingFuture);
+            validatingFuture = null;
         }
         super.doStop();
     }
 
-    private class ValidatingTask extends TimerTask {
+    private class ValidatingTask implements Runnable {
 
         private final ConnectionInterceptor stack;
         private final ReadWriteLock lock;
@@ -160,6 +164,9 @@ public final class ValidatingGenericConnectionManager extends GenericConnectionM
                     }
                 } catch (ResourceException e) {
                     log.error(e.getMessage(), e);
+                } catch (RuntimeException e) {
+                    // an exception would cancel the next validations of this pool
+                    log.error(e.getMessage(), e);
                 }
             } finally {
                 if (lock != null) {
@@ -168,4 +175,42 @@ public final class ValidatingGenericConnectionManager extends GenericConnectionM
             }
         }
     }
+
+    /**
+     * The threads validating the pools in the background, shared by all the connection managers so
+     * that the pools are validated in parallel.  They are started when the first validation is
+     * scheduled and stopped when the last one is cancelled.
+     */
+    private static final class Validators {
+
+        private static final int THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        private static ScheduledExecutorService executor;
+        private static int users;
+
+        static synchronized ScheduledFuture<?> schedule(Runnable task, long interval) {
+            if (executor == null) {
+                executor = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "ValidatingGenericConnectionManager-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            users++;
+            return executor.scheduleWithFixedDelay(task, interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        static synchronized void cancel(ScheduledFuture<?> future) {
+            future.cancel(false);
+            if (--users == 0) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
 }
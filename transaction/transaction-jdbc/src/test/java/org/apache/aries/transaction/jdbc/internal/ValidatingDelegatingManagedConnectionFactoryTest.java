@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.transaction.jdbc.internal;
+
+import org.junit.Test;
+
+import javax.resource.spi.ConnectionEvent;
+import javax.resource.spi.ConnectionEventListener;
+import javax.resource.spi.ManagedConnection;
+import javax.resource.spi.ManagedConnectionFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ValidatingDelegatingManagedConnectionFactoryTest {
+
+    private static final long LONG_WINDOW = TimeUnit.HOURS.toMillis(1);
+    private static final long SHORT_WINDOW = 200;
+
+    /** The listeners added to the created managed connection */
+    private final List<ConnectionEventListener> listeners = new ArrayList<ConnectionEventListener>();
+    /** The number of calls to Connection.isValid() */
+    private final AtomicInteger validations = new AtomicInteger();
+    /** The result of Connection.isValid() */
+    private final AtomicBoolean valid = new AtomicBoolean(true);
+
+    private final ManagedConnection mc = mock(ManagedConnection.class);
+    private final Connection connection = mock(Connection.class);
+
+    @Test
+    public void testSkipInsideWindow() throws Exception {
+        ValidatingDelegatingManagedConnectionFactory factory = create(LONG_WINDOW);
+        // a new connection is valid
+        for (int i = 0; i < 3; i++) {
+            assertTrue(factory.isValidConnection(mc, connection));
+        }
+        assertEquals(0, validations.get());
+        assertEquals(3, factory.getSkippedValidationCount());
+        assertEquals(0, factory.getValidationCount());
+
+        // connections which were not created by the factory are validated
+        ManagedConnection other = mock(ManagedConnection.class);
+        assertTrue(factory.isValidConnection(other, connection));
+        assertEquals(1, validations.get());
+    }
+
+    @Test
+    public void testValidationAfterWindow() throws Exception {
+        ValidatingDelegatingManagedConnectionFactory factory = create(SHORT_WINDOW);
+        Thread.sleep(SHORT_WINDOW + 50);
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertEquals(1, validations.get());
+        assertEquals(0, factory.getSkippedValidationCount());
+
+        // the validation starts another window
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertEquals(1, validations.get());
+        assertEquals(1, factory.getSkippedValidationCount());
+
+        // an invalid connection does not start a window
+        Thread.sleep(SHORT_WINDOW + 50);
+        valid.set(false);
+        assertFalse(factory.isValidConnection(mc, connection));
+        assertFalse(factory.isValidConnection(mc, connection));
+        assertEquals(3, validations.get());
+        assertEquals(2, factory.getFailedValidationCount());
+    }
+
+    @Test
+    public void testValidationForcedAfterError() throws Exception {
+        ValidatingDelegatingManagedConnectionFactory factory = create(LONG_WINDOW);
+        ConnectionEventListener listener = listeners.get(0);
+        listener.connectionErrorOccurred(new ConnectionEvent(mc, ConnectionEvent.CONNECTION_ERROR_OCCURRED));
+        // a successful use does not clear the error, only a validation does
+        listener.connectionClosed(new ConnectionEvent(mc, ConnectionEvent.CONNECTION_CLOSED));
+
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertEquals(1, validations.get());
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertEquals(1, validations.get());
+        assertEquals(1, factory.getSkippedValidationCount());
+
+        listener.connectionErrorOccurred(new ConnectionEvent(mc, ConnectionEvent.CONNECTION_ERROR_OCCURRED));
+        valid.set(false);
+        assertFalse(factory.isValidConnection(mc, connection));
+        assertFalse(factory.isValidConnection(mc, connection));
+        assertEquals(3, validations.get());
+    }
+
+    @Test
+    public void testUseRefreshesWindow() throws Exception {
+        ValidatingDelegatingManagedConnectionFactory factory = create(SHORT_WINDOW);
+        ConnectionEventListener listener = listeners.get(0);
+
+        Thread.sleep(SHORT_WINDOW + 50);
+        listener.connectionClosed(new ConnectionEvent(mc, ConnectionEvent.CONNECTION_CLOSED));
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertEquals(0, validations.get());
+
+        Thread.sleep(SHORT_WINDOW + 50);
+        listener.localTransactionCommitted(new ConnectionEvent(mc, ConnectionEvent.LOCAL_TRANSACTION_COMMITTED));
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertEquals(0, validations.get());
+
+        // starting or rolling back a transaction is not a successful use
+        Thread.sleep(SHORT_WINDOW + 50);
+        listener.localTransactionStarted(new ConnectionEvent(mc, ConnectionEvent.LOCAL_TRANSACTION_STARTED));
+        listener.localTransactionRolledback(new ConnectionEvent(mc, ConnectionEvent.LOCAL_TRANSACTION_ROLLEDBACK));
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertEquals(1, validations.get());
+        assertEquals(2, factory.getSkippedValidationCount());
+    }
+
+    @Test
+    public void testNoWindow() throws Exception {
+        ValidatingDelegatingManagedConnectionFactory factory = create(0);
+        assertTrue(listeners.isEmpty());
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertTrue(factory.isValidConnection(mc, connection));
+        assertEquals(2, validations.get());
+        assertEquals(0, factory.getSkippedValidationCount());
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        ValidatingDelegatingManagedConnectionFactory factory = create(0);
+        assertEquals(0, factory.getValidationTimeMicroseconds());
+        assertEquals(0, factory.getMaxValidationTimeMicroseconds());
+
+        // each validation takes at least 2ms
+        for (int i = 0; i < 3; i++) {
+            factory.isValidConnection(mc, connection);
+        }
+        valid.set(false);
+        factory.isValidConnection(mc, connection);
+
+        assertEquals(4, factory.getValidationCount());
+        assertEquals(1, factory.getFailedValidationCount());
+        assertEquals(0, factory.getSkippedValidationCount());
+        long max = factory.getMaxValidationTimeMicroseconds();
+        assertTrue(String.valueOf(max), max >= 2000);
+        long total = factory.getValidationTimeMicroseconds();
+        assertTrue(total + " " + max, total >= 4 * 2000 && total >= max);
+    }
+
+    private ValidatingDelegatingManagedConnectionFactory create(long window) throws Exception {
+        ManagedConnectionFactory delegate = (ManagedConnectionFactory) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[] { ManagedConnectionFactory.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        return method.getName().equals("createManagedConnection") ? mc : null;
+                    }
+                });
+        ValidatingDelegatingManagedConnectionFactory factory = new ValidatingDelegatingManagedConnectionFactory(delegate, window);
+        factory.createManagedConnection(null, null);
+        return factory;
+    }
+
+    private <T> T mock(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (name.equals("toString")) {
+                    return "mock@" + Integer.toHexString(System.identityHashCode(proxy));
+                } else if (name.equals("addConnectionEventListener")) {
+                    listeners.add((ConnectionEventListener) args[0]);
+                } else if (name.equals("isValid")) {
+                    validations.incrementAndGet();
+                    Thread.sleep(2);
+                    return valid.get();
+                } else if (method.getReturnType() == boolean.class) {
+                    return false;
+                }
+                return null;
+            }
+        }));
+    }
+}
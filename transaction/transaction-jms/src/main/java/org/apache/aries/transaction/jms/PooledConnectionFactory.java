@@ -45,7 +45,9 @@ import org.slf4j.LoggerFactory;
  * just created at startup and left active, handling incoming messages as they come. When a consumer is
  * complete, it is best to close it rather than return it to a pool for later reuse: this is because,
  * even if a consumer is idle, ActiveMQ will keep delivering messages to the consumer's prefetch buffer,
- * where they'll get held until the consumer is active again.
+ * where they'll get held until the consumer is active again.  Consumers closed by the client may
+ * however be kept open for a later use while their session is loaned out, see
+ * {@link PooledConnectionFactory#setConsumerCacheSize}.
  *
  * If you are creating a collection of consumers (for example, for multi-threaded message consumption), you
  * might want to consider using a lower prefetch value for each consumer (e.g. 10 or 20), to ensure that
@@ -77,6 +79,10 @@ public class PooledConnectionFactory implements ConnectionFactory {
     private long expiryTimeout = 0l;
     private boolean createConnectionOnStartup = true;
     private boolean useAnonymousProducers = true;
+    private int producerCacheSize = 0;
+    private int consumerCacheSize = 0;
+    private boolean useConcurrentSessionPool = false;
+    private long sessionIdleTimeout = 0;
 
     public void initConnectionsPool() {
         if (this.connectionsPool == null) {
@@ -112,6 +118,10 @@ public class PooledConnectionFactory implements ConnectionFactory {
                                 connection.setBlockIfSessionPoolIsFullTimeout(getBlockIfSessionPoolIsFullTimeout());
                             }
                             connection.setUseAnonymousProducers(isUseAnonymousProducers());
+                            connection.setProducerCacheSize(getProducerCacheSize());
+                            connection.setConsumerCacheSize(getConsumerCacheSize());
+                            connection.setUseConcurrentSessionPool(isUseConcurrentSessionPool());
+                            connection.setSessionIdleTimeout(getSessionIdleTimeout());
 
                             if (LOG.isTraceEnabled()) {
                                 LOG.trace("Created new connection: {}", connection);
@@ -454,6 +464,92 @@ public class PooledConnectionFactory implements ConnectionFactory {
         this.useAnonymousProducers = value;
     }
 
+    /**
+     * @return the maximum number of idle MessageProducers kept open by each pooled Session.
+     */
+    public int getProducerCacheSize() {
+        return this.producerCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of idle MessageProducers kept open by each pooled Session, keyed by
+     * destination, default is 0 which disables the cache.
+     *
+     * A producer closed by the client is then given to the next request for a producer on the same
+     * destination, even after its Session went back to the pool.  The least recently used producers
+     * are closed when the cache is full.  This only applies when anonymous producers are not used.
+     *
+     * @param producerCacheSize
+     *      The number of MessageProducers cached by each Session.
+     */
+    public void setProducerCacheSize(int producerCacheSize) {
+        this.producerCacheSize = producerCacheSize;
+    }
+
+    /**
+     * @return the maximum number of idle MessageConsumers kept open by each pooled Session.
+     */
+    public int getConsumerCacheSize() {
+        return this.consumerCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of idle MessageConsumers kept open by each pooled Session, keyed by
+     * destination, selector and noLocal flag, default is 0 which disables the cache.
+     *
+     * A consumer closed by the client is then given to the next request for a consumer with the same
+     * parameters while the Session is loaned out.  The cached consumers are closed when the Session
+     * goes back to the pool, as an idle consumer may still receive messages from the broker.
+     *
+     * @param consumerCacheSize
+     *      The number of MessageConsumers cached by each Session.
+     */
+    public void setConsumerCacheSize(int consumerCacheSize) {
+        this.consumerCacheSize = consumerCacheSize;
+    }
+
+    /**
+     * @return true if the sessions of each Connection are pooled without locking the pool.
+     */
+    public boolean isUseConcurrentSessionPool() {
+        return this.useConcurrentSessionPool;
+    }
+
+    /**
+     * Sets whether the sessions of each Connection are kept in a pool which borrows and returns
+     * them without locking, instead of the commons-pool GenericKeyedObjectPool whose operations
+     * are all serialized.  Default is false.
+     *
+     * This reduces the contention when many threads create and close sessions on the same
+     * Connection.  Only the concurrent pool closes the sessions idle for longer than the
+     * sessionIdleTimeout.
+     *
+     * @param useConcurrentSessionPool
+     *      Boolean value that configures whether the concurrent session pool is used.
+     */
+    public void setUseConcurrentSessionPool(boolean useConcurrentSessionPool) {
+        this.useConcurrentSessionPool = useConcurrentSessionPool;
+    }
+
+    /**
+     * @return the number of milliseconds after which an idle pooled Session is closed.
+     */
+    public long getSessionIdleTimeout() {
+        return this.sessionIdleTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds after which a Session idle in the concurrent session pool
+     * is closed by a background evictor, default is 0 which keeps the idle sessions open.
+     *
+     * @param sessionIdleTimeout
+     *      The idle timeout of the pooled sessions in milliseconds.
+     * @see #setUseConcurrentSessionPool(boolean)
+     */
+    public void setSessionIdleTimeout(long sessionIdleTimeout) {
+        this.sessionIdleTimeout = sessionIdleTimeout;
+    }
+
     /**
      * Gets the Pool of ConnectionPool instances which are keyed by different ConnectionKeys.
      *
@@ -0,0 +1,565 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.pool.KeyedObjectPool;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A keyed object pool which does not lock on borrow and return, as an alternative to the
+ * commons-pool GenericKeyedObjectPool whose methods all synchronize on the pool.
+ * <p/>
+ * The idle objects of each key are kept on a lock-free LIFO stack, and the number of active objects
+ * of each key is bounded with a compare-and-set on a counter.  A thread only waits on a monitor
+ * when the key is exhausted and the pool is configured to block.  The idle objects are checked by
+ * a background evictor, shared by all the pools, which destroys the ones idle for longer than
+ * {@link #setMinEvictableIdleTimeMillis(long)} or failing their validation.
+ * <p/>
+ * The maximum number of idle objects is only approximately enforced under concurrent returns.
+ */
+public class ConcurrentKeyedObjectPool<K, V> implements KeyedObjectPool<K, V> {
+    private static final transient Logger LOG = LoggerFactory.getLogger(ConcurrentKeyedObjectPool.class);
+
+    private final KeyedPoolableObjectFactory<K, V> factory;
+    private final ConcurrentMap<K, KeyPool<V>> pools = new ConcurrentHashMap<K, KeyPool<V>>();
+
+    private volatile int maxActive = 8;
+    private volatile int maxIdle = 8;
+    private volatile boolean blockWhenExhausted = true;
+    private volatile long maxWait = -1;
+    private volatile boolean testOnBorrow;
+    private volatile boolean testWhileIdle;
+    private volatile long minEvictableIdleTimeMillis = 30 * 60 * 1000;
+    private volatile boolean closed;
+
+    private long timeBetweenEvictionRunsMillis = -1;
+    private ScheduledFuture<?> evictor;
+
+    public ConcurrentKeyedObjectPool(KeyedPoolableObjectFactory<K, V> factory) {
+        this.factory = factory;
+    }
+
+    public V borrowObject(K key) throws Exception {
+        assertOpen();
+        KeyPool<V> pool = getKeyPool(key);
+        acquire(pool);
+        boolean borrowed = false;
+        try {
+            for (;;) {
+                Node<V> node = pool.pop();
+                V obj;
+                if (node != null) {
+                    obj = node.value;
+                } else {
+                    obj = factory.makeObject(key);
+                }
+                try {
+                    factory.activateObject(key, obj);
+                    if (testOnBorrow && !factory.validateObject(key, obj)) {
+                        throw new Exception("ValidateObject failed");
+                    }
+                } catch (Exception e) {
+                    destroy(key, obj);
+                    if (node == null) {
+                        NoSuchElementException nsee = new NoSuchElementException("Could not create a validated object, cause: " + e.getMessage());
+                        nsee.initCause(e);
+                        throw nsee;
+                    }
+                    // try the next idle object
+                    continue;
+                }
+                borrowed = true;
+                return obj;
+            }
+        } finally {
+            if (!borrowed) {
+                release(pool);
+            }
+        }
+    }
+
+    public void returnObject(K key, V obj) throws Exception {
+        KeyPool<V> pool = pools.get(key);
+        if (pool == null) {
+            destroy(key, obj);
+            return;
+        }
+        try {
+            if (!closed && pool.reserveIdle(maxIdle)) {
+                try {
+                    factory.passivateObject(key, obj);
+                } catch (Exception e) {
+                    pool.idle.decrementAndGet();
+                    destroy(key, obj);
+                    return;
+                }
+                pool.push(new Node<V>(obj));
+                if (closed) {
+                    // the pool was closed while the object was being returned
+                    clear(key);
+                }
+            } else {
+                destroy(key, obj);
+            }
+        } finally {
+            release(pool);
+        }
+    }
+
+    public void invalidateObject(K key, V obj) throws Exception {
+        KeyPool<V> pool = pools.get(key);
+        try {
+            factory.destroyObject(key, obj);
+        } finally {
+            if (pool != null) {
+                release(pool);
+            }
+        }
+    }
+
+    public void addObject(K key) throws Exception {
+        assertOpen();
+        KeyPool<V> pool = getKeyPool(key);
+        V obj = factory.makeObject(key);
+        if (pool.reserveIdle(maxIdle)) {
+            try {
+                factory.passivateObject(key, obj);
+            } catch (Exception e) {
+                pool.idle.decrementAndGet();
+                destroy(key, obj);
+                return;
+            }
+            pool.push(new Node<V>(obj));
+        } else {
+            destroy(key, obj);
+        }
+    }
+
+    public int getNumIdle(K key) {
+        KeyPool<V> pool = pools.get(key);
+        return pool != null ? pool.idle.get() : 0;
+    }
+
+    public int getNumActive(K key) {
+        KeyPool<V> pool = pools.get(key);
+        return pool != null ? pool.active.get() : 0;
+    }
+
+    public int getNumIdle() {
+        int count = 0;
+        for (KeyPool<V> pool : pools.values()) {
+            count += pool.idle.get();
+        }
+        return count;
+    }
+
+    public int getNumActive() {
+        int count = 0;
+        for (KeyPool<V> pool : pools.values()) {
+            count += pool.active.get();
+        }
+        return count;
+    }
+
+    public void clear() {
+        for (K key : pools.keySet()) {
+            clear(key);
+        }
+    }
+
+    public void clear(K key) {
+        KeyPool<V> pool = pools.get(key);
+        if (pool == null) {
+            return;
+        }
+        for (Node<V> node = pool.drain(); node != null; node = node.next) {
+            pool.idle.decrementAndGet();
+            destroy(key, node.value);
+        }
+    }
+
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            cancelEvictor();
+        }
+        clear();
+        // wake up the threads waiting for an object so that they fail
+        for (KeyPool<V> pool : pools.values()) {
+            synchronized (pool) {
+                pool.notifyAll();
+            }
+        }
+    }
+
+    @Deprecated
+    public void setFactory(KeyedPoolableObjectFactory<K, V> factory) {
+        throw new UnsupportedOperationException("The factory of a ConcurrentKeyedObjectPool can not be changed");
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    /**
+     * @param maxActive the maximum number of objects of a key loaned out at the same time, negative for no limit.
+     */
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+        wakeUpWaiters();
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * @param maxIdle the maximum number of idle objects of a key, negative for no limit.
+     */
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public boolean isBlockWhenExhausted() {
+        return blockWhenExhausted;
+    }
+
+    /**
+     * @param blockWhenExhausted whether borrowObject waits for an object when maxActive objects of the key
+     *                           are loaned out, or fails with a NoSuchElementException.
+     */
+    public void setBlockWhenExhausted(boolean blockWhenExhausted) {
+        this.blockWhenExhausted = blockWhenExhausted;
+        wakeUpWaiters();
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * @param maxWait the maximum number of milliseconds borrowObject waits for an object, non-positive to wait
+     *                indefinitely.
+     */
+    public void setMaxWait(long maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public boolean isTestOnBorrow() {
+        return testOnBorrow;
+    }
+
+    public void setTestOnBorrow(boolean testOnBorrow) {
+        this.testOnBorrow = testOnBorrow;
+    }
+
+    public boolean isTestWhileIdle() {
+        return testWhileIdle;
+    }
+
+    public void setTestWhileIdle(boolean testWhileIdle) {
+        this.testWhileIdle = testWhileIdle;
+    }
+
+    public long getMinEvictableIdleTimeMillis() {
+        return minEvictableIdleTimeMillis;
+    }
+
+    /**
+     * @param minEvictableIdleTimeMillis the number of milliseconds after which an idle object is destroyed
+     *                                   by the evictor, non-positive to keep the idle objects.
+     */
+    public void setMinEvictableIdleTimeMillis(long minEvictableIdleTimeMillis) {
+        this.minEvictableIdleTimeMillis = minEvictableIdleTimeMillis;
+    }
+
+    public synchronized long getTimeBetweenEvictionRunsMillis() {
+        return timeBetweenEvictionRunsMillis;
+    }
+
+    /**
+     * @param timeBetweenEvictionRunsMillis the number of milliseconds between the runs of the evictor,
+     *                                      non-positive to disable it.
+     */
+    public synchronized void setTimeBetweenEvictionRunsMillis(long timeBetweenEvictionRunsMillis) {
+        this.timeBetweenEvictionRunsMillis = timeBetweenEvictionRunsMillis;
+        cancelEvictor();
+        if (timeBetweenEvictionRunsMillis > 0 && !closed) {
+            evictor = Evictor.schedule(new Runnable() {
+                public void run() {
+                    try {
+                        evict();
+                    } catch (Throwable t) {
+                        LOG.warn("Error while evicting idle objects", t);
+                    }
+                }
+            }, timeBetweenEvictionRunsMillis);
+        }
+    }
+
+    private void cancelEvictor() {
+        if (evictor != null) {
+            Evictor.cancel(evictor);
+            evictor = null;
+        }
+    }
+
+    /**
+     * Destroys the idle objects which expired or fail their validation.  The stack of each key is
+     * taken as a whole, and the remaining objects are pushed back from the least recently used one
+     * so that the borrowers still get the most recently used objects first.
+     */
+    void evict() {
+        long idleTimeout = minEvictableIdleTimeMillis;
+        boolean test = testWhileIdle;
+        if (idleTimeout <= 0 && !test) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (K key : pools.keySet()) {
+            KeyPool<V> pool = pools.get(key);
+            List<Node<V>> remaining = new ArrayList<Node<V>>();
+            for (Node<V> node = pool.drain(); node != null; node = node.next) {
+                if ((idleTimeout > 0 && now - node.idleSince > idleTimeout) || (test && !validateIdle(key, node.value))) {
+                    pool.idle.decrementAndGet();
+                    destroy(key, node.value);
+                } else {
+                    remaining.add(node);
+                }
+            }
+            for (int i = remaining.size() - 1; i >= 0; i--) {
+                pool.push(new Node<V>(remaining.get(i)));
+            }
+            if (closed) {
+                clear(key);
+            }
+        }
+    }
+
+    private boolean validateIdle(K key, V obj) {
+        try {
+            factory.activateObject(key, obj);
+            if (!factory.validateObject(key, obj)) {
+                return false;
+            }
+            factory.passivateObject(key, obj);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private KeyPool<V> getKeyPool(K key) {
+        KeyPool<V> pool = pools.get(key);
+        if (pool == null) {
+            pool = new KeyPool<V>();
+            KeyPool<V> existing = pools.putIfAbsent(key, pool);
+            if (existing != null) {
+                pool = existing;
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Takes one of the maxActive slots of the key, waiting for one to be released if needed.
+     */
+    private void acquire(KeyPool<V> pool) throws InterruptedException {
+        long deadline = 0;
+        for (;;) {
+            int active = pool.active.get();
+            int max = maxActive;
+            if (max < 0 || active < max) {
+                if (pool.active.compareAndSet(active, active + 1)) {
+                    return;
+                }
+                continue;
+            }
+            if (!blockWhenExhausted) {
+                throw new NoSuchElementException("Pool exhausted");
+            }
+            long wait = 0;
+            if (maxWait > 0) {
+                long now = System.currentTimeMillis();
+                if (deadline == 0) {
+                    deadline = now + maxWait;
+                }
+                wait = deadline - now;
+                if (wait <= 0) {
+                    throw new NoSuchElementException("Timeout waiting for idle object");
+                }
+            }
+            synchronized (pool) {
+                pool.waiters++;
+                try {
+                    assertOpen();
+                    // a slot released before the waiter was registered would not notify it
+                    if (pool.active.get() >= maxActive && maxActive >= 0) {
+                        pool.wait(wait);
+                    }
+                } finally {
+                    pool.waiters--;
+                }
+            }
+        }
+    }
+
+    private void release(KeyPool<V> pool) {
+        pool.active.decrementAndGet();
+        if (pool.waiters > 0) {
+            synchronized (pool) {
+                pool.notify();
+            }
+        }
+    }
+
+    private void wakeUpWaiters() {
+        for (KeyPool<V> pool : pools.values()) {
+            if (pool.waiters > 0) {
+                synchronized (pool) {
+                    pool.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void destroy(K key, V obj) {
+        try {
+            factory.destroyObject(key, obj);
+        } catch (Exception e) {
+            LOG.debug("Ignoring exception on destroy of " + obj + ": " + e, e);
+        }
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool not open");
+        }
+    }
+
+    /**
+     * The objects of a key: a Treiber stack of the idle ones and the counts of idle and active ones.
+     */
+    private static final class KeyPool<V> {
+        private final AtomicReference<Node<V>> head = new AtomicReference<Node<V>>();
+        private final AtomicInteger idle = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private volatile int waiters;
+
+        void push(Node<V> node) {
+            Node<V> top;
+            do {
+                top = head.get();
+                node.next = top;
+            } while (!head.compareAndSet(top, node));
+        }
+
+        Node<V> pop() {
+            Node<V> top;
+            do {
+                top = head.get();
+                if (top == null) {
+                    return null;
+                }
+            } while (!head.compareAndSet(top, top.next));
+            idle.decrementAndGet();
+            return top;
+        }
+
+        Node<V> drain() {
+            return head.getAndSet(null);
+        }
+
+        boolean reserveIdle(int max) {
+            for (;;) {
+                int count = idle.get();
+                if (max >= 0 && count >= max) {
+                    return false;
+                }
+                if (idle.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * An idle object.  A node is never pushed twice, so that a pop can not succeed on a node
+     * which was popped and pushed again in the meantime.
+     */
+    private static final class Node<V> {
+        private final V value;
+        private final long idleSince;
+        private Node<V> next;
+
+        Node(V value) {
+            this.value = value;
+            this.idleSince = System.currentTimeMillis();
+        }
+
+        Node(Node<V> node) {
+            this.value = node.value;
+            this.idleSince = node.idleSince;
+        }
+    }
+
+    /**
+     * The single daemon thread running the evictors of all the pools, started when the first evictor
+     * is scheduled and stopped when the last one is cancelled.
+     */
+    private static final class Evictor {
+        private static ScheduledExecutorService executor;
+        private static int users;
+
+        static synchronized ScheduledFuture<?> schedule(Runnable task, long period) {
+            if (executor == null) {
+                executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Aries JMS Pool Evictor");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            users++;
+            return executor.scheduleWithFixedDelay(task, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        static synchronized void cancel(ScheduledFuture<?> future) {
+            future.cancel(false);
+            if (--users == 0) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+}
@@ -25,6 +25,7 @@ import javax.jms.IllegalStateException;
 import javax.jms.JMSException;
 import javax.jms.Session;
 
+import org.apache.commons.pool.KeyedObjectPool;
 import org.apache.commons.pool.KeyedPoolableObjectFactory;
 import org.apache.commons.pool.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool.impl.GenericObjectPool;
@@ -38,7 +39,7 @@ import org.apache.commons.pool.impl.GenericObjectPool;
  * to this ConnectionPool are released.
  */
 public class ConnectionPool {
-    protected Connection connection;
+    protected volatile Connection connection;
     private int referenceCount;
     private long lastUsed = System.currentTimeMillis();
     private final long firstUsed = lastUsed;
@@ -46,17 +47,45 @@ public class ConnectionPool {
     private int idleTimeout = 30 * 1000;
     private long expiryTimeout = 0l;
     private boolean useAnonymousProducers = true;
+    private int producerCacheSize;
+    private int consumerCacheSize;
+    private final MessageEndpointCache.Statistics cacheStatistics = new MessageEndpointCache.Statistics();
+
+    private int maximumActiveSessionPerConnection = 8;
+    private boolean blockIfSessionPoolIsFull = true;
+    private long blockIfSessionPoolIsFullTimeout = -1L;
+    private boolean useConcurrentSessionPool;
+    private long sessionIdleTimeout;
 
     private final AtomicBoolean started = new AtomicBoolean(false);
-    private final GenericKeyedObjectPool<SessionKey, PooledSession> sessionPool;
+    private volatile KeyedObjectPool<SessionKey, PooledSession> sessionPool;
     private final List<PooledSession> loanedSessions = new CopyOnWriteArrayList<PooledSession>();
 
     public ConnectionPool(Connection connection) {
-
         this.connection = wrap(connection);
+    }
 
-        // Create our internal Pool of session instances.
-        this.sessionPool = new GenericKeyedObjectPool<SessionKey, PooledSession>(
+    /**
+     * Returns the pool of sessions, which is created on first use so that its implementation
+     * can still be selected once this ConnectionPool is built.
+     */
+    private KeyedObjectPool<SessionKey, PooledSession> getSessionPool() {
+        KeyedObjectPool<SessionKey, PooledSession> pool = this.sessionPool;
+        if (pool == null) {
+            synchronized (this) {
+                pool = this.sessionPool;
+                if (pool == null) {
+                    pool = createSessionPool();
+                    configureSessionPool(pool);
+                    this.sessionPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private KeyedObjectPool<SessionKey, PooledSession> createSessionPool() {
+        KeyedPoolableObjectFactory<SessionKey, PooledSession> factory =
                 new KeyedPoolableObjectFactory<SessionKey, PooledSession>() {
 
                     @Override
@@ -67,13 +96,15 @@ public class ConnectionPool {
                     @Override
                     public void destroyObject(SessionKey key, PooledSession session) throws Exception {
                         ConnectionPool.this.loanedSessions.remove(session);
+                        session.closeCache();
                         session.getInternalSession().close();
                     }
 
                     @Override
                     public PooledSession makeObject(SessionKey key) throws Exception {
                         Session session = makeSession(key);
-                        return new PooledSession(key, session, sessionPool, key.isTransacted(), useAnonymousProducers);
+                        MessageEndpointCache cache = new MessageEndpointCache(producerCacheSize, consumerCacheSize, cacheStatistics);
+                        return new PooledSession(key, session, getSessionPool(), key.isTransacted(), useAnonymousProducers, cache);
                     }
 
                     @Override
@@ -85,8 +116,41 @@ public class ConnectionPool {
                     public boolean validateObject(SessionKey key, PooledSession session) {
                         return true;
                     }
-                }
-        );
+                };
+        if (useConcurrentSessionPool) {
+            return new ConcurrentKeyedObjectPool<SessionKey, PooledSession>(factory);
+        } else {
+            return new GenericKeyedObjectPool<SessionKey, PooledSession>(factory);
+        }
+    }
+
+    private void configureSessionPool(KeyedObjectPool<SessionKey, PooledSession> pool) {
+        if (pool instanceof ConcurrentKeyedObjectPool) {
+            ConcurrentKeyedObjectPool<SessionKey, PooledSession> concurrentPool =
+                    (ConcurrentKeyedObjectPool<SessionKey, PooledSession>) pool;
+            concurrentPool.setMaxActive(maximumActiveSessionPerConnection);
+            concurrentPool.setBlockWhenExhausted(blockIfSessionPoolIsFull);
+            concurrentPool.setMaxWait(blockIfSessionPoolIsFullTimeout);
+            if (sessionIdleTimeout > 0) {
+                concurrentPool.setMinEvictableIdleTimeMillis(sessionIdleTimeout);
+                concurrentPool.setTimeBetweenEvictionRunsMillis(Math.max(sessionIdleTimeout / 2, 1000));
+            } else {
+                concurrentPool.setTimeBetweenEvictionRunsMillis(-1);
+            }
+        } else {
+            GenericKeyedObjectPool<SessionKey, PooledSession> genericPool =
+                    (GenericKeyedObjectPool<SessionKey, PooledSession>) pool;
+            genericPool.setMaxActive(maximumActiveSessionPerConnection);
+            genericPool.setWhenExhaustedAction(
+                    (blockIfSessionPoolIsFull ? GenericObjectPool.WHEN_EXHAUSTED_BLOCK : GenericObjectPool.WHEN_EXHAUSTED_FAIL));
+            genericPool.setMaxWait(blockIfSessionPoolIsFullTimeout);
+        }
+    }
+
+    private synchronized void sessionPoolConfigurationChanged() {
+        if (this.sessionPool != null) {
+            configureSessionPool(this.sessionPool);
+        }
     }
 
     // useful when external failure needs to force expiry
@@ -116,7 +180,7 @@ public class ConnectionPool {
         }
     }
 
-    public synchronized Connection getConnection() {
+    public Connection getConnection() {
         return connection;
     }
 
@@ -124,7 +188,7 @@ public class ConnectionPool {
         SessionKey key = new SessionKey(transacted, ackMode);
         PooledSession session;
         try {
-            session = sessionPool.borrowObject(key);
+            session = getSessionPool().borrowObject(key);
         } catch (Exception e) {
             javax.jms.IllegalStateException illegalStateException = new IllegalStateException(e.toString());
             illegalStateException.initCause(e);
@@ -136,7 +200,9 @@ public class ConnectionPool {
     public synchronized void close() {
         if (connection != null) {
             try {
-                sessionPool.close();
+                if (sessionPool != null) {
+                    sessionPool.close();
+                }
             } catch (Exception e) {
             } finally {
                 try {
@@ -236,11 +302,43 @@ public class ConnectionPool {
     }
 
     public int getMaximumActiveSessionPerConnection() {
-        return this.sessionPool.getMaxActive();
+        return this.maximumActiveSessionPerConnection;
     }
 
     public void setMaximumActiveSessionPerConnection(int maximumActiveSessionPerConnection) {
-        this.sessionPool.setMaxActive(maximumActiveSessionPerConnection);
+        this.maximumActiveSessionPerConnection = maximumActiveSessionPerConnection;
+        sessionPoolConfigurationChanged();
+    }
+
+    public boolean isUseConcurrentSessionPool() {
+        return this.useConcurrentSessionPool;
+    }
+
+    /**
+     * Selects the {@link ConcurrentKeyedObjectPool} instead of the commons-pool GenericKeyedObjectPool
+     * for the sessions.  This only applies before the first session is created.
+     *
+     * @param useConcurrentSessionPool
+     *      true to borrow and return the sessions without locking the pool.
+     */
+    public void setUseConcurrentSessionPool(boolean useConcurrentSessionPool) {
+        this.useConcurrentSessionPool = useConcurrentSessionPool;
+    }
+
+    public long getSessionIdleTimeout() {
+        return this.sessionIdleTimeout;
+    }
+
+    /**
+     * Sets the number of milliseconds after which an idle session is closed by the background evictor
+     * of the concurrent session pool, default is 0 which keeps the idle sessions open.
+     *
+     * @param sessionIdleTimeout
+     *      The idle timeout of the pooled sessions in milliseconds.
+     */
+    public void setSessionIdleTimeout(long sessionIdleTimeout) {
+        this.sessionIdleTimeout = sessionIdleTimeout;
+        sessionPoolConfigurationChanged();
     }
 
     public boolean isUseAnonymousProducers() {
@@ -251,26 +349,87 @@ public class ConnectionPool {
         this.useAnonymousProducers = value;
     }
 
+    public int getProducerCacheSize() {
+        return this.producerCacheSize;
+    }
+
+    public void setProducerCacheSize(int producerCacheSize) {
+        this.producerCacheSize = producerCacheSize;
+    }
+
+    public int getConsumerCacheSize() {
+        return this.consumerCacheSize;
+    }
+
+    public void setConsumerCacheSize(int consumerCacheSize) {
+        this.consumerCacheSize = consumerCacheSize;
+    }
+
     /**
      * @return the total number of Pooled session including idle sessions that are not
      *          currently loaned out to any client.
      */
     public int getNumSessions() {
-        return this.sessionPool.getNumIdle() + this.sessionPool.getNumActive();
+        KeyedObjectPool<SessionKey, PooledSession> pool = this.sessionPool;
+        return pool != null ? pool.getNumIdle() + pool.getNumActive() : 0;
     }
 
     /**
      * @return the total number of Sessions that are in the Session pool but not loaned out.
      */
     public int getNumIdleSessions() {
-        return this.sessionPool.getNumIdle();
+        KeyedObjectPool<SessionKey, PooledSession> pool = this.sessionPool;
+        return pool != null ? pool.getNumIdle() : 0;
     }
 
     /**
      * @return the total number of Session's that have been loaned to PooledConnection instances.
      */
     public int getNumActiveSessions() {
-        return this.sessionPool.getNumActive();
+        KeyedObjectPool<SessionKey, PooledSession> pool = this.sessionPool;
+        return pool != null ? pool.getNumActive() : 0;
+    }
+
+    /**
+     * @return the number of idle MessageProducers cached by the sessions of this pool.
+     */
+    public int getNumCachedProducers() {
+        return this.cacheStatistics.getNumCachedProducers();
+    }
+
+    /**
+     * @return the number of idle MessageConsumers cached by the sessions of this pool.
+     */
+    public int getNumCachedConsumers() {
+        return this.cacheStatistics.getNumCachedConsumers();
+    }
+
+    /**
+     * @return the number of MessageProducers taken from the session caches instead of being created.
+     */
+    public long getProducerCacheHits() {
+        return this.cacheStatistics.getProducerCacheHits();
+    }
+
+    /**
+     * @return the number of MessageProducers created as none was cached, when caching is enabled.
+     */
+    public long getProducerCacheMisses() {
+        return this.cacheStatistics.getProducerCacheMisses();
+    }
+
+    /**
+     * @return the number of MessageConsumers taken from the session caches instead of being created.
+     */
+    public long getConsumerCacheHits() {
+        return this.cacheStatistics.getConsumerCacheHits();
+    }
+
+    /**
+     * @return the number of MessageConsumers created as none was cached, when caching is enabled.
+     */
+    public long getConsumerCacheMisses() {
+        return this.cacheStatistics.getConsumerCacheMisses();
     }
 
     /**
@@ -282,12 +441,12 @@ public class ConnectionPool {
      * 		Indicates whether blocking should be used to wait for more space to create a session.
      */
     public void setBlockIfSessionPoolIsFull(boolean block) {
-        this.sessionPool.setWhenExhaustedAction(
-                (block ? GenericObjectPool.WHEN_EXHAUSTED_BLOCK : GenericObjectPool.WHEN_EXHAUSTED_FAIL));
+        this.blockIfSessionPoolIsFull = block;
+        sessionPoolConfigurationChanged();
     }
 
     public boolean isBlockIfSessionPoolIsFull() {
-        return this.sessionPool.getWhenExhaustedAction() == GenericObjectPool.WHEN_EXHAUSTED_BLOCK;
+        return this.blockIfSessionPoolIsFull;
     }
 
     /**
@@ -297,7 +456,7 @@ public class ConnectionPool {
      * @see #setBlockIfSessionPoolIsFull(boolean)
      */
     public long getBlockIfSessionPoolIsFullTimeout() {
-        return this.sessionPool.getMaxWait();
+        return this.blockIfSessionPoolIsFullTimeout;
     }
 
     /**
@@ -315,7 +474,8 @@ public class ConnectionPool {
      *                                        then use this setting to configure how long to block before retry
      */
     public void setBlockIfSessionPoolIsFullTimeout(long blockIfSessionPoolIsFullTimeout) {
-        this.sessionPool.setMaxWait(blockIfSessionPoolIsFullTimeout);
+        this.blockIfSessionPoolIsFullTimeout = blockIfSessionPoolIsFullTimeout;
+        sessionPoolConfigurationChanged();
     }
 
     @Override
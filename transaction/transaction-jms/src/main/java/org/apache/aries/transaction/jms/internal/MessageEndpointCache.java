@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The idle producers and consumers of a {@link PooledSession}, keyed by destination and selector.
+ * <p/>
+ * A producer or consumer closed by the client is kept open in this cache and handed out again by
+ * the next request for the same destination and selector. Only one idle instance is kept per key,
+ * and the least recently used ones are closed when the cache is full. A size of zero disables
+ * the cache.
+ */
+public class MessageEndpointCache {
+    private static final transient Logger LOG = LoggerFactory.getLogger(MessageEndpointCache.class);
+
+    public enum Kind {
+        PRODUCER, SENDER, PUBLISHER, CONSUMER
+    }
+
+    private final Statistics statistics;
+    private final LruMap<MessageProducer> producers;
+    private final LruMap<MessageConsumer> consumers;
+    private boolean closed;
+
+    public MessageEndpointCache(int maxProducers, int maxConsumers, Statistics statistics) {
+        this.statistics = statistics;
+        this.producers = new LruMap<MessageProducer>(maxProducers, statistics.cachedProducers);
+        this.consumers = new LruMap<MessageConsumer>(maxConsumers, statistics.cachedConsumers);
+    }
+
+    public boolean isCachingProducers() {
+        return producers.maxSize > 0;
+    }
+
+    public boolean isCachingConsumers() {
+        return consumers.maxSize > 0;
+    }
+
+    /**
+     * @return the idle producer for the key, or null if a new one must be created
+     */
+    public synchronized MessageProducer acquireProducer(Key key) {
+        MessageProducer producer = producers.remove(key);
+        if (producer != null) {
+            statistics.producerHits.incrementAndGet();
+        } else {
+            statistics.producerMisses.incrementAndGet();
+        }
+        return producer;
+    }
+
+    /**
+     * @return true if the producer is now cached, false if it must be closed by the caller
+     */
+    public boolean releaseProducer(Key key, MessageProducer producer) {
+        List<Object> evicted;
+        synchronized (this) {
+            if (closed || producers.maxSize == 0 || producers.containsKey(key)) {
+                return false;
+            }
+            producers.put(key, producer);
+            evicted = producers.drainEvicted();
+        }
+        close(evicted);
+        return true;
+    }
+
+    /**
+     * @return the idle consumer for the key, or null if a new one must be created
+     */
+    public synchronized MessageConsumer acquireConsumer(Key key) {
+        MessageConsumer consumer = consumers.remove(key);
+        if (consumer != null) {
+            statistics.consumerHits.incrementAndGet();
+        } else {
+            statistics.consumerMisses.incrementAndGet();
+        }
+        return consumer;
+    }
+
+    /**
+     * @return true if the consumer is now cached, false if it must be closed by the caller
+     */
+    public boolean releaseConsumer(Key key, MessageConsumer consumer) {
+        List<Object> evicted;
+        synchronized (this) {
+            if (closed || consumers.maxSize == 0 || consumers.containsKey(key)) {
+                return false;
+            }
+            try {
+                // the consumer must not deliver messages while idle
+                consumer.setMessageListener(null);
+            } catch (JMSException e) {
+                LOG.trace("Not caching consumer as its message listener can not be reset: " + e, e);
+                return false;
+            }
+            consumers.put(key, consumer);
+            evicted = consumers.drainEvicted();
+        }
+        close(evicted);
+        return true;
+    }
+
+    /**
+     * Closes the cached consumers, which would otherwise keep on receiving messages while their
+     * session is idle in the pool.
+     */
+    public void closeConsumers() {
+        List<Object> endpoints;
+        synchronized (this) {
+            endpoints = new ArrayList<Object>(consumers.values());
+            consumers.clear();
+        }
+        close(endpoints);
+    }
+
+    /**
+     * Closes all the cached producers and consumers.
+     */
+    public void close() {
+        List<Object> endpoints;
+        synchronized (this) {
+            closed = true;
+            endpoints = new ArrayList<Object>(producers.values());
+            endpoints.addAll(consumers.values());
+            producers.clear();
+            consumers.clear();
+        }
+        close(endpoints);
+    }
+
+    private static void close(List<Object> endpoints) {
+        for (Object endpoint : endpoints) {
+            try {
+                if (endpoint instanceof MessageProducer) {
+                    ((MessageProducer) endpoint).close();
+                } else {
+                    ((MessageConsumer) endpoint).close();
+                }
+            } catch (JMSException e) {
+                LOG.trace("Ignoring exception on close of cached " + endpoint + ": " + e, e);
+            }
+        }
+    }
+
+    /**
+     * The least recently used map of the idle instances, counting them in the statistics of the pool.
+     */
+    @SuppressWarnings("serial")
+    private static final class LruMap<T> extends LinkedHashMap<Key, T> {
+        private final int maxSize;
+        private final AtomicInteger count;
+        private final List<Object> evicted = new ArrayList<Object>();
+
+        LruMap(int maxSize, AtomicInteger count) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.count = count;
+        }
+
+        @Override
+        public T put(Key key, T value) {
+            T previous = super.put(key, value);
+            if (previous == null) {
+                count.incrementAndGet();
+            }
+            return previous;
+        }
+
+        @Override
+        public T remove(Object key) {
+            T removed = super.remove(key);
+            if (removed != null) {
+                count.decrementAndGet();
+            }
+            return removed;
+        }
+
+        @Override
+        public void clear() {
+            count.addAndGet(-size());
+            super.clear();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, T> eldest) {
+            if (size() > maxSize) {
+                evicted.add(eldest.getValue());
+                count.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        List<Object> drainEvicted() {
+            if (evicted.isEmpty()) {
+                return evicted;
+            }
+            List<Object> result = new ArrayList<Object>(evicted);
+            evicted.clear();
+            return result;
+        }
+    }
+
+    /**
+     * The key of a cached producer or consumer.
+     */
+    public static final class Key {
+        private final Kind kind;
+        private final Destination destination;
+        private final String selector;
+        private final boolean noLocal;
+        private final int hash;
+
+        public Key(Kind kind, Destination destination, String selector, boolean noLocal) {
+            this.kind = kind;
+            this.destination = destination;
+            this.selector = selector;
+            this.noLocal = noLocal;
+            int h = kind.hashCode();
+            h = 31 * h + (destination != null ? destination.hashCode() : 0);
+            h = 31 * h + (selector != null ? selector.hashCode() : 0);
+            this.hash = noLocal ? 31 * h + 1 : h;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (!(that instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) that;
+            return kind == other.kind && noLocal == other.noLocal
+                    && (destination != null ? destination.equals(other.destination) : other.destination == null)
+                    && (selector != null ? selector.equals(other.selector) : other.selector == null);
+        }
+
+        @Override
+        public String toString() {
+            return kind + "[" + destination + (selector != null ? ", " + selector : "") + "]";
+        }
+    }
+
+    /**
+     * The statistics of the caches of all the sessions of a connection.
+     */
+    public static final class Statistics {
+        private final AtomicInteger cachedProducers = new AtomicInteger();
+        private final AtomicInteger cachedConsumers = new AtomicInteger();
+        private final AtomicLong producerHits = new AtomicLong();
+        private final AtomicLong producerMisses = new AtomicLong();
+        private final AtomicLong consumerHits = new AtomicLong();
+        private final AtomicLong consumerMisses = new AtomicLong();
+
+        public int getNumCachedProducers() {
+            return cachedProducers.get();
+        }
+
+        public int getNumCachedConsumers() {
+            return cachedConsumers.get();
+        }
+
+        public long getProducerCacheHits() {
+            return producerHits.get();
+        }
+
+        public long getProducerCacheMisses() {
+            return producerMisses.get();
+        }
+
+        public long getConsumerCacheHits() {
+            return consumerHits.get();
+        }
+
+        public long getConsumerCacheMisses() {
+            return consumerMisses.get();
+        }
+    }
+}
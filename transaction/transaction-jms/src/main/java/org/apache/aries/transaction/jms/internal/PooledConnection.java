@@ -268,4 +268,46 @@ public class PooledConnection implements TopicConnection, QueueConnection, Poole
     public int getNumtIdleSessions() {
         return this.pool.getNumIdleSessions();
     }
+
+    /**
+     * @return the number of idle MessageProducers cached by the sessions of this Connection's session pool.
+     */
+    public int getNumCachedProducers() {
+        return this.pool.getNumCachedProducers();
+    }
+
+    /**
+     * @return the number of idle MessageConsumers cached by the sessions of this Connection's session pool.
+     */
+    public int getNumCachedConsumers() {
+        return this.pool.getNumCachedConsumers();
+    }
+
+    /**
+     * @return the number of MessageProducers taken from the session caches of this Connection's session pool.
+     */
+    public long getProducerCacheHits() {
+        return this.pool.getProducerCacheHits();
+    }
+
+    /**
+     * @return the number of MessageProducers created as none was cached in this Connection's session pool.
+     */
+    public long getProducerCacheMisses() {
+        return this.pool.getProducerCacheMisses();
+    }
+
+    /**
+     * @return the number of MessageConsumers taken from the session caches of this Connection's session pool.
+     */
+    public long getConsumerCacheHits() {
+        return this.pool.getConsumerCacheHits();
+    }
+
+    /**
+     * @return the number of MessageConsumers created as none was cached in this Connection's session pool.
+     */
+    public long getConsumerCacheMisses() {
+        return this.pool.getConsumerCacheMisses();
+    }
 }
@@ -16,6 +16,9 @@
  */
 package org.apache.aries.transaction.jms.internal;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.jms.IllegalStateException;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
@@ -28,6 +31,8 @@ public class PooledMessageConsumer implements MessageConsumer {
 
     private final PooledSession session;
     private final MessageConsumer delegate;
+    private final MessageEndpointCache.Key cacheKey;
+    private final AtomicBoolean released = new AtomicBoolean();
 
     /**
      * Wraps the message consumer.
@@ -36,38 +41,64 @@ public class PooledMessageConsumer implements MessageConsumer {
      * @param delegate the created consumer to wrap
      */
     public PooledMessageConsumer(PooledSession session, MessageConsumer delegate) {
+        this(session, delegate, null);
+    }
+
+    /**
+     * Wraps the message consumer, which is given back to the session cache when closed.
+     *
+     * @param session  the pooled session
+     * @param delegate the created or cached consumer to wrap
+     * @param cacheKey the key of the consumer in the session cache
+     */
+    public PooledMessageConsumer(PooledSession session, MessageConsumer delegate, MessageEndpointCache.Key cacheKey) {
         this.session = session;
         this.delegate = delegate;
+        this.cacheKey = cacheKey;
     }
 
     public void close() throws JMSException {
-        // ensure session removes consumer as its closed now
-        session.onConsumerClose(delegate);
-        delegate.close();
+        if (cacheKey == null) {
+            // ensure session removes consumer as its closed now
+            session.onConsumerClose(delegate);
+            delegate.close();
+        } else if (released.compareAndSet(false, true)) {
+            if (!session.releaseConsumer(cacheKey, delegate)) {
+                delegate.close();
+            }
+        }
     }
 
     public MessageListener getMessageListener() throws JMSException {
-        return delegate.getMessageListener();
+        return getDelegate().getMessageListener();
     }
 
     public String getMessageSelector() throws JMSException {
-        return delegate.getMessageSelector();
+        return getDelegate().getMessageSelector();
     }
 
     public Message receive() throws JMSException {
-        return delegate.receive();
+        return getDelegate().receive();
     }
 
     public Message receive(long timeout) throws JMSException {
-        return delegate.receive(timeout);
+        return getDelegate().receive(timeout);
     }
 
     public Message receiveNoWait() throws JMSException {
-        return delegate.receiveNoWait();
+        return getDelegate().receiveNoWait();
     }
 
     public void setMessageListener(MessageListener listener) throws JMSException {
-        delegate.setMessageListener(listener);
+        getDelegate().setMessageListener(listener);
+    }
+
+    private MessageConsumer getDelegate() throws JMSException {
+        if (released.get()) {
+            // the consumer may be in use by another client of the session
+            throw new IllegalStateException("The consumer is closed");
+        }
+        return delegate;
     }
 
     public String toString() {
@@ -16,7 +16,10 @@
  */
 package org.apache.aries.transaction.jms.internal;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import javax.jms.Destination;
+import javax.jms.IllegalStateException;
 import javax.jms.InvalidDestinationException;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -36,6 +39,9 @@ public class PooledProducer implements MessageProducer {
     private int priority;
     private long timeToLive;
     private boolean anonymous = true;
+    private MessageEndpointCache cache;
+    private MessageEndpointCache.Key cacheKey;
+    private final AtomicBoolean released = new AtomicBoolean();
 
     public PooledProducer(MessageProducer messageProducer, Destination destination) throws JMSException {
         this.messageProducer = messageProducer;
@@ -49,9 +55,24 @@ public class PooledProducer implements MessageProducer {
         this.timeToLive = messageProducer.getTimeToLive();
     }
 
+    /**
+     * Gives the producer back to the session cache instead of closing it.
+     *
+     * @return this producer
+     */
+    PooledProducer cachedBy(MessageEndpointCache cache, MessageEndpointCache.Key cacheKey) {
+        this.cache = cache;
+        this.cacheKey = cacheKey;
+        return this;
+    }
+
     @Override
     public void close() throws JMSException {
-        if (!anonymous) {
+        if (cache != null) {
+            if (released.compareAndSet(false, true) && !cache.releaseProducer(cacheKey, messageProducer)) {
+                this.messageProducer.close();
+            }
+        } else if (!anonymous) {
             this.messageProducer.close();
         }
     }
@@ -153,7 +174,11 @@ public class PooledProducer implements MessageProducer {
 
     // Implementation methods
     // -------------------------------------------------------------------------
-    protected MessageProducer getMessageProducer() {
+    protected MessageProducer getMessageProducer() throws JMSException {
+        if (released.get()) {
+            // the producer may be in use by another client of the session
+            throw new IllegalStateException("The producer is closed");
+        }
         return messageProducer;
     }
 
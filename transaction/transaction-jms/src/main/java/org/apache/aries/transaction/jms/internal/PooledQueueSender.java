@@ -44,7 +44,7 @@ public class PooledQueueSender extends PooledProducer implements QueueSender {
     }
 
 
-    protected QueueSender getQueueSender() {
+    protected QueueSender getQueueSender() throws JMSException {
         return (QueueSender) getMessageProducer();
     }
 
@@ -40,6 +40,8 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
     private TopicPublisher publisher;
     private QueueSender sender;
 
+    private final MessageEndpointCache cache;
+
     private Session session;
     private boolean transactional = true;
     private boolean ignoreClose;
@@ -47,11 +49,16 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
     private boolean useAnonymousProducers = true;
 
     public PooledSession(SessionKey key, Session session, KeyedObjectPool<SessionKey, PooledSession> sessionPool, boolean transactional, boolean anonymous) {
+        this(key, session, sessionPool, transactional, anonymous, new MessageEndpointCache(0, 0, new MessageEndpointCache.Statistics()));
+    }
+
+    public PooledSession(SessionKey key, Session session, KeyedObjectPool<SessionKey, PooledSession> sessionPool, boolean transactional, boolean anonymous, MessageEndpointCache cache) {
         this.key = key;
         this.session = session;
         this.sessionPool = sessionPool;
         this.transactional = transactional;
         this.useAnonymousProducers = anonymous;
+        this.cache = cache;
     }
 
     public void addSessionEventListener(PooledSessionEventListener listener) {
@@ -102,6 +109,7 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
             } finally {
                 consumers.clear();
                 browsers.clear();
+                cache.closeConsumers();
                 for (PooledSessionEventListener listener : this.sessionEventListeners) {
                     listener.onSessionClosed(this);
                 }
@@ -111,6 +119,7 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
             if (invalidate) {
                 // lets close the session and not put the session back into the pool
                 // instead invalidate it so the pool can create a new one on demand.
+                cache.close();
                 if (session != null) {
                     try {
                         session.close();
@@ -278,16 +287,25 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
 
     @Override
     public MessageConsumer createConsumer(Destination destination) throws JMSException {
-        return addConsumer(getInternalSession().createConsumer(destination));
+        return createConsumer(destination, null, false);
     }
 
     @Override
     public MessageConsumer createConsumer(Destination destination, String selector) throws JMSException {
-        return addConsumer(getInternalSession().createConsumer(destination, selector));
+        return createConsumer(destination, selector, false);
     }
 
     @Override
     public MessageConsumer createConsumer(Destination destination, String selector, boolean noLocal) throws JMSException {
+        if (cache.isCachingConsumers()) {
+            MessageEndpointCache.Key cacheKey = new MessageEndpointCache.Key(MessageEndpointCache.Kind.CONSUMER, destination, selector, noLocal);
+            MessageConsumer consumer = cache.acquireConsumer(cacheKey);
+            if (consumer == null) {
+                consumer = getInternalSession().createConsumer(destination, selector, noLocal);
+            }
+            consumers.add(consumer);
+            return new PooledMessageConsumer(this, consumer, cacheKey);
+        }
         return addConsumer(getInternalSession().createConsumer(destination, selector, noLocal));
     }
 
@@ -335,16 +353,40 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
     // -------------------------------------------------------------------------
     @Override
     public MessageProducer createProducer(Destination destination) throws JMSException {
+        if (!useAnonymousProducers && cache.isCachingProducers()) {
+            MessageEndpointCache.Key cacheKey = new MessageEndpointCache.Key(MessageEndpointCache.Kind.PRODUCER, destination, null, false);
+            MessageProducer producer = cache.acquireProducer(cacheKey);
+            if (producer == null) {
+                producer = getInternalSession().createProducer(destination);
+            }
+            return new PooledProducer(producer, destination).cachedBy(cache, cacheKey);
+        }
         return new PooledProducer(getMessageProducer(destination), destination);
     }
 
     @Override
     public QueueSender createSender(Queue queue) throws JMSException {
+        if (!useAnonymousProducers && cache.isCachingProducers()) {
+            MessageEndpointCache.Key cacheKey = new MessageEndpointCache.Key(MessageEndpointCache.Kind.SENDER, queue, null, false);
+            QueueSender sender = (QueueSender) cache.acquireProducer(cacheKey);
+            if (sender == null) {
+                sender = ((QueueSession) getInternalSession()).createSender(queue);
+            }
+            return (QueueSender) new PooledQueueSender(sender, queue).cachedBy(cache, cacheKey);
+        }
         return new PooledQueueSender(getQueueSender(queue), queue);
     }
 
     @Override
     public TopicPublisher createPublisher(Topic topic) throws JMSException {
+        if (!useAnonymousProducers && cache.isCachingProducers()) {
+            MessageEndpointCache.Key cacheKey = new MessageEndpointCache.Key(MessageEndpointCache.Kind.PUBLISHER, topic, null, false);
+            TopicPublisher publisher = (TopicPublisher) cache.acquireProducer(cacheKey);
+            if (publisher == null) {
+                publisher = ((TopicSession) getInternalSession()).createPublisher(topic);
+            }
+            return (TopicPublisher) new PooledTopicPublisher(publisher, topic).cachedBy(cache, cacheKey);
+        }
         return new PooledTopicPublisher(getTopicPublisher(topic), topic);
     }
 
@@ -457,6 +499,13 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
         this.isXa = isXa;
     }
 
+    /**
+     * Closes the producers and consumers cached by this session, before it is destroyed.
+     */
+    public void closeCache() {
+        cache.close();
+    }
+
     @Override
     public String toString() {
         return "PooledSession { " + session + " }";
@@ -475,4 +524,14 @@ public class PooledSession implements Session, TopicSession, QueueSession, XASes
     protected void onConsumerClose(MessageConsumer consumer) {
         consumers.remove(consumer);
     }
+
+    /**
+     * Callback invoked when a consumer created for the given cache key is closed.
+     *
+     * @return true if the consumer is kept open for a later use, false if it must be closed
+     */
+    protected boolean releaseConsumer(MessageEndpointCache.Key cacheKey, MessageConsumer consumer) {
+        // a consumer which is no longer tracked has been closed with the session
+        return consumers.remove(consumer) && session != null && cache.releaseConsumer(cacheKey, consumer);
+    }
 }
@@ -51,7 +51,7 @@ public class PooledTopicPublisher extends PooledProducer implements TopicPublish
         getTopicPublisher().publish(topic, message, i, i1, l);
     }
 
-    protected TopicPublisher getTopicPublisher() {
+    protected TopicPublisher getTopicPublisher() throws JMSException {
         return (TopicPublisher) getMessageProducer();
     }
 }
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms.internal;
+
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.pool.KeyedObjectPool;
+import org.apache.commons.pool.KeyedPoolableObjectFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConcurrentKeyedObjectPoolTest {
+
+    int minThreads = 1;
+    int maxThreads = 100;
+    int borrowsPerThread = 100000;
+
+    @Test
+    public void testBorrowAndReturn() throws Exception {
+        TestFactory factory = new TestFactory();
+        ConcurrentKeyedObjectPool<String, Object> pool = new ConcurrentKeyedObjectPool<String, Object>(factory);
+        Object a1 = pool.borrowObject("a");
+        Object a2 = pool.borrowObject("a");
+        Object b1 = pool.borrowObject("b");
+        assertNotSame(a1, a2);
+        assertEquals(3, pool.getNumActive());
+        assertEquals(2, pool.getNumActive("a"));
+        pool.returnObject("a", a1);
+        pool.returnObject("a", a2);
+        pool.returnObject("b", b1);
+        assertEquals(0, pool.getNumActive());
+        assertEquals(3, pool.getNumIdle());
+        // the most recently returned object is borrowed first
+        assertSame(a2, pool.borrowObject("a"));
+        assertSame(b1, pool.borrowObject("b"));
+        assertEquals(3, factory.created.get());
+        pool.close();
+        assertEquals(1, factory.destroyed.get());
+        try {
+            pool.borrowObject("a");
+            fail("The pool is closed");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testMaxIdle() throws Exception {
+        TestFactory factory = new TestFactory();
+        ConcurrentKeyedObjectPool<String, Object> pool = new ConcurrentKeyedObjectPool<String, Object>(factory);
+        pool.setMaxIdle(1);
+        Object a1 = pool.borrowObject("a");
+        Object a2 = pool.borrowObject("a");
+        pool.returnObject("a", a1);
+        pool.returnObject("a", a2);
+        assertEquals(1, pool.getNumIdle("a"));
+        assertEquals(1, factory.destroyed.get());
+        assertTrue(factory.live.contains(a1));
+    }
+
+    @Test
+    public void testExhausted() throws Exception {
+        TestFactory factory = new TestFactory();
+        final ConcurrentKeyedObjectPool<String, Object> pool = new ConcurrentKeyedObjectPool<String, Object>(factory);
+        pool.setMaxActive(1);
+        pool.setBlockWhenExhausted(false);
+        final Object a1 = pool.borrowObject("a");
+        pool.returnObject("b", pool.borrowObject("b"));
+        try {
+            pool.borrowObject("a");
+            fail("The key is exhausted");
+        } catch (NoSuchElementException e) {
+        }
+
+        pool.setBlockWhenExhausted(true);
+        pool.setMaxWait(50);
+        long t0 = System.currentTimeMillis();
+        try {
+            pool.borrowObject("a");
+            fail("The key is exhausted");
+        } catch (NoSuchElementException e) {
+            assertTrue(System.currentTimeMillis() - t0 >= 50);
+        }
+
+        pool.setMaxWait(-1);
+        Thread returner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                    pool.returnObject("a", a1);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        returner.start();
+        assertSame(a1, pool.borrowObject("a"));
+        returner.join();
+    }
+
+    @Test
+    public void testInvalidObjects() throws Exception {
+        TestFactory factory = new TestFactory();
+        ConcurrentKeyedObjectPool<String, Object> pool = new ConcurrentKeyedObjectPool<String, Object>(factory);
+        pool.setMaxActive(1);
+        pool.setBlockWhenExhausted(false);
+        pool.setTestOnBorrow(true);
+        Object a1 = pool.borrowObject("a");
+        pool.invalidateObject("a", a1);
+        assertEquals(0, pool.getNumActive("a"));
+        Object a2 = pool.borrowObject("a");
+        pool.returnObject("a", a2);
+        factory.live.remove(a2);
+        Object a3 = pool.borrowObject("a");
+        assertNotSame(a2, a3);
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(3, factory.created.get());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        TestFactory factory = new TestFactory();
+        ConcurrentKeyedObjectPool<String, Object> pool = new ConcurrentKeyedObjectPool<String, Object>(factory);
+        pool.setMinEvictableIdleTimeMillis(100);
+        Object a1 = pool.borrowObject("a");
+        Object a2 = pool.borrowObject("a");
+        pool.returnObject("a", a1);
+        Thread.sleep(150);
+        pool.returnObject("a", a2);
+        pool.evict();
+        assertEquals(1, pool.getNumIdle());
+        assertSame(a2, pool.borrowObject("a"));
+
+        pool.setTimeBetweenEvictionRunsMillis(50);
+        pool.returnObject("a", a2);
+        for (int i = 0; i < 100 && pool.getNumIdle() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(2, factory.destroyed.get());
+        pool.close();
+    }
+
+    @Test
+    @Ignore
+    public void testGenericKeyedObjectPool() throws Exception {
+        System.err.println("GenericKeyedObjectPool");
+        GenericKeyedObjectPool<String, Object> pool = new GenericKeyedObjectPool<String, Object>(new TestFactory());
+        pool.setMaxActive(500);
+        for (int i = minThreads; i <= maxThreads; i *= 10) {
+            long ms = testThroughput(pool, i, borrowsPerThread);
+            System.err.println("Borrows/s (" + i + " threads) = " + ((i * (long) borrowsPerThread) / (ms / 1000.0)));
+        }
+        pool.close();
+        System.err.println();
+        System.err.flush();
+    }
+
+    @Test
+    @Ignore
+    public void testConcurrentKeyedObjectPool() throws Exception {
+        System.err.println("ConcurrentKeyedObjectPool");
+        ConcurrentKeyedObjectPool<String, Object> pool = new ConcurrentKeyedObjectPool<String, Object>(new TestFactory());
+        pool.setMaxActive(500);
+        for (int i = minThreads; i <= maxThreads; i *= 10) {
+            long ms = testThroughput(pool, i, borrowsPerThread);
+            System.err.println("Borrows/s (" + i + " threads) = " + ((i * (long) borrowsPerThread) / (ms / 1000.0)));
+        }
+        pool.close();
+        System.err.println();
+        System.err.flush();
+    }
+
+    public long testThroughput(final KeyedObjectPool<String, Object> pool, final int nbThreads, final int nbBorrowsPerThread) throws Exception {
+        // the sessions of a connection are mostly borrowed with the same key
+        final String[] keys = { "auto", "auto", "auto", "transacted" };
+        Thread[] threads = new Thread[nbThreads];
+        for (int thIdx = 0; thIdx < nbThreads; thIdx++) {
+            threads[thIdx] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < nbBorrowsPerThread; i++) {
+                            String key = keys[i & 3];
+                            pool.returnObject(key, pool.borrowObject(key));
+                        }
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                    }
+                }
+            };
+        }
+        long t0 = System.currentTimeMillis();
+        for (int thIdx = 0; thIdx < nbThreads; thIdx++) {
+            threads[thIdx].start();
+        }
+        for (int thIdx = 0; thIdx < nbThreads; thIdx++) {
+            threads[thIdx].join();
+        }
+        long t1 = System.currentTimeMillis();
+        return t1 - t0;
+    }
+
+    static class TestFactory implements KeyedPoolableObjectFactory<String, Object> {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger destroyed = new AtomicInteger();
+        final Set<Object> live = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+        public Object makeObject(String key) {
+            created.incrementAndGet();
+            Object obj = new Object();
+            live.add(obj);
+            return obj;
+        }
+
+        public void destroyObject(String key, Object obj) {
+            destroyed.incrementAndGet();
+            live.remove(obj);
+        }
+
+        public boolean validateObject(String key, Object obj) {
+            return live.contains(obj);
+        }
+
+        public void activateObject(String key, Object obj) {
+        }
+
+        public void passivateObject(String key, Object obj) {
+        }
+    }
+}
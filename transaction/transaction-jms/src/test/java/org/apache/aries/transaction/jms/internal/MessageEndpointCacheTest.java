@@ -0,0 +1,321 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.jms.internal;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jms.IllegalStateException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.QueueSession;
+import javax.jms.Session;
+import javax.jms.TopicSession;
+
+import org.apache.commons.pool.KeyedObjectPool;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MessageEndpointCacheTest {
+
+    /** The producers and consumers created by the mocked session */
+    private final List<Object> created = Collections.synchronizedList(new ArrayList<Object>());
+    /** The mocks on which close() was invoked, once per call */
+    private final List<Object> closed = Collections.synchronizedList(new ArrayList<Object>());
+    /** The mocks on which setMessageListener(null) was invoked */
+    private final List<Object> listenerReset = Collections.synchronizedList(new ArrayList<Object>());
+
+    private final Queue queueA = mock(Queue.class);
+    private final Queue queueB = mock(Queue.class);
+
+    private MessageEndpointCache.Statistics statistics;
+
+    @Before
+    public void setUp() {
+        statistics = new MessageEndpointCache.Statistics();
+    }
+
+    @Test
+    public void testProducerHitAfterClose() throws Exception {
+        PooledSession session = createSession(2, 2);
+        PooledProducer first = (PooledProducer) session.createProducer(queueA);
+        MessageProducer delegate = first.getMessageProducer();
+        first.close();
+        assertEquals(0, count(closed, delegate));
+        assertEquals(1, statistics.getNumCachedProducers());
+
+        PooledProducer second = (PooledProducer) session.createProducer(queueA);
+        assertSame(delegate, second.getMessageProducer());
+        assertEquals(1, created.size());
+        assertEquals(0, statistics.getNumCachedProducers());
+        assertEquals(1, statistics.getProducerCacheHits());
+        assertEquals(1, statistics.getProducerCacheMisses());
+
+        // another destination is another key
+        session.createProducer(queueB);
+        assertEquals(2, created.size());
+        assertEquals(2, statistics.getProducerCacheMisses());
+    }
+
+    @Test
+    public void testConsumerHitAfterClose() throws Exception {
+        PooledSession session = createSession(2, 2);
+        MessageConsumer first = session.createConsumer(queueA, "a = 1");
+        first.close();
+        Object delegate = created.get(0);
+        assertEquals(0, count(closed, delegate));
+        // an idle consumer does not deliver messages
+        assertEquals(1, count(listenerReset, delegate));
+        assertEquals(1, statistics.getNumCachedConsumers());
+
+        session.createConsumer(queueA, "a = 1");
+        assertEquals(1, created.size());
+        assertEquals(1, statistics.getConsumerCacheHits());
+        assertEquals(1, statistics.getConsumerCacheMisses());
+
+        // another selector is another key
+        session.createConsumer(queueA, "a = 2");
+        assertEquals(2, created.size());
+        assertEquals(2, statistics.getConsumerCacheMisses());
+    }
+
+    @Test
+    public void testEvictionClosesEvicted() throws Exception {
+        PooledSession session = createSession(1, 1);
+        MessageProducer producerA = session.createProducer(queueA);
+        MessageProducer producerB = session.createProducer(queueB);
+        producerA.close();
+        producerB.close();
+        assertEquals(1, count(closed, created.get(0)));
+        assertEquals(0, count(closed, created.get(1)));
+        assertEquals(1, statistics.getNumCachedProducers());
+
+        MessageConsumer consumerA = session.createConsumer(queueA);
+        MessageConsumer consumerB = session.createConsumer(queueB);
+        consumerA.close();
+        consumerB.close();
+        assertEquals(1, count(closed, created.get(2)));
+        assertEquals(0, count(closed, created.get(3)));
+        assertEquals(1, statistics.getNumCachedConsumers());
+
+        // the evicted producer is created again
+        session.createProducer(queueA);
+        assertEquals(5, created.size());
+    }
+
+    @Test
+    public void testConsumersClosedWhenSessionReturnedToPool() throws Exception {
+        List<Object> returned = new ArrayList<Object>();
+        PooledSession session = createSession(2, 2, returned);
+        session.createConsumer(queueA).close();
+        session.createConsumer(queueB);
+        session.createProducer(queueA).close();
+        assertEquals(1, statistics.getNumCachedConsumers());
+
+        session.close();
+        assertEquals(Collections.<Object>singletonList(session), returned);
+        // the idle and the open consumers are closed, the producer stays cached
+        assertEquals(1, count(closed, created.get(0)));
+        assertEquals(1, count(closed, created.get(1)));
+        assertEquals(0, count(closed, created.get(2)));
+        assertEquals(0, statistics.getNumCachedConsumers());
+        assertEquals(1, statistics.getNumCachedProducers());
+
+        // the pool destroys the session
+        session.closeCache();
+        assertEquals(1, count(closed, created.get(2)));
+        assertEquals(0, statistics.getNumCachedProducers());
+    }
+
+    @Test
+    public void testSecondCloseIsNoOp() throws Exception {
+        PooledSession session = createSession(2, 2);
+        MessageProducer producer = session.createProducer(queueA);
+        producer.close();
+        PooledProducer other = (PooledProducer) session.createProducer(queueA);
+        // the second close must not give the producer now used by other back
+        producer.close();
+        assertEquals(0, statistics.getNumCachedProducers());
+        session.createProducer(queueA);
+        assertEquals(2, created.size());
+        assertSame(created.get(0), other.getMessageProducer());
+
+        MessageConsumer consumer = session.createConsumer(queueA);
+        consumer.close();
+        session.createConsumer(queueA);
+        consumer.close();
+        assertEquals(0, statistics.getNumCachedConsumers());
+        session.createConsumer(queueA);
+        assertEquals(4, created.size());
+        assertTrue(closed.isEmpty());
+    }
+
+    @Test
+    public void testUseAfterClose() throws Exception {
+        PooledSession session = createSession(2, 2);
+        MessageProducer producer = session.createProducer(queueA);
+        producer.close();
+        try {
+            producer.send(mock(Message.class));
+            fail("The producer is closed");
+        } catch (IllegalStateException e) {
+        }
+
+        MessageConsumer consumer = session.createConsumer(queueA);
+        consumer.close();
+        try {
+            consumer.receive();
+            fail("The consumer is closed");
+        } catch (IllegalStateException e) {
+        }
+        try {
+            consumer.setMessageListener(null);
+            fail("The consumer is closed");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        MessageEndpointCache cache = new MessageEndpointCache(2, 2, statistics);
+        MessageEndpointCache.Key key = new MessageEndpointCache.Key(MessageEndpointCache.Kind.PRODUCER, queueA, null, false);
+        MessageEndpointCache.Key consumerKey = new MessageEndpointCache.Key(MessageEndpointCache.Kind.CONSUMER, queueA, null, false);
+        MessageProducer producer = mock(MessageProducer.class);
+        MessageConsumer consumer = mock(MessageConsumer.class);
+
+        assertNull(cache.acquireProducer(key));
+        assertTrue(cache.releaseProducer(key, producer));
+        // only one idle instance per key
+        assertFalse(cache.releaseProducer(key, mock(MessageProducer.class)));
+        assertNull(cache.acquireConsumer(consumerKey));
+        assertTrue(cache.releaseConsumer(consumerKey, consumer));
+        assertEquals(1, statistics.getNumCachedProducers());
+        assertEquals(1, statistics.getNumCachedConsumers());
+
+        assertSame(producer, cache.acquireProducer(key));
+        assertSame(consumer, cache.acquireConsumer(consumerKey));
+        assertNull(cache.acquireConsumer(consumerKey));
+        assertEquals(1, statistics.getProducerCacheHits());
+        assertEquals(1, statistics.getProducerCacheMisses());
+        assertEquals(1, statistics.getConsumerCacheHits());
+        assertEquals(2, statistics.getConsumerCacheMisses());
+        assertEquals(0, statistics.getNumCachedProducers());
+        assertEquals(0, statistics.getNumCachedConsumers());
+
+        assertTrue(cache.releaseProducer(key, producer));
+        assertTrue(cache.releaseConsumer(consumerKey, consumer));
+        cache.close();
+        assertEquals(1, count(closed, producer));
+        assertEquals(1, count(closed, consumer));
+        assertEquals(0, statistics.getNumCachedProducers());
+        assertEquals(0, statistics.getNumCachedConsumers());
+        // the caller closes what is released after the cache
+        assertFalse(cache.releaseProducer(key, producer));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        PooledSession session = createSession(0, 0);
+        MessageProducer producer = session.createProducer(queueA);
+        producer.close();
+        session.createConsumer(queueA).close();
+        assertEquals(1, count(closed, created.get(1)));
+        assertEquals(0, statistics.getProducerCacheMisses());
+        assertEquals(0, statistics.getConsumerCacheMisses());
+    }
+
+    private PooledSession createSession(int maxProducers, int maxConsumers) {
+        return createSession(maxProducers, maxConsumers, new ArrayList<Object>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private PooledSession createSession(int maxProducers, int maxConsumers, final List<Object> returned) {
+        Session session = (Session) mock(Session.class, QueueSession.class, TopicSession.class);
+        KeyedObjectPool<SessionKey, PooledSession> pool = (KeyedObjectPool<SessionKey, PooledSession>) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class[] { KeyedObjectPool.class }, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if (method.getName().equals("returnObject")) {
+                            returned.add(args[1]);
+                        }
+                        return null;
+                    }
+                });
+        MessageEndpointCache cache = new MessageEndpointCache(maxProducers, maxConsumers, statistics);
+        return new PooledSession(null, session, pool, false, false, cache);
+    }
+
+    private static int count(List<Object> calls, Object mock) {
+        int count = 0;
+        synchronized (calls) {
+            for (Object o : calls) {
+                if (o == mock) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private <T> T mock(Class<T> type) {
+        return type.cast(mock(new Class<?>[] { type }));
+    }
+
+    private Object mock(Class<?>... types) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), types, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                Class<?> type = method.getReturnType();
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (name.equals("toString")) {
+                    return "mock@" + Integer.toHexString(System.identityHashCode(proxy));
+                } else if (name.equals("close")) {
+                    closed.add(proxy);
+                } else if (name.equals("setMessageListener") && args[0] == null) {
+                    listenerReset.add(proxy);
+                } else if (name.startsWith("create")
+                        && (MessageProducer.class.isAssignableFrom(type) || MessageConsumer.class.isAssignableFrom(type))) {
+                    Object endpoint = mock(type);
+                    created.add(endpoint);
+                    return endpoint;
+                } else if (type == boolean.class) {
+                    return false;
+                } else if (type == int.class) {
+                    return 0;
+                } else if (type == long.class) {
+                    return 0L;
+                }
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,795 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.transaction.xa.Xid;
+
+import org.apache.geronimo.transaction.manager.LogException;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.TransactionLog;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A transaction log appending its records to preallocated segment files through a FileChannel.
+ * <p>
+ * A commit record is written when a transaction is prepared, and a done record when it has been
+ * committed or rolled back. The threads preparing transactions wait until their commit record is
+ * forced to disk, and the records appended by all the threads waiting meanwhile are written and
+ * forced at once by one of them (group commit). Done records are not forced, they are written
+ * with the next batch.
+ * <p>
+ * Each segment starts with a header holding its generation, and the checksum of each record covers
+ * the generation, so the records left over from a previous use of a segment are ignored. Once full,
+ * the oldest segment is reused if none of its transactions is still in doubt, otherwise a new
+ * segment is allocated. Recovery reads the segments in generation order, and returns the
+ * transactions with a commit record but no done record.
+ */
+public class FileChannelLog implements TransactionLog {
+
+    private static final Logger log = LoggerFactory.getLogger(FileChannelLog.class);
+
+    private static final int MAGIC = 0x4154584c; // ATXL
+    private static final int VERSION = 1;
+    /** magic, version, generation */
+    private static final int HEADER_SIZE = 16;
+    /** length, checksum */
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final byte COMMIT = 1;
+    private static final byte DONE = 2;
+
+    private static final String EXTENSION = "seg";
+    private static final int ZEROS_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final String name;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Pattern segmentName;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition written = lock.newCondition();
+
+    // the fields below are guarded by the lock
+
+    /** The segments in use, oldest first, the last one is the current segment */
+    private final LinkedList<Segment> used = new LinkedList<Segment>();
+    /** The empty segments */
+    private final LinkedList<Segment> free = new LinkedList<Segment>();
+    /** The records to write, grouped by segment */
+    private List<Chunk> pending = new ArrayList<Chunk>();
+    private long nextGeneration;
+    private int nextIndex;
+    /** The number of records appended */
+    private long appended;
+    /** The number of records written and forced */
+    private long forced;
+    /** Whether a thread is writing a batch */
+    private boolean writing;
+    /** The failure of a write, after which the log is unusable */
+    private IOException failure;
+    private boolean started;
+    private Collection<RecoveredTransaction> recovered = Collections.emptyList();
+
+    private long forces;
+    private long forceTime;
+    private long forcedBytes;
+    private long forcedRecords;
+
+    /**
+     * @param directory the directory of the segment files
+     * @param name the prefix of the segment file names
+     * @param segmentSize the size of a segment file in bytes
+     * @param maxSegments the number of segment files kept for reuse
+     */
+    public FileChannelLog(File directory, String name, int segmentSize, int maxSegments) {
+        if (segmentSize < 4 * 1024) {
+            throw new IllegalArgumentException("The segment size must be at least 4 KB.");
+        }
+        if (maxSegments < 2) {
+            throw new IllegalArgumentException("At least two segments are needed.");
+        }
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.segmentName = segmentName(name);
+    }
+
+    /**
+     * @return whether the directory holds segment files of a log with the given name
+     */
+    static boolean hasSegments(File directory, String name) {
+        Pattern segmentName = segmentName(name);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (segmentName.matcher(file.getName()).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Pattern segmentName(String name) {
+        return Pattern.compile(Pattern.quote(name) + "_([0-9]+)\\." + EXTENSION);
+    }
+
+    /**
+     * Opens the segments and reads the transactions still in doubt.
+     */
+    public void doStart() throws LogException {
+        lock.lock();
+        try {
+            if (started) {
+                return;
+            }
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new LogException("Unable to create the transaction log directory " + directory);
+            }
+            try {
+                recovered = open();
+                roll();
+            } catch (IOException e) {
+                closeSegments();
+                throw new LogException("Unable to open the transaction log in " + directory, e);
+            }
+            started = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the pending records and closes the segments.
+     */
+    public void doStop() throws LogException {
+        long sequence;
+        lock.lock();
+        try {
+            if (!started) {
+                return;
+            }
+            sequence = appended;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            force(sequence);
+        } finally {
+            lock.lock();
+            try {
+                started = false;
+                closeSegments();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public void begin(Xid xid) throws LogException {
+    }
+
+    public Object prepare(Xid xid, List<? extends TransactionBranchInfo> branches) throws LogException {
+        byte[] record;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(COMMIT);
+            writeXid(out, xid);
+            out.writeInt(branches.size());
+            for (TransactionBranchInfo branch : branches) {
+                writeBytes(out, branch.getBranchXid().getBranchQualifier());
+                out.writeUTF(branch.getResourceName());
+            }
+            out.flush();
+            record = bytes.toByteArray();
+        } catch (IOException e) {
+            throw new LogException("Unable to write the commit record of " + xid, e);
+        }
+
+        Mark mark;
+        long sequence;
+        lock.lock();
+        try {
+            Segment segment = append(record);
+            segment.live++;
+            mark = new Mark(segment);
+            sequence = appended;
+        } finally {
+            lock.unlock();
+        }
+        force(sequence);
+        return mark;
+    }
+
+    public void commit(Xid xid, Object logMark) throws LogException {
+        done(xid, logMark);
+    }
+
+    public void rollback(Xid xid, Object logMark) throws LogException {
+        done(xid, logMark);
+    }
+
+    private void done(Xid xid, Object logMark) throws LogException {
+        if (logMark == null) {
+            // the transaction was not logged
+            return;
+        }
+        byte[] record;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(80);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(DONE);
+            writeXid(out, xid);
+            out.flush();
+            record = bytes.toByteArray();
+        } catch (IOException e) {
+            throw new LogException("Unable to write the done record of " + xid, e);
+        }
+
+        lock.lock();
+        try {
+            append(record);
+            Mark mark = (Mark) logMark;
+            if (!mark.done) {
+                mark.done = true;
+                mark.segment.live--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Collection<Recovery.XidBranchesPair> recover(XidFactory xidFactory) throws LogException {
+        Collection<RecoveredTransaction> transactions;
+        lock.lock();
+        try {
+            if (!started) {
+                throw new LogException("The transaction log is not started");
+            }
+            transactions = recovered;
+            recovered = Collections.emptyList();
+        } finally {
+            lock.unlock();
+        }
+
+        List<Recovery.XidBranchesPair> result = new ArrayList<Recovery.XidBranchesPair>(transactions.size());
+        for (RecoveredTransaction tx : transactions) {
+            Xid xid = xidFactory.recover(tx.formatId, tx.globalId, null);
+            Recovery.XidBranchesPair pair = new Recovery.XidBranchesPair(xid, tx.mark);
+            for (int i = 0; i < tx.branchQualifiers.size(); i++) {
+                Xid branchXid = xidFactory.recover(tx.formatId, tx.globalId, tx.branchQualifiers.get(i));
+                pair.addBranch(new BranchInfo(branchXid, tx.resourceNames.get(i)));
+            }
+            result.add(pair);
+        }
+        return result;
+    }
+
+    public String getXMLStats() {
+        lock.lock();
+        try {
+            return "<FileChannelLog>"
+                    + "<forces>" + forces + "</forces>"
+                    + "<forcedRecords>" + forcedRecords + "</forcedRecords>"
+                    + "<forcedBytes>" + forcedBytes + "</forcedBytes>"
+                    + "<averageForceTime>" + getAverageForceTime() + "</averageForceTime>"
+                    + "<segments>" + (used.size() + free.size()) + "</segments>"
+                    + "</FileChannelLog>";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the average time of a force, in milliseconds
+     */
+    public int getAverageForceTime() {
+        lock.lock();
+        try {
+            return forces == 0 ? 0 : (int) (forceTime / forces / 1000000L);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getAverageBytesPerForce() {
+        lock.lock();
+        try {
+            return forces == 0 ? 0 : (int) (forcedBytes / forces);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a record to the current segment, moving to a new segment if it is full.
+     *
+     * @return the segment of the record
+     */
+    private Segment append(byte[] record) throws LogException {
+        if (!started) {
+            throw new LogException("The transaction log is not started");
+        }
+        if (failure != null) {
+            throw new LogException("The transaction log is unusable after a write failure", failure);
+        }
+        int size = RECORD_HEADER_SIZE + record.length;
+        if (HEADER_SIZE + size > segmentSize) {
+            throw new LogException("The record size " + size + " exceeds the segment size " + segmentSize);
+        }
+        Segment segment = used.getLast();
+        if (segment.position + size > segmentSize) {
+            try {
+                roll();
+            } catch (IOException e) {
+                throw new LogException("Unable to allocate a transaction log segment", e);
+            }
+            segment = used.getLast();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(record.length);
+        buffer.putInt(checksum(segment.generation, record, 0, record.length));
+        buffer.put(record);
+        chunk(segment, segment.position).add(buffer.array());
+        segment.position += size;
+        appended++;
+        return segment;
+    }
+
+    private Chunk chunk(Segment segment, long position) {
+        Chunk last = pending.isEmpty() ? null : pending.get(pending.size() - 1);
+        if (last == null || last.segment != segment) {
+            last = new Chunk(segment, position);
+            pending.add(last);
+        }
+        return last;
+    }
+
+    /**
+     * Makes a new segment current, reusing the oldest segment if it has no transaction in doubt.
+     */
+    private void roll() throws IOException {
+        Segment next = null;
+        if (used.size() > 1 && used.getFirst().live == 0 && !used.getFirst().resized) {
+            next = used.removeFirst();
+        } else if (!free.isEmpty()) {
+            next = free.removeFirst();
+        } else {
+            next = createSegment();
+        }
+
+        next.generation = nextGeneration++;
+        next.position = HEADER_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(next.generation);
+        chunk(next, 0).add(header.array());
+        used.addLast(next);
+
+        // release the segments allocated while transactions were in doubt
+        while (used.getFirst() != next && used.getFirst().live == 0
+                && (used.size() > maxSegments || used.getFirst().resized)) {
+            Segment segment = used.removeFirst();
+            if (isPending(segment)) {
+                used.addFirst(segment);
+                break;
+            }
+            segment.close();
+            if (!segment.file.delete()) {
+                log.warn("Unable to delete the transaction log segment {}", segment.file);
+            }
+        }
+    }
+
+    private boolean isPending(Segment segment) {
+        for (Chunk chunk : pending) {
+            if (chunk.segment == segment) {
+                return true;
+            }
+        }
+        return writing;
+    }
+
+    private Segment createSegment() throws IOException {
+        File file = new File(directory, name + "_" + nextIndex++ + "." + EXTENSION);
+        log.debug("Allocating transaction log segment {}", file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        Segment segment = new Segment(file, raf);
+        try {
+            // write the whole file so that forcing it does not need to update its metadata
+            ByteBuffer zeros = ByteBuffer.allocate(ZEROS_SIZE);
+            long position = 0;
+            while (position < segmentSize) {
+                zeros.clear();
+                zeros.limit((int) Math.min(ZEROS_SIZE, segmentSize - position));
+                while (zeros.hasRemaining()) {
+                    position += segment.channel.write(zeros, position);
+                }
+            }
+            segment.channel.force(true);
+        } catch (IOException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    /**
+     * Waits until the given number of records is forced, writing the pending records if no other
+     * thread is doing so.
+     */
+    private void force(long sequence) throws LogException {
+        lock.lock();
+        try {
+            while (forced < sequence) {
+                if (failure != null) {
+                    throw new LogException("The transaction log is unusable after a write failure", failure);
+                }
+                if (writing) {
+                    written.awaitUninterruptibly();
+                    continue;
+                }
+                writing = true;
+                List<Chunk> batch = pending;
+                pending = new ArrayList<Chunk>();
+                long target = appended;
+                long bytes = 0;
+                long start = System.nanoTime();
+                IOException error = null;
+                lock.unlock();
+                try {
+                    bytes = write(batch);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+                writing = false;
+                if (error != null) {
+                    log.error("Unable to write the transaction log", error);
+                    failure = error;
+                } else {
+                    forces++;
+                    forceTime += System.nanoTime() - start;
+                    forcedBytes += bytes;
+                    forcedRecords += target - forced;
+                    forced = target;
+                }
+                written.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long write(List<Chunk> batch) throws IOException {
+        long bytes = 0;
+        Set<Segment> segments = new LinkedHashSet<Segment>();
+        for (Chunk chunk : batch) {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.data.toByteArray());
+            long position = chunk.position;
+            while (buffer.hasRemaining()) {
+                position += chunk.segment.channel.write(buffer, position);
+            }
+            bytes += chunk.data.size();
+            segments.add(chunk.segment);
+        }
+        for (Segment segment : segments) {
+            segment.channel.force(false);
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the existing segments
+     *
+     * @return the transactions in doubt
+     */
+    private Collection<RecoveredTransaction> open() throws IOException {
+        List<Segment> segments = new ArrayList<Segment>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Matcher matcher = segmentName.matcher(file.getName());
+                if (matcher.matches()) {
+                    nextIndex = Math.max(nextIndex, Integer.parseInt(matcher.group(1)) + 1);
+                    Segment segment = new Segment(file, new RandomAccessFile(file, "rw"));
+                    if (segment.channel.size() != segmentSize) {
+                        // written with another segment size, keep its records but do not reuse it
+                        segment.resized = true;
+                    }
+                    segments.add(segment);
+                }
+            }
+        }
+
+        List<Segment> valid = new ArrayList<Segment>();
+        for (Segment segment : segments) {
+            if (readHeader(segment)) {
+                valid.add(segment);
+            } else if (segment.resized) {
+                segment.close();
+                if (!segment.file.delete()) {
+                    log.warn("Unable to delete the transaction log segment {}", segment.file);
+                }
+            } else {
+                free.add(segment);
+            }
+        }
+        Collections.sort(valid, new Comparator<Segment>() {
+            public int compare(Segment s1, Segment s2) {
+                return s1.generation < s2.generation ? -1 : s1.generation == s2.generation ? 0 : 1;
+            }
+        });
+
+        Map<XidKey, RecoveredTransaction> transactions = new LinkedHashMap<XidKey, RecoveredTransaction>();
+        for (Segment segment : valid) {
+            read(segment, transactions);
+            nextGeneration = segment.generation + 1;
+            used.add(segment);
+        }
+        for (RecoveredTransaction tx : transactions.values()) {
+            tx.mark.segment.live++;
+        }
+        if (!transactions.isEmpty()) {
+            log.info("{} transactions in doubt found in the transaction log {}", transactions.size(), directory);
+        }
+        return new ArrayList<RecoveredTransaction>(transactions.values());
+    }
+
+    private boolean readHeader(Segment segment) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(segment.channel, header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return false;
+        }
+        segment.generation = header.getLong();
+        return true;
+    }
+
+    private void read(Segment segment, Map<XidKey, RecoveredTransaction> transactions) throws IOException {
+        long size = segment.channel.size();
+        ByteBuffer contents = ByteBuffer.allocate((int) size);
+        readFully(segment.channel, contents, 0);
+        contents.flip();
+        contents.position(HEADER_SIZE);
+        while (contents.remaining() >= RECORD_HEADER_SIZE) {
+            int start = contents.position();
+            int length = contents.getInt();
+            int checksum = contents.getInt();
+            if (length <= 0 || length > contents.remaining()
+                    || checksum(segment.generation, contents.array(), contents.position(), length) != checksum) {
+                // end of the records of this generation
+                contents.position(start);
+                break;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(contents.array(), contents.position(), length));
+            contents.position(contents.position() + length);
+            byte type = in.readByte();
+            int formatId = in.readInt();
+            byte[] globalId = readBytes(in);
+            XidKey key = new XidKey(formatId, globalId);
+            if (type == COMMIT) {
+                RecoveredTransaction tx = new RecoveredTransaction(formatId, globalId, new Mark(segment));
+                int branches = in.readInt();
+                for (int i = 0; i < branches; i++) {
+                    tx.branchQualifiers.add(readBytes(in));
+                    tx.resourceNames.add(in.readUTF());
+                }
+                transactions.put(key, tx);
+            } else if (type == DONE) {
+                transactions.remove(key);
+            } else {
+                throw new IOException("Unknown record type " + type + " in the transaction log segment " + segment.file);
+            }
+        }
+        segment.position = contents.position();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    private void closeSegments() {
+        for (Segment segment : used) {
+            segment.close();
+        }
+        for (Segment segment : free) {
+            segment.close();
+        }
+        used.clear();
+        free.clear();
+        pending = new ArrayList<Chunk>();
+    }
+
+    private static int checksum(long generation, byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 8; i++) {
+            crc.update((int) (generation >>> (8 * i)));
+        }
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeXid(DataOutputStream out, Xid xid) throws IOException {
+        out.writeInt(xid.getFormatId());
+        writeBytes(out, xid.getGlobalTransactionId());
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readUnsignedShort()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private long generation;
+        /** The position of the next record */
+        private long position;
+        /** The number of transactions in doubt with a commit record in this segment */
+        private int live;
+        /** Whether the size of the file is not the configured segment size */
+        private boolean resized;
+
+        Segment(File file, RandomAccessFile raf) {
+            this.file = file;
+            this.raf = raf;
+            this.channel = raf.getChannel();
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                log.debug("Unable to close the transaction log segment " + file, e);
+            }
+        }
+    }
+
+    private static final class Chunk {
+        private final Segment segment;
+        private final long position;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream(256);
+
+        Chunk(Segment segment, long position) {
+            this.segment = segment;
+            this.position = position;
+        }
+
+        void add(byte[] bytes) {
+            data.write(bytes, 0, bytes.length);
+        }
+    }
+
+    /**
+     * The log mark of a transaction, guarded by the lock of the log
+     */
+    private static final class Mark {
+        private final Segment segment;
+        private boolean done;
+
+        Mark(Segment segment) {
+            this.segment = segment;
+        }
+    }
+
+    private static final class RecoveredTransaction {
+        private final int formatId;
+        private final byte[] globalId;
+        private final Mark mark;
+        private final List<byte[]> branchQualifiers = new ArrayList<byte[]>();
+        private final List<String> resourceNames = new ArrayList<String>();
+
+        RecoveredTransaction(int formatId, byte[] globalId, Mark mark) {
+            this.formatId = formatId;
+            this.globalId = globalId;
+            this.mark = mark;
+        }
+    }
+
+    private static final class XidKey {
+        private final int formatId;
+        private final byte[] globalId;
+        private final int hash;
+
+        XidKey(int formatId, byte[] globalId) {
+            this.formatId = formatId;
+            this.globalId = globalId;
+            this.hash = 31 * formatId + Arrays.hashCode(globalId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof XidKey)) return false;
+            XidKey that = (XidKey) o;
+            return formatId == that.formatId && Arrays.equals(globalId, that.globalId);
+        }
+    }
+
+    private static final class BranchInfo implements TransactionBranchInfo {
+        private final Xid branchXid;
+        private final String resourceName;
+
+        BranchInfo(Xid branchXid, String resourceName) {
+            this.branchXid = branchXid;
+            this.resourceName = resourceName;
+        }
+
+        public String getResourceName() {
+            return resourceName;
+        }
+
+        public Xid getBranchXid() {
+            return branchXid;
+        }
+    }
+}
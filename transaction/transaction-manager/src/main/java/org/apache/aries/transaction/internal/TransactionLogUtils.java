@@ -33,6 +33,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.geronimo.transaction.log.HOWLLog;
+import org.apache.geronimo.transaction.manager.LogException;
 import org.apache.geronimo.transaction.manager.Recovery;
 import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
 import org.apache.geronimo.transaction.manager.XidFactory;
@@ -60,6 +61,11 @@ public class TransactionLogUtils {
         if (oldConfiguration == null) {
             oldConfiguration = new Hashtable<String, Object>();
         }
+        if (!LOG_TYPE_HOWL.equals(getString(oldConfiguration, LOG_TYPE, LOG_TYPE_HOWL))
+                || !LOG_TYPE_HOWL.equals(getString(newConfiguration, LOG_TYPE, LOG_TYPE_HOWL))) {
+            // only HOWL logs are converted
+            return false;
+        }
         if (oldConfiguration.get(HOWL_LOG_FILE_DIR) == null) {
             // we will be adjusting oldConfiguration to be able to create "old HOWLLog"
             oldConfiguration.put(HOWL_LOG_FILE_DIR, newConfiguration.get(HOWL_LOG_FILE_DIR));
@@ -219,6 +225,78 @@ public class TransactionLogUtils {
         }
     }
 
+    /**
+     * <p>When the log type changes, the transactions in doubt of the log of the other type would never
+     * be recovered. The transaction manager must not start until they are resolved with the previous type.</p>
+     * @param configuration configuration to create new transaction manager
+     * @param xidFactory the factory of the new transaction manager
+     * @throws ConfigurationException if the log of the other type holds transactions in doubt
+     */
+    public static void checkOtherLogType(Dictionary<?, ?> configuration, XidFactory xidFactory) throws ConfigurationException {
+        Dictionary<String, Object> otherConfiguration = new Hashtable<String, Object>();
+        for (Enumeration<?> keys = configuration.keys(); keys.hasMoreElements(); ) {
+            Object k = keys.nextElement();
+            otherConfiguration.put((String) k, configuration.get(k));
+        }
+        if (!getBool(otherConfiguration, RECOVERABLE, DEFAULT_RECOVERABLE)) {
+            return;
+        }
+        String otherLogType;
+        String otherLogDirectory;
+        if (LOG_TYPE_HOWL.equals(getString(otherConfiguration, LOG_TYPE, LOG_TYPE_HOWL))) {
+            otherLogType = LOG_TYPE_FILECHANNEL;
+            otherLogDirectory = getString(otherConfiguration, FILECHANNEL_LOG_FILE_DIR, getString(otherConfiguration, HOWL_LOG_FILE_DIR, null));
+            if (otherLogDirectory == null
+                    || !FileChannelLog.hasSegments(new File(otherLogDirectory), getString(otherConfiguration, FILECHANNEL_LOG_FILE_NAME, "transaction"))) {
+                return;
+            }
+        } else {
+            otherLogType = LOG_TYPE_HOWL;
+            otherLogDirectory = getString(otherConfiguration, HOWL_LOG_FILE_DIR, null);
+            if (otherLogDirectory == null) {
+                return;
+            }
+            File transaction_1 = new File(otherLogDirectory, configuredTransactionLogName(otherConfiguration, 1));
+            if (!transaction_1.exists() || transaction_1.length() == 0L) {
+                return;
+            }
+            try {
+                // the HOWL log must be opened with the configuration it was written with
+                BaseTxLogConfig txConfig = transactionLogFileConfig(transaction_1);
+                if (txConfig != null) {
+                    otherConfiguration.put(HOWL_MAX_LOG_FILES, Integer.toString(txConfig.maxLogFiles));
+                    otherConfiguration.put(HOWL_MAX_BLOCKS_PER_FILE, Integer.toString(txConfig.maxBlocksPerFile));
+                    otherConfiguration.put(HOWL_BUFFER_SIZE, Integer.toString(txConfig.bufferSizeKBytes));
+                }
+            } catch (IOException e) {
+                throw new ConfigurationException(LOG_TYPE, "Unable to read the " + otherLogType + " transaction log in " + otherLogDirectory, e);
+            }
+        }
+        otherConfiguration.put(LOG_TYPE, otherLogType);
+
+        org.apache.geronimo.transaction.manager.TransactionLog otherLog = TransactionManagerService.createTransactionLog(otherConfiguration, xidFactory);
+        try {
+            int inDoubt = otherLog.recover(xidFactory).size();
+            if (inDoubt > 0) {
+                log.error("The {} transaction log in {} holds {} transactions in doubt", otherLogType, otherLogDirectory, inDoubt);
+                throw new ConfigurationException(LOG_TYPE, "The " + otherLogType + " transaction log in " + otherLogDirectory + " holds "
+                        + inDoubt + " transactions in doubt. The log type must stay " + otherLogType + " until they are resolved.");
+            }
+        } catch (LogException e) {
+            throw new ConfigurationException(LOG_TYPE, "Unable to recover the " + otherLogType + " transaction log in " + otherLogDirectory, e);
+        } finally {
+            try {
+                if (otherLog instanceof HOWLLog) {
+                    ((HOWLLog) otherLog).doStop();
+                } else if (otherLog instanceof FileChannelLog) {
+                    ((FileChannelLog) otherLog).doStop();
+                }
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * Retrieves 3 important configuration parameters from single HOWL transaction log file
      * @param txFile existing HOWL file
@@ -44,6 +44,7 @@ public class TransactionManagerService {
     public static final String TRANSACTION_TIMEOUT = "aries.transaction.timeout";
     public static final String RECOVERABLE = "aries.transaction.recoverable";
     public static final String TMID = "aries.transaction.tmid";
+    public static final String LOG_TYPE = "aries.transaction.log.type";
     public static final String HOWL_BUFFER_CLASS_NAME = "aries.transaction.howl.bufferClassName";
     public static final String HOWL_BUFFER_SIZE = "aries.transaction.howl.bufferSize";
     public static final String HOWL_CHECKSUM_ENABLED = "aries.transaction.howl.checksumEnabled";
@@ -58,6 +59,13 @@ public class TransactionManagerService {
     public static final String HOWL_THREADS_WAITING_FORCE_THRESHOLD = "aries.transaction.howl.threadsWaitingForceThreshold";
     public static final String HOWL_LOG_FILE_DIR = "aries.transaction.howl.logFileDir";
     public static final String HOWL_FLUSH_PARTIAL_BUFFERS = "aries.transaction.flushPartialBuffers";
+    public static final String FILECHANNEL_LOG_FILE_DIR = "aries.transaction.filechannel.logFileDir";
+    public static final String FILECHANNEL_LOG_FILE_NAME = "aries.transaction.filechannel.logFileName";
+    public static final String FILECHANNEL_SEGMENT_SIZE = "aries.transaction.filechannel.segmentSize";
+    public static final String FILECHANNEL_MAX_SEGMENTS = "aries.transaction.filechannel.maxSegments";
+
+    public static final String LOG_TYPE_HOWL = "howl";
+    public static final String LOG_TYPE_FILECHANNEL = "filechannel";
 
     public static final int DEFAULT_TRANSACTION_TIMEOUT = 600; // 600 seconds -> 10 minutes
     public static final boolean DEFAULT_RECOVERABLE = false;   // not recoverable by default
@@ -87,6 +95,7 @@ public class TransactionManagerService {
         // the max length of the factory should be 64
         XidFactory xidFactory = new XidFactoryImpl(tmid.substring(0, Math.min(tmid.length(), 64)).getBytes());
         // Transaction log
+        TransactionLogUtils.checkOtherLogType(this.properties, xidFactory);
         transactionLog = createTransactionLog(this.properties, xidFactory);
         // Create transaction manager
         try {
@@ -126,6 +135,8 @@ public class TransactionManagerService {
       
         if (transactionLog instanceof HOWLLog) {
             ((HOWLLog) transactionLog).doStop();
+        } else if (transactionLog instanceof FileChannelLog) {
+            ((FileChannelLog) transactionLog).doStop();
         }
     }
 
@@ -163,7 +174,31 @@ public class TransactionManagerService {
 
     static TransactionLog createTransactionLog(Dictionary properties, XidFactory xidFactory) throws ConfigurationException {
         TransactionLog result = null;
-        if (getBool(properties, RECOVERABLE, DEFAULT_RECOVERABLE)) {
+        String logType = getString(properties, LOG_TYPE, LOG_TYPE_HOWL);
+        if (!LOG_TYPE_HOWL.equals(logType) && !LOG_TYPE_FILECHANNEL.equals(logType)) {
+            throw new ConfigurationException(LOG_TYPE, "The log type must be either " + LOG_TYPE_HOWL + " or " + LOG_TYPE_FILECHANNEL + ".");
+        }
+        if (getBool(properties, RECOVERABLE, DEFAULT_RECOVERABLE) && LOG_TYPE_FILECHANNEL.equals(logType)) {
+            String logFileDir = getString(properties, FILECHANNEL_LOG_FILE_DIR, getString(properties, HOWL_LOG_FILE_DIR, null));
+            if (logFileDir == null || logFileDir.length() == 0 || !new File(logFileDir).isAbsolute()) {
+                throw new ConfigurationException(FILECHANNEL_LOG_FILE_DIR, "The log file directory must be set to an absolute directory.");
+            }
+            String logFileName = getString(properties, FILECHANNEL_LOG_FILE_NAME, "transaction");
+            int segmentSizeKBytes = getInt(properties, FILECHANNEL_SEGMENT_SIZE, 4096);
+            if (segmentSizeKBytes < 4 || segmentSizeKBytes > 1024 * 1024) {
+                throw new ConfigurationException(FILECHANNEL_SEGMENT_SIZE, "The segment size must be between four kilobytes and one gigabyte.");
+            }
+            int maxSegments = getInt(properties, FILECHANNEL_MAX_SEGMENTS, 4);
+            if (maxSegments < 2) {
+                throw new ConfigurationException(FILECHANNEL_MAX_SEGMENTS, "The maximum number of segments must be at least two.");
+            }
+            try {
+                result = new FileChannelLog(new File(logFileDir), logFileName, segmentSizeKBytes * 1024, maxSegments);
+                ((FileChannelLog) result).doStart();
+            } catch (Exception e) {
+                throw new ConfigurationException(null, e.getMessage(), e);
+            }
+        } else if (getBool(properties, RECOVERABLE, DEFAULT_RECOVERABLE)) {
             String bufferClassName = getString(properties, HOWL_BUFFER_CLASS_NAME, "org.objectweb.howl.log.BlockLogBuffer");
             int bufferSizeKBytes = getInt(properties, HOWL_BUFFER_SIZE, 4);
             if (bufferSizeKBytes < 1 || bufferSizeKBytes > 32) {
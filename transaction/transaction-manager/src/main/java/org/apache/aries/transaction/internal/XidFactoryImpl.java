@@ -17,6 +17,10 @@
 
 package org.apache.aries.transaction.internal;
 
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.transaction.xa.Xid;
 import org.apache.geronimo.transaction.manager.XidFactory;
 import org.apache.geronimo.transaction.manager.XidImpl;
@@ -29,34 +33,30 @@ import org.apache.geronimo.transaction.manager.XidImpl;
  * <li>base id</li>
  * <ol>
  * can't easily extend geronimo XidFactoryImpl b/c count is private
+ * <p>
+ * The Xids created by this factory only hold their id and branch number, their
+ * byte arrays are built when first requested.
  */
 public class XidFactoryImpl implements XidFactory {
     private final byte[] baseId = new byte[Xid.MAXGTRIDSIZE];
     private final long start = System.currentTimeMillis();
-    private long count = start;
+    private final AtomicLong count = new AtomicLong(start);
+    private final int formatId;
 
     public XidFactoryImpl(byte[] tmId) {
         System.arraycopy(tmId, 0, baseId, 8, tmId.length);
+        formatId = new XidImpl(baseId).getFormatId();
     }
 
     public Xid createXid() {
-        byte[] globalId = (byte[]) baseId.clone();
-        long id;
-        synchronized (this) {
-            id = count++;
-        }
-        insertLong(id, globalId, 0);
-        return new XidImpl(globalId);
+        return new GlobalXid(formatId, baseId, count.getAndIncrement());
     }
 
     public Xid createBranch(Xid globalId, int branch) {
-        byte[] branchId = (byte[]) baseId.clone();
-        branchId[0] = (byte) branch;
-        branchId[1] = (byte) (branch >>> 8);
-        branchId[2] = (byte) (branch >>> 16);
-        branchId[3] = (byte) (branch >>> 24);
-        insertLong(start, branchId, 4);
-        return new XidImpl(globalId, branchId);
+        if (globalId instanceof GlobalXid && ((GlobalXid) globalId).baseId == baseId) {
+            return new BranchXid((GlobalXid) globalId, start, branch);
+        }
+        return new XidImpl(globalId, branchId(baseId, start, branch));
     }
 
     public boolean matchesGlobalId(byte[] globalTransactionId) {
@@ -95,6 +95,22 @@ public class XidFactoryImpl implements XidFactory {
         return new XidImpl(formatId, globalTransactionid, branchQualifier);
     }
 
+    static byte[] globalId(byte[] baseId, long id) {
+        byte[] globalId = (byte[]) baseId.clone();
+        insertLong(id, globalId, 0);
+        return globalId;
+    }
+
+    static byte[] branchId(byte[] baseId, long start, int branch) {
+        byte[] branchId = (byte[]) baseId.clone();
+        branchId[0] = (byte) branch;
+        branchId[1] = (byte) (branch >>> 8);
+        branchId[2] = (byte) (branch >>> 16);
+        branchId[3] = (byte) (branch >>> 24);
+        insertLong(start, branchId, 4);
+        return branchId;
+    }
+
     static void insertLong(long value, byte[] bytes, int offset) {
         bytes[offset + 0] = (byte) value;
         bytes[offset + 1] = (byte) (value >>> 8);
@@ -117,4 +133,134 @@ public class XidFactoryImpl implements XidFactory {
                 + (((long) bytes[offset + 7]) << 56);
     }
 
+    private static String toString(Xid xid) {
+        StringBuilder s = new StringBuilder("[Xid:globalId=");
+        appendHex(s, xid.getGlobalTransactionId());
+        s.append(",branchId=");
+        appendHex(s, xid.getBranchQualifier());
+        return s.append("]").toString();
+    }
+
+    private static void appendHex(StringBuilder s, byte[] bytes) {
+        for (byte b : bytes) {
+            s.append(Character.forDigit((b >>> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+    }
+
+    /**
+     * A global transaction id. Its equality only considers the Xids of this class,
+     * as the equality of the geronimo XidImpl only considers XidImpls.
+     */
+    static final class GlobalXid implements Xid, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int formatId;
+        private final byte[] baseId;
+        private final long id;
+        /** Built when first requested, shared by the callers as with XidImpl */
+        private transient volatile byte[] globalTransactionId;
+        private transient volatile byte[] branchQualifier;
+
+        GlobalXid(int formatId, byte[] baseId, long id) {
+            this.formatId = formatId;
+            this.baseId = baseId;
+            this.id = id;
+        }
+
+        public int getFormatId() {
+            return formatId;
+        }
+
+        public byte[] getGlobalTransactionId() {
+            byte[] globalId = globalTransactionId;
+            if (globalId == null) {
+                globalId = globalId(baseId, id);
+                globalTransactionId = globalId;
+            }
+            return globalId;
+        }
+
+        public byte[] getBranchQualifier() {
+            byte[] branchId = branchQualifier;
+            if (branchId == null) {
+                branchId = new byte[Xid.MAXBQUALSIZE];
+                branchQualifier = branchId;
+            }
+            return branchId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (id ^ (id >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof GlobalXid)) return false;
+            GlobalXid that = (GlobalXid) o;
+            return id == that.id && formatId == that.formatId
+                    && (baseId == that.baseId || Arrays.equals(baseId, that.baseId));
+        }
+
+        @Override
+        public String toString() {
+            return XidFactoryImpl.toString(this);
+        }
+    }
+
+    /**
+     * A branch of a global transaction created by this factory.
+     */
+    static final class BranchXid implements Xid, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final GlobalXid global;
+        private final long start;
+        private final int branch;
+        /** Built when first requested, shared by the callers as with XidImpl */
+        private transient volatile byte[] branchQualifier;
+
+        BranchXid(GlobalXid global, long start, int branch) {
+            this.global = global;
+            this.start = start;
+            this.branch = branch;
+        }
+
+        public int getFormatId() {
+            return global.getFormatId();
+        }
+
+        public byte[] getGlobalTransactionId() {
+            return global.getGlobalTransactionId();
+        }
+
+        public byte[] getBranchQualifier() {
+            byte[] branchId = branchQualifier;
+            if (branchId == null) {
+                branchId = branchId(global.baseId, start, branch);
+                branchQualifier = branchId;
+            }
+            return branchId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * global.hashCode() + branch;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BranchXid)) return false;
+            BranchXid that = (BranchXid) o;
+            return branch == that.branch && start == that.start && global.equals(that.global);
+        }
+
+        @Override
+        public String toString() {
+            return XidFactoryImpl.toString(this);
+        }
+    }
+
 }
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.aries.transaction.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import javax.transaction.xa.Xid;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.geronimo.transaction.manager.Recovery;
+import org.apache.geronimo.transaction.manager.TransactionBranchInfo;
+import org.apache.geronimo.transaction.manager.XidFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.service.cm.ConfigurationException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileChannelLogTest {
+
+    private static File BASE = new File(System.getProperty("user.dir"), "txlogs");
+
+    private XidFactory xidFactory = new XidFactoryImpl("org.apache.aries.transaction.test".getBytes());
+    private File logDir;
+
+    @Before
+    public void setUp() throws Exception {
+        logDir = new File(BASE, "filechannel");
+        FileUtils.deleteDirectory(logDir);
+    }
+
+    @Test
+    public void recoverTransactionsInDoubt() throws Exception {
+        FileChannelLog txLog = new FileChannelLog(logDir, "transaction", 64 * 1024, 2);
+        txLog.doStart();
+        assertTrue(txLog.recover(xidFactory).isEmpty());
+        transaction(txLog, 2, true);
+        Xid inDoubt1 = transaction(txLog, 1, false);
+        Xid rolledBack = xidFactory.createXid();
+        txLog.rollback(rolledBack, txLog.prepare(rolledBack, branches(rolledBack, 3)));
+        Xid inDoubt2 = transaction(txLog, 3, false);
+        txLog.doStop();
+
+        txLog = new FileChannelLog(logDir, "transaction", 64 * 1024, 2);
+        txLog.doStart();
+        List<Recovery.XidBranchesPair> pairs = new ArrayList<Recovery.XidBranchesPair>(txLog.recover(xidFactory));
+        assertEquals(2, pairs.size());
+        assertSameTransaction(inDoubt1, 1, pairs.get(0));
+        assertSameTransaction(inDoubt2, 3, pairs.get(1));
+
+        // completing the recovered transactions after a restart
+        txLog.commit(pairs.get(0).getXid(), pairs.get(0).getMark());
+        txLog.rollback(pairs.get(1).getXid(), pairs.get(1).getMark());
+        txLog.doStop();
+
+        txLog = new FileChannelLog(logDir, "transaction", 64 * 1024, 2);
+        txLog.doStart();
+        assertTrue(txLog.recover(xidFactory).isEmpty());
+        txLog.doStop();
+    }
+
+    @Test
+    public void reuseSegments() throws Exception {
+        FileChannelLog txLog = new FileChannelLog(logDir, "transaction", 4 * 1024, 3);
+        txLog.doStart();
+        // a transaction in doubt keeps its segment, and the following ones, from being reused
+        Xid inDoubt = transaction(txLog, 2, false);
+        for (int i = 0; i < 500; i++) {
+            transaction(txLog, 2, true);
+        }
+        assertTrue(segments().length > 3);
+        txLog.doStop();
+
+        txLog = new FileChannelLog(logDir, "transaction", 4 * 1024, 3);
+        txLog.doStart();
+        Collection<Recovery.XidBranchesPair> pairs = txLog.recover(xidFactory);
+        assertEquals(1, pairs.size());
+        Recovery.XidBranchesPair pair = pairs.iterator().next();
+        assertSameTransaction(inDoubt, 2, pair);
+        txLog.commit(pair.getXid(), pair.getMark());
+        for (int i = 0; i < 500; i++) {
+            transaction(txLog, 2, true);
+        }
+        assertEquals(3, segments().length);
+        txLog.doStop();
+
+        txLog = new FileChannelLog(logDir, "transaction", 4 * 1024, 3);
+        txLog.doStart();
+        assertTrue(txLog.recover(xidFactory).isEmpty());
+        txLog.doStop();
+    }
+
+    @Test
+    public void switchLogTypeWithTransactionsInDoubt() throws Exception {
+        FileChannelLog txLog = new FileChannelLog(logDir, "transaction", 64 * 1024, 2);
+        txLog.doStart();
+        transaction(txLog, 1, false);
+        txLog.doStop();
+
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put("aries.transaction.recoverable", "true");
+        properties.put("aries.transaction.log.type", "howl");
+        properties.put("aries.transaction.howl.logFileDir", new File(BASE, "filechannel-howl").getAbsolutePath());
+        properties.put("aries.transaction.filechannel.logFileDir", logDir.getAbsolutePath());
+        properties.put("aries.transaction.filechannel.segmentSize", "64");
+        properties.put("aries.transaction.filechannel.maxSegments", "2");
+        try {
+            TransactionLogUtils.checkOtherLogType(properties, xidFactory);
+            fail("The transaction in doubt would not be recovered");
+        } catch (ConfigurationException e) {
+        }
+
+        txLog = new FileChannelLog(logDir, "transaction", 64 * 1024, 2);
+        txLog.doStart();
+        Recovery.XidBranchesPair pair = txLog.recover(xidFactory).iterator().next();
+        txLog.commit(pair.getXid(), pair.getMark());
+        txLog.doStop();
+        TransactionLogUtils.checkOtherLogType(properties, xidFactory);
+    }
+
+    private File[] segments() {
+        return logDir.listFiles();
+    }
+
+    private Xid transaction(FileChannelLog txLog, int branchCount, boolean commit) throws Exception {
+        Xid xid = xidFactory.createXid();
+        Object logMark = txLog.prepare(xid, branches(xid, branchCount));
+        if (commit) {
+            txLog.commit(xid, logMark);
+        }
+        return xid;
+    }
+
+    private List<TransactionBranchInfo> branches(Xid xid, int branchCount) {
+        List<TransactionBranchInfo> branches = new ArrayList<TransactionBranchInfo>();
+        for (int b = 1; b <= branchCount; b++) {
+            branches.add(new TestTransactionBranchInfo(xidFactory.createBranch(xid, b), String.format("res-%02d", b)));
+        }
+        return branches;
+    }
+
+    private void assertSameTransaction(Xid xid, int branchCount, Recovery.XidBranchesPair pair) {
+        assertEquals(xid.getFormatId(), pair.getXid().getFormatId());
+        assertArrayEquals(xid.getGlobalTransactionId(), pair.getXid().getGlobalTransactionId());
+        assertEquals(branchCount, pair.getBranches().size());
+        Map<String, byte[]> expected = new HashMap<String, byte[]>();
+        for (TransactionBranchInfo branch : branches(xid, branchCount)) {
+            expected.put(branch.getResourceName(), branch.getBranchXid().getBranchQualifier());
+        }
+        for (TransactionBranchInfo branch : pair.getBranches()) {
+            assertArrayEquals(expected.get(branch.getResourceName()), branch.getBranchXid().getBranchQualifier());
+        }
+    }
+
+    private static class TestTransactionBranchInfo implements TransactionBranchInfo {
+
+        private final Xid xid;
+        private final String name;
+
+        public TestTransactionBranchInfo(Xid xid, String name) {
+            this.xid = xid;
+            this.name = name;
+        }
+
+        @Override
+        public String getResourceName() {
+            return name;
+        }
+
+        @Override
+        public Xid getBranchXid() {
+            return xid;
+        }
+
+    }
+
+}
@@ -84,6 +84,33 @@ public class LogTest {
         System.err.flush();
     }
 
+    @Test
+    @Ignore
+    public void testFileChannelLog() throws Exception {
+        System.err.println("FileChannel");
+        XidFactory xidFactory = new XidFactoryImpl("hi".getBytes());
+        FileChannelLog txLog = new FileChannelLog(new File("log").getAbsoluteFile(),
+                "filechannel",
+                4096 * 1024,
+                4);
+        txLog.doStart();
+        GeronimoTransactionManager tm = new GeronimoTransactionManager(600, xidFactory, txLog);
+        XAResource xar1 = new TestXAResource("res1");
+        XAResource xar2 = new TestXAResource("res2");
+        tm.registerNamedXAResourceFactory(new TestXAResourceFactory("res1"));
+        tm.registerNamedXAResourceFactory(new TestXAResourceFactory("res2"));
+        for (int i = minThreads; i <= maxThreads; i *= 10) {
+            for (int j = minTxPerThread; j <= maxTxPerThread; j *= 10) {
+                long ms = testThroughput(tm, xar1, xar2, i, j);
+                System.err.println("TPS (" + i + " threads, " + j + " tx) = " + ((i * j) / (ms / 1000.0)));
+            }
+        }
+        System.err.println(txLog.getXMLStats());
+        txLog.doStop();
+        System.err.println();
+        System.err.flush();
+    }
+
     public long testThroughput(final TransactionManager tm, final XAResource xar1, final XAResource xar2, final int nbThreads, final int nbTxPerThread) throws Exception {
         Thread[] threads = new Thread[nbThreads];
         for (int thIdx = 0; thIdx < nbThreads; thIdx++) {
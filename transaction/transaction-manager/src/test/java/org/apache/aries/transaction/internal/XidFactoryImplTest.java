@@ -17,15 +17,24 @@
 
 package org.apache.aries.transaction.internal;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 import javax.transaction.xa.Xid;
 
 import org.apache.aries.transaction.internal.XidFactoryImpl;
 import org.apache.geronimo.transaction.manager.XidFactory;
+import org.apache.geronimo.transaction.manager.XidImpl;
+import org.junit.Ignore;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class XidFactoryImplTest {
@@ -69,4 +78,114 @@ public class XidFactoryImplTest {
         assertTrue("Should match old branch: " + b_id2, factory2.matchesBranchId(b_id2.getBranchQualifier()));
     }
 
+    @Test
+    public void testIdLayout() throws Exception {
+        byte[] tmId = "hi".getBytes();
+        XidFactory factory = new XidFactoryImpl(tmId);
+        Xid id = factory.createXid();
+        Xid branch = factory.createBranch(id, 3);
+
+        byte[] globalId = id.getGlobalTransactionId();
+        assertEquals(Xid.MAXGTRIDSIZE, globalId.length);
+        assertArrayEquals(tmId, Arrays.copyOfRange(globalId, 8, 8 + tmId.length));
+        assertEquals(XidFactoryImpl.extractLong(globalId, 0) + 1,
+                XidFactoryImpl.extractLong(factory.createXid().getGlobalTransactionId(), 0));
+        assertEquals(new XidImpl(globalId).getFormatId(), id.getFormatId());
+
+        assertEquals(id.getFormatId(), branch.getFormatId());
+        assertArrayEquals(globalId, branch.getGlobalTransactionId());
+        byte[] branchId = branch.getBranchQualifier();
+        assertEquals(Xid.MAXBQUALSIZE, branchId.length);
+        assertEquals(3, branchId[0]);
+        assertArrayEquals(Arrays.copyOfRange(globalId, 12, Xid.MAXGTRIDSIZE), Arrays.copyOfRange(branchId, 12, Xid.MAXBQUALSIZE));
+
+        // the arrays are built once, as with XidImpl
+        assertSame(globalId, id.getGlobalTransactionId());
+        assertSame(branchId, branch.getBranchQualifier());
+
+        // branches of transactions imported from another transaction manager
+        Xid imported = new XidImpl(1234, "imported".getBytes(), new byte[0]);
+        Xid importedBranch = factory.createBranch(imported, 3);
+        assertEquals(1234, importedBranch.getFormatId());
+        assertArrayEquals("imported".getBytes(), importedBranch.getGlobalTransactionId());
+        assertArrayEquals(branchId, importedBranch.getBranchQualifier());
+    }
+
+    @Test
+    public void testEquality() throws Exception {
+        XidFactory factory = new XidFactoryImpl("hi".getBytes());
+        Xid id1 = factory.createXid();
+        Xid id2 = factory.createXid();
+        assertFalse(id1.equals(id2));
+        assertEquals(factory.createBranch(id1, 1), factory.createBranch(id1, 1));
+        assertEquals(factory.createBranch(id1, 1).hashCode(), factory.createBranch(id1, 1).hashCode());
+        assertFalse(factory.createBranch(id1, 1).equals(factory.createBranch(id1, 2)));
+        assertFalse(factory.createBranch(id1, 1).equals(factory.createBranch(id2, 1)));
+        assertFalse(id1.equals(factory.createBranch(id1, 1)));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        XidFactory factory = new XidFactoryImpl("hi".getBytes());
+        Xid id = factory.createXid();
+        Xid branch = factory.createBranch(id, 1);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(id);
+        out.writeObject(branch);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Xid id2 = (Xid) in.readObject();
+        Xid branch2 = (Xid) in.readObject();
+
+        assertEquals(id, id2);
+        assertEquals(id.hashCode(), id2.hashCode());
+        assertArrayEquals(id.getGlobalTransactionId(), id2.getGlobalTransactionId());
+        assertEquals(branch, branch2);
+        assertEquals(branch.getFormatId(), branch2.getFormatId());
+        assertArrayEquals(branch.getBranchQualifier(), branch2.getBranchQualifier());
+        assertArrayEquals(factory.createBranch(id2, 1).getBranchQualifier(), branch.getBranchQualifier());
+    }
+
+    @Test
+    @Ignore
+    public void testThroughput() throws Exception {
+        for (int threads = 1; threads <= 16; threads *= 4) {
+            long geronimo = testThroughput(new org.apache.geronimo.transaction.manager.XidFactoryImpl("hi".getBytes()), threads, 1000000);
+            long aries = testThroughput(new XidFactoryImpl("hi".getBytes()), threads, 1000000);
+            System.err.println("Xids per second (" + threads + " threads): geronimo = " + (threads * 1000000L * 1000 / geronimo)
+                    + ", aries = " + (threads * 1000000L * 1000 / aries));
+        }
+    }
+
+    private long testThroughput(final XidFactory factory, int nbThreads, final int nbXidsPerThread) throws Exception {
+        Thread[] threads = new Thread[nbThreads];
+        for (int thIdx = 0; thIdx < nbThreads; thIdx++) {
+            threads[thIdx] = new Thread() {
+                @Override
+                public void run() {
+                    int hash = 0;
+                    for (int i = 0; i < nbXidsPerThread; i++) {
+                        // a transaction with two resources
+                        Xid xid = factory.createXid();
+                        hash += factory.createBranch(xid, 1).hashCode();
+                        hash += factory.createBranch(xid, 2).hashCode();
+                    }
+                    if (hash == 42) {
+                        System.err.print("");
+                    }
+                }
+            };
+        }
+        long t0 = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return Math.max(1, System.currentTimeMillis() - t0);
+    }
+
 }